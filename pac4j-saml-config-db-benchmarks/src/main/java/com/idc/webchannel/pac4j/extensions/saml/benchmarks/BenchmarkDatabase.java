@@ -0,0 +1,121 @@
+package com.idc.webchannel.pac4j.extensions.saml.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.jdbc.support.lob.DefaultLobHandler;
+
+import com.idc.webchannel.pac4j.extensions.saml.dao.impl.SpringJdbcTemplateSamlClientDaoImpl;
+
+
+/**
+ * An in-memory H2 database seeded with synthetic SAML client configurations. All clients use the keystore and IdP metadata of the unit
+ * tests of the benchmarked module, like many tenants of a single federation do.
+ *
+ * @author jkacer
+ * @since 2.0.1
+ */
+public final class BenchmarkDatabase {
+
+	public static final String TABLE_NAME = "PAC4J_CFG";
+	public static final String ENVIRONMENT = "Benchmark";
+	public static final String VERSION_COLUMN = "CONFIG_VERSION";
+
+	private static final String PATH_TO_SCRIPT_CREATE_TABLE = "/com/idc/webchannel/pac4j/extensions/saml/dao/impl/1_Create_Table.sql";
+	private static final String PATH_TO_KEYSTORE = "/com/idc/webchannel/pac4j/extensions/saml/client/SP_Keystore_0.jks";
+	private static final String PATH_TO_METADATA = "/com/idc/webchannel/pac4j/extensions/saml/client/IdP_Metadata_0.xml";
+
+	private static final String KEYSTORE_PASSWORD = "Keystore_Pwd_0";
+	private static final String KEYSTORE_ALIAS = "SP0";
+	private static final String PRIV_KEY_PASSWORD = "Priv_Key_Pwd_0";
+	private static final String IDP_ENTITY_ID = "https://idp.testshib.org/idp/shibboleth";
+	private static final String DEST_BINDING_TYPE = "urn:oasis:names:tc:SAML:2.0:bindings:HTTP-Redirect";
+
+	private static final String INSERT_SQL = "insert into " + TABLE_NAME + "(CLIENT_NAME, ENVIRONMENT, KEYSTORE_DATA, KEYSTORE_PASSWORD, "
+			+ "KEYSTORE_ALIAS, PRIVATE_KEY_PASSWORD, IDP_METADATA, IDP_ENTITY_ID, SP_ENTITY_ID, MAX_AUTH_LIFETIME, DEST_BINDING_TYPE) "
+			+ "values (?, ?, ?, ?, ?, ?, ?, ?, ?, 3600, ?)";
+
+	private final EmbeddedDatabase database;
+
+	private final List<String> clientNames;
+
+
+	// ------------------------------------------------------------------------------------------------------------------------------------
+
+
+	/**
+	 * Creates a new database with the given number of clients.
+	 *
+	 * @param clientCount
+	 *            Number of clients.
+	 */
+	public BenchmarkDatabase(final int clientCount) {
+		this.database = new EmbeddedDatabaseBuilder().generateUniqueName(true).setType(EmbeddedDatabaseType.H2)
+				.addScript(PATH_TO_SCRIPT_CREATE_TABLE).build();
+
+		final byte[] keystore = readResource(PATH_TO_KEYSTORE);
+		final String metadata = new String(readResource(PATH_TO_METADATA), StandardCharsets.UTF_8);
+		final List<String> names = new ArrayList<>(clientCount);
+		final List<Object[]> rows = new ArrayList<>(clientCount);
+		for (int i = 0; i < clientCount; i++) {
+			final String name = clientName(i);
+			names.add(name);
+			rows.add(new Object[] {name, ENVIRONMENT, keystore, KEYSTORE_PASSWORD, KEYSTORE_ALIAS, PRIV_KEY_PASSWORD, metadata, IDP_ENTITY_ID,
+					"urn:idc:authentication:saml2:entity:benchmark:" + name, DEST_BINDING_TYPE});
+		}
+		new JdbcTemplate(database).batchUpdate(INSERT_SQL, rows);
+		this.clientNames = names;
+	}
+
+
+	/**
+	 * Returns name of the i-th client.
+	 *
+	 * @param i
+	 *            Index of the client.
+	 *
+	 * @return The name.
+	 */
+	public static String clientName(final int i) {
+		return String.format("Client_%05d", i);
+	}
+
+
+	public List<String> getClientNames() {
+		return clientNames;
+	}
+
+
+	/**
+	 * Creates a new DAO reading this database.
+	 *
+	 * @return The DAO.
+	 */
+	public SpringJdbcTemplateSamlClientDaoImpl createDao() {
+		return new SpringJdbcTemplateSamlClientDaoImpl(database, new DefaultLobHandler(), TABLE_NAME, ENVIRONMENT, VERSION_COLUMN);
+	}
+
+
+	public void shutdown() {
+		database.shutdown();
+	}
+
+
+	private static byte[] readResource(final String path) {
+		try (InputStream is = BenchmarkDatabase.class.getResourceAsStream(path)) {
+			return IOUtils.toByteArray(is);
+		} catch (final IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+}
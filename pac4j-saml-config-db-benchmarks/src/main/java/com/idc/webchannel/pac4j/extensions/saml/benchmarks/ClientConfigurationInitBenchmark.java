@@ -0,0 +1,129 @@
+package com.idc.webchannel.pac4j.extensions.saml.benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.idc.webchannel.pac4j.extensions.saml.client.DatabaseLoadedSAML2ClientConfiguration;
+import com.idc.webchannel.pac4j.extensions.saml.client.IdentityProviderMetadataCache;
+import com.idc.webchannel.pac4j.extensions.saml.client.KeyStoreCredentialCache;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.SamlClientDao;
+import com.idc.webchannel.pac4j.extensions.saml.dao.impl.CachingSamlClientDaoImpl;
+
+
+/**
+ * Latency of {@link DatabaseLoadedSAML2ClientConfiguration} initialization, with configurations served from the cache so that the
+ * database is not measured. Compares a cold initialization (keystore decoded, metadata parsed) with one served from shared caches.
+ *
+ * @author jkacer
+ * @since 2.0.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClientConfigurationInitBenchmark {
+
+	private static final int CLIENT_COUNT = 100;
+
+	private BenchmarkDatabase database;
+
+	private SamlClientDao dao;
+
+	private KeyStoreCredentialCache sharedKeyStoreCredentialCache;
+
+	private IdentityProviderMetadataCache sharedIdentityProviderMetadataCache;
+
+
+	// ------------------------------------------------------------------------------------------------------------------------------------
+
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		database = new BenchmarkDatabase(CLIENT_COUNT);
+		dao = new CachingSamlClientDaoImpl(database.createDao());
+		dao.loadClientNames(); // Fills the cache
+		sharedKeyStoreCredentialCache = new KeyStoreCredentialCache();
+		sharedIdentityProviderMetadataCache = new IdentityProviderMetadataCache();
+	}
+
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		database.shutdown();
+	}
+
+
+	/**
+	 * A new configuration with its own caches: decodes the keystore and parses the metadata.
+	 */
+	@Benchmark
+	public InitializableConfiguration coldInit() {
+		final InitializableConfiguration configuration = new InitializableConfiguration(dao);
+		configuration.initialize(randomClientName());
+		return configuration;
+	}
+
+
+	/**
+	 * Re-initialization of a configuration using caches shared with other configurations.
+	 */
+	@Benchmark
+	public InitializableConfiguration sharedCachesInit(final ThreadConfiguration threadConfiguration) {
+		threadConfiguration.configuration.initialize(randomClientName());
+		return threadConfiguration.configuration;
+	}
+
+
+	private static String randomClientName() {
+		return BenchmarkDatabase.clientName(ThreadLocalRandom.current().nextInt(CLIENT_COUNT));
+	}
+
+
+	/**
+	 * A configuration per benchmark thread, using the shared caches. Re-initializing the same configuration keeps the caches from
+	 * accumulating owners.
+	 */
+	@State(Scope.Thread)
+	public static class ThreadConfiguration {
+
+		private InitializableConfiguration configuration;
+
+		@Setup(Level.Trial)
+		public void setUp(final ClientConfigurationInitBenchmark benchmark) {
+			configuration = new InitializableConfiguration(benchmark.dao);
+			configuration.setKeyStoreCredentialCache(benchmark.sharedKeyStoreCredentialCache);
+			configuration.setIdentityProviderMetadataCache(benchmark.sharedIdentityProviderMetadataCache);
+		}
+	}
+
+
+	/**
+	 * Makes the protected initialization accessible to the benchmark.
+	 */
+	public static class InitializableConfiguration extends DatabaseLoadedSAML2ClientConfiguration {
+
+		public InitializableConfiguration(final SamlClientDao dao) {
+			super(dao);
+		}
+
+		public void initialize(final String clientName) {
+			init(clientName, null);
+		}
+	}
+
+}
@@ -0,0 +1,90 @@
+package com.idc.webchannel.pac4j.extensions.saml.benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pac4j.core.client.Client;
+
+import com.idc.webchannel.pac4j.extensions.saml.client.DatabaseLoadedSAML2Clients;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.DbLoadedSamlClientConfigurationDto;
+import com.idc.webchannel.pac4j.extensions.saml.dao.impl.CachingSamlClientDaoImpl;
+
+
+/**
+ * Throughput of lookups done by many threads at the same time, as on a busy node: configurations from the cache and clients by name.
+ *
+ * @author jkacer
+ * @since 2.0.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(1)
+public class ContendedLookupBenchmark {
+
+	@Param({"10", "1000"})
+	private int clientCount;
+
+	private BenchmarkDatabase database;
+
+	private CachingSamlClientDaoImpl cachingDao;
+
+	private DatabaseLoadedSAML2Clients clients;
+
+	private String[] clientNames;
+
+
+	// ------------------------------------------------------------------------------------------------------------------------------------
+
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		database = new BenchmarkDatabase(clientCount);
+		cachingDao = new CachingSamlClientDaoImpl(database.createDao());
+		clients = new DatabaseLoadedSAML2Clients(cachingDao);
+		clients.setCallbackUrl("http://localhost/callback");
+		clients.init();
+		clientNames = database.getClientNames().toArray(new String[0]);
+	}
+
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		database.shutdown();
+	}
+
+
+	@Benchmark
+	public DbLoadedSamlClientConfigurationDto cachingLoadClient() {
+		return cachingDao.loadClient(randomClientName());
+	}
+
+
+	@Benchmark
+	public Client findClientByName() {
+		return clients.findClient(randomClientName());
+	}
+
+
+	private String randomClientName() {
+		return clientNames[ThreadLocalRandom.current().nextInt(clientNames.length)];
+	}
+
+}
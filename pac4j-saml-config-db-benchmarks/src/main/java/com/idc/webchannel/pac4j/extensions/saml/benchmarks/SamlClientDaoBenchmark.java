@@ -0,0 +1,99 @@
+package com.idc.webchannel.pac4j.extensions.saml.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.DbLoadedSamlClientConfigurationDto;
+import com.idc.webchannel.pac4j.extensions.saml.dao.impl.CachingSamlClientDaoImpl;
+import com.idc.webchannel.pac4j.extensions.saml.dao.impl.SpringJdbcTemplateSamlClientDaoImpl;
+
+
+/**
+ * Single-threaded latency of the DAOs: loading all clients and a single client from the database, and a single client from the cache.
+ * Database reads are measured with LOBs read by the LOB handler and streamed.
+ *
+ * @author jkacer
+ * @since 2.0.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SamlClientDaoBenchmark {
+
+	@Param({"10", "100", "1000"})
+	private int clientCount;
+
+	@Param({"false", "true"})
+	private boolean streamingLobs;
+
+	private BenchmarkDatabase database;
+
+	private SpringJdbcTemplateSamlClientDaoImpl jdbcDao;
+
+	private CachingSamlClientDaoImpl cachingDao;
+
+	private String[] clientNames;
+
+
+	// ------------------------------------------------------------------------------------------------------------------------------------
+
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		database = new BenchmarkDatabase(clientCount);
+		jdbcDao = database.createDao();
+		jdbcDao.setStreamingLobs(streamingLobs);
+		cachingDao = new CachingSamlClientDaoImpl(jdbcDao);
+		cachingDao.loadClientNames(); // Fills the cache
+		clientNames = database.getClientNames().toArray(new String[0]);
+	}
+
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		database.shutdown();
+	}
+
+
+	@Benchmark
+	public List<DbLoadedSamlClientConfigurationDto> jdbcLoadAllClients() {
+		return jdbcDao.loadAllClients();
+	}
+
+
+	@Benchmark
+	public DbLoadedSamlClientConfigurationDto jdbcLoadClient() {
+		return jdbcDao.loadClient(randomClientName());
+	}
+
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public DbLoadedSamlClientConfigurationDto cachingLoadClient() {
+		return cachingDao.loadClient(randomClientName());
+	}
+
+
+	private String randomClientName() {
+		return clientNames[ThreadLocalRandom.current().nextInt(clientNames.length)];
+	}
+
+}
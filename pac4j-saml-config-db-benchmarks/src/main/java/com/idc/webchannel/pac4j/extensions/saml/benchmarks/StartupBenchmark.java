@@ -0,0 +1,91 @@
+package com.idc.webchannel.pac4j.extensions.saml.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pac4j.core.client.Client;
+
+import com.idc.webchannel.pac4j.extensions.saml.client.DatabaseLoadedSAML2Clients;
+import com.idc.webchannel.pac4j.extensions.saml.dao.impl.SpringJdbcTemplateSamlClientDaoImpl;
+
+
+/**
+ * Startup time of {@link DatabaseLoadedSAML2Clients} depending on the number of clients: eager loading, lazy loading and eager loading
+ * followed by a parallel warm-up of all clients.
+ *
+ * @author jkacer
+ * @since 2.0.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class StartupBenchmark {
+
+	private static final String CALLBACK_URL = "http://localhost/callback";
+
+	@Param({"10", "100", "1000"})
+	private int clientCount;
+
+	private BenchmarkDatabase database;
+
+	private SpringJdbcTemplateSamlClientDaoImpl dao;
+
+
+	// ------------------------------------------------------------------------------------------------------------------------------------
+
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		database = new BenchmarkDatabase(clientCount);
+		dao = database.createDao();
+	}
+
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		database.shutdown();
+	}
+
+
+	@Benchmark
+	public List<Client> eagerStartup() {
+		final DatabaseLoadedSAML2Clients clients = new DatabaseLoadedSAML2Clients(dao);
+		clients.setCallbackUrl(CALLBACK_URL);
+		return clients.findAllClients();
+	}
+
+
+	@Benchmark
+	public List<Client> lazyStartup() {
+		final DatabaseLoadedSAML2Clients clients = new DatabaseLoadedSAML2Clients(dao);
+		clients.setCallbackUrl(CALLBACK_URL);
+		clients.setLazyLoading(true);
+		return clients.findAllClients();
+	}
+
+
+	@Benchmark
+	public List<Client> warmedUpStartup() {
+		final DatabaseLoadedSAML2Clients clients = new DatabaseLoadedSAML2Clients(dao);
+		clients.setCallbackUrl(CALLBACK_URL);
+		clients.setWarmUpThreads(Runtime.getRuntime().availableProcessors());
+		return clients.findAllClients();
+	}
+
+}
@@ -0,0 +1,6 @@
+-- Optional: A version column allowing incremental reloads of changed records only.
+-- The application must increase the version with every change of a record, e.g. "update PAC4J_CFG set ..., CONFIG_VERSION = PAC4J_CFG_VERSION_SEQ.nextval".
+-- Versions may be committed out of order; a change committed after a greater version has been read is picked up by the next full reload
+-- (CachingSamlClientDaoImpl.setFullReloadInterval).
+alter table PAC4J_CFG add CONFIG_VERSION BIGINT DEFAULT 0 NOT NULL;
+create sequence PAC4J_CFG_VERSION_SEQ start with 1;
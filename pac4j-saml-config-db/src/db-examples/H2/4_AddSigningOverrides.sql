@@ -0,0 +1,3 @@
+-- Optional: Per-client overrides of signing algorithms. URIs separated by white space or commas; NULL means the shared defaults.
+alter table PAC4J_CFG add SIGNATURE_ALGORITHMS VARCHAR(1000);
+alter table PAC4J_CFG add SIGNATURE_DIGEST_METHODS VARCHAR(1000);
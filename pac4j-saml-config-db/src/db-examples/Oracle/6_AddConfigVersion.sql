@@ -0,0 +1,15 @@
+-- Optional: A version column allowing incremental reloads of changed records only.
+-- The trigger takes the version when the statement runs, so versions may be committed out of order. A change committed after a greater
+-- version has been read is missed by incremental reloads and picked up by the next full reload (CachingSamlClientDaoImpl.setFullReloadInterval).
+ALTER TABLE PAC4J_CFG ADD CONFIG_VERSION NUMBER DEFAULT 0 NOT NULL;
+COMMENT ON COLUMN PAC4J_CFG.CONFIG_VERSION IS 'Version of the record; grows with every change';
+
+CREATE SEQUENCE PAC4J_CFG_VERSION_SEQ MINVALUE 1 MAXVALUE 999999999999999999999999999 INCREMENT BY 1 START WITH 1 CACHE 20 ORDER NOCYCLE;
+
+CREATE OR REPLACE TRIGGER PAC4J_CFG_VERSION_TRG
+BEFORE INSERT OR UPDATE ON PAC4J_CFG
+FOR EACH ROW
+BEGIN
+	:NEW.CONFIG_VERSION := PAC4J_CFG_VERSION_SEQ.nextval;
+END;
+/
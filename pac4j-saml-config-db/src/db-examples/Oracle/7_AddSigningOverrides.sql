@@ -0,0 +1,5 @@
+-- Optional: Per-client overrides of signing algorithms.
+ALTER TABLE PAC4J_CFG ADD SIGNATURE_ALGORITHMS VARCHAR2(1000 CHAR);
+ALTER TABLE PAC4J_CFG ADD SIGNATURE_DIGEST_METHODS VARCHAR2(1000 CHAR);
+COMMENT ON COLUMN PAC4J_CFG.SIGNATURE_ALGORITHMS IS 'Signature algorithm URIs overriding the defaults, separated by white space or commas';
+COMMENT ON COLUMN PAC4J_CFG.SIGNATURE_DIGEST_METHODS IS 'Signature reference digest method URIs overriding the defaults, separated by white space or commas';
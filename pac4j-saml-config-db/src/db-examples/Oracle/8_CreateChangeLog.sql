@@ -0,0 +1,23 @@
+-- Optional: A change log telling other nodes which clients to reload.
+CREATE TABLE PAC4J_CFG_CHANGES
+(
+  CHANGE_SEQ NUMBER NOT NULL,
+  ENVIRONMENT VARCHAR2(20 CHAR) NOT NULL,
+  CLIENT_NAME VARCHAR2(200 CHAR) NOT NULL,
+  CHANGED_AT TIMESTAMP DEFAULT SYSTIMESTAMP NOT NULL,
+  CONSTRAINT PAC4J_CFG_CHANGES_PK PRIMARY KEY (CHANGE_SEQ) ENABLE
+);
+COMMENT ON COLUMN PAC4J_CFG_CHANGES.CHANGE_SEQ IS 'Sequence of the change; grows with every change';
+COMMENT ON COLUMN PAC4J_CFG_CHANGES.ENVIRONMENT IS 'Application environment of the changed client';
+COMMENT ON COLUMN PAC4J_CFG_CHANGES.CLIENT_NAME IS 'PAC4J name of the changed client';
+COMMENT ON COLUMN PAC4J_CFG_CHANGES.CHANGED_AT IS 'Time of the change';
+
+CREATE SEQUENCE PAC4J_CFG_CHANGES_SEQ MINVALUE 1 MAXVALUE 999999999999999999999999999 INCREMENT BY 1 START WITH 1 CACHE 20 ORDER NOCYCLE;
+
+CREATE OR REPLACE TRIGGER PAC4J_CFG_CHANGES_TRG
+BEFORE INSERT ON PAC4J_CFG_CHANGES
+FOR EACH ROW
+BEGIN
+	:NEW.CHANGE_SEQ := PAC4J_CFG_CHANGES_SEQ.nextval;
+END;
+/
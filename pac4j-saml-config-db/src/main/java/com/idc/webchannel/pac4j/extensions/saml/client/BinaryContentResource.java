@@ -0,0 +1,81 @@
+package com.idc.webchannel.pac4j.extensions.saml.client;
+
+import java.io.InputStream;
+
+import org.springframework.core.io.AbstractResource;
+
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.BinaryContent;
+
+
+/**
+ * A resource reading a {@link BinaryContent}, without copying it. It can be read any number of times.
+ *
+ * @author jkacer
+ * @since 2.0.1
+ */
+final class BinaryContentResource extends AbstractResource {
+
+	/** The content. */
+	private final BinaryContent content;
+
+	/** Description of the resource. */
+	private final String description;
+
+
+	// ------------------------------------------------------------------------------------------------------------------------------------
+
+
+	/**
+	 * Creates a new resource.
+	 *
+	 * @param content
+	 *            The content.
+	 * @param description
+	 *            Description of the resource, used in error messages.
+	 */
+	BinaryContentResource(final BinaryContent content, final String description) {
+		super();
+		if (content == null) {
+			throw new IllegalArgumentException("Content must not be null.");
+		}
+		this.content = content;
+		this.description = description;
+	}
+
+
+	@Override
+	public boolean exists() {
+		return true;
+	}
+
+
+	@Override
+	public long contentLength() {
+		return content.size();
+	}
+
+
+	@Override
+	public InputStream getInputStream() {
+		return content.openStream();
+	}
+
+
+	@Override
+	public String getDescription() {
+		return description;
+	}
+
+
+	@Override
+	public boolean equals(final Object obj) {
+		return (obj == this) || ((obj instanceof BinaryContentResource) && content.equals(((BinaryContentResource) obj).content));
+	}
+
+
+	@Override
+	public int hashCode() {
+		return content.hashCode();
+	}
+
+}
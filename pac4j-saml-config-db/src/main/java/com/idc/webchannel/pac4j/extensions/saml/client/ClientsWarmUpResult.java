@@ -0,0 +1,76 @@
+package com.idc.webchannel.pac4j.extensions.saml.client;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Result of a warm-up of SAML clients, see {@link DatabaseLoadedSAML2Clients#warmUp(int)}.
+ *
+ * @author jkacer
+ * @since 2.0.1
+ */
+public final class ClientsWarmUpResult {
+
+	/** Names of clients initialized successfully. */
+	private final List<String> initializedClientNames;
+
+	/** Errors of clients that could not be initialized, indexed by client names. */
+	private final Map<String, Exception> failures;
+
+	/** Total duration of the warm-up in milliseconds. */
+	private final long durationMillis;
+
+
+	// ------------------------------------------------------------------------------------------------------------------------------------
+
+
+	/**
+	 * Creates a new result.
+	 *
+	 * @param initializedClientNames
+	 *            Names of clients initialized successfully.
+	 * @param failures
+	 *            Errors of clients that could not be initialized, indexed by client names.
+	 * @param durationMillis
+	 *            Total duration of the warm-up in milliseconds.
+	 */
+	ClientsWarmUpResult(final List<String> initializedClientNames, final Map<String, Exception> failures, final long durationMillis) {
+		super();
+		this.initializedClientNames = Collections.unmodifiableList(initializedClientNames);
+		this.failures = Collections.unmodifiableMap(new LinkedHashMap<>(failures));
+		this.durationMillis = durationMillis;
+	}
+
+
+	public List<String> getInitializedClientNames() {
+		return initializedClientNames;
+	}
+
+	public Map<String, Exception> getFailures() {
+		return failures;
+	}
+
+	public long getDurationMillis() {
+		return durationMillis;
+	}
+
+	/**
+	 * Tells whether all clients have been initialized.
+	 *
+	 * @return {@code true} if no client failed.
+	 */
+	public boolean isSuccessful() {
+		return failures.isEmpty();
+	}
+
+
+	@Override
+	public String toString() {
+		return "ClientsWarmUpResult [initialized=" + initializedClientNames.size() + ", failed=" + failures.keySet() + ", durationMillis="
+				+ durationMillis + "]";
+	}
+
+}
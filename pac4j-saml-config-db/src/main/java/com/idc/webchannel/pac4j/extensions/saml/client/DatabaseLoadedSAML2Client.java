@@ -0,0 +1,65 @@
+package com.idc.webchannel.pac4j.extensions.saml.client;
+
+import org.opensaml.saml.metadata.resolver.MetadataResolver;
+import org.pac4j.saml.client.SAML2Client;
+import org.pac4j.saml.client.SAML2ClientConfiguration;
+
+
+/**
+ * A {@link SAML2Client} configured by a {@link DatabaseLoadedSAML2ClientConfiguration}. It reuses the artifacts the configuration has
+ * already prepared (and possibly shares with other clients) instead of building them again from the configuration's resources.
+ *
+ * @author jkacer
+ * @since 2.0.1
+ */
+public class DatabaseLoadedSAML2Client extends SAML2Client {
+
+	/**
+	 * Creates a new client.
+	 *
+	 * @param configuration
+	 *            Configuration of the client.
+	 */
+	public DatabaseLoadedSAML2Client(final DatabaseLoadedSAML2ClientConfiguration configuration) {
+		super(configuration);
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Uses the credential already decoded by the configuration.
+	 */
+	@Override
+	protected void initCredentialProvider() {
+		final SAML2ClientConfiguration cfg = getConfiguration();
+		if (cfg instanceof DatabaseLoadedSAML2ClientConfiguration) {
+			final KeyStoreCredential keyStoreCredential = ((DatabaseLoadedSAML2ClientConfiguration) cfg).getKeyStoreCredential();
+			if (keyStoreCredential != null) {
+				credentialProvider = new KeyStoreCredentialProviderImpl(keyStoreCredential);
+				return;
+			}
+		}
+		super.initCredentialProvider();
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Uses the metadata already parsed by the configuration.
+	 */
+	@Override
+	protected MetadataResolver initIdentityProviderMetadataResolver() {
+		final SAML2ClientConfiguration cfg = getConfiguration();
+		if (cfg instanceof DatabaseLoadedSAML2ClientConfiguration) {
+			final MetadataResolver metadataResolver = ((DatabaseLoadedSAML2ClientConfiguration) cfg).getIdentityProviderMetadataResolver();
+			if (metadataResolver != null) {
+				idpMetadataResolver = new SharedIdentityProviderMetadataResolver(metadataResolver, cfg.getIdentityProviderEntityId());
+				return idpMetadataResolver.resolve();
+			}
+		}
+		return super.initIdentityProviderMetadataResolver();
+	}
+
+}
@@ -1,23 +1,21 @@
 package com.idc.webchannel.pac4j.extensions.saml.client;
 
-import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.security.KeyStore;
-import java.util.ArrayList;
 
-import org.apache.commons.io.input.CharSequenceInputStream;
 import org.apache.commons.lang3.StringUtils;
-import org.opensaml.xmlsec.config.DefaultSecurityConfigurationBootstrap;
-import org.opensaml.xmlsec.impl.BasicSignatureSigningConfiguration;
+import org.opensaml.saml.metadata.resolver.MetadataResolver;
 import org.pac4j.core.context.WebContext;
 import org.pac4j.core.exception.TechnicalException;
 import org.pac4j.core.util.CommonHelper;
 import org.pac4j.saml.client.SAML2ClientConfiguration;
-import org.springframework.core.io.ByteArrayResource;
-import org.springframework.core.io.InputStreamResource;
 import org.springframework.core.io.Resource;
 
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.BinaryContent;
 import com.idc.webchannel.pac4j.extensions.saml.dao.api.DbLoadedSamlClientConfigurationDto;
 import com.idc.webchannel.pac4j.extensions.saml.dao.api.SamlClientDao;
+import com.idc.webchannel.pac4j.extensions.saml.metrics.NoOpSamlClientMetrics;
+import com.idc.webchannel.pac4j.extensions.saml.metrics.SamlClientMetrics;
 
 
 /**
@@ -34,11 +32,14 @@ public class DatabaseLoadedSAML2ClientConfiguration extends SAML2ClientConfigura
 	/** DAO to read SAML client configurations. Should be shared by all configuration instances. */
 	private final SamlClientDao dao;
 	
+	/** Configuration loaded in advance, together with configurations of other clients. Consumed by the first {@link #init(String, WebContext)}. */
+	private DbLoadedSamlClientConfigurationDto preloadedConfiguration;
+	
 	/** Binary data of a JKS keystore. */
-	private byte[] keystoreBinaryData;
+	private BinaryContent keystoreContent;
 
-    /** IdP metadata. */
-    private String identityProviderMetadata;
+    /** IdP metadata, UTF-8 encoded. */
+    private BinaryContent identityProviderMetadataContent;
 
 	/** SAML Client name. Comes in {@link #init(String, WebContext)}. */
 	private String clientName;
@@ -46,9 +47,27 @@ public class DatabaseLoadedSAML2ClientConfiguration extends SAML2ClientConfigura
     /** The PAC4J resource corresponding to the key store. Just wraps the key store's binary definition. Initialized in {@link #init(String, WebContext)}. */
     private Resource keyStoreResourceFromDatabase;
     
-    /** The PAC4J resource corresponding to the IdP metadata. Just wraps the metadata textual definition. Initialized in {@link #init(String, WebContext)}. */
+    /** The PAC4J resource corresponding to the IdP metadata. Just wraps the encoded metadata, can be read repeatedly. Initialized in {@link #init(String, WebContext)}. */
     private Resource identityProviderMetadataResourceFromDatabase;
 
+    /** Cache of decoded keystores, possibly shared with other configurations. If not set, each configuration uses its own. */
+    private KeyStoreCredentialCache keyStoreCredentialCache = new KeyStoreCredentialCache();
+
+    /** The key store decoded into a private key and a certificate. Initialized in {@link #init(String, WebContext)}. */
+    private KeyStoreCredential keyStoreCredential;
+
+    /** Cache of parsed IdP metadata, possibly shared with other configurations. If not set, each configuration uses its own. */
+    private IdentityProviderMetadataCache identityProviderMetadataCache = new IdentityProviderMetadataCache();
+
+    /** The IdP metadata parsed into the OpenSAML object model. Initialized in {@link #init(String, WebContext)}. */
+    private MetadataResolver identityProviderMetadataResolver;
+
+    /** Signing algorithms used unless the client overrides them. Shared by all configurations by default. */
+    private SignatureSigningProfile signatureSigningProfile = SignatureSigningProfile.defaults();
+
+    /** Where durations of initialization phases are reported. */
+    private SamlClientMetrics metrics = NoOpSamlClientMetrics.INSTANCE;
+
 
     // ------------------------------------------------------------------------------------------------------------------------------------
 
@@ -65,6 +84,22 @@ public class DatabaseLoadedSAML2ClientConfiguration extends SAML2ClientConfigura
     	this.dao = dao;
 	}
 
+    /**
+	 * A constructor taking a configuration loaded in advance. The first {@link #init(String, WebContext)} uses it instead of reading the
+	 * configuration using the DAO, later re-initializations read it using the DAO.
+	 * 
+	 * @param dao
+	 *            DAO loading client configuration from DB.
+	 * @param preloadedConfiguration
+	 *            Configuration of this client, already loaded from DB.
+	 * @since 2.0.1
+	 */
+	public DatabaseLoadedSAML2ClientConfiguration(final SamlClientDao dao, final DbLoadedSamlClientConfigurationDto preloadedConfiguration) {
+    	this(dao);
+    	CommonHelper.assertNotNull("preloadedConfiguration", preloadedConfiguration);
+    	this.preloadedConfiguration = preloadedConfiguration;
+	}
+
     public String getClientName() {
 		return clientName;
 	}
@@ -73,6 +108,79 @@ public class DatabaseLoadedSAML2ClientConfiguration extends SAML2ClientConfigura
 		this.clientName = clientName;
 	}
 
+	/**
+	 * Sets the cache of decoded keystores. Clients sharing a cache decode identical keystores just once.
+	 * 
+	 * @param keyStoreCredentialCache
+	 *            The cache.
+	 * @since 2.0.1
+	 */
+	public void setKeyStoreCredentialCache(final KeyStoreCredentialCache keyStoreCredentialCache) {
+		CommonHelper.assertNotNull("keyStoreCredentialCache", keyStoreCredentialCache);
+		this.keyStoreCredentialCache.release(this);
+		this.keyStoreCredentialCache = keyStoreCredentialCache;
+	}
+
+	/**
+	 * Returns the key store decoded into a private key and a certificate.
+	 * 
+	 * @return The decoded key store or {@code null} if the configuration has not been initialized yet.
+	 * @since 2.0.1
+	 */
+	public KeyStoreCredential getKeyStoreCredential() {
+		return keyStoreCredential;
+	}
+
+	/**
+	 * Sets the cache of parsed IdP metadata. Clients sharing a cache parse identical metadata just once.
+	 * 
+	 * @param identityProviderMetadataCache
+	 *            The cache.
+	 * @since 2.0.1
+	 */
+	public void setIdentityProviderMetadataCache(final IdentityProviderMetadataCache identityProviderMetadataCache) {
+		CommonHelper.assertNotNull("identityProviderMetadataCache", identityProviderMetadataCache);
+		this.identityProviderMetadataCache.release(this);
+		this.identityProviderMetadataCache = identityProviderMetadataCache;
+	}
+
+	/**
+	 * Returns the IdP metadata parsed into the OpenSAML object model. The resolver may be shared with other configurations and must not
+	 * be modified.
+	 * 
+	 * @return The parsed metadata or {@code null} if the configuration has not been initialized yet.
+	 * @since 2.0.1
+	 */
+	public MetadataResolver getIdentityProviderMetadataResolver() {
+		return identityProviderMetadataResolver;
+	}
+
+
+	/**
+	 * Sets the signing algorithms used unless the client configuration overrides them.
+	 * 
+	 * @param signatureSigningProfile
+	 *            The algorithms.
+	 * @since 2.0.1
+	 */
+	public void setSignatureSigningProfile(final SignatureSigningProfile signatureSigningProfile) {
+		CommonHelper.assertNotNull("signatureSigningProfile", signatureSigningProfile);
+		this.signatureSigningProfile = signatureSigningProfile;
+	}
+
+
+	/**
+	 * Sets where durations of initialization phases are reported.
+	 * 
+	 * @param metrics
+	 *            The metrics.
+	 * @since 2.0.1
+	 */
+	public void setMetrics(final SamlClientMetrics metrics) {
+		CommonHelper.assertNotNull("metrics", metrics);
+		this.metrics = metrics;
+	}
+
 
 	/**
 	 * {@inheritDoc}
@@ -88,11 +196,16 @@ public class DatabaseLoadedSAML2ClientConfiguration extends SAML2ClientConfigura
 			throw new TechnicalException("The client name must not be null or empty.");
 		}
 
-		// Subsequently, the configuration for the name must be loaded using a DAO.
-		DbLoadedSamlClientConfigurationDto loaded = dao.loadClient(clientName);
+		// Subsequently, the configuration for the name must be taken from the preloaded one or loaded using a DAO.
+		long phaseStart = System.nanoTime();
+		DbLoadedSamlClientConfigurationDto loaded = takePreloadedConfiguration(clientName);
+		if (loaded == null) {
+			loaded = dao.loadClient(clientName);
+		}
 		if (loaded == null || !clientName.equals(loaded.getClientName())) {
 			throw new TechnicalException("SAML Client Configuration for name '" + clientName + "' could not be loaded.");
 		}
+		phaseStart = recordInitPhase(SamlClientMetrics.INIT_PHASE_LOAD, phaseStart);
 		
 		// If everything is OK, we will set the loaded values to the configuration object (itself).
 		setClientName(clientName);
@@ -104,9 +217,11 @@ public class DatabaseLoadedSAML2ClientConfiguration extends SAML2ClientConfigura
 		}
 		
 		setIdentityProviderEntityId(loaded.getIdentityProviderEntityId());
-		this.identityProviderMetadata = loaded.getIdentityProviderMetadata();
+		// The contents are shared with the DTO, possibly cached; they are immutable.
+		this.identityProviderMetadataContent = loaded.getIdentityProviderMetadataContent();
+		CommonHelper.assertTrue(!isBlank(identityProviderMetadataContent), "identityProviderMetadata cannot be blank");
 		setKeystoreType(KeyStore.getDefaultType());
-		keystoreBinaryData = loaded.getKeystoreBinaryData();
+		keystoreContent = loaded.getKeystoreContent();
 		setKeystorePassword(loaded.getKeystorePassword());
 		setKeystoreAlias(loaded.getKeystoreAlias());
 		setPrivateKeyPassword(loaded.getPrivateKeyPassword());
@@ -116,9 +231,8 @@ public class DatabaseLoadedSAML2ClientConfiguration extends SAML2ClientConfigura
 		CommonHelper.assertNotBlank("clientName", this.clientName);
 		CommonHelper.assertNotBlank("destinationBindingType", this.getDestinationBindingType());
 		CommonHelper.assertNotBlank("identityProviderEntityId", this.getIdentityProviderEntityId());
-		CommonHelper.assertNotBlank("identityProviderMetadata", this.identityProviderMetadata);
 		CommonHelper.assertNotBlank("keystoreType", this.getKeyStoreType());
-		CommonHelper.assertNotNull("keystoreBinaryData", this.keystoreBinaryData);
+		CommonHelper.assertNotNull("keystoreContent", this.keystoreContent);
         CommonHelper.assertNotBlank("keystorePassword", this.getKeystorePassword());
         CommonHelper.assertNotBlank("keystoreAlias", this.getKeyStoreAlias());
         CommonHelper.assertNotBlank("privateKeyPassword", this.getPrivateKeyPassword());
@@ -126,17 +240,16 @@ public class DatabaseLoadedSAML2ClientConfiguration extends SAML2ClientConfigura
         CommonHelper.assertNotBlank("serviceProviderEntityId", this.getServiceProviderEntityId());
 
 		initializeKeyStore();
+		phaseStart = recordInitPhase(SamlClientMetrics.INIT_PHASE_KEYSTORE, phaseStart);
 		initializeIdentityProviderMetadata();
+		phaseStart = recordInitPhase(SamlClientMetrics.INIT_PHASE_IDP_METADATA, phaseStart);
 
 		CommonHelper.assertNotNull("keyStoreResourceFromDatabase", this.keyStoreResourceFromDatabase);
 		CommonHelper.assertNotNull("identityProviderMetadataResourceFromDatabase", this.identityProviderMetadataResourceFromDatabase);
 
-        final BasicSignatureSigningConfiguration config = DefaultSecurityConfigurationBootstrap.buildDefaultSignatureSigningConfiguration();
-        setBlackListedSignatureSigningAlgorithms(new ArrayList<>(config.getBlacklistedAlgorithms()));
-        setSignatureAlgorithms(new ArrayList<>(config.getSignatureAlgorithms()));
-        setSignatureReferenceDigestMethods(new ArrayList<>(config.getSignatureReferenceDigestMethods()));
-        getSignatureReferenceDigestMethods().remove("http://www.w3.org/2001/04/xmlenc#sha512");
-        setSignatureCanonicalizationAlgorithm(config.getSignatureCanonicalizationAlgorithm());
+        // The profile is computed once and shared; only clients with overrides get their own.
+        signatureSigningProfile.withOverrides(loaded.getSignatureAlgorithms(), loaded.getSignatureReferenceDigestMethods()).applyTo(this);
+        recordInitPhase(SamlClientMetrics.INIT_PHASE_SIGNING, phaseStart);
 	}
 
 
@@ -153,18 +266,94 @@ public class DatabaseLoadedSAML2ClientConfiguration extends SAML2ClientConfigura
 
 
 	/**
-	 * Initializes the key store and the key store resource.
+	 * Releases the decoded keystore and the parsed metadata held in shared caches. Called when the client using this configuration has
+	 * been retired; the configuration itself keeps working.
+	 * 
+	 * @since 2.0.1
+	 */
+	void releaseSharedResources() {
+		keyStoreCredentialCache.release(this);
+		identityProviderMetadataCache.release(this);
+	}
+
+
+	/**
+	 * Returns the preloaded configuration if it belongs to the given client, and forgets it, so that its data is not held after
+	 * initialization.
+	 * 
+	 * @param clientName
+	 *            Name of the client being initialized.
+	 * 
+	 * @return The preloaded configuration or {@code null} if there is none for the client.
+	 */
+	private DbLoadedSamlClientConfigurationDto takePreloadedConfiguration(final String clientName) {
+		final DbLoadedSamlClientConfigurationDto preloaded = this.preloadedConfiguration;
+		this.preloadedConfiguration = null;
+		if (preloaded != null && clientName.equals(preloaded.getClientName())) {
+			return preloaded;
+		}
+		return null;
+	}
+
+
+	/**
+	 * Reports the duration of an initialization phase.
+	 * 
+	 * @param phase
+	 *            Name of the phase.
+	 * @param phaseStart
+	 *            Start of the phase, as returned by {@link System#nanoTime()}.
+	 * 
+	 * @return End of the phase, i.e. start of the next one.
+	 */
+	private long recordInitPhase(final String phase, final long phaseStart) {
+		final long phaseEnd = System.nanoTime();
+		metrics.recordInitPhase(phase, phaseEnd - phaseStart);
+		return phaseEnd;
+	}
+
+
+	/**
+	 * Checks whether binary data are missing or contain nothing but whitespace, without decoding them to a string.
+	 * 
+	 * @param data
+	 *            The data.
+	 * 
+	 * @return {@code true} if the data are {@code null} or only contain whitespace bytes.
+	 */
+	private static boolean isBlank(final BinaryContent data) {
+		if (data == null) {
+			return true;
+		}
+		final ByteBuffer bytes = data.asReadOnlyBuffer();
+		while (bytes.hasRemaining()) {
+			final byte b = bytes.get();
+			if (b < 0 || !Character.isWhitespace((char) b)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+
+	/**
+	 * Initializes the key store and the key store resource. The key store is decoded only if the cache does not hold the same one yet.
 	 */
 	private void initializeKeyStore() {
-		this.keyStoreResourceFromDatabase = new ByteArrayResource(keystoreBinaryData);
+		this.keyStoreResourceFromDatabase = new BinaryContentResource(keystoreContent, "Keystore of SAML client " + clientName);
+		this.keyStoreCredential = keyStoreCredentialCache.acquire(this, keystoreContent, getKeyStoreType(), getKeystorePassword(),
+				getKeyStoreAlias(), getPrivateKeyPassword());
 	}
  
 	/**
-	 * Initializes the IdP resource.
+	 * Initializes the IdP resource and the parsed metadata. The metadata is parsed only if the cache does not hold the same one yet.
+	 * 
+	 * The resource does not copy the metadata and can be read any number of times, e.g. by a refreshing metadata resolver.
 	 */
 	private void initializeIdentityProviderMetadata() {
-		final InputStream is = new CharSequenceInputStream(identityProviderMetadata, "UTF-8");
-		this.identityProviderMetadataResourceFromDatabase = new InputStreamResource(is);
+		this.identityProviderMetadataResourceFromDatabase = new BinaryContentResource(identityProviderMetadataContent,
+				"IdP metadata of SAML client " + clientName);
+		this.identityProviderMetadataResolver = identityProviderMetadataCache.acquire(this, identityProviderMetadataContent);
 	}
 
 }
@@ -1,117 +1,642 @@
-package com.idc.webchannel.pac4j.extensions.saml.client;
-
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
-
-import org.pac4j.core.authorization.generator.AuthorizationGenerator;
-import org.pac4j.core.client.BaseClient;
-import org.pac4j.core.client.Client;
-import org.pac4j.core.client.Clients;
-import org.pac4j.core.exception.TechnicalException;
-import org.pac4j.core.util.CommonHelper;
-import org.pac4j.saml.client.SAML2Client;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-import com.idc.webchannel.pac4j.extensions.saml.dao.api.SamlClientDao;
-
-
-/**
- * A special version of {@link Clients} that dynamically loads SAML2 Clients from a database. No other clients are supported.
- * 
- * @author jkacer
- * @since 1.9.0
- */
-public class DatabaseLoadedSAML2Clients extends Clients {
-    
-	private final Logger logger = LoggerFactory.getLogger(DatabaseLoadedSAML2Clients.class);
-	
-    /** DAO reading definitions of SAML clients from a database. */
-    private final SamlClientDao samlClientDao;
-
-    /** Loaded clients. */
-	private List<Client> dynamicallyLoadedClients;
-
-    
-	
-	public DatabaseLoadedSAML2Clients(final SamlClientDao samlClientDao) {
-		super();
-		this.samlClientDao = samlClientDao;
-	}
-	
-	
-    /**
-     * {@inheritDoc}
-     * 
-     * The clients are first loaded from the database, then set up as usual.
-     */
-    @Override
-    protected void internalInit() {
-    	final Set<String> names = new HashSet<>();
-        final List<SAML2Client> loadedClients = loadClientsInternal();
-        CommonHelper.assertNotNull("loadedClients", loadedClients);
-    	
-        for (final SAML2Client client : loadedClients) {
-            final String name = client.getName();
-            final String lowerName = name.toLowerCase();
-            if (names.contains(lowerName)) {
-                throw new TechnicalException("Duplicate name in clients: " + name);
-            }
-            names.add(lowerName);
-            updateCallbackUrlOfIndirectClient(client);
-
-            final BaseClient baseClient = (BaseClient) client;
-            final List<AuthorizationGenerator> ag = getAuthorizationGenerators();
-            if (!ag.isEmpty()) {
-                baseClient.addAuthorizationGenerators(ag);
-            }
-        }
-        
-        this.dynamicallyLoadedClients = new ArrayList<>(loadedClients);
-    }
-	
-
-	/* (non-Javadoc)
-	 * @see org.pac4j.core.client.Clients#getClients()
-	 */
-	@Override
-	public List<Client> getClients() {
-		init(); // We must assure the clients are loaded from DB first.
-		return this.dynamicallyLoadedClients; // Never null, can be an empty list
-	}
-
-	
-	/**
-	 * An internal method that loads client definitions.
-	 * 
-	 * @return A list of loaded clients. Never {@code null} but an empty list is possible.
-	 */
-	protected List<SAML2Client> loadClientsInternal() {
-		final List<SAML2Client> loaded = new ArrayList<>();
-
-		final List<String> clientNames = samlClientDao.loadClientNames();
-		for (final String name: clientNames) {
-			final DatabaseLoadedSAML2ClientConfiguration configuration = new DatabaseLoadedSAML2ClientConfiguration(samlClientDao); // AbstractSAML2ClientConfiguration !!! 
-			final SAML2Client client = new SAML2Client(configuration);
-			client.setName(name);
-			loaded.add(client);
-		}
-		
-		logger.info("Dynamically loaded {} SAML clients: {}", loaded.size(), clientNames);
-		return loaded;
-	}
-	
-	
-	@Override
-	public void setClients(List<Client> clients) {
-		throw new UnsupportedOperationException("Method setClients(List<Client> clients) is not implemented.");
-	}
-
-	@Override
-	public void setClients(Client... clients) {
-		throw new UnsupportedOperationException("Method setClients(Client... clients) is not implemented.");
-	}
-
-}
+package com.idc.webchannel.pac4j.extensions.saml.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.pac4j.core.authorization.generator.AuthorizationGenerator;
+import org.pac4j.core.client.BaseClient;
+import org.pac4j.core.client.Client;
+import org.pac4j.core.client.Clients;
+import org.pac4j.core.exception.TechnicalException;
+import org.pac4j.core.util.CommonHelper;
+import org.pac4j.saml.client.SAML2Client;
+import org.pac4j.saml.client.SAML2ClientConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.DbLoadedSamlClientConfigurationDto;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.SamlClientDao;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.StreamingSamlClientDao;
+import com.idc.webchannel.pac4j.extensions.saml.metrics.NoOpSamlClientMetrics;
+import com.idc.webchannel.pac4j.extensions.saml.metrics.SamlClientMetrics;
+
+
+/**
+ * A special version of {@link Clients} that dynamically loads SAML2 Clients from a database. No other clients are supported.
+ * 
+ * @author jkacer
+ * @since 1.9.0
+ */
+public class DatabaseLoadedSAML2Clients extends Clients {
+    
+	private final Logger logger = LoggerFactory.getLogger(DatabaseLoadedSAML2Clients.class);
+	
+    /** DAO reading definitions of SAML clients from a database. */
+    private final SamlClientDao samlClientDao;
+
+    /** Loaded clients. Never modified, replaced as a whole when a client is added, replaced or removed. */
+	private volatile ClientRegistry dynamicallyLoadedClients;
+
+    /** Cache of decoded keystores shared by all loaded clients. */
+	private KeyStoreCredentialCache keyStoreCredentialCache = new KeyStoreCredentialCache();
+
+    /** Cache of parsed IdP metadata shared by all loaded clients. */
+	private IdentityProviderMetadataCache identityProviderMetadataCache = new IdentityProviderMetadataCache();
+
+    /** Where the loaded clients report durations of their initialization phases. */
+	private SamlClientMetrics metrics = NoOpSamlClientMetrics.INSTANCE;
+
+    /** Serializes changes of {@link #dynamicallyLoadedClients}. Readers do not lock. */
+	private final Object registryLock = new Object();
+
+    /** If {@code true}, only client names are loaded at startup and each client loads its configuration on first use. */
+	private boolean lazyLoading;
+
+    /** Number of threads initializing the clients in parallel right after they are loaded. Zero means no warm-up at startup. */
+	private int warmUpThreads;
+
+    /** Result of the last warm-up or {@code null} if there has been none. */
+	private volatile ClientsWarmUpResult lastWarmUpResult;
+
+    
+	
+	public DatabaseLoadedSAML2Clients(final SamlClientDao samlClientDao) {
+		super();
+		this.samlClientDao = samlClientDao;
+	}
+
+
+	/**
+	 * Sets the cache of decoded keystores used by the loaded clients. Useful if the cache should be shared by several instances.
+	 * 
+	 * @param keyStoreCredentialCache
+	 *            The cache.
+	 * @since 2.0.1
+	 */
+	public void setKeyStoreCredentialCache(final KeyStoreCredentialCache keyStoreCredentialCache) {
+		CommonHelper.assertNotNull("keyStoreCredentialCache", keyStoreCredentialCache);
+		this.keyStoreCredentialCache = keyStoreCredentialCache;
+	}
+
+
+	/**
+	 * Sets the cache of parsed IdP metadata used by the loaded clients. Useful if the cache should be shared by several instances.
+	 * 
+	 * @param identityProviderMetadataCache
+	 *            The cache.
+	 * @since 2.0.1
+	 */
+	public void setIdentityProviderMetadataCache(final IdentityProviderMetadataCache identityProviderMetadataCache) {
+		CommonHelper.assertNotNull("identityProviderMetadataCache", identityProviderMetadataCache);
+		this.identityProviderMetadataCache = identityProviderMetadataCache;
+	}
+
+
+	/**
+	 * Sets where the loaded clients report durations of their initialization phases. Must be set before the clients are loaded.
+	 * 
+	 * @param metrics
+	 *            The metrics.
+	 * @since 2.0.1
+	 */
+	public void setMetrics(final SamlClientMetrics metrics) {
+		CommonHelper.assertNotNull("metrics", metrics);
+		this.metrics = metrics;
+	}
+
+
+	public boolean isLazyLoading() {
+		return lazyLoading;
+	}
+
+
+	/**
+	 * Switches the lazy loading mode on or off. Must be set before the clients are initialized.
+	 * 
+	 * In the lazy mode, only client names are read at startup. The configuration of a client is read from the database and its keystore and
+	 * metadata processed when PAC4J initializes the client, i.e. on its first use. PAC4J initializes each client just once, even if it is
+	 * used by several threads at the same time. Suitable for many clients of which only a few are really used.
+	 * 
+	 * @param lazyLoading
+	 *            {@code true} to switch the lazy mode on, {@code false} (the default) to load all configurations at startup.
+	 * @since 2.0.1
+	 */
+	public void setLazyLoading(final boolean lazyLoading) {
+		this.lazyLoading = lazyLoading;
+	}
+
+
+	public int getWarmUpThreads() {
+		return warmUpThreads;
+	}
+
+
+	/**
+	 * Sets the number of threads warming up the clients at startup. If positive, all clients are initialized in parallel right after they
+	 * have been loaded, see {@link #warmUp(int)}. Must be set before the clients are initialized.
+	 * 
+	 * If the DAO is a {@link StreamingSamlClientDao} and the lazy mode is off, each client is initialized as soon as its configuration has
+	 * been read, while the others are still being read. Reading waits while all threads are busy, so just a few configurations are held in
+	 * memory at a time, however many clients there are.
+	 * 
+	 * @param warmUpThreads
+	 *            Number of threads, zero (the default) to skip the warm-up.
+	 * @since 2.0.1
+	 */
+	public void setWarmUpThreads(final int warmUpThreads) {
+		CommonHelper.assertTrue(warmUpThreads >= 0, "Number of warm-up threads must not be negative.");
+		this.warmUpThreads = warmUpThreads;
+	}
+
+
+	/**
+	 * Returns the result of the last warm-up.
+	 * 
+	 * @return The result or {@code null} if the clients have not been warmed up yet.
+	 * @since 2.0.1
+	 */
+	public ClientsWarmUpResult getLastWarmUpResult() {
+		return lastWarmUpResult;
+	}
+	
+	
+    /**
+     * {@inheritDoc}
+     * 
+     * The clients are first loaded from the database, then set up as usual.
+     */
+    @Override
+    protected void internalInit() {
+    	final Map<String, Client> clientsByName = new HashMap<>();
+    	if (!lazyLoading && (warmUpThreads > 0) && (samlClientDao instanceof StreamingSamlClientDao)) {
+    		final List<SAML2Client> loadedClients = streamAndWarmUpClients((StreamingSamlClientDao) samlClientDao, clientsByName);
+    		this.dynamicallyLoadedClients = new ClientRegistry(new ArrayList<>(loadedClients), clientsByName);
+    		return;
+    	}
+
+        final List<SAML2Client> loadedClients = loadClientsInternal();
+        CommonHelper.assertNotNull("loadedClients", loadedClients);
+    	
+        for (final SAML2Client client : loadedClients) {
+            register(client, clientsByName);
+        }
+        
+        this.dynamicallyLoadedClients = new ClientRegistry(new ArrayList<>(loadedClients), clientsByName);
+        if (warmUpThreads > 0) {
+        	warmUp(this.dynamicallyLoadedClients.clients, warmUpThreads);
+        }
+    }
+
+
+    /**
+     * Indexes a loaded client by its name and sets it up.
+     * 
+     * @param client
+     *            The loaded client.
+     * @param clientsByName
+     *            Index of the clients loaded so far.
+     */
+    private void register(final SAML2Client client, final Map<String, Client> clientsByName) {
+        final String name = client.getName();
+        if (clientsByName.put(indexKey(name), client) != null) {
+            throw new TechnicalException("Duplicate name in clients: " + name);
+        }
+        setUpClient(client);
+    }
+
+
+    /**
+     * Sets a loaded client up the same way PAC4J sets up its clients.
+     * 
+     * @param client
+     *            The loaded client.
+     */
+    private void setUpClient(final SAML2Client client) {
+        updateCallbackUrlOfIndirectClient(client);
+
+        final BaseClient baseClient = (BaseClient) client;
+        final List<AuthorizationGenerator> ag = getAuthorizationGenerators();
+        if (!ag.isEmpty()) {
+            baseClient.addAuthorizationGenerators(ag);
+        }
+    }
+	
+
+	/* (non-Javadoc)
+	 * @see org.pac4j.core.client.Clients#getClients()
+	 */
+	@Override
+	public List<Client> getClients() {
+		init(); // We must assure the clients are loaded from DB first.
+		return this.dynamicallyLoadedClients.clients; // Never null, can be an empty list, unmodifiable
+	}
+
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * Uses an index instead of scanning all clients. Names are trimmed and compared case-insensitively, exactly like in PAC4J.
+	 */
+	@Override
+	public Client findClient(final String name) {
+		init();
+		final Client client = (name == null) ? null : dynamicallyLoadedClients.clientsByName.get(indexKey(name));
+		if (client == null) {
+			throw new TechnicalException("No client found for name: " + name);
+		}
+		return client;
+	}
+
+
+	/**
+	 * Reads the configuration of a single client from the DAO again and adds the client, replacing the client of the same name if there is
+	 * one. If the DAO no longer knows the client, it is removed. Other clients are not affected and requests keep being served during the
+	 * change; they see either the old or the new client, never a missing one.
+	 * 
+	 * The configuration comes from the DAO, not necessarily from the database. With a caching DAO, such as
+	 * {@link com.idc.webchannel.pac4j.extensions.saml.dao.impl.CachingSamlClientDaoImpl}, it comes from the cache, so the cache must be
+	 * refreshed first, e.g. by
+	 * {@link com.idc.webchannel.pac4j.extensions.saml.dao.impl.CachingSamlClientDaoImpl#reloadClient(String)}; otherwise the client is
+	 * rebuilt from the stale configuration.
+	 * 
+	 * The new client is initialized on its first use, like any other client. A replaced client is not disturbed while serving requests
+	 * already in progress.
+	 * 
+	 * @param name
+	 *            Name of the client.
+	 * 
+	 * @return The new client or {@code null} if the client does not exist in the database.
+	 * @since 2.0.1
+	 */
+	public SAML2Client reloadClient(final String name) {
+		CommonHelper.assertNotBlank("name", name);
+		init();
+		final DbLoadedSamlClientConfigurationDto loadedConfiguration = samlClientDao.loadClient(name);
+		if (loadedConfiguration == null) {
+			removeClient(name);
+			return null;
+		}
+
+		final SAML2Client client = createClient(loadedConfiguration.getClientName(),
+				new DatabaseLoadedSAML2ClientConfiguration(samlClientDao, loadedConfiguration));
+		setUpClient(client);
+		final Client replaced;
+		synchronized (registryLock) {
+			final ClientRegistry current = this.dynamicallyLoadedClients;
+			replaced = current.clientsByName.get(indexKey(client.getName()));
+			this.dynamicallyLoadedClients = current.with(client, replaced);
+		}
+		retire(replaced);
+		logger.info("SAML client '{}' has been {}.", client.getName(), (replaced == null) ? "added" : "replaced");
+		return client;
+	}
+
+
+	/**
+	 * Removes a single client. Other clients are not affected.
+	 * 
+	 * @param name
+	 *            Name of the client, compared case-insensitively.
+	 * 
+	 * @return {@code true} if the client has been removed, {@code false} if there was no such client.
+	 * @since 2.0.1
+	 */
+	public boolean removeClient(final String name) {
+		CommonHelper.assertNotBlank("name", name);
+		init();
+		final Client removed;
+		synchronized (registryLock) {
+			final ClientRegistry current = this.dynamicallyLoadedClients;
+			removed = current.clientsByName.get(indexKey(name));
+			if (removed == null) {
+				return false;
+			}
+			this.dynamicallyLoadedClients = current.without(removed);
+		}
+		retire(removed);
+		logger.info("SAML client '{}' has been removed.", removed.getName());
+		return true;
+	}
+
+
+	/**
+	 * Lets a client that is no longer registered give up its shared resources. The client itself stays usable for requests in progress.
+	 */
+	private void retire(final Client client) {
+		if (client instanceof SAML2Client) {
+			final SAML2ClientConfiguration configuration = ((SAML2Client) client).getConfiguration();
+			if (configuration instanceof DatabaseLoadedSAML2ClientConfiguration) {
+				((DatabaseLoadedSAML2ClientConfiguration) configuration).releaseSharedResources();
+			}
+		}
+	}
+
+
+	/**
+	 * Normalizes a client name to a key of the client index. Two names have the same key if and only if they are equal after
+	 * {@link String#trim()} by {@link String#equalsIgnoreCase(String)}, which is how PAC4J compares client names. Like
+	 * {@link String#equalsIgnoreCase(String)}, characters are mapped one by one, to lower case of their upper case.
+	 * 
+	 * @param name
+	 *            Client name.
+	 * 
+	 * @return The key.
+	 */
+	private static String indexKey(final String name) {
+		final String trimmed = name.trim();
+		final char[] key = new char[trimmed.length()];
+		for (int i = 0; i < key.length; i++) {
+			key[i] = Character.toLowerCase(Character.toUpperCase(trimmed.charAt(i)));
+		}
+		return new String(key);
+	}
+
+
+	/**
+	 * An internal method that loads client definitions.
+	 * 
+	 * All configurations are read by a single DAO call and handed over to the clients, so that initialization of each client does not
+	 * read its configuration again. Clients with identical keystores or IdP metadata share a single decoded credential or parsed metadata.
+	 * A {@link StreamingSamlClientDao} hands the configurations over one by one, without a list of all of them; the clients keep just their
+	 * names and read their configurations when initialized, so no configuration is held after it has been handed over. Put a caching DAO,
+	 * such as {@link com.idc.webchannel.pac4j.extensions.saml.dao.impl.BoundedCachingSamlClientDaoImpl}, under them to read those
+	 * configurations from memory. In the lazy mode, only names are read and each client reads its configuration when initialized.
+	 * 
+	 * @return A list of loaded clients. Never {@code null} but an empty list is possible.
+	 */
+	protected List<SAML2Client> loadClientsInternal() {
+		final List<SAML2Client> loaded = new ArrayList<>();
+		final List<String> clientNames = new ArrayList<>();
+
+		if (lazyLoading) {
+			for (final String name: samlClientDao.loadClientNames()) {
+				loaded.add(createClient(name, new DatabaseLoadedSAML2ClientConfiguration(samlClientDao)));
+				clientNames.add(name);
+			}
+		} else if (samlClientDao instanceof StreamingSamlClientDao) {
+			((StreamingSamlClientDao) samlClientDao).streamAllClients(loadedConfiguration -> {
+				final String name = loadedConfiguration.getClientName();
+				loaded.add(createClient(name, new DatabaseLoadedSAML2ClientConfiguration(samlClientDao)));
+				clientNames.add(name);
+			});
+		} else {
+			final List<DbLoadedSamlClientConfigurationDto> configurations = samlClientDao.loadAllClients();
+			for (final DbLoadedSamlClientConfigurationDto loadedConfiguration: configurations) {
+				final String name = loadedConfiguration.getClientName();
+				loaded.add(createClient(name, new DatabaseLoadedSAML2ClientConfiguration(samlClientDao, loadedConfiguration))); // AbstractSAML2ClientConfiguration !!!
+				clientNames.add(name);
+			}
+		}
+		
+		logger.info("Dynamically loaded {} SAML clients{}: {}", loaded.size(), lazyLoading ? " (lazily)" : "", clientNames);
+		return loaded;
+	}
+
+
+	/**
+	 * Streams all configurations and creates, sets up and initializes each client as soon as its configuration has been read. An initialized
+	 * client no longer holds its configuration, and reading waits while {@link #warmUpThreads} clients are being initialized and as many are
+	 * waiting, so no more configurations are held in memory at a time.
+	 * 
+	 * @param dao
+	 *            The streaming DAO.
+	 * @param clientsByName
+	 *            Index of the loaded clients, filled in.
+	 * 
+	 * @return A list of loaded clients. Never {@code null} but an empty list is possible.
+	 */
+	private List<SAML2Client> streamAndWarmUpClients(final StreamingSamlClientDao dao, final Map<String, Client> clientsByName) {
+		final List<SAML2Client> loaded = new ArrayList<>();
+		final WarmUp warmUp = new WarmUp(warmUpThreads, 2 * warmUpThreads);
+		try {
+			dao.streamAllClients(loadedConfiguration -> {
+				final SAML2Client client = createClient(loadedConfiguration.getClientName(),
+						new DatabaseLoadedSAML2ClientConfiguration(samlClientDao, loadedConfiguration));
+				register(client, clientsByName);
+				loaded.add(client);
+				warmUp.submit(client);
+			});
+			logger.info("Dynamically loaded {} SAML clients (streamed): {}", loaded.size(), names(loaded));
+			warmUp.finish();
+		} finally {
+			warmUp.shutdown();
+		}
+		return loaded;
+	}
+
+
+	private static List<String> names(final List<SAML2Client> clients) {
+		final List<String> names = new ArrayList<>();
+		for (final SAML2Client client: clients) {
+			names.add(client.getName());
+		}
+		return names;
+	}
+
+
+	/**
+	 * Creates a new client with the given configuration. The configuration is not initialized yet.
+	 * 
+	 * @param name
+	 *            Client name.
+	 * @param configuration
+	 *            Client configuration.
+	 * 
+	 * @return The new client.
+	 */
+	private SAML2Client createClient(final String name, final DatabaseLoadedSAML2ClientConfiguration configuration) {
+		configuration.setKeyStoreCredentialCache(keyStoreCredentialCache);
+		configuration.setIdentityProviderMetadataCache(identityProviderMetadataCache);
+		configuration.setMetrics(metrics);
+		final SAML2Client client = new DatabaseLoadedSAML2Client(configuration);
+		client.setName(name);
+		return client;
+	}
+	
+	
+	/**
+	 * Initializes all clients (reads their configurations if not read yet, decodes keystores, parses metadata etc.) in parallel, so that
+	 * no client has to be initialized on its first use. A client that cannot be initialized is reported in the result and does not stop
+	 * the others; it will be initialized again on its first use.
+	 * 
+	 * @param threads
+	 *            Maximum number of clients initialized at the same time.
+	 * 
+	 * @return The result of the warm-up, also available via {@link #getLastWarmUpResult()}.
+	 * @since 2.0.1
+	 */
+	public ClientsWarmUpResult warmUp(final int threads) {
+		CommonHelper.assertTrue(threads > 0, "Number of warm-up threads must be positive.");
+		return warmUp(getClients(), threads);
+	}
+
+
+	/**
+	 * Initializes the given clients in parallel on a bounded thread pool.
+	 */
+	private ClientsWarmUpResult warmUp(final List<Client> clients, final int threads) {
+		final WarmUp warmUp = new WarmUp(Math.max(1, Math.min(threads, clients.size())), Math.max(1, clients.size()));
+		try {
+			for (final Client client: clients) {
+				warmUp.submit(client);
+			}
+			return warmUp.finish();
+		} finally {
+			warmUp.shutdown();
+		}
+	}
+	
+	
+	@Override
+	public void setClients(List<Client> clients) {
+		throw new UnsupportedOperationException("Method setClients(List<Client> clients) is not implemented.");
+	}
+
+	@Override
+	public void setClients(Client... clients) {
+		throw new UnsupportedOperationException("Method setClients(Client... clients) is not implemented.");
+	}
+
+
+
+	/**
+	 * A single warm-up: clients are submitted one by one and initialized on a bounded thread pool, the result is collected at the end.
+	 */
+	private final class WarmUp {
+
+		private final long start = System.nanoTime();
+
+		private final ExecutorService executor;
+
+		/** Permits for clients submitted but not initialized yet. Submitting waits when there are none left. */
+		private final Semaphore pending;
+
+		private final Map<String, Future<?>> tasks = new LinkedHashMap<>();
+
+		private WarmUp(final int threads, final int maxPending) {
+			final AtomicInteger threadCounter = new AtomicInteger();
+			this.executor = Executors.newFixedThreadPool(threads, r -> {
+				final Thread t = new Thread(r, "saml-client-warm-up-" + threadCounter.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			});
+			this.pending = new Semaphore(maxPending);
+		}
+
+		/**
+		 * Submits a client to be initialized, waiting while too many clients are pending.
+		 */
+		private void submit(final Client client) {
+			final BaseClient baseClient = (BaseClient) client;
+			try {
+				pending.acquire();
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new TechnicalException("Warm-up of SAML clients has been interrupted.", e);
+			}
+			try {
+				tasks.put(client.getName(), executor.submit(() -> {
+					try {
+						baseClient.init(null);
+					} finally {
+						pending.release();
+					}
+				}));
+			} catch (final RuntimeException e) {
+				pending.release();
+				throw e;
+			}
+		}
+
+		/**
+		 * Waits for all submitted clients to be initialized and publishes the result.
+		 */
+		private ClientsWarmUpResult finish() {
+			final List<String> initialized = new ArrayList<>();
+			final Map<String, Exception> failures = new LinkedHashMap<>();
+			try {
+				for (final Map.Entry<String, Future<?>> task: tasks.entrySet()) {
+					try {
+						task.getValue().get();
+						initialized.add(task.getKey());
+					} catch (final ExecutionException e) {
+						final Exception cause = (e.getCause() instanceof Exception) ? (Exception) e.getCause() : e;
+						logger.warn("SAML client '{}' could not be initialized.", task.getKey(), cause);
+						failures.put(task.getKey(), cause);
+					}
+				}
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new TechnicalException("Warm-up of SAML clients has been interrupted.", e);
+			}
+
+			final long durationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+			final ClientsWarmUpResult result = new ClientsWarmUpResult(initialized, failures, durationMillis);
+			logger.info("Warmed up {} SAML clients in {} ms, {} failed: {}", initialized.size(), durationMillis, failures.size(), failures.keySet());
+			lastWarmUpResult = result;
+			return result;
+		}
+
+		private void shutdown() {
+			executor.shutdownNow();
+		}
+	}
+
+
+
+	/**
+	 * An immutable snapshot of the loaded clients: a list and an index by names, always consistent with each other.
+	 */
+	private static final class ClientRegistry {
+
+		/** The clients in their order. Unmodifiable. */
+		private final List<Client> clients;
+
+		/** The clients indexed by their names, see {@link DatabaseLoadedSAML2Clients#indexKey(String)}. Never modified. */
+		private final Map<String, Client> clientsByName;
+
+		private ClientRegistry(final List<Client> clients, final Map<String, Client> clientsByName) {
+			this.clients = Collections.unmodifiableList(clients);
+			this.clientsByName = clientsByName;
+		}
+
+		/**
+		 * Returns a copy with the client added, or replacing the previous client at its position.
+		 */
+		private ClientRegistry with(final Client client, final Client previous) {
+			final List<Client> newClients = new ArrayList<>(clients);
+			final int index = (previous == null) ? -1 : newClients.indexOf(previous);
+			if (index >= 0) {
+				newClients.set(index, client);
+			} else {
+				newClients.add(client);
+			}
+			final Map<String, Client> newClientsByName = new HashMap<>(clientsByName);
+			newClientsByName.put(indexKey(client.getName()), client);
+			return new ClientRegistry(newClients, newClientsByName);
+		}
+
+		/**
+		 * Returns a copy without the client.
+		 */
+		private ClientRegistry without(final Client client) {
+			final List<Client> newClients = new ArrayList<>(clients);
+			newClients.remove(client);
+			final Map<String, Client> newClientsByName = new HashMap<>(clientsByName);
+			newClientsByName.remove(indexKey(client.getName()));
+			return new ClientRegistry(newClients, newClientsByName);
+		}
+	}
+
+}
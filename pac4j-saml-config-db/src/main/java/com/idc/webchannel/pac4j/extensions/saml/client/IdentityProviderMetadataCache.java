@@ -0,0 +1,96 @@
+package com.idc.webchannel.pac4j.extensions.saml.client;
+
+import org.opensaml.saml.metadata.resolver.MetadataResolver;
+import org.opensaml.saml.metadata.resolver.impl.DOMMetadataResolver;
+import org.pac4j.core.exception.TechnicalException;
+import org.pac4j.core.util.CommonHelper;
+import org.pac4j.saml.util.Configuration;
+import org.w3c.dom.Element;
+
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+import net.shibboleth.utilities.java.support.xml.XMLParserException;
+
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.BinaryContent;
+
+
+/**
+ * <p>A cache of IdP metadata parsed into the OpenSAML object model.</p>
+ *
+ * <p>Many clients often use the same (federation) metadata. This cache parses each distinct metadata document once and shares the
+ * initialized {@link MetadataResolver} among all clients using it. Documents are identified by a SHA-256 digest of their content.</p>
+ *
+ * <p>Each entry is owned by the configurations that acquired it. When a configuration acquires a resolver for different metadata (because
+ * the metadata has changed) or releases its resolver, the old entry is removed once no other configuration uses it.</p>
+ *
+ * @author jkacer
+ * @since 2.0.1
+ */
+public class IdentityProviderMetadataCache {
+
+	/** The underlying cache of initialized resolvers. */
+	private final SharedContentCache<MetadataResolver> resolvers = new SharedContentCache<>();
+
+
+	// ------------------------------------------------------------------------------------------------------------------------------------
+
+
+	/**
+	 * Returns an initialized resolver for the given metadata, parsing the metadata if no owner has done so yet.
+	 *
+	 * @param owner
+	 *            Owner of the resolver, typically a client configuration. Compared by identity.
+	 * @param metadata
+	 *            The metadata document, UTF-8 encoded.
+	 *
+	 * @return The initialized resolver. Must not be destroyed nor modified by the caller.
+	 *
+	 * @throws TechnicalException
+	 *             If the metadata cannot be parsed.
+	 */
+	public MetadataResolver acquire(final Object owner, final BinaryContent metadata) {
+		CommonHelper.assertNotNull("owner", owner);
+		CommonHelper.assertNotNull("metadata", metadata);
+		return resolvers.acquire(owner, SharedContentCache.digest(metadata), () -> parse(metadata));
+	}
+
+
+	/**
+	 * Releases the resolver acquired by the owner, if there is any.
+	 *
+	 * @param owner
+	 *            Owner of the resolver.
+	 */
+	public void release(final Object owner) {
+		resolvers.release(owner);
+	}
+
+
+	/**
+	 * Returns the number of distinct metadata documents held by the cache.
+	 *
+	 * @return Number of documents.
+	 */
+	public int size() {
+		return resolvers.size();
+	}
+
+
+	/**
+	 * Parses the metadata the same way PAC4J's {@link org.pac4j.saml.metadata.SAML2IdentityProviderMetadataResolver} does.
+	 */
+	private static MetadataResolver parse(final BinaryContent metadata) {
+		try {
+			final Element element = Configuration.getParserPool().parse(metadata.openStream()).getDocumentElement();
+			final DOMMetadataResolver resolver = new DOMMetadataResolver(element);
+			resolver.setParserPool(Configuration.getParserPool());
+			resolver.setFailFastInitialization(true);
+			resolver.setRequireValidMetadata(true);
+			resolver.setId(resolver.getClass().getCanonicalName());
+			resolver.initialize();
+			return resolver;
+		} catch (final XMLParserException | ComponentInitializationException e) {
+			throw new TechnicalException("IdP metadata could not be parsed.", e);
+		}
+	}
+
+}
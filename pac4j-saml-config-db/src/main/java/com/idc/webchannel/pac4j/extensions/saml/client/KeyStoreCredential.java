@@ -0,0 +1,82 @@
+package com.idc.webchannel.pac4j.extensions.saml.client;
+
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+
+import org.opensaml.security.x509.BasicX509Credential;
+import org.opensaml.security.x509.X509Credential;
+
+
+/**
+ * A private key and its certificate decoded from a keystore. Immutable, shared by all clients using the same keystore.
+ *
+ * @author jkacer
+ * @since 2.0.1
+ */
+public final class KeyStoreCredential {
+
+	/** The decoded keystore. Must not be modified. */
+	private final KeyStore keyStore;
+
+	/** Alias of the private key, as stored in the keystore. */
+	private final String privateKeyAlias;
+
+	/** The decrypted private key. */
+	private final PrivateKey privateKey;
+
+	/** The certificate of the private key. */
+	private final X509Certificate certificate;
+
+	/** OpenSAML credential composed of the private key and the certificate. */
+	private final X509Credential credential;
+
+
+	// ------------------------------------------------------------------------------------------------------------------------------------
+
+
+	/**
+	 * Creates a new credential.
+	 *
+	 * @param keyStore
+	 *            The decoded keystore.
+	 * @param privateKeyAlias
+	 *            Alias of the private key, as stored in the keystore.
+	 * @param privateKey
+	 *            The decrypted private key.
+	 * @param certificate
+	 *            The certificate of the private key.
+	 */
+	KeyStoreCredential(final KeyStore keyStore, final String privateKeyAlias, final PrivateKey privateKey, final X509Certificate certificate) {
+		super();
+		this.keyStore = keyStore;
+		this.privateKeyAlias = privateKeyAlias;
+		this.privateKey = privateKey;
+		this.certificate = certificate;
+		final BasicX509Credential x509Credential = new BasicX509Credential(certificate, privateKey);
+		x509Credential.setEntityId(privateKeyAlias);
+		this.credential = x509Credential;
+	}
+
+
+	public KeyStore getKeyStore() {
+		return keyStore;
+	}
+
+	public String getPrivateKeyAlias() {
+		return privateKeyAlias;
+	}
+
+	public PrivateKey getPrivateKey() {
+		return privateKey;
+	}
+
+	public X509Certificate getCertificate() {
+		return certificate;
+	}
+
+	public X509Credential getCredential() {
+		return credential;
+	}
+
+}
@@ -0,0 +1,134 @@
+package com.idc.webchannel.pac4j.extensions.saml.client;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.Enumeration;
+
+import org.pac4j.core.exception.TechnicalException;
+import org.pac4j.core.util.CommonHelper;
+
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.BinaryContent;
+
+
+/**
+ * <p>A cache of keystores decoded into {@link KeyStoreCredential}s.</p>
+ *
+ * <p>Decoding a keystore and decrypting its private key is expensive. This cache does it once for each distinct combination of keystore
+ * content, keystore type, alias and passwords, and shares the result among all clients using the same combination. Passwords are part of
+ * the cache key, so a client can never obtain a private key it could not decrypt itself.</p>
+ *
+ * <p>Each entry is owned by the configurations that acquired it. When a configuration acquires a credential for different content (because
+ * the keystore has changed) or releases its credential, the old entry is removed once no other configuration uses it.</p>
+ *
+ * @author jkacer
+ * @since 2.0.1
+ */
+public class KeyStoreCredentialCache {
+
+	/** The underlying cache of decoded credentials. */
+	private final SharedContentCache<KeyStoreCredential> credentials = new SharedContentCache<>();
+
+
+	// ------------------------------------------------------------------------------------------------------------------------------------
+
+
+	/**
+	 * Returns a decoded credential for the given keystore, decoding the keystore if no owner has done so yet.
+	 *
+	 * @param owner
+	 *            Owner of the credential, typically a client configuration. Compared by identity.
+	 * @param keystoreContent
+	 *            Binary data of the keystore.
+	 * @param keystoreType
+	 *            Type of the keystore, e.g. "JKS".
+	 * @param keystorePassword
+	 *            Password of the keystore.
+	 * @param keystoreAlias
+	 *            Alias of the private key entry. Compared case-insensitively.
+	 * @param privateKeyPassword
+	 *            Password of the private key.
+	 *
+	 * @return The decoded credential.
+	 *
+	 * @throws TechnicalException
+	 *             If the keystore cannot be decoded or does not contain the private key.
+	 */
+	public KeyStoreCredential acquire(final Object owner, final BinaryContent keystoreContent, final String keystoreType,
+			final String keystorePassword, final String keystoreAlias, final String privateKeyPassword) {
+		CommonHelper.assertNotNull("owner", owner);
+		CommonHelper.assertNotNull("keystoreContent", keystoreContent);
+		CommonHelper.assertNotBlank("keystoreType", keystoreType);
+		CommonHelper.assertNotBlank("keystoreAlias", keystoreAlias);
+
+		final String key = SharedContentCache.digest(keystoreContent, keystoreType, keystorePassword, keystoreAlias, privateKeyPassword);
+		return credentials.acquire(owner, key,
+				() -> decode(keystoreContent, keystoreType, keystorePassword, keystoreAlias, privateKeyPassword));
+	}
+
+
+	/**
+	 * Releases the credential acquired by the owner, if there is any.
+	 *
+	 * @param owner
+	 *            Owner of the credential.
+	 */
+	public void release(final Object owner) {
+		credentials.release(owner);
+	}
+
+
+	/**
+	 * Returns the number of distinct credentials held by the cache.
+	 *
+	 * @return Number of credentials.
+	 */
+	public int size() {
+		return credentials.size();
+	}
+
+
+	/**
+	 * Decodes the keystore and decrypts the private key.
+	 */
+	private static KeyStoreCredential decode(final BinaryContent keystoreContent, final String keystoreType, final String keystorePassword,
+			final String keystoreAlias, final String privateKeyPassword) {
+		try {
+			final KeyStore keyStore = KeyStore.getInstance(keystoreType);
+			keyStore.load(keystoreContent.openStream(), (keystorePassword == null) ? null : keystorePassword.toCharArray());
+
+			final String alias = findAlias(keyStore, keystoreAlias);
+			final Key key = keyStore.getKey(alias, (privateKeyPassword == null) ? null : privateKeyPassword.toCharArray());
+			if (!(key instanceof PrivateKey)) {
+				throw new TechnicalException("Keystore entry '" + alias + "' does not contain a private key.");
+			}
+			final Certificate certificate = keyStore.getCertificate(alias);
+			if (!(certificate instanceof X509Certificate)) {
+				throw new TechnicalException("Keystore entry '" + alias + "' does not contain an X.509 certificate.");
+			}
+			return new KeyStoreCredential(keyStore, alias, (PrivateKey) key, (X509Certificate) certificate);
+		} catch (GeneralSecurityException | IOException e) {
+			throw new TechnicalException("Keystore could not be decoded.", e);
+		}
+	}
+
+
+	/**
+	 * Finds the alias as stored in the keystore, comparing case-insensitively like PAC4J does.
+	 */
+	private static String findAlias(final KeyStore keyStore, final String keystoreAlias) throws GeneralSecurityException {
+		final Enumeration<String> aliases = keyStore.aliases();
+		while (aliases.hasMoreElements()) {
+			final String alias = aliases.nextElement();
+			if (alias.equalsIgnoreCase(keystoreAlias)) {
+				return alias;
+			}
+		}
+		throw new TechnicalException("Keystore does not contain alias '" + keystoreAlias + "'.");
+	}
+
+}
@@ -0,0 +1,84 @@
+package com.idc.webchannel.pac4j.extensions.saml.client;
+
+import org.opensaml.security.SecurityException;
+import org.opensaml.security.credential.Credential;
+import org.opensaml.security.credential.CredentialResolver;
+import org.opensaml.security.credential.impl.StaticCredentialResolver;
+import org.opensaml.xmlsec.config.DefaultSecurityConfigurationBootstrap;
+import org.opensaml.xmlsec.keyinfo.KeyInfoCredentialResolver;
+import org.opensaml.xmlsec.keyinfo.KeyInfoGenerator;
+import org.opensaml.xmlsec.signature.KeyInfo;
+import org.pac4j.core.exception.TechnicalException;
+import org.pac4j.core.util.CommonHelper;
+import org.pac4j.saml.crypto.CredentialProvider;
+
+
+/**
+ * A PAC4J {@link CredentialProvider} serving an already decoded {@link KeyStoreCredential}.
+ *
+ * Unlike PAC4J's own {@link org.pac4j.saml.crypto.KeyStoreCredentialProvider}, it neither parses the keystore again nor decrypts the
+ * private key whenever the credential is requested.
+ *
+ * @author jkacer
+ * @since 2.0.1
+ */
+public class KeyStoreCredentialProviderImpl implements CredentialProvider {
+
+	/** The served credential. */
+	private final Credential credential;
+
+	/** Resolver always returning the served credential. */
+	private final CredentialResolver credentialResolver;
+
+
+	// ------------------------------------------------------------------------------------------------------------------------------------
+
+
+	/**
+	 * Creates a new provider.
+	 *
+	 * @param keyStoreCredential
+	 *            The decoded credential to serve.
+	 */
+	public KeyStoreCredentialProviderImpl(final KeyStoreCredential keyStoreCredential) {
+		super();
+		CommonHelper.assertNotNull("keyStoreCredential", keyStoreCredential);
+		this.credential = keyStoreCredential.getCredential();
+		this.credentialResolver = new StaticCredentialResolver(this.credential);
+	}
+
+
+	@Override
+	public KeyInfo getKeyInfo() {
+		try {
+			return getKeyInfoGenerator().generate(credential);
+		} catch (final SecurityException e) {
+			throw new TechnicalException("Unable to generate KeyInfo from the credential.", e);
+		}
+	}
+
+
+	@Override
+	public CredentialResolver getCredentialResolver() {
+		return credentialResolver;
+	}
+
+
+	@Override
+	public KeyInfoCredentialResolver getKeyInfoCredentialResolver() {
+		return DefaultSecurityConfigurationBootstrap.buildBasicInlineKeyInfoCredentialResolver();
+	}
+
+
+	@Override
+	public KeyInfoGenerator getKeyInfoGenerator() {
+		return DefaultSecurityConfigurationBootstrap.buildBasicKeyInfoGeneratorManager().getDefaultManager().getFactory(credential).newInstance();
+	}
+
+
+	@Override
+	public Credential getCredential() {
+		return credential;
+	}
+
+}
@@ -0,0 +1,171 @@
+package com.idc.webchannel.pac4j.extensions.saml.client;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import org.pac4j.core.exception.TechnicalException;
+
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.BinaryContent;
+
+
+/**
+ * A cache of values derived from some content (a keystore, metadata etc.), keyed by a digest of the content. An entry is shared by all its
+ * owners and is removed when its last owner releases it or acquires a value for different content.
+ *
+ * The value of an entry is computed just once, by the first owner that needs it. Values for different keys are computed in parallel.
+ *
+ * @param <V>
+ *            Type of cached values.
+ *
+ * @author jkacer
+ * @since 2.0.1
+ */
+final class SharedContentCache<V> {
+
+	/** Digest algorithm used to compute content keys. */
+	private static final String DIGEST_ALGORITHM = "SHA-256";
+
+	/** Cached entries indexed by content keys. */
+	private final Map<String, Entry<V>> entries = new HashMap<>();
+
+	/** Content keys indexed by their owners. */
+	private final Map<Object, String> keysByOwner = new IdentityHashMap<>();
+
+
+	// ------------------------------------------------------------------------------------------------------------------------------------
+
+
+	/**
+	 * Returns the value for a content key, computing it if it is not cached yet. Releases the value previously acquired by the owner if it
+	 * belongs to a different key.
+	 *
+	 * @param owner
+	 *            Owner of the value. Compared by identity.
+	 * @param key
+	 *            Content key, see {@link #digest(BinaryContent, String...)}.
+	 * @param loader
+	 *            Computes the value if it is not cached yet.
+	 *
+	 * @return The cached value.
+	 */
+	V acquire(final Object owner, final String key, final Supplier<V> loader) {
+		final Entry<V> entry;
+		synchronized (this) {
+			final String previousKey = keysByOwner.put(owner, key);
+			if (previousKey != null && !previousKey.equals(key)) {
+				detach(owner, previousKey);
+			}
+			entry = entries.computeIfAbsent(key, k -> new Entry<>());
+			entry.owners.add(owner);
+		}
+
+		try {
+			return entry.get(loader);
+		} catch (RuntimeException e) {
+			release(owner);
+			throw e;
+		}
+	}
+
+
+	/**
+	 * Releases the value acquired by the owner. Does nothing if the owner holds no value.
+	 *
+	 * @param owner
+	 *            Owner of the value.
+	 */
+	synchronized void release(final Object owner) {
+		final String key = keysByOwner.remove(owner);
+		if (key != null) {
+			detach(owner, key);
+		}
+	}
+
+
+	/**
+	 * Returns the number of cached entries.
+	 *
+	 * @return Number of entries.
+	 */
+	synchronized int size() {
+		return entries.size();
+	}
+
+
+	/**
+	 * Removes the owner from an entry and the entry itself if it has no other owners. Must be called with the lock held.
+	 */
+	private void detach(final Object owner, final String key) {
+		final Entry<V> entry = entries.get(key);
+		if (entry != null) {
+			entry.owners.remove(owner);
+			if (entry.owners.isEmpty()) {
+				entries.remove(key);
+			}
+		}
+	}
+
+
+	/**
+	 * Computes a content key from binary content and any number of textual attributes affecting the derived value.
+	 *
+	 * @param content
+	 *            Binary content. It is read through a read-only view, not copied.
+	 * @param attributes
+	 *            Additional attributes, {@code null} values are allowed.
+	 *
+	 * @return The content key.
+	 */
+	static String digest(final BinaryContent content, final String... attributes) {
+		final MessageDigest md;
+		try {
+			md = MessageDigest.getInstance(DIGEST_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			throw new TechnicalException(e);
+		}
+		md.update(content.asReadOnlyBuffer());
+		for (final String attribute: attributes) {
+			if (attribute == null) {
+				md.update(ByteBuffer.allocate(4).putInt(-1).array());
+			} else {
+				final byte[] bytes = attribute.getBytes(StandardCharsets.UTF_8);
+				md.update(ByteBuffer.allocate(4).putInt(bytes.length).array());
+				md.update(bytes);
+			}
+		}
+		return Base64.getEncoder().encodeToString(md.digest());
+	}
+
+
+	/**
+	 * A single cache entry.
+	 *
+	 * @param <V>
+	 *            Type of the cached value.
+	 */
+	private static final class Entry<V> {
+
+		/** Owners of the entry. Guarded by the lock of the cache. */
+		private final Set<Object> owners = Collections.newSetFromMap(new IdentityHashMap<>());
+
+		/** The value; {@code null} until computed. */
+		private V value;
+
+		synchronized V get(final Supplier<V> loader) {
+			if (value == null) {
+				value = loader.get();
+			}
+			return value;
+		}
+	}
+
+}
@@ -0,0 +1,114 @@
+package com.idc.webchannel.pac4j.extensions.saml.client;
+
+import java.util.Iterator;
+
+import org.opensaml.core.criterion.EntityIdCriterion;
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.saml.metadata.resolver.MetadataResolver;
+import org.opensaml.saml.metadata.resolver.impl.AbstractBatchMetadataResolver;
+import org.opensaml.saml.saml2.metadata.EntitiesDescriptor;
+import org.opensaml.saml.saml2.metadata.EntityDescriptor;
+import org.pac4j.core.exception.TechnicalException;
+import org.pac4j.core.util.CommonHelper;
+import org.pac4j.saml.exceptions.SAMLException;
+import org.pac4j.saml.metadata.SAML2MetadataResolver;
+
+import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
+import net.shibboleth.utilities.java.support.resolver.ResolverException;
+import net.shibboleth.utilities.java.support.xml.SerializeSupport;
+
+
+/**
+ * A PAC4J {@link SAML2MetadataResolver} serving IdP metadata already parsed into a (possibly shared) {@link MetadataResolver}.
+ *
+ * It behaves like PAC4J's own {@link org.pac4j.saml.metadata.SAML2IdentityProviderMetadataResolver}, but never parses the metadata.
+ *
+ * @author jkacer
+ * @since 2.0.1
+ */
+public class SharedIdentityProviderMetadataResolver implements SAML2MetadataResolver {
+
+	/** The parsed metadata. */
+	private final MetadataResolver metadataResolver;
+
+	/** Entity ID of the IdP. If not configured, the first entity of the metadata is used. */
+	private final String idpEntityId;
+
+
+	// ------------------------------------------------------------------------------------------------------------------------------------
+
+
+	/**
+	 * Creates a new resolver.
+	 *
+	 * @param metadataResolver
+	 *            The parsed metadata.
+	 * @param idpEntityId
+	 *            Entity ID of the IdP. Can be {@code null}, the first entity of the metadata is then used.
+	 */
+	public SharedIdentityProviderMetadataResolver(final MetadataResolver metadataResolver, final String idpEntityId) {
+		super();
+		CommonHelper.assertNotNull("metadataResolver", metadataResolver);
+		this.metadataResolver = metadataResolver;
+		this.idpEntityId = (idpEntityId != null) ? idpEntityId : findFirstEntityId(metadataResolver);
+	}
+
+
+	@Override
+	public MetadataResolver resolve() {
+		return metadataResolver;
+	}
+
+
+	@Override
+	public String getEntityId() {
+		final XMLObject md = getEntityDescriptorElement();
+		if (md instanceof EntitiesDescriptor) {
+			return ((EntitiesDescriptor) md).getEntityDescriptors().get(0).getEntityID();
+		} else if (md instanceof EntityDescriptor) {
+			return ((EntityDescriptor) md).getEntityID();
+		}
+		throw new SAMLException("No idp entityId found");
+	}
+
+
+	@Override
+	public String getMetadataPath() {
+		return null;
+	}
+
+
+	@Override
+	public String getMetadata() {
+		final XMLObject md = getEntityDescriptorElement();
+		if (md != null && md.getDOM() != null) {
+			return SerializeSupport.nodeToString(md.getDOM());
+		}
+		throw new TechnicalException("Metadata cannot be retrieved because entity descriptor is null");
+	}
+
+
+	@Override
+	public XMLObject getEntityDescriptorElement() {
+		try {
+			return metadataResolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(idpEntityId)));
+		} catch (final ResolverException e) {
+			throw new SAMLException("Error initializing idpMetadataProvider", e);
+		}
+	}
+
+
+	/**
+	 * Finds the ID of the first entity in the metadata.
+	 */
+	private static String findFirstEntityId(final MetadataResolver metadataResolver) {
+		if (metadataResolver instanceof AbstractBatchMetadataResolver) {
+			final Iterator<EntityDescriptor> it = ((AbstractBatchMetadataResolver) metadataResolver).iterator();
+			if (it.hasNext()) {
+				return it.next().getEntityID();
+			}
+		}
+		throw new SAMLException("No idp entityId found");
+	}
+
+}
@@ -0,0 +1,148 @@
+package com.idc.webchannel.pac4j.extensions.saml.client;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+import org.opensaml.xmlsec.config.DefaultSecurityConfigurationBootstrap;
+import org.opensaml.xmlsec.impl.BasicSignatureSigningConfiguration;
+import org.pac4j.saml.client.SAML2ClientConfiguration;
+
+
+/**
+ * Algorithms used to sign SAML messages: blacklisted algorithms, signature algorithms, reference digest methods and the canonicalization
+ * algorithm. Immutable, shared by all clients using the same algorithms.
+ *
+ * The {@link #defaults() defaults} are those of OpenSAML without SHA-512 digests, which is what {@link SAML2ClientConfiguration} uses. They
+ * are computed just once per JVM. A client may override signature algorithms and digest methods by
+ * {@link #withOverrides(String, String)}.
+ *
+ * @author jkacer
+ * @since 2.0.1
+ */
+public final class SignatureSigningProfile {
+
+	/** Digest method removed from the OpenSAML defaults, as in {@link SAML2ClientConfiguration}. */
+	private static final String SHA512_DIGEST_METHOD = "http://www.w3.org/2001/04/xmlenc#sha512";
+
+	/** Blacklisted signature signing algorithms. Unmodifiable. */
+	private final List<String> blackListedSignatureSigningAlgorithms;
+
+	/** Signature algorithms, in the order of preference. Unmodifiable. */
+	private final List<String> signatureAlgorithms;
+
+	/** Signature reference digest methods, in the order of preference. Unmodifiable. */
+	private final List<String> signatureReferenceDigestMethods;
+
+	/** Signature canonicalization algorithm. */
+	private final String signatureCanonicalizationAlgorithm;
+
+
+	// ------------------------------------------------------------------------------------------------------------------------------------
+
+
+	private SignatureSigningProfile(final List<String> blackListedSignatureSigningAlgorithms, final List<String> signatureAlgorithms,
+			final List<String> signatureReferenceDigestMethods, final String signatureCanonicalizationAlgorithm) {
+		super();
+		this.blackListedSignatureSigningAlgorithms = blackListedSignatureSigningAlgorithms;
+		this.signatureAlgorithms = signatureAlgorithms;
+		this.signatureReferenceDigestMethods = signatureReferenceDigestMethods;
+		this.signatureCanonicalizationAlgorithm = signatureCanonicalizationAlgorithm;
+	}
+
+
+	/**
+	 * Returns the default profile, built from the OpenSAML defaults on first use.
+	 *
+	 * @return The default profile.
+	 */
+	public static SignatureSigningProfile defaults() {
+		return DefaultsHolder.DEFAULTS;
+	}
+
+
+	/**
+	 * Returns a profile with signature algorithms and digest methods overridden. The other algorithms are taken from this profile.
+	 *
+	 * @param signatureAlgorithms
+	 *            URIs of signature algorithms separated by white space or commas, in the order of preference. If blank, the algorithms of
+	 *            this profile are kept.
+	 * @param signatureReferenceDigestMethods
+	 *            URIs of digest methods separated by white space or commas, in the order of preference. If blank, the digest methods of
+	 *            this profile are kept.
+	 *
+	 * @return The profile with the overrides, or this profile if nothing is overridden.
+	 */
+	public SignatureSigningProfile withOverrides(final String signatureAlgorithms, final String signatureReferenceDigestMethods) {
+		if (StringUtils.isBlank(signatureAlgorithms) && StringUtils.isBlank(signatureReferenceDigestMethods)) {
+			return this;
+		}
+		return new SignatureSigningProfile(blackListedSignatureSigningAlgorithms,
+				StringUtils.isBlank(signatureAlgorithms) ? this.signatureAlgorithms : split(signatureAlgorithms),
+				StringUtils.isBlank(signatureReferenceDigestMethods) ? this.signatureReferenceDigestMethods : split(signatureReferenceDigestMethods),
+				signatureCanonicalizationAlgorithm);
+	}
+
+
+	/**
+	 * Sets the algorithms of this profile to a configuration. The lists are shared, not copied; PAC4J only copies them into OpenSAML
+	 * configurations.
+	 *
+	 * @param configuration
+	 *            The configuration.
+	 */
+	public void applyTo(final SAML2ClientConfiguration configuration) {
+		configuration.setBlackListedSignatureSigningAlgorithms(blackListedSignatureSigningAlgorithms);
+		configuration.setSignatureAlgorithms(signatureAlgorithms);
+		configuration.setSignatureReferenceDigestMethods(signatureReferenceDigestMethods);
+		configuration.setSignatureCanonicalizationAlgorithm(signatureCanonicalizationAlgorithm);
+	}
+
+
+	public List<String> getBlackListedSignatureSigningAlgorithms() {
+		return blackListedSignatureSigningAlgorithms;
+	}
+
+
+	public List<String> getSignatureAlgorithms() {
+		return signatureAlgorithms;
+	}
+
+
+	public List<String> getSignatureReferenceDigestMethods() {
+		return signatureReferenceDigestMethods;
+	}
+
+
+	public String getSignatureCanonicalizationAlgorithm() {
+		return signatureCanonicalizationAlgorithm;
+	}
+
+
+	private static List<String> split(final String uris) {
+		return Collections.unmodifiableList(Arrays.asList(StringUtils.split(uris, " \t\r\n,")));
+	}
+
+
+	/**
+	 * Holds the default profile, built when first needed.
+	 *
+	 * @author jkacer
+	 */
+	private static final class DefaultsHolder {
+
+		private static final SignatureSigningProfile DEFAULTS = buildDefaults();
+
+		private static SignatureSigningProfile buildDefaults() {
+			final BasicSignatureSigningConfiguration config = DefaultSecurityConfigurationBootstrap.buildDefaultSignatureSigningConfiguration();
+			final List<String> digestMethods = new ArrayList<>(config.getSignatureReferenceDigestMethods());
+			digestMethods.remove(SHA512_DIGEST_METHOD);
+			return new SignatureSigningProfile(Collections.unmodifiableList(new ArrayList<>(config.getBlacklistedAlgorithms())),
+					Collections.unmodifiableList(new ArrayList<>(config.getSignatureAlgorithms())), Collections.unmodifiableList(digestMethods),
+					config.getSignatureCanonicalizationAlgorithm());
+		}
+	}
+
+}
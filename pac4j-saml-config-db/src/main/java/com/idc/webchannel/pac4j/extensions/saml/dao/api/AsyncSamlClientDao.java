@@ -0,0 +1,54 @@
+package com.idc.webchannel.pac4j.extensions.saml.dao.api;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+
+/**
+ * Non-blocking counterpart of {@link SamlClientDao}. Each method returns immediately; the reading is done by other threads and its result
+ * (or failure) is delivered through the returned future.
+ * 
+ * @author jkacer
+ * @since 2.0.1
+ */
+public interface AsyncSamlClientDao {
+
+	/**
+	 * Finds names of all existing clients.
+	 * 
+	 * @return A future list of names.
+	 */
+	CompletableFuture<List<String>> loadClientNamesAsync();
+
+
+	/**
+	 * Loads all existing SAML Client Configurations.
+	 * 
+	 * @return A future list of configurations.
+	 */
+	CompletableFuture<List<DbLoadedSamlClientConfigurationDto>> loadAllClientsAsync();
+
+
+	/**
+	 * Loads a single SAML Client Configuration.
+	 * 
+	 * @param clientName
+	 *            Name of the client.
+	 * 
+	 * @return A future configuration for the desired client, completed with {@code null} if no such configuration exists.
+	 */
+	CompletableFuture<DbLoadedSamlClientConfigurationDto> loadClientAsync(String clientName);
+
+
+	/**
+	 * Loads configurations changed since the given watermark, as {@link IncrementalSamlClientDao#loadClientsChangedSince(long)} does. If
+	 * the implementation cannot track changes, the future is completed with all configurations and the watermark unchanged.
+	 * 
+	 * @param watermark
+	 *            Watermark returned by the previous call or {@link IncrementalSamlClientDao#INITIAL_WATERMARK}.
+	 * 
+	 * @return Future changes since the watermark.
+	 */
+	CompletableFuture<SamlClientConfigurationChangesDto> loadClientsChangedSinceAsync(long watermark);
+
+}
@@ -0,0 +1,137 @@
+package com.idc.webchannel.pac4j.extensions.saml.dao.api;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+
+/**
+ * <p>Immutable binary content of a LOB, such as a keystore or UTF-8 encoded IdP metadata.</p>
+ *
+ * <p>The content can be read through read-only views without copying it. Two instances are equal if their contents are equal, so that
+ * identical contents loaded for many clients can be deduplicated by a {@link BinaryContentInterner}.</p>
+ *
+ * @author jkacer
+ * @since 2.0.1
+ */
+public final class BinaryContent {
+
+	/** The content. Never modified. */
+	private final byte[] content;
+
+	/** Hash code of the content, computed once. */
+	private final int hash;
+
+
+	// ------------------------------------------------------------------------------------------------------------------------------------
+
+
+	private BinaryContent(final byte[] content) {
+		super();
+		this.content = content;
+		this.hash = Arrays.hashCode(content);
+	}
+
+
+	/**
+	 * Creates a new content from a copy of the given array.
+	 *
+	 * @param content
+	 *            The content.
+	 *
+	 * @return The new content or {@code null} if the array is {@code null}.
+	 */
+	public static BinaryContent copyOf(final byte[] content) {
+		return (content == null) ? null : new BinaryContent(content.clone());
+	}
+
+
+	/**
+	 * Creates a new content taking over the given array without copying it. The array must not be modified afterwards.
+	 *
+	 * @param content
+	 *            The content.
+	 *
+	 * @return The new content or {@code null} if the array is {@code null}.
+	 */
+	public static BinaryContent wrap(final byte[] content) {
+		return (content == null) ? null : new BinaryContent(content);
+	}
+
+
+	/**
+	 * Returns the size of the content.
+	 *
+	 * @return Number of bytes.
+	 */
+	public int size() {
+		return content.length;
+	}
+
+
+	/**
+	 * Returns a read-only view of the content. The content is not copied.
+	 *
+	 * @return A new read-only buffer positioned at the beginning of the content.
+	 */
+	public ByteBuffer asReadOnlyBuffer() {
+		return ByteBuffer.wrap(content).asReadOnlyBuffer();
+	}
+
+
+	/**
+	 * Opens a stream reading the content. The content is not copied.
+	 *
+	 * @return A new stream.
+	 */
+	public InputStream openStream() {
+		return new ByteArrayInputStream(content);
+	}
+
+
+	/**
+	 * Returns a copy of the content.
+	 *
+	 * @return A new array.
+	 */
+	public byte[] toByteArray() {
+		return content.clone();
+	}
+
+
+	/**
+	 * Returns the content without copying it. Only for classes that pass the array on to code that does not modify it.
+	 *
+	 * @return The content.
+	 */
+	byte[] array() {
+		return content;
+	}
+
+
+	@Override
+	public boolean equals(final Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof BinaryContent)) {
+			return false;
+		}
+		final BinaryContent other = (BinaryContent) obj;
+		return (hash == other.hash) && Arrays.equals(content, other.content);
+	}
+
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+
+	@Override
+	public String toString() {
+		return "BinaryContent[" + content.length + " bytes]";
+	}
+
+}
@@ -0,0 +1,72 @@
+package com.idc.webchannel.pac4j.extensions.saml.dao.api;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+
+/**
+ * <p>Deduplicates {@link BinaryContent}s: for equal contents, it always returns the same instance, so that a keystore or metadata
+ * document shared by many clients is held in memory just once.</p>
+ *
+ * <p>Contents are held weakly; a content no longer referenced from anywhere else is dropped. The interner is thread-safe and should be
+ * shared by all DAOs of an application.</p>
+ *
+ * @author jkacer
+ * @since 2.0.1
+ */
+public class BinaryContentInterner {
+
+	/** Interned contents. The values refer to the keys weakly, so that they do not keep the keys alive. */
+	private final Map<BinaryContent, WeakReference<BinaryContent>> interned = new WeakHashMap<>();
+
+
+	// ------------------------------------------------------------------------------------------------------------------------------------
+
+
+	/**
+	 * Returns the interned instance equal to the given content. If there is none, the given content becomes the interned one.
+	 *
+	 * @param content
+	 *            The content.
+	 *
+	 * @return The interned content or {@code null} if the content is {@code null}.
+	 */
+	public synchronized BinaryContent intern(final BinaryContent content) {
+		if (content == null) {
+			return null;
+		}
+		final WeakReference<BinaryContent> reference = interned.get(content);
+		final BinaryContent existing = (reference == null) ? null : reference.get();
+		if (existing != null) {
+			return existing;
+		}
+		interned.put(content, new WeakReference<>(content));
+		return content;
+	}
+
+
+	/**
+	 * Returns the interned instance equal to the given array, taking the array over if there is none. The array must not be modified
+	 * afterwards.
+	 *
+	 * @param content
+	 *            The content.
+	 *
+	 * @return The interned content or {@code null} if the array is {@code null}.
+	 */
+	public BinaryContent intern(final byte[] content) {
+		return intern(BinaryContent.wrap(content));
+	}
+
+
+	/**
+	 * Returns the number of distinct contents held.
+	 *
+	 * @return The number of contents.
+	 */
+	public synchronized int size() {
+		return interned.size();
+	}
+
+}
@@ -1,92 +1,209 @@
-package com.idc.webchannel.pac4j.extensions.saml.dao.api;
-
-
-/**
- * A simple DTO to carry data from the database to the application.
- * 
- * @author jkacer
- * @since 1.9.0
-*/
-public class DbLoadedSamlClientConfigurationDto {
-
-	private String clientName;
-	private String environment;
-	private byte[] keystoreBinaryData;
-    private String keystorePassword;
-    private String keystoreAlias;
-    private String privateKeyPassword;
-    private String identityProviderMetadata;
-    private String identityProviderEntityId;
-    private String serviceProviderEntityId;
-    private int maximumAuthenticationLifetime;
-    private String destinationBindingType;
-
-    
-    public String getClientName() {
-		return clientName;
-	}
-	public void setClientName(String clientName) {
-		this.clientName = clientName;
-	}
-	public String getEnvironment() {
-		return environment;
-	}
-	public void setEnvironment(String environment) {
-		this.environment = environment;
-	}
-	public byte[] getKeystoreBinaryData() {
-		return (keystoreBinaryData == null) ? null : keystoreBinaryData.clone();
-	}
-	public void setKeystoreBinaryData(byte[] keystoreBinaryData) {
-		this.keystoreBinaryData = (keystoreBinaryData == null) ? null : keystoreBinaryData.clone();
-	}
-	public String getKeystorePassword() {
-		return keystorePassword;
-	}
-	public void setKeystorePassword(String keystorePassword) {
-		this.keystorePassword = keystorePassword;
-	}
-	public String getKeystoreAlias() {
-		return keystoreAlias;
-	}
-	public void setKeystoreAlias(String keystoreAlias) {
-		this.keystoreAlias = keystoreAlias;
-	}
-	public String getPrivateKeyPassword() {
-		return privateKeyPassword;
-	}
-	public void setPrivateKeyPassword(String privateKeyPassword) {
-		this.privateKeyPassword = privateKeyPassword;
-	}
-	public String getIdentityProviderMetadata() {
-		return identityProviderMetadata;
-	}
-	public void setIdentityProviderMetadata(String identityProviderMetadata) {
-		this.identityProviderMetadata = identityProviderMetadata;
-	}
-	public String getIdentityProviderEntityId() {
-		return identityProviderEntityId;
-	}
-	public void setIdentityProviderEntityId(String identityProviderEntityId) {
-		this.identityProviderEntityId = identityProviderEntityId;
-	}
-	public String getServiceProviderEntityId() {
-		return serviceProviderEntityId;
-	}
-	public void setServiceProviderEntityId(String serviceProviderEntityId) {
-		this.serviceProviderEntityId = serviceProviderEntityId;
-	}
-	public int getMaximumAuthenticationLifetime() {
-		return maximumAuthenticationLifetime;
-	}
-	public void setMaximumAuthenticationLifetime(int maximumAuthenticationLifetime) {
-		this.maximumAuthenticationLifetime = maximumAuthenticationLifetime;
-	}
-	public String getDestinationBindingType() {
-		return destinationBindingType;
-	}
-	public void setDestinationBindingType(String destinationBindingType) {
-		this.destinationBindingType = destinationBindingType;
-	}
-
-}
+package com.idc.webchannel.pac4j.extensions.saml.dao.api;
+
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * A simple DTO to carry data from the database to the application.
+ * 
+ * The IdP metadata is held as UTF-8 encoded bytes, which is the form it is parsed from and takes about half of the memory of a string.
+ * The keystore and the metadata are held as immutable {@link BinaryContent}s, possibly interned and shared with other DTOs. They are
+ * copied by the regular array getters and setters; the {@code Content} variants pass them without copying. The shared arrays are never
+ * exposed; read them through the views of {@link BinaryContent}.
+ * 
+ * @author jkacer
+ * @since 1.9.0
+*/
+public class DbLoadedSamlClientConfigurationDto {
+
+	private String clientName;
+	private String environment;
+	private BinaryContent keystoreContent;
+    private String keystorePassword;
+    private String keystoreAlias;
+    private String privateKeyPassword;
+    private BinaryContent identityProviderMetadataContent;
+    private String identityProviderEntityId;
+    private String serviceProviderEntityId;
+    private int maximumAuthenticationLifetime;
+    private String destinationBindingType;
+    private long version;
+    private String signatureAlgorithms;
+    private String signatureReferenceDigestMethods;
+
+    
+    public String getClientName() {
+		return clientName;
+	}
+	public void setClientName(String clientName) {
+		this.clientName = clientName;
+	}
+	public String getEnvironment() {
+		return environment;
+	}
+	public void setEnvironment(String environment) {
+		this.environment = environment;
+	}
+	public byte[] getKeystoreBinaryData() {
+		return (keystoreContent == null) ? null : keystoreContent.toByteArray();
+	}
+	public void setKeystoreBinaryData(byte[] keystoreBinaryData) {
+		this.keystoreContent = BinaryContent.copyOf(keystoreBinaryData);
+	}
+	/**
+	 * Returns the keystore binary data.
+	 * 
+	 * @return The keystore binary data.
+	 * @since 2.0.1
+	 */
+	public BinaryContent getKeystoreContent() {
+		return keystoreContent;
+	}
+	/**
+	 * Sets the keystore binary data.
+	 * 
+	 * @param keystoreContent
+	 *            The keystore binary data.
+	 * @since 2.0.1
+	 */
+	public void setKeystoreContent(BinaryContent keystoreContent) {
+		this.keystoreContent = keystoreContent;
+	}
+	public String getKeystorePassword() {
+		return keystorePassword;
+	}
+	public void setKeystorePassword(String keystorePassword) {
+		this.keystorePassword = keystorePassword;
+	}
+	public String getKeystoreAlias() {
+		return keystoreAlias;
+	}
+	public void setKeystoreAlias(String keystoreAlias) {
+		this.keystoreAlias = keystoreAlias;
+	}
+	public String getPrivateKeyPassword() {
+		return privateKeyPassword;
+	}
+	public void setPrivateKeyPassword(String privateKeyPassword) {
+		this.privateKeyPassword = privateKeyPassword;
+	}
+	/**
+	 * Returns the IdP metadata decoded from UTF-8. A new string is created by each call.
+	 * 
+	 * @return The IdP metadata.
+	 */
+	public String getIdentityProviderMetadata() {
+		return (identityProviderMetadataContent == null) ? null : new String(identityProviderMetadataContent.array(), StandardCharsets.UTF_8);
+	}
+	public void setIdentityProviderMetadata(String identityProviderMetadata) {
+		this.identityProviderMetadataContent = (identityProviderMetadata == null) ? null
+				: BinaryContent.wrap(identityProviderMetadata.getBytes(StandardCharsets.UTF_8));
+	}
+	/**
+	 * Returns a copy of the UTF-8 encoded IdP metadata.
+	 * 
+	 * @return The IdP metadata.
+	 * @since 2.0.1
+	 */
+	public byte[] getIdentityProviderMetadataBinaryData() {
+		return (identityProviderMetadataContent == null) ? null : identityProviderMetadataContent.toByteArray();
+	}
+	/**
+	 * Sets a copy of the UTF-8 encoded IdP metadata.
+	 * 
+	 * @param identityProviderMetadataBinaryData
+	 *            The IdP metadata, UTF-8 encoded.
+	 * @since 2.0.1
+	 */
+	public void setIdentityProviderMetadataBinaryData(byte[] identityProviderMetadataBinaryData) {
+		this.identityProviderMetadataContent = BinaryContent.copyOf(identityProviderMetadataBinaryData);
+	}
+	/**
+	 * Returns the UTF-8 encoded IdP metadata.
+	 * 
+	 * @return The IdP metadata, UTF-8 encoded.
+	 * @since 2.0.1
+	 */
+	public BinaryContent getIdentityProviderMetadataContent() {
+		return identityProviderMetadataContent;
+	}
+	/**
+	 * Sets the UTF-8 encoded IdP metadata.
+	 * 
+	 * @param identityProviderMetadataContent
+	 *            The IdP metadata, UTF-8 encoded.
+	 * @since 2.0.1
+	 */
+	public void setIdentityProviderMetadataContent(BinaryContent identityProviderMetadataContent) {
+		this.identityProviderMetadataContent = identityProviderMetadataContent;
+	}
+	public String getIdentityProviderEntityId() {
+		return identityProviderEntityId;
+	}
+	public void setIdentityProviderEntityId(String identityProviderEntityId) {
+		this.identityProviderEntityId = identityProviderEntityId;
+	}
+	public String getServiceProviderEntityId() {
+		return serviceProviderEntityId;
+	}
+	public void setServiceProviderEntityId(String serviceProviderEntityId) {
+		this.serviceProviderEntityId = serviceProviderEntityId;
+	}
+	public int getMaximumAuthenticationLifetime() {
+		return maximumAuthenticationLifetime;
+	}
+	public void setMaximumAuthenticationLifetime(int maximumAuthenticationLifetime) {
+		this.maximumAuthenticationLifetime = maximumAuthenticationLifetime;
+	}
+	public String getDestinationBindingType() {
+		return destinationBindingType;
+	}
+	public void setDestinationBindingType(String destinationBindingType) {
+		this.destinationBindingType = destinationBindingType;
+	}
+	/**
+	 * Returns the version of the configuration record. Only filled in if the DAO reads record versions, zero otherwise.
+	 * 
+	 * @return The record version.
+	 * @since 2.0.1
+	 */
+	public long getVersion() {
+		return version;
+	}
+	/**
+	 * Sets the version of the configuration record.
+	 * 
+	 * @param version
+	 *            The record version.
+	 * @since 2.0.1
+	 */
+	public void setVersion(long version) {
+		this.version = version;
+	}
+	/**
+	 * Returns signature algorithms overriding the shared defaults: URIs separated by white space or commas, in the order of preference.
+	 * 
+	 * @return The algorithms or {@code null} if the defaults apply.
+	 * @since 2.0.1
+	 */
+	public String getSignatureAlgorithms() {
+		return signatureAlgorithms;
+	}
+	public void setSignatureAlgorithms(String signatureAlgorithms) {
+		this.signatureAlgorithms = signatureAlgorithms;
+	}
+	/**
+	 * Returns signature reference digest methods overriding the shared defaults: URIs separated by white space or commas, in the order of
+	 * preference.
+	 * 
+	 * @return The digest methods or {@code null} if the defaults apply.
+	 * @since 2.0.1
+	 */
+	public String getSignatureReferenceDigestMethods() {
+		return signatureReferenceDigestMethods;
+	}
+	public void setSignatureReferenceDigestMethods(String signatureReferenceDigestMethods) {
+		this.signatureReferenceDigestMethods = signatureReferenceDigestMethods;
+	}
+
+}
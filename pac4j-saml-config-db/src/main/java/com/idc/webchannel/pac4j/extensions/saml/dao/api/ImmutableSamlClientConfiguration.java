@@ -0,0 +1,196 @@
+package com.idc.webchannel.pac4j.extensions.saml.dao.api;
+
+import java.util.Objects;
+
+
+/**
+ * <p>An immutable SAML Client Configuration, the value counterpart of {@link DbLoadedSamlClientConfigurationDto}. Safe to be cached and
+ * shared among threads without copying.</p>
+ *
+ * <p>The keystore and the IdP metadata are {@link BinaryContent}s. Created by {@link #of(DbLoadedSamlClientConfigurationDto, BinaryContentInterner)},
+ * they are interned, so that configurations of many clients sharing the same keystore or federation metadata hold a single copy of it.</p>
+ *
+ * @author jkacer
+ * @since 2.0.1
+ */
+public final class ImmutableSamlClientConfiguration {
+
+	private final String clientName;
+	private final String environment;
+	private final BinaryContent keystoreContent;
+	private final String keystorePassword;
+	private final String keystoreAlias;
+	private final String privateKeyPassword;
+	private final BinaryContent identityProviderMetadataContent;
+	private final String identityProviderEntityId;
+	private final String serviceProviderEntityId;
+	private final int maximumAuthenticationLifetime;
+	private final String destinationBindingType;
+	private final long version;
+	private final String signatureAlgorithms;
+	private final String signatureReferenceDigestMethods;
+
+
+	// ------------------------------------------------------------------------------------------------------------------------------------
+
+
+	private ImmutableSamlClientConfiguration(final DbLoadedSamlClientConfigurationDto dto, final BinaryContentInterner interner) {
+		super();
+		this.clientName = dto.getClientName();
+		this.environment = dto.getEnvironment();
+		this.keystoreContent = (interner == null) ? dto.getKeystoreContent() : interner.intern(dto.getKeystoreContent());
+		this.keystorePassword = dto.getKeystorePassword();
+		this.keystoreAlias = dto.getKeystoreAlias();
+		this.privateKeyPassword = dto.getPrivateKeyPassword();
+		this.identityProviderMetadataContent = (interner == null) ? dto.getIdentityProviderMetadataContent()
+				: interner.intern(dto.getIdentityProviderMetadataContent());
+		this.identityProviderEntityId = dto.getIdentityProviderEntityId();
+		this.serviceProviderEntityId = dto.getServiceProviderEntityId();
+		this.maximumAuthenticationLifetime = dto.getMaximumAuthenticationLifetime();
+		this.destinationBindingType = dto.getDestinationBindingType();
+		this.version = dto.getVersion();
+		this.signatureAlgorithms = dto.getSignatureAlgorithms();
+		this.signatureReferenceDigestMethods = dto.getSignatureReferenceDigestMethods();
+	}
+
+
+	/**
+	 * Creates an immutable configuration from a DTO. The binary contents are taken over without copying.
+	 *
+	 * @param dto
+	 *            The DTO.
+	 * @param interner
+	 *            Interner of the binary contents. If {@code null}, the contents are not interned.
+	 *
+	 * @return The immutable configuration.
+	 */
+	public static ImmutableSamlClientConfiguration of(final DbLoadedSamlClientConfigurationDto dto, final BinaryContentInterner interner) {
+		if (dto == null) {
+			throw new IllegalArgumentException("DTO must not be null.");
+		}
+		return new ImmutableSamlClientConfiguration(dto, interner);
+	}
+
+
+	/**
+	 * Creates a new DTO with the values of this configuration. The binary contents are shared, not copied.
+	 *
+	 * @return A new DTO.
+	 */
+	public DbLoadedSamlClientConfigurationDto toDto() {
+		final DbLoadedSamlClientConfigurationDto dto = new DbLoadedSamlClientConfigurationDto();
+		dto.setClientName(clientName);
+		dto.setEnvironment(environment);
+		dto.setKeystoreContent(keystoreContent);
+		dto.setKeystorePassword(keystorePassword);
+		dto.setKeystoreAlias(keystoreAlias);
+		dto.setPrivateKeyPassword(privateKeyPassword);
+		dto.setIdentityProviderMetadataContent(identityProviderMetadataContent);
+		dto.setIdentityProviderEntityId(identityProviderEntityId);
+		dto.setServiceProviderEntityId(serviceProviderEntityId);
+		dto.setMaximumAuthenticationLifetime(maximumAuthenticationLifetime);
+		dto.setDestinationBindingType(destinationBindingType);
+		dto.setVersion(version);
+		dto.setSignatureAlgorithms(signatureAlgorithms);
+		dto.setSignatureReferenceDigestMethods(signatureReferenceDigestMethods);
+		return dto;
+	}
+
+
+	public String getClientName() {
+		return clientName;
+	}
+
+	public String getEnvironment() {
+		return environment;
+	}
+
+	public BinaryContent getKeystoreContent() {
+		return keystoreContent;
+	}
+
+	public String getKeystorePassword() {
+		return keystorePassword;
+	}
+
+	public String getKeystoreAlias() {
+		return keystoreAlias;
+	}
+
+	public String getPrivateKeyPassword() {
+		return privateKeyPassword;
+	}
+
+	public BinaryContent getIdentityProviderMetadataContent() {
+		return identityProviderMetadataContent;
+	}
+
+	public String getIdentityProviderEntityId() {
+		return identityProviderEntityId;
+	}
+
+	public String getServiceProviderEntityId() {
+		return serviceProviderEntityId;
+	}
+
+	public int getMaximumAuthenticationLifetime() {
+		return maximumAuthenticationLifetime;
+	}
+
+	public String getDestinationBindingType() {
+		return destinationBindingType;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	public String getSignatureAlgorithms() {
+		return signatureAlgorithms;
+	}
+
+	public String getSignatureReferenceDigestMethods() {
+		return signatureReferenceDigestMethods;
+	}
+
+
+	@Override
+	public boolean equals(final Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof ImmutableSamlClientConfiguration)) {
+			return false;
+		}
+		final ImmutableSamlClientConfiguration other = (ImmutableSamlClientConfiguration) obj;
+		return Objects.equals(clientName, other.clientName) && Objects.equals(environment, other.environment)
+				&& Objects.equals(keystoreContent, other.keystoreContent) && Objects.equals(keystorePassword, other.keystorePassword)
+				&& Objects.equals(keystoreAlias, other.keystoreAlias) && Objects.equals(privateKeyPassword, other.privateKeyPassword)
+				&& Objects.equals(identityProviderMetadataContent, other.identityProviderMetadataContent)
+				&& Objects.equals(identityProviderEntityId, other.identityProviderEntityId)
+				&& Objects.equals(serviceProviderEntityId, other.serviceProviderEntityId)
+				&& (maximumAuthenticationLifetime == other.maximumAuthenticationLifetime)
+				&& Objects.equals(destinationBindingType, other.destinationBindingType) && (version == other.version)
+				&& Objects.equals(signatureAlgorithms, other.signatureAlgorithms)
+				&& Objects.equals(signatureReferenceDigestMethods, other.signatureReferenceDigestMethods);
+	}
+
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(clientName, environment, keystoreContent, keystoreAlias, identityProviderMetadataContent, identityProviderEntityId,
+				serviceProviderEntityId, Integer.valueOf(maximumAuthenticationLifetime), destinationBindingType, Long.valueOf(version));
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Passwords are not included.
+	 */
+	@Override
+	public String toString() {
+		return "ImmutableSamlClientConfiguration[clientName=" + clientName + ", environment=" + environment + ", version=" + version + "]";
+	}
+
+}
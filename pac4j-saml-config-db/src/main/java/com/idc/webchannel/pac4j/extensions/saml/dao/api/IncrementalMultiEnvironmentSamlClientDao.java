@@ -0,0 +1,29 @@
+package com.idc.webchannel.pac4j.extensions.saml.dao.api;
+
+import java.util.Map;
+
+
+/**
+ * A {@link MultiEnvironmentSamlClientDao} able to read just the SAML Client Configurations changed since a previous reading, in all
+ * environments at once. The counterpart of {@link IncrementalSamlClientDao} for several environments.
+ *
+ * @author jkacer
+ * @since 2.0.1
+ */
+public interface IncrementalMultiEnvironmentSamlClientDao extends MultiEnvironmentSamlClientDao {
+
+	/**
+	 * Loads configurations of all environments created or modified after the given watermark, together with names of all existing
+	 * clients, so that the caller can detect deletions. The watermark is shared by all environments.
+	 *
+	 * If the implementation cannot track changes, it returns all configurations and keeps the watermark unchanged.
+	 *
+	 * @param watermark
+	 *            Watermark returned by the previous call or {@link IncrementalSamlClientDao#INITIAL_WATERMARK}.
+	 *
+	 * @return Changes since the watermark indexed by environment names, in the order of {@link #getEnvironments()}. Every environment is
+	 *         present and all of them have the same new watermark.
+	 */
+	Map<String, SamlClientConfigurationChangesDto> loadClientsChangedSince(long watermark);
+
+}
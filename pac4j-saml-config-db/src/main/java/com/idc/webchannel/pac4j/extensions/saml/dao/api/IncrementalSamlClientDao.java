@@ -0,0 +1,30 @@
+package com.idc.webchannel.pac4j.extensions.saml.dao.api;
+
+
+/**
+ * A {@link SamlClientDao} able to read just the SAML Client Configurations changed since a previous reading. Intended for caching layers
+ * that want to refresh their contents without transferring unchanged data, especially the keystore and metadata LOBs.
+ * 
+ * @author jkacer
+ * @since 2.0.1
+ */
+public interface IncrementalSamlClientDao extends SamlClientDao {
+
+	/** Watermark to be used for the first reading. All configurations are considered changed since this watermark. */
+	long INITIAL_WATERMARK = Long.MIN_VALUE;
+
+
+	/**
+	 * Loads configurations created or modified after the given watermark, together with names of all existing clients, so that the
+	 * caller can detect deletions.
+	 * 
+	 * If the implementation cannot track changes, it returns all configurations and keeps the watermark unchanged.
+	 * 
+	 * @param watermark
+	 *            Watermark returned by the previous call or {@link #INITIAL_WATERMARK}.
+	 * 
+	 * @return Changes since the watermark. Never {@code null}.
+	 */
+	SamlClientConfigurationChangesDto loadClientsChangedSince(long watermark);
+
+}
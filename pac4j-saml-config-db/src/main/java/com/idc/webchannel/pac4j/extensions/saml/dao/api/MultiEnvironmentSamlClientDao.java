@@ -0,0 +1,45 @@
+package com.idc.webchannel.pac4j.extensions.saml.dao.api;
+
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * DAO to read SAML Client Configurations of several environments at once. Intended for nodes serving more than one environment, which
+ * would otherwise need one {@link SamlClientDao} per environment, each reading the table separately.
+ *
+ * @author jkacer
+ * @since 2.0.1
+ */
+public interface MultiEnvironmentSamlClientDao {
+
+	/**
+	 * Returns the environments read by this DAO.
+	 *
+	 * @return An unmodifiable list of environment names.
+	 */
+	List<String> getEnvironments();
+
+
+	/**
+	 * Loads all existing SAML Client Configurations of all environments of this DAO.
+	 *
+	 * @return Lists of configurations indexed by environment names, in the order of {@link #getEnvironments()}. Every environment is present,
+	 *         an environment without configurations has an empty list.
+	 */
+	Map<String, List<DbLoadedSamlClientConfigurationDto>> loadAllClientsByEnvironment();
+
+
+	/**
+	 * Loads a single SAML Client Configuration.
+	 *
+	 * @param environment
+	 *            Name of the environment. Must be one of {@link #getEnvironments()}.
+	 * @param clientName
+	 *            Name of the client.
+	 *
+	 * @return A single configuration for the desired client or {@code null} of no such configuration exists.
+	 */
+	DbLoadedSamlClientConfigurationDto loadClient(String environment, String clientName);
+
+}
@@ -0,0 +1,21 @@
+package com.idc.webchannel.pac4j.extensions.saml.dao.api;
+
+
+/**
+ * Notified of changes of SAML Client Configurations made elsewhere, e.g. on another node.
+ *
+ * @author jkacer
+ * @since 2.0.1
+ */
+@FunctionalInterface
+public interface SamlClientChangeListener {
+
+	/**
+	 * Called when the configuration of a client has been changed, added or deleted.
+	 *
+	 * @param clientName
+	 *            Name of the client.
+	 */
+	void clientChanged(String clientName);
+
+}
@@ -0,0 +1,45 @@
+package com.idc.webchannel.pac4j.extensions.saml.dao.api;
+
+
+/**
+ * DAO to a change log of SAML Client Configurations: a small table recording which clients have been changed, numbered by a monotonic
+ * sequence. Whoever changes a configuration records the change; every node polls the log and reloads just the changed clients. Polling
+ * is cheap: {@link #loadLatestSequence()} reads a single value, and the changes themselves are read only if it has grown.
+ *
+ * @author jkacer
+ * @since 2.0.1
+ */
+public interface SamlClientChangeLogDao {
+
+	/** Sequence to be used for the first reading, lower than any recorded change. */
+	long INITIAL_SEQUENCE = 0L;
+
+
+	/**
+	 * Records a change of a client. To be called in the transaction changing its configuration.
+	 *
+	 * @param clientName
+	 *            Name of the changed, added or deleted client.
+	 */
+	void recordChange(String clientName);
+
+
+	/**
+	 * Reads the sequence of the latest recorded change.
+	 *
+	 * @return The latest sequence or {@link #INITIAL_SEQUENCE} if no change has been recorded.
+	 */
+	long loadLatestSequence();
+
+
+	/**
+	 * Loads changes recorded after the given sequence, in the order of their sequences.
+	 *
+	 * @param sequence
+	 *            Sequence returned by the previous call, a lower one to read changes again, or {@link #INITIAL_SEQUENCE}.
+	 *
+	 * @return The changes. Never {@code null}.
+	 */
+	SamlClientChangeLogEntriesDto loadChangesSince(long sequence);
+
+}
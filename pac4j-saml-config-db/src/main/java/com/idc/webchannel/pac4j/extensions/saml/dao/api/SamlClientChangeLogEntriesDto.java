@@ -0,0 +1,58 @@
+package com.idc.webchannel.pac4j.extensions.saml.dao.api;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+
+/**
+ * A DTO describing changes recorded in a change log since a certain sequence, as returned by
+ * {@link SamlClientChangeLogDao#loadChangesSince(long)}.
+ *
+ * @author jkacer
+ * @since 2.0.1
+ */
+public class SamlClientChangeLogEntriesDto {
+
+	private List<SamlClientChangeLogEntryDto> entries;
+	private long sequence;
+
+
+	/**
+	 * Returns the changes recorded after the sequence passed to the DAO, in the order of their sequences. A client changed several times
+	 * has several entries.
+	 *
+	 * @return The changes.
+	 */
+	public List<SamlClientChangeLogEntryDto> getEntries() {
+		return entries;
+	}
+	public void setEntries(List<SamlClientChangeLogEntryDto> entries) {
+		this.entries = entries;
+	}
+	/**
+	 * Returns names of clients changed after the sequence passed to the DAO, each just once, in the order of their first change.
+	 *
+	 * @return Names of changed clients.
+	 */
+	public List<String> getChangedClientNames() {
+		final Set<String> names = new LinkedHashSet<>();
+		for (SamlClientChangeLogEntryDto entry: entries) {
+			names.add(entry.getClientName());
+		}
+		return new ArrayList<>(names);
+	}
+	/**
+	 * Returns the highest sequence read, to be passed to the next call of {@link SamlClientChangeLogDao#loadChangesSince(long)}.
+	 *
+	 * @return The new sequence.
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+	public void setSequence(long sequence) {
+		this.sequence = sequence;
+	}
+
+}
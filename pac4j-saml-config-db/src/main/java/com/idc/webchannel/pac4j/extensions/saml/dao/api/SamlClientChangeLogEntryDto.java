@@ -0,0 +1,39 @@
+package com.idc.webchannel.pac4j.extensions.saml.dao.api;
+
+
+/**
+ * A DTO describing a single change recorded in a change log.
+ *
+ * @author jkacer
+ * @since 2.0.1
+ */
+public class SamlClientChangeLogEntryDto {
+
+	private long sequence;
+	private String clientName;
+
+
+	/**
+	 * Returns the sequence of the change in the log.
+	 *
+	 * @return The sequence.
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+	public void setSequence(long sequence) {
+		this.sequence = sequence;
+	}
+	/**
+	 * Returns the name of the changed, added or deleted client.
+	 *
+	 * @return The client name.
+	 */
+	public String getClientName() {
+		return clientName;
+	}
+	public void setClientName(String clientName) {
+		this.clientName = clientName;
+	}
+
+}
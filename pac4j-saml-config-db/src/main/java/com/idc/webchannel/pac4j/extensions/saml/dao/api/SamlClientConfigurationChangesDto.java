@@ -0,0 +1,56 @@
+package com.idc.webchannel.pac4j.extensions.saml.dao.api;
+
+import java.util.List;
+
+
+/**
+ * A DTO describing changes of SAML Client Configurations since a certain watermark, as returned by
+ * {@link IncrementalSamlClientDao#loadClientsChangedSince(long)}.
+ * 
+ * <p>A client known to the caller but missing in {@link #getExistingClientNames()} has been deleted.</p>
+ * 
+ * @author jkacer
+ * @since 2.0.1
+ */
+public class SamlClientConfigurationChangesDto {
+
+	private List<DbLoadedSamlClientConfigurationDto> changedClients;
+	private List<String> existingClientNames;
+	private long watermark;
+
+
+	/**
+	 * Returns configurations created or modified after the watermark passed to the DAO.
+	 * 
+	 * @return Changed configurations.
+	 */
+	public List<DbLoadedSamlClientConfigurationDto> getChangedClients() {
+		return changedClients;
+	}
+	public void setChangedClients(List<DbLoadedSamlClientConfigurationDto> changedClients) {
+		this.changedClients = changedClients;
+	}
+	/**
+	 * Returns names of all clients existing at the time of reading, changed or not.
+	 * 
+	 * @return Names of all existing clients.
+	 */
+	public List<String> getExistingClientNames() {
+		return existingClientNames;
+	}
+	public void setExistingClientNames(List<String> existingClientNames) {
+		this.existingClientNames = existingClientNames;
+	}
+	/**
+	 * Returns the watermark to be passed to the next call of {@link IncrementalSamlClientDao#loadClientsChangedSince(long)}.
+	 * 
+	 * @return The new watermark.
+	 */
+	public long getWatermark() {
+		return watermark;
+	}
+	public void setWatermark(long watermark) {
+		this.watermark = watermark;
+	}
+
+}
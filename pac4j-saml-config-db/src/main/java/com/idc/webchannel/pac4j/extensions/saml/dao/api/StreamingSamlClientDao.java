@@ -0,0 +1,29 @@
+package com.idc.webchannel.pac4j.extensions.saml.dao.api;
+
+import java.util.function.Consumer;
+
+
+/**
+ * A {@link SamlClientDao} able to hand over all SAML Client Configurations one by one, as they are read, instead of returning them as a
+ * list. A caller that does not keep the configurations needs memory for a single one only, however large the table is.
+ *
+ * @author jkacer
+ * @since 2.0.1
+ */
+public interface StreamingSamlClientDao extends SamlClientDao {
+
+	/**
+	 * Reads all existing SAML Client Configurations and passes each of them to a consumer, in the order of {@link #loadAllClients()}.
+	 * The next configuration is not read until the consumer returns, so a slow consumer slows the reading down rather than letting
+	 * configurations pile up in memory.
+	 *
+	 * An exception thrown by the consumer stops the reading and is propagated to the caller.
+	 *
+	 * @param consumer
+	 *            Receives the configurations.
+	 *
+	 * @return Number of configurations passed to the consumer.
+	 */
+	int streamAllClients(Consumer<? super DbLoadedSamlClientConfigurationDto> consumer);
+
+}
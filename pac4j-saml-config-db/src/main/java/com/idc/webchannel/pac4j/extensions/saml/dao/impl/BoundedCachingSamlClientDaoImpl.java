@@ -0,0 +1,345 @@
+package com.idc.webchannel.pac4j.extensions.saml.dao.impl;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.BinaryContent;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.BinaryContentInterner;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.DbLoadedSamlClientConfigurationDto;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.ImmutableSamlClientConfiguration;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.SamlClientDao;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.StreamingSamlClientDao;
+import com.idc.webchannel.pac4j.extensions.saml.metrics.NoOpSamlClientMetrics;
+import com.idc.webchannel.pac4j.extensions.saml.metrics.SamlClientMetrics;
+
+
+/**
+ * <p>Implementation of {@link SamlClientDao} caching a bounded amount of client configurations. An alternative to
+ * {@link CachingSamlClientDaoImpl} for tables too large to be held in memory as a whole.</p>
+ *
+ * <p>The cache is bounded by weight, i.e. the total size of the keystore and IdP metadata LOBs of the cached configurations. When a new
+ * configuration would exceed the maximum weight, the least recently used configurations are evicted. A configuration heavier than the
+ * maximum weight is never cached. Since the LOBs are interned and may be shared by several configurations, the weight is an upper bound
+ * of the memory really used.</p>
+ *
+ * <p>A configuration missing in the cache is read by {@link SamlClientDao#loadClient(String)} of the real DAO. Concurrent misses of the same
+ * client are coalesced into a single read. Unknown clients are not cached.</p>
+ *
+ * <p>Names of clients are always read by the real DAO. All configurations are read by the real DAO as well and put into the cache, as long
+ * as they fit. {@link #streamAllClients(Consumer)} caches and hands over the configurations one by one as the real DAO streams them, so
+ * that no more than the cache and a single configuration are held in memory.</p>
+ *
+ * <p>The cached values are immutable, each caller gets its own DTO sharing the cached LOBs.</p>
+ *
+ * @author jkacer
+ * @since 2.0.1
+ */
+public class BoundedCachingSamlClientDaoImpl implements StreamingSamlClientDao {
+
+	private final Logger logger = LoggerFactory.getLogger(BoundedCachingSamlClientDaoImpl.class);
+
+	/** A DAO that performs actual reading. */
+	private final SamlClientDao realDao;
+
+	/** Maximum total weight of cached configurations, in bytes. */
+	private final long maximumWeight;
+
+	/** Cached configurations in access order, the least recently used first. Guarded by itself. */
+	private final LinkedHashMap<String, ImmutableSamlClientConfiguration> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+	/** Total weight of cached configurations. Guarded by {@link #entries}. */
+	private long weight;
+
+	/** Number of invalidations so far. Loads started before an invalidation do not cache their results. Guarded by {@link #entries}. */
+	private long invalidations;
+
+	/** Coalesces concurrent reads of the same client. */
+	private final SingleFlight<String, ImmutableSamlClientConfiguration> loads = new SingleFlight<>();
+
+	/** Interner of the LOB contents. */
+	private BinaryContentInterner contentInterner = new BinaryContentInterner();
+
+	/** Where cache hits and misses are reported. */
+	private SamlClientMetrics metrics = NoOpSamlClientMetrics.INSTANCE;
+
+
+	// ------------------------------------------------------------------------------------------------------------------------------------
+
+
+	/**
+	 * Creates a new bounded caching DAO.
+	 *
+	 * @param realDao
+	 *            A real DAO, which performs actual read operations.
+	 * @param maximumWeight
+	 *            Maximum total size of LOBs of cached configurations, in bytes. Must be positive.
+	 */
+	public BoundedCachingSamlClientDaoImpl(final SamlClientDao realDao, final long maximumWeight) {
+		super();
+		if (realDao == null) {
+			throw new IllegalArgumentException("Real DAO must not be null.");
+		}
+		if (maximumWeight <= 0) {
+			throw new IllegalArgumentException("Maximum weight must be positive.");
+		}
+		this.realDao = realDao;
+		this.maximumWeight = maximumWeight;
+	}
+
+
+	/**
+	 * Sets the interner deduplicating LOBs of cached configurations. Should be set before the DAO is used.
+	 *
+	 * @param contentInterner
+	 *            The interner.
+	 */
+	public void setContentInterner(final BinaryContentInterner contentInterner) {
+		if (contentInterner == null) {
+			throw new IllegalArgumentException("Content interner must not be null.");
+		}
+		this.contentInterner = contentInterner;
+	}
+
+
+	/**
+	 * Sets where cache hits and misses are reported.
+	 *
+	 * @param metrics
+	 *            The metrics.
+	 */
+	public void setMetrics(final SamlClientMetrics metrics) {
+		if (metrics == null) {
+			throw new IllegalArgumentException("Metrics must not be null.");
+		}
+		this.metrics = metrics;
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Always read by the real DAO.
+	 */
+	@Override
+	public List<String> loadClientNames() {
+		return realDao.loadClientNames();
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Always read by the real DAO. The read configurations are cached as long as they fit.
+	 */
+	@Override
+	public List<DbLoadedSamlClientConfigurationDto> loadAllClients() {
+		final long invalidationsBefore = currentInvalidations();
+		final List<DbLoadedSamlClientConfigurationDto> all = realDao.loadAllClients();
+		for (DbLoadedSamlClientConfigurationDto single: all) {
+			cache(ImmutableSamlClientConfiguration.of(single, contentInterner), invalidationsBefore);
+		}
+		return all;
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Streamed by the real DAO if it is a {@link StreamingSamlClientDao}, otherwise read as a list first. The configurations are cached as
+	 * long as they fit.
+	 */
+	@Override
+	public int streamAllClients(final Consumer<? super DbLoadedSamlClientConfigurationDto> consumer) {
+		if (consumer == null) {
+			throw new IllegalArgumentException("Consumer must not be null.");
+		}
+		final long invalidationsBefore = currentInvalidations();
+		final Consumer<DbLoadedSamlClientConfigurationDto> caching = single -> {
+			cache(ImmutableSamlClientConfiguration.of(single, contentInterner), invalidationsBefore);
+			consumer.accept(single);
+		};
+		if (realDao instanceof StreamingSamlClientDao) {
+			return ((StreamingSamlClientDao) realDao).streamAllClients(caching);
+		}
+		final List<DbLoadedSamlClientConfigurationDto> all = realDao.loadAllClients();
+		all.forEach(caching);
+		return all.size();
+	}
+
+
+	@Override
+	public DbLoadedSamlClientConfigurationDto loadClient(final String clientName) {
+		final ImmutableSamlClientConfiguration cached = getCached(clientName);
+		if (cached != null) {
+			metrics.recordCacheHit(SamlClientMetrics.CACHE_CLIENT_CONFIGURATIONS);
+			return cached.toDto();
+		}
+
+		metrics.recordCacheMiss(SamlClientMetrics.CACHE_CLIENT_CONFIGURATIONS);
+		final ImmutableSamlClientConfiguration loaded = loads.load(clientName, () -> loadAndCache(clientName));
+		return (loaded == null) ? null : loaded.toDto();
+	}
+
+
+	/**
+	 * Removes a single configuration from the cache. Its next reading goes to the real DAO.
+	 *
+	 * @param clientName
+	 *            Name of the client.
+	 */
+	public void invalidate(final String clientName) {
+		synchronized (entries) {
+			invalidations++;
+			final ImmutableSamlClientConfiguration removed = entries.remove(clientName);
+			if (removed != null) {
+				weight -= weigh(removed);
+			}
+		}
+	}
+
+
+	/**
+	 * Removes all configurations from the cache.
+	 */
+	public void invalidateAll() {
+		synchronized (entries) {
+			invalidations++;
+			entries.clear();
+			weight = 0L;
+		}
+	}
+
+
+	/**
+	 * Returns the number of cached configurations.
+	 *
+	 * @return The number of configurations.
+	 */
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+
+	/**
+	 * Returns the total weight of cached configurations.
+	 *
+	 * @return Total size of LOBs of cached configurations, in bytes.
+	 */
+	public long getWeight() {
+		synchronized (entries) {
+			return weight;
+		}
+	}
+
+
+	public long getMaximumWeight() {
+		return maximumWeight;
+	}
+
+
+	/**
+	 * Reads a configuration by the real DAO and caches it. Called by a single thread per client at a time.
+	 *
+	 * @param clientName
+	 *            Name of the client.
+	 *
+	 * @return The configuration or {@code null} if there is no such client.
+	 */
+	private ImmutableSamlClientConfiguration loadAndCache(final String clientName) {
+		final long invalidationsBefore;
+		synchronized (entries) {
+			// Another thread may have loaded the client between our miss and the start of this load.
+			final ImmutableSamlClientConfiguration cached = entries.get(clientName);
+			if (cached != null) {
+				return cached;
+			}
+			invalidationsBefore = invalidations;
+		}
+
+		final DbLoadedSamlClientConfigurationDto loaded = realDao.loadClient(clientName);
+		if (loaded == null) {
+			return null;
+		}
+		final ImmutableSamlClientConfiguration value = ImmutableSamlClientConfiguration.of(loaded, contentInterner);
+		cache(value, invalidationsBefore);
+		return value;
+	}
+
+
+	private ImmutableSamlClientConfiguration getCached(final String clientName) {
+		synchronized (entries) {
+			return entries.get(clientName);
+		}
+	}
+
+
+	private long currentInvalidations() {
+		synchronized (entries) {
+			return invalidations;
+		}
+	}
+
+
+	/**
+	 * Puts a configuration into the cache and evicts the least recently used ones if the maximum weight is exceeded.
+	 *
+	 * @param value
+	 *            The configuration.
+	 * @param invalidationsBefore
+	 *            Number of invalidations before the configuration was read. If the cache has been invalidated since then, the configuration
+	 *            may be stale and is not cached.
+	 */
+	private void cache(final ImmutableSamlClientConfiguration value, final long invalidationsBefore) {
+		final long valueWeight = weigh(value);
+		if (valueWeight > maximumWeight) {
+			logger.debug("Configuration of SAML client {} weighs {} bytes, more than the cache can hold; not cached.", value.getClientName(),
+					valueWeight);
+			return;
+		}
+
+		synchronized (entries) {
+			if (invalidations != invalidationsBefore) {
+				return;
+			}
+			final ImmutableSamlClientConfiguration replaced = entries.put(value.getClientName(), value);
+			weight += valueWeight;
+			if (replaced != null) {
+				weight -= weigh(replaced);
+			}
+
+			final Iterator<Map.Entry<String, ImmutableSamlClientConfiguration>> leastRecentlyUsed = entries.entrySet().iterator();
+			while (weight > maximumWeight && leastRecentlyUsed.hasNext()) {
+				final ImmutableSamlClientConfiguration evicted = leastRecentlyUsed.next().getValue();
+				leastRecentlyUsed.remove();
+				weight -= weigh(evicted);
+			}
+		}
+	}
+
+
+	/**
+	 * Returns the weight of a configuration: the size of its LOBs.
+	 *
+	 * @param value
+	 *            The configuration.
+	 *
+	 * @return The weight in bytes.
+	 */
+	private static long weigh(final ImmutableSamlClientConfiguration value) {
+		return size(value.getKeystoreContent()) + size(value.getIdentityProviderMetadataContent());
+	}
+
+
+	private static long size(final BinaryContent content) {
+		return (content == null) ? 0L : content.size();
+	}
+
+}
@@ -1,99 +1,662 @@
-package com.idc.webchannel.pac4j.extensions.saml.dao.impl;
-
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
-
-import com.idc.webchannel.pac4j.extensions.saml.dao.api.DbLoadedSamlClientConfigurationDto;
-import com.idc.webchannel.pac4j.extensions.saml.dao.api.SamlClientDao;
-
-
-
-/**
- * <p>Implementation of {@link SamlClientDao} providing very simple caching.</p>
- * 
- * <p>It bulk-loads all values just once, keeps them in memory forever, then returns the cached values on each call. It delegates bulk-reading
- * to another implementation of the same DAO type.</p>
- * 
- * @author jkacer
- * @since 1.9.0
- */
-public class CachingSamlClientDaoImpl implements SamlClientDao {
-
-	/** A DAO that performs actual reading. */
-	private final SamlClientDao realDao;
-
-	/** Cached configurations, read just once. */
-	private Map<String, DbLoadedSamlClientConfigurationDto> cachedConfigurations;
-	
-
-	// ------------------------------------------------------------------------------------------------------------------------------------
-	
-	
-	/**
-	 * Creates a new caching DAO.
-	 * 
-	 * @param realDao
-	 *            A real DAO, which performs actual read operations.
-	 */
-	public CachingSamlClientDaoImpl(final SamlClientDao realDao) {
-		super();
-		if (realDao == null) {
-			throw new IllegalArgumentException("Real DAO must not be null.");
-		}
-		this.realDao = realDao;
-		this.cachedConfigurations = null;
-	}
-
-	
-	/* (non-Javadoc)
-	 * @see org.pac4j.saml.dbclient.dao.api.SamlClientDao#loadClientNames()
-	 */
-	@Override
-	public List<String> loadClientNames() {
-		checkAndLoadFromRealDao();
-		Set<String> keys = cachedConfigurations.keySet();
-		return new ArrayList<String>(keys);
-	}
-	
-
-	/* (non-Javadoc)
-	 * @see org.pac4j.saml.dbclient.dao.api.SamlClientDao#loadAllClients()
-	 */
-	@Override
-	public List<DbLoadedSamlClientConfigurationDto> loadAllClients() {
-		checkAndLoadFromRealDao();
-		Collection<DbLoadedSamlClientConfigurationDto> values = cachedConfigurations.values();
-		return new ArrayList<DbLoadedSamlClientConfigurationDto>(values);
-	}
-
-	
-	/* (non-Javadoc)
-	 * @see org.pac4j.saml.dbclient.dao.api.SamlClientDao#loadClient(java.lang.String)
-	 */
-	@Override
-	public DbLoadedSamlClientConfigurationDto loadClient(String clientName) {
-		checkAndLoadFromRealDao();
-		return cachedConfigurations.get(clientName);
-	}
-
-	
-	/**
-	 * Atomically checks and loads all configurations from the real DAO, if they have not been read yet.
-	 * 
-	 * Assures that just one reading is done.
-	 */
-	private synchronized void checkAndLoadFromRealDao() {
-		if (cachedConfigurations == null) {
-			List<DbLoadedSamlClientConfigurationDto> allLoaded = realDao.loadAllClients();
-			cachedConfigurations = new HashMap<String, DbLoadedSamlClientConfigurationDto>();
-			for (DbLoadedSamlClientConfigurationDto single: allLoaded) {
-				cachedConfigurations.put(single.getClientName(), single);
-			}
-		}
-	}
-
-}
+package com.idc.webchannel.pac4j.extensions.saml.dao.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.AsyncSamlClientDao;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.DbLoadedSamlClientConfigurationDto;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.IncrementalSamlClientDao;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.SamlClientConfigurationChangesDto;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.SamlClientDao;
+import com.idc.webchannel.pac4j.extensions.saml.metrics.NoOpSamlClientMetrics;
+import com.idc.webchannel.pac4j.extensions.saml.metrics.SamlClientMetrics;
+
+
+
+/**
+ * <p>Implementation of {@link SamlClientDao} providing very simple caching.</p>
+ * 
+ * <p>It bulk-loads all values just once, keeps them in memory forever, then returns the cached values on each call. It delegates bulk-reading
+ * to another implementation of the same DAO type.</p>
+ * 
+ * <p>The loaded values are published as a single immutable snapshot through a volatile field. Only the very first call (and calls racing
+ * with it) synchronizes; all subsequent reads are lock-free and return the snapshot's unmodifiable collections without copying them.</p>
+ * 
+ * <p>Optionally, the cache can be refreshed ahead of time: a background thread started by {@link #start()} reloads all configurations in
+ * the interval set by {@link #setRefreshInterval(long, TimeUnit)} and atomically swaps in the new snapshot. If a reload fails, the
+ * previous snapshot is kept and served. Request threads never wait for a refresh. Call {@link #shutdown()} to stop the background thread
+ * when the DAO is no longer used.</p>
+ * 
+ * <p>If the real DAO is an {@link IncrementalSamlClientDao}, a refresh reads just the configurations changed since the previous reading
+ * and applies them to the cached ones, keeping unchanged configurations and dropping deleted ones. A change committed with a version
+ * below the watermark already read (e.g. by a transaction that took its version before another one but committed after it) is missed by
+ * such reads, so every {@link #setFullReloadInterval(int) n-th} refresh reads all configurations again.</p>
+ * 
+ * <p>If an {@link AsyncSamlClientDao} is set, background refreshes are read by it and the refresh thread does not wait for the database
+ * at all; it just schedules the next refresh once the previous one has completed.</p>
+ * 
+ * <p>If a {@link SamlClientSnapshotStore} is set, the configurations saved in it are served right from {@link #start()}, without waiting for
+ * the database, and the first background refresh reconciles them with the database. Every change read from the database is saved to the
+ * store, so the next start sees it. The application can thus start even if the database is unavailable.</p>
+ * 
+ * <p>Hits and misses of {@link #loadClient(String)} are reported to the {@link SamlClientMetrics} set by
+ * {@link #setMetrics(SamlClientMetrics)}.</p>
+ * 
+ * @author jkacer
+ * @since 1.9.0
+ */
+public class CachingSamlClientDaoImpl implements SamlClientDao {
+
+	/** Default number of refreshes after which all configurations are read again instead of just the changed ones. */
+	public static final int DEFAULT_FULL_RELOAD_INTERVAL = 10;
+
+	private final Logger logger = LoggerFactory.getLogger(CachingSamlClientDaoImpl.class);
+
+	/** A DAO that performs actual reading. */
+	private final SamlClientDao realDao;
+
+	/** Cached configurations, read just once. {@code null} until the first reading completes. */
+	private volatile CachedConfigurations cachedConfigurations;
+
+	/** A DAO that reads refreshes asynchronously. {@code null} if refreshes are read by {@link #realDao}. */
+	private volatile AsyncSamlClientDao asyncDao;
+
+	/** Scheduler of background refreshes. {@code null} if the cache does not refresh itself. */
+	private volatile ScheduledExecutorService refreshScheduler;
+
+	/** Delay between the end of one refresh and the start of the next one. Zero if the cache does not refresh itself. */
+	private volatile long refreshInterval;
+
+	/** Time unit of {@link #refreshInterval}. */
+	private volatile TimeUnit refreshIntervalUnit;
+
+	/** Where the configurations are saved for the next start. {@code null} if they are not saved. */
+	private volatile SamlClientSnapshotStore snapshotStore;
+
+	/** Whether {@link #start()} has been called. Guarded by this. */
+	private boolean started;
+
+	/** Configurations last saved to or read from {@link #snapshotStore}. Guarded by the store. */
+	private CachedConfigurations savedConfigurations;
+
+	/** Where cache hits and misses are reported. */
+	private SamlClientMetrics metrics = NoOpSamlClientMetrics.INSTANCE;
+
+	/** Number of refreshes after which all configurations are read again. Zero if they are never read again. */
+	private volatile int fullReloadInterval = DEFAULT_FULL_RELOAD_INTERVAL;
+
+	/** Number of refreshes started so far. */
+	private final AtomicLong refreshCount = new AtomicLong();
+	
+
+	// ------------------------------------------------------------------------------------------------------------------------------------
+	
+	
+	/**
+	 * Creates a new caching DAO.
+	 * 
+	 * @param realDao
+	 *            A real DAO, which performs actual read operations.
+	 */
+	public CachingSamlClientDaoImpl(final SamlClientDao realDao) {
+		super();
+		if (realDao == null) {
+			throw new IllegalArgumentException("Real DAO must not be null.");
+		}
+		this.realDao = realDao;
+	}
+
+
+	/**
+	 * Sets a DAO reading refreshes asynchronously. Must be called before {@link #start()}.
+	 * 
+	 * @param asyncDao
+	 *            A DAO reading the same data as the real DAO asynchronously, used by background refreshes and {@link #refreshAsync()}. If
+	 *            {@code null}, refreshes are read by the real DAO on the refreshing thread.
+	 * @since 2.0.1
+	 */
+	public synchronized void setAsyncDao(final AsyncSamlClientDao asyncDao) {
+		checkNotStarted();
+		this.asyncDao = asyncDao;
+	}
+
+
+	/**
+	 * Sets where the configurations are saved for the next start. Must be called before {@link #start()}, which reads the saved ones.
+	 * 
+	 * @param snapshotStore
+	 *            The store. If {@code null}, the configurations are not saved.
+	 * @since 2.0.1
+	 */
+	public synchronized void setSnapshotStore(final SamlClientSnapshotStore snapshotStore) {
+		checkNotStarted();
+		this.snapshotStore = snapshotStore;
+	}
+
+
+	/**
+	 * Sets the interval of background refreshes, started by {@link #start()}. Without it, the cache is refreshed only by its owner, by
+	 * {@link #refresh()} or {@link #refreshAsync()}.
+	 * 
+	 * @param refreshInterval
+	 *            Delay between the end of one refresh and the start of the next one. Must be positive.
+	 * @param refreshIntervalUnit
+	 *            Time unit of the refresh interval.
+	 * @since 2.0.1
+	 */
+	public synchronized void setRefreshInterval(final long refreshInterval, final TimeUnit refreshIntervalUnit) {
+		checkNotStarted();
+		if (refreshInterval <= 0) {
+			throw new IllegalArgumentException("Refresh interval must be positive.");
+		}
+		if (refreshIntervalUnit == null) {
+			throw new IllegalArgumentException("Refresh interval unit must not be null.");
+		}
+		this.refreshInterval = refreshInterval;
+		this.refreshIntervalUnit = refreshIntervalUnit;
+	}
+
+
+	/**
+	 * Starts the cache once it has been configured: serves the configurations saved in the snapshot store, if there is one, and starts
+	 * background refreshes, if their interval has been set. The first refresh is started immediately. If there is no usable snapshot, calls
+	 * arriving before the first refresh completes read the configurations by the blocking DAO.
+	 * 
+	 * Without calling this method, the cache reads all configurations on the first call and never refreshes itself.
+	 * 
+	 * @since 2.0.1
+	 */
+	public synchronized void start() {
+		checkNotStarted();
+		started = true;
+		if ((snapshotStore != null) && (cachedConfigurations == null)) {
+			final CachedConfigurations saved = readSnapshot(snapshotStore);
+			synchronized (snapshotStore) {
+				savedConfigurations = saved;
+			}
+			cachedConfigurations = saved;
+		}
+		if (refreshInterval > 0) {
+			refreshScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+				final Thread t = new Thread(r, "saml-client-cache-refresh");
+				t.setDaemon(true);
+				return t;
+			});
+			if (asyncDao == null) {
+				refreshScheduler.scheduleWithFixedDelay(this::refresh, 0L, refreshInterval, refreshIntervalUnit);
+			} else {
+				scheduleAsyncRefresh(0L);
+			}
+		}
+	}
+
+
+	/**
+	 * Sets after how many refreshes all configurations are read again from an incremental DAO, instead of just the changes since the
+	 * watermark. This catches changes committed with a version below the watermark, at the cost of reading all LOBs once in the interval.
+	 * The default is {@link #DEFAULT_FULL_RELOAD_INTERVAL}.
+	 * 
+	 * @param fullReloadInterval
+	 *            Number of refreshes. Zero if all configurations are never read again; only safe if versions are assigned in the order of
+	 *            commits. Must not be negative.
+	 * @since 2.0.1
+	 */
+	public void setFullReloadInterval(final int fullReloadInterval) {
+		if (fullReloadInterval < 0) {
+			throw new IllegalArgumentException("Full reload interval must not be negative.");
+		}
+		this.fullReloadInterval = fullReloadInterval;
+	}
+
+
+	/**
+	 * Sets where cache hits and misses are reported.
+	 * 
+	 * @param metrics
+	 *            The metrics.
+	 * @since 2.0.1
+	 */
+	public void setMetrics(final SamlClientMetrics metrics) {
+		if (metrics == null) {
+			throw new IllegalArgumentException("Metrics must not be null.");
+		}
+		this.metrics = metrics;
+	}
+
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * The returned list is unmodifiable and shared by all callers.
+	 */
+	@Override
+	public List<String> loadClientNames() {
+		return checkAndLoadFromRealDao().clientNames;
+	}
+	
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * The returned list is unmodifiable and shared by all callers.
+	 */
+	@Override
+	public List<DbLoadedSamlClientConfigurationDto> loadAllClients() {
+		return checkAndLoadFromRealDao().configurations;
+	}
+
+	
+	/* (non-Javadoc)
+	 * @see org.pac4j.saml.dbclient.dao.api.SamlClientDao#loadClient(java.lang.String)
+	 */
+	@Override
+	public DbLoadedSamlClientConfigurationDto loadClient(String clientName) {
+		final DbLoadedSamlClientConfigurationDto cached = checkAndLoadFromRealDao().configurationsByName.get(clientName);
+		if (cached != null) {
+			metrics.recordCacheHit(SamlClientMetrics.CACHE_CLIENT_CONFIGURATIONS);
+		} else {
+			metrics.recordCacheMiss(SamlClientMetrics.CACHE_CLIENT_CONFIGURATIONS);
+		}
+		return cached;
+	}
+
+	
+	/**
+	 * Atomically checks and loads all configurations from the real DAO, if they have not been read yet.
+	 * 
+	 * Assures that just one reading is done. Once the configurations have been published, no lock is taken.
+	 * 
+	 * @return The cached configurations. Never {@code null}.
+	 */
+	private CachedConfigurations checkAndLoadFromRealDao() {
+		CachedConfigurations current = cachedConfigurations;
+		if (current == null) {
+			boolean loaded = false;
+			synchronized (this) {
+				current = cachedConfigurations;
+				if (current == null) {
+					current = loadFromRealDao(null);
+					cachedConfigurations = current;
+					loaded = true;
+				}
+			}
+			if (loaded) {
+				writeSnapshot(current);
+			}
+		}
+		return current;
+	}
+
+
+	/**
+	 * Reloads all configurations from the real DAO and atomically replaces the cached ones. If reading fails, the previously cached
+	 * configurations remain in use.
+	 * 
+	 * Readers holding the current snapshot are never blocked; only readers that find the cache still empty wait for the reload.
+	 * 
+	 * @return {@code true} if the configurations have been reloaded, {@code false} if the reload failed.
+	 */
+	public boolean refresh() {
+		try {
+			final CachedConfigurations previous;
+			final CachedConfigurations fresh;
+			synchronized (this) {
+				previous = cachedConfigurations;
+				fresh = loadFromRealDao(isFullReloadDue() ? null : previous);
+				cachedConfigurations = fresh;
+				logger.debug("Refreshed {} cached SAML client configurations.", fresh.configurations.size());
+			}
+			writeSnapshot(fresh);
+			return true;
+		} catch (RuntimeException e) {
+			logger.warn("Refreshing of cached SAML client configurations failed, the previous values are kept.", e);
+			return false;
+		}
+	}
+
+
+	/**
+	 * Reloads a single configuration from the real DAO and atomically replaces it in the cached ones; the other configurations are kept.
+	 * A client that no longer exists is dropped, a new one is added. Intended for clients known to have changed, e.g. as reported by
+	 * {@link SamlClientChangeLogPoller}. If reading fails, the previously cached configurations remain in use and the failure is thrown to
+	 * the caller, so that the poller retries the change instead of passing it on to listeners rebuilding clients from the stale cache.
+	 * 
+	 * @param clientName
+	 *            Name of the client.
+	 * 
+	 * @return The reloaded configuration or {@code null} if the client no longer exists.
+	 * @since 2.0.1
+	 */
+	public DbLoadedSamlClientConfigurationDto reloadClient(final String clientName) {
+		if (clientName == null) {
+			throw new IllegalArgumentException("Client name must not be null.");
+		}
+		checkAndLoadFromRealDao();
+		final DbLoadedSamlClientConfigurationDto loaded;
+		final CachedConfigurations fresh;
+		synchronized (this) {
+			loaded = realDao.loadClient(clientName);
+			fresh = cachedConfigurations.withClient(clientName, loaded);
+			cachedConfigurations = fresh;
+			logger.debug("Reloaded cached configuration of SAML client {}.", clientName);
+		}
+		writeSnapshot(fresh);
+		return loaded;
+	}
+
+
+	/**
+	 * Reloads configurations by the asynchronous DAO and atomically replaces the cached ones once read. If reading fails, the previously
+	 * cached configurations remain in use. If the cached configurations are replaced by another thread while reading, the read ones are
+	 * dropped as possibly older.
+	 * 
+	 * Without an asynchronous DAO, the reload is done by {@link #refresh()} in the calling thread.
+	 * 
+	 * @return A future completed with {@code true} if the configurations have been replaced, {@code false} if the reload failed or was
+	 *         dropped. Never completed exceptionally.
+	 * @since 2.0.1
+	 */
+	public CompletableFuture<Boolean> refreshAsync() {
+		if (asyncDao == null) {
+			return CompletableFuture.completedFuture(Boolean.valueOf(refresh()));
+		}
+
+		final CachedConfigurations previous = cachedConfigurations;
+		final CachedConfigurations base = isFullReloadDue() ? null : previous;
+		final long watermark = (base == null) ? IncrementalSamlClientDao.INITIAL_WATERMARK : base.watermark;
+		return asyncDao.loadClientsChangedSinceAsync(watermark).thenCompose(changes -> {
+			final CachedConfigurations updated = (base == null) ? new CachedConfigurations(changes.getChangedClients(), changes.getWatermark())
+					: base.withChanges(changes);
+			if (updated != null) {
+				return CompletableFuture.completedFuture(updated);
+			}
+			logger.warn("Changes of SAML client configurations do not match the cached ones, all configurations will be reloaded.");
+			return asyncDao.loadClientsChangedSinceAsync(IncrementalSamlClientDao.INITIAL_WATERMARK)
+					.thenApply(all -> new CachedConfigurations(all.getChangedClients(), all.getWatermark()));
+		}).thenApply(fresh -> {
+			final boolean published = publish(previous, fresh);
+			if (published) {
+				writeSnapshot(fresh);
+			}
+			return Boolean.valueOf(published);
+		}).exceptionally(e -> {
+			logger.warn("Refreshing of cached SAML client configurations failed, the previous values are kept.", e);
+			return Boolean.FALSE;
+		});
+	}
+
+
+	/**
+	 * Stops background refreshes, if there are any. The already cached values remain available.
+	 */
+	public void shutdown() {
+		final ScheduledExecutorService scheduler = refreshScheduler;
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+		}
+	}
+
+
+	/**
+	 * Counts a refresh and tells whether it has to read all configurations again.
+	 * 
+	 * @return {@code true} if all configurations are to be read, {@code false} if just the changes.
+	 */
+	private boolean isFullReloadDue() {
+		final int interval = fullReloadInterval;
+		final long count = refreshCount.incrementAndGet();
+		return (interval > 0) && (count % interval == 0);
+	}
+
+
+	/**
+	 * Checks that the cache has not been started yet, so that it can still be configured.
+	 */
+	private void checkNotStarted() {
+		if (started) {
+			throw new IllegalStateException("The caching DAO has already been started.");
+		}
+	}
+
+
+	/**
+	 * Schedules the next asynchronous refresh. Each refresh schedules the next one when it completes, so refreshes never overlap.
+	 * 
+	 * @param delay
+	 *            Delay before the refresh, in {@link #refreshIntervalUnit}.
+	 */
+	private void scheduleAsyncRefresh(final long delay) {
+		try {
+			refreshScheduler.schedule(() -> refreshAsync().thenRun(() -> scheduleAsyncRefresh(refreshInterval)), delay, refreshIntervalUnit);
+		} catch (RejectedExecutionException e) {
+			logger.debug("Refreshes of cached SAML client configurations have been shut down.");
+		}
+	}
+
+
+	/**
+	 * Replaces the cached configurations with freshly read ones, unless they have been replaced since the reading started.
+	 * 
+	 * @param previous
+	 *            The configurations cached when the reading started.
+	 * @param fresh
+	 *            The freshly read configurations.
+	 * 
+	 * @return {@code true} if the configurations have been replaced.
+	 */
+	private synchronized boolean publish(final CachedConfigurations previous, final CachedConfigurations fresh) {
+		if (cachedConfigurations != previous) {
+			logger.debug("Cached SAML client configurations have been replaced during an asynchronous refresh; its result is dropped.");
+			return false;
+		}
+		cachedConfigurations = fresh;
+		logger.debug("Refreshed {} cached SAML client configurations.", fresh.configurations.size());
+		return true;
+	}
+
+
+	/**
+	 * Reads configurations saved in a snapshot store. A missing or unusable snapshot is logged and ignored.
+	 * 
+	 * @param store
+	 *            The store.
+	 * 
+	 * @return The saved configurations or {@code null} if there are none.
+	 */
+	private CachedConfigurations readSnapshot(final SamlClientSnapshotStore store) {
+		try {
+			final SamlClientSnapshotStore.Snapshot snapshot = store.read();
+			if (snapshot == null) {
+				logger.info("There is no snapshot of SAML client configurations in {} yet.", store.getFile());
+				return null;
+			}
+			logger.info("Serving {} SAML client configurations from snapshot {} until they are read from the database.",
+					snapshot.getConfigurations().size(), store.getFile());
+			return new CachedConfigurations(snapshot.getConfigurations(), snapshot.getWatermark());
+		} catch (IOException e) {
+			logger.warn("Snapshot of SAML client configurations cannot be read, it is ignored.", e);
+			return null;
+		}
+	}
+
+
+	/**
+	 * Saves freshly published configurations to the snapshot store, if there is one and they differ from the saved ones. A failure is
+	 * logged and ignored.
+	 * 
+	 * Snapshots are written outside the cache lock, so a thread may get here after another one has published and saved newer
+	 * configurations. The check and the write are therefore done under the lock of the store, and configurations that are no longer cached
+	 * are not saved; the thread that replaced them saves its own.
+	 * 
+	 * @param fresh
+	 *            The freshly published configurations.
+	 */
+	private void writeSnapshot(final CachedConfigurations fresh) {
+		if (snapshotStore == null) {
+			return;
+		}
+		synchronized (snapshotStore) {
+			if ((fresh != cachedConfigurations) || fresh.isSameAs(savedConfigurations)) {
+				return;
+			}
+			try {
+				snapshotStore.write(fresh.configurations, fresh.watermark);
+				savedConfigurations = fresh;
+			} catch (IOException | RuntimeException e) {
+				logger.warn("Snapshot of SAML client configurations cannot be written.", e);
+			}
+		}
+	}
+
+
+	/**
+	 * Reads configurations from the real DAO. Incremental DAOs are asked only for changes since the previous snapshot; other DAOs read all
+	 * configurations.
+	 * 
+	 * @param previous
+	 *            The currently cached configurations or {@code null} if nothing has been cached yet.
+	 * 
+	 * @return Fresh configurations.
+	 */
+	private CachedConfigurations loadFromRealDao(final CachedConfigurations previous) {
+		if (realDao instanceof IncrementalSamlClientDao) {
+			final IncrementalSamlClientDao incrementalDao = (IncrementalSamlClientDao) realDao;
+			if (previous != null) {
+				final SamlClientConfigurationChangesDto changes = incrementalDao.loadClientsChangedSince(previous.watermark);
+				final CachedConfigurations updated = previous.withChanges(changes);
+				if (updated != null) {
+					return updated;
+				}
+				logger.warn("Changes of SAML client configurations do not match the cached ones, all configurations will be reloaded.");
+			}
+			final SamlClientConfigurationChangesDto all = incrementalDao.loadClientsChangedSince(IncrementalSamlClientDao.INITIAL_WATERMARK);
+			return new CachedConfigurations(all.getChangedClients(), all.getWatermark());
+		} else {
+			return new CachedConfigurations(realDao.loadAllClients(), IncrementalSamlClientDao.INITIAL_WATERMARK);
+		}
+	}
+
+
+	/**
+	 * An immutable snapshot of all configurations loaded by the real DAO. It is completely built before being published, so readers never
+	 * observe a partially filled map.
+	 * 
+	 * @author jkacer
+	 */
+	private static final class CachedConfigurations {
+
+		/** Configurations indexed by client names. Unmodifiable. */
+		private final Map<String, DbLoadedSamlClientConfigurationDto> configurationsByName;
+		/** Names of all clients, in the order returned by the real DAO. Unmodifiable. */
+		private final List<String> clientNames;
+		/** All configurations, in the order returned by the real DAO. Unmodifiable. */
+		private final List<DbLoadedSamlClientConfigurationDto> configurations;
+		/** Watermark of an incremental DAO at the time of reading. */
+		private final long watermark;
+
+
+		/**
+		 * Creates a new snapshot.
+		 * 
+		 * @param allLoaded
+		 *            All configurations loaded by the real DAO.
+		 * @param watermark
+		 *            Watermark of an incremental DAO at the time of reading.
+		 */
+		CachedConfigurations(final List<DbLoadedSamlClientConfigurationDto> allLoaded, final long watermark) {
+			final Map<String, DbLoadedSamlClientConfigurationDto> byName = new LinkedHashMap<>();
+			for (DbLoadedSamlClientConfigurationDto single: allLoaded) {
+				byName.put(single.getClientName(), single);
+			}
+			this.configurationsByName = Collections.unmodifiableMap(byName);
+			this.clientNames = Collections.unmodifiableList(new ArrayList<>(byName.keySet()));
+			this.configurations = Collections.unmodifiableList(new ArrayList<>(byName.values()));
+			this.watermark = watermark;
+		}
+
+
+		/**
+		 * Tells whether this snapshot holds the same configuration instances and watermark as another one, i.e. nothing has changed.
+		 * 
+		 * @param other
+		 *            The other snapshot or {@code null}.
+		 * 
+		 * @return {@code true} if nothing has changed.
+		 */
+		boolean isSameAs(final CachedConfigurations other) {
+			if ((other == null) || (watermark != other.watermark) || (configurations.size() != other.configurations.size())) {
+				return false;
+			}
+			for (int i = 0; i < configurations.size(); i++) {
+				if (configurations.get(i) != other.configurations.get(i)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+
+		/**
+		 * Creates a new snapshot with a single configuration replaced, added or removed. The watermark is kept.
+		 * 
+		 * @param clientName
+		 *            Name of the client.
+		 * @param loaded
+		 *            Its freshly loaded configuration or {@code null} if the client no longer exists.
+		 * 
+		 * @return The new snapshot.
+		 */
+		CachedConfigurations withClient(final String clientName, final DbLoadedSamlClientConfigurationDto loaded) {
+			final Map<String, DbLoadedSamlClientConfigurationDto> byName = new LinkedHashMap<>(configurationsByName);
+			if (loaded == null) {
+				byName.remove(clientName);
+			} else {
+				byName.put(clientName, loaded);
+			}
+			return new CachedConfigurations(new ArrayList<>(byName.values()), watermark);
+		}
+
+
+		/**
+		 * Creates a new snapshot by applying changes to this one.
+		 * 
+		 * @param changes
+		 *            Changes read by an incremental DAO.
+		 * 
+		 * @return The new snapshot or {@code null} if an existing client is neither changed nor cached here.
+		 */
+		CachedConfigurations withChanges(final SamlClientConfigurationChangesDto changes) {
+			final Map<String, DbLoadedSamlClientConfigurationDto> changedByName = new LinkedHashMap<>();
+			for (DbLoadedSamlClientConfigurationDto single: changes.getChangedClients()) {
+				changedByName.put(single.getClientName(), single);
+			}
+
+			final List<DbLoadedSamlClientConfigurationDto> merged = new ArrayList<>();
+			for (String name: changes.getExistingClientNames()) {
+				DbLoadedSamlClientConfigurationDto single = changedByName.get(name);
+				if (single == null) {
+					single = configurationsByName.get(name);
+				}
+				if (single == null) {
+					return null;
+				}
+				merged.add(single);
+			}
+			return new CachedConfigurations(merged, changes.getWatermark());
+		}
+	}
+
+}
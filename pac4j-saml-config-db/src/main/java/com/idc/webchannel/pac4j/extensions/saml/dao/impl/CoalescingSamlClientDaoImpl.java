@@ -0,0 +1,110 @@
+package com.idc.webchannel.pac4j.extensions.saml.dao.impl;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.DbLoadedSamlClientConfigurationDto;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.IncrementalSamlClientDao;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.SamlClientConfigurationChangesDto;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.SamlClientDao;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.StreamingSamlClientDao;
+
+
+/**
+ * <p>Implementation of {@link SamlClientDao} coalescing concurrent identical reads of another DAO: while a read is in progress, other
+ * threads asking for the same data wait for it and share its result (or its exception) instead of reading the same data again. This
+ * prevents bursts of identical queries, e.g. after a deployment or a cache flush when many users log in through the same client.</p>
+ *
+ * <p>Nothing is cached; a read started after the previous one has finished goes to the real DAO again. Threads sharing a result get the same
+ * DTO instances, which must therefore not be modified.</p>
+ *
+ * <p>It is an {@link IncrementalSamlClientDao} and a {@link StreamingSamlClientDao}; if the real DAO lacks either capability, the
+ * {@link SamlClientDaoFallbacks} are used. Reads of changes since the same watermark are coalesced. Streams are not, because each of them
+ * feeds its own consumer.</p>
+ *
+ * @author jkacer
+ * @since 2.0.1
+ */
+public class CoalescingSamlClientDaoImpl implements IncrementalSamlClientDao, StreamingSamlClientDao {
+
+	/** Key of reads of all names and of all configurations, which have no parameters. */
+	private static final String ALL = "";
+
+	/** A DAO that performs actual reading. */
+	private final SamlClientDao realDao;
+
+	/** Coalesces reads of client names. */
+	private final SingleFlight<String, List<String>> nameLoads = new SingleFlight<>();
+
+	/** Coalesces reads of all configurations. */
+	private final SingleFlight<String, List<DbLoadedSamlClientConfigurationDto>> allClientsLoads = new SingleFlight<>();
+
+	/** Coalesces reads of single configurations, by client name. */
+	private final SingleFlight<String, DbLoadedSamlClientConfigurationDto> clientLoads = new SingleFlight<>();
+
+	/** Coalesces reads of changed configurations, by watermark. */
+	private final SingleFlight<Long, SamlClientConfigurationChangesDto> changeLoads = new SingleFlight<>();
+
+
+	// ------------------------------------------------------------------------------------------------------------------------------------
+
+
+	/**
+	 * Creates a new coalescing DAO.
+	 *
+	 * @param realDao
+	 *            A real DAO, which performs actual read operations.
+	 */
+	public CoalescingSamlClientDaoImpl(final SamlClientDao realDao) {
+		super();
+		if (realDao == null) {
+			throw new IllegalArgumentException("Real DAO must not be null.");
+		}
+		this.realDao = realDao;
+	}
+
+
+	@Override
+	public List<String> loadClientNames() {
+		return nameLoads.load(ALL, realDao::loadClientNames);
+	}
+
+
+	@Override
+	public List<DbLoadedSamlClientConfigurationDto> loadAllClients() {
+		return allClientsLoads.load(ALL, realDao::loadAllClients);
+	}
+
+
+	@Override
+	public DbLoadedSamlClientConfigurationDto loadClient(final String clientName) {
+		if (clientName == null) {
+			return realDao.loadClient(null);
+		}
+		return clientLoads.load(clientName, () -> realDao.loadClient(clientName));
+	}
+
+
+	@Override
+	public SamlClientConfigurationChangesDto loadClientsChangedSince(final long watermark) {
+		if (!(realDao instanceof IncrementalSamlClientDao)) {
+			return SamlClientDaoFallbacks.allAsChanges(loadAllClients(), watermark);
+		}
+
+		final IncrementalSamlClientDao incrementalDao = (IncrementalSamlClientDao) realDao;
+		return changeLoads.load(Long.valueOf(watermark), () -> incrementalDao.loadClientsChangedSince(watermark));
+	}
+
+
+	@Override
+	public int streamAllClients(final Consumer<? super DbLoadedSamlClientConfigurationDto> consumer) {
+		if (consumer == null) {
+			throw new IllegalArgumentException("Consumer must not be null.");
+		}
+		if (!(realDao instanceof StreamingSamlClientDao)) {
+			return SamlClientDaoFallbacks.streamAll(loadAllClients(), consumer);
+		}
+		return ((StreamingSamlClientDao) realDao).streamAllClients(consumer);
+	}
+
+}
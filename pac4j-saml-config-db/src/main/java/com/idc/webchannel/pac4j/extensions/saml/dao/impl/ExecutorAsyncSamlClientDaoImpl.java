@@ -0,0 +1,223 @@
+package com.idc.webchannel.pac4j.extensions.saml.dao.impl;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.AsyncSamlClientDao;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.DbLoadedSamlClientConfigurationDto;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.IncrementalSamlClientDao;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.SamlClientConfigurationChangesDto;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.SamlClientDao;
+
+
+/**
+ * <p>Implementation of {@link AsyncSamlClientDao} running a blocking {@link SamlClientDao} on a dedicated, bounded pool of threads. The
+ * threads calling this DAO never wait for the database.</p>
+ * 
+ * <p>The pool has a fixed number of threads and a bounded queue of waiting reads, so a slow database cannot make it grow without limits.
+ * A read submitted to a full queue is not run; its future is completed with a {@link RejectedExecutionException}.</p>
+ * 
+ * <p>Call {@link #shutdown()} to stop the threads when the DAO is no longer used. Every future is completed even then: reads waiting in
+ * the queue are cancelled and reads submitted later are rejected.</p>
+ * 
+ * @author jkacer
+ * @since 2.0.1
+ */
+public class ExecutorAsyncSamlClientDaoImpl implements AsyncSamlClientDao {
+
+	/** A DAO that performs actual reading. */
+	private final SamlClientDao realDao;
+
+	/** Threads running the reads. */
+	private final ExecutorService executor;
+
+
+	// ------------------------------------------------------------------------------------------------------------------------------------
+
+
+	/**
+	 * Creates a new asynchronous DAO.
+	 * 
+	 * @param realDao
+	 *            A real DAO, which performs actual read operations.
+	 * @param threads
+	 *            Number of threads reading concurrently. Must be positive.
+	 * @param queueCapacity
+	 *            Maximum number of reads waiting for a thread. Must be positive.
+	 */
+	public ExecutorAsyncSamlClientDaoImpl(final SamlClientDao realDao, final int threads, final int queueCapacity) {
+		this(realDao, newPool(threads, queueCapacity));
+	}
+
+
+	/**
+	 * Creates a new asynchronous DAO running reads on a pool created by {@link #newPool(int, int)}, which may be shared by several DAOs
+	 * (e.g. one per environment). Shutting down any of them stops the shared threads.
+	 * 
+	 * @param realDao
+	 *            A real DAO, which performs actual read operations.
+	 * @param executor
+	 *            Threads running the reads.
+	 */
+	ExecutorAsyncSamlClientDaoImpl(final SamlClientDao realDao, final ExecutorService executor) {
+		super();
+		if (realDao == null) {
+			throw new IllegalArgumentException("Real DAO must not be null.");
+		}
+		if (executor == null) {
+			throw new IllegalArgumentException("Executor must not be null.");
+		}
+		this.realDao = realDao;
+		this.executor = executor;
+	}
+
+
+	/**
+	 * Creates a pool of threads for asynchronous DAOs.
+	 * 
+	 * @param threads
+	 *            Number of threads reading concurrently. Must be positive.
+	 * @param queueCapacity
+	 *            Maximum number of reads waiting for a thread. Must be positive.
+	 * 
+	 * @return The pool.
+	 */
+	static ExecutorService newPool(final int threads, final int queueCapacity) {
+		if (threads <= 0) {
+			throw new IllegalArgumentException("Number of threads must be positive.");
+		}
+		if (queueCapacity <= 0) {
+			throw new IllegalArgumentException("Queue capacity must be positive.");
+		}
+		final AtomicInteger threadNumber = new AtomicInteger();
+		return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity), r -> {
+			final Thread t = new Thread(r, "saml-client-dao-async-" + threadNumber.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+
+	@Override
+	public CompletableFuture<List<String>> loadClientNamesAsync() {
+		return submit(realDao::loadClientNames);
+	}
+
+
+	@Override
+	public CompletableFuture<List<DbLoadedSamlClientConfigurationDto>> loadAllClientsAsync() {
+		return submit(realDao::loadAllClients);
+	}
+
+
+	@Override
+	public CompletableFuture<DbLoadedSamlClientConfigurationDto> loadClientAsync(final String clientName) {
+		return submit(() -> realDao.loadClient(clientName));
+	}
+
+
+	@Override
+	public CompletableFuture<SamlClientConfigurationChangesDto> loadClientsChangedSinceAsync(final long watermark) {
+		if (realDao instanceof IncrementalSamlClientDao) {
+			final IncrementalSamlClientDao incrementalDao = (IncrementalSamlClientDao) realDao;
+			return submit(() -> incrementalDao.loadClientsChangedSince(watermark));
+		}
+		return loadAllClientsAsync().thenApply(allClients -> SamlClientDaoFallbacks.allAsChanges(allClients, watermark));
+	}
+
+
+	/**
+	 * Stops the threads. Reads already running are interrupted. Waiting ones are not run; their futures are completed with a
+	 * {@link CancellationException}. Reads submitted afterwards are completed with a {@link RejectedExecutionException}.
+	 */
+	public void shutdown() {
+		shutdownPool(executor);
+	}
+
+
+	/**
+	 * Stops the threads of a pool created by {@link #newPool(int, int)}, as {@link #shutdown()} does.
+	 * 
+	 * @param pool
+	 *            The pool.
+	 */
+	static void shutdownPool(final ExecutorService pool) {
+		for (final Runnable waiting : pool.shutdownNow()) {
+			if (waiting instanceof Read) {
+				((Read<?>) waiting).cancel();
+			}
+		}
+	}
+
+
+	/**
+	 * Runs a read on the pool.
+	 * 
+	 * @param read
+	 *            The read.
+	 * 
+	 * @return Future result of the read, completed exceptionally if the read fails or cannot be run.
+	 */
+	private <T> CompletableFuture<T> submit(final Supplier<T> read) {
+		final Read<T> task = new Read<>(read);
+		try {
+			executor.execute(task);
+		} catch (RejectedExecutionException e) {
+			task.future.completeExceptionally(e);
+		}
+		return task.future;
+	}
+
+
+	// ------------------------------------------------------------------------------------------------------------------------------------
+
+
+	/**
+	 * A read run by the pool, together with its future, so that the future can be completed even if the read is never run.
+	 *
+	 * @param <T>
+	 *            Type of the result.
+	 */
+	private static final class Read<T> implements Runnable {
+
+		/** The read. */
+		private final Supplier<T> read;
+
+		/** Future result of the read. */
+		private final CompletableFuture<T> future = new CompletableFuture<>();
+
+
+		private Read(final Supplier<T> read) {
+			super();
+			this.read = read;
+		}
+
+
+		@Override
+		public void run() {
+			try {
+				future.complete(read.get());
+			} catch (Throwable e) {
+				future.completeExceptionally(e);
+			}
+		}
+
+
+		/**
+		 * Completes the future of a read that will never run.
+		 */
+		private void cancel() {
+			future.completeExceptionally(new CancellationException("The asynchronous SAML client DAO has been shut down."));
+		}
+
+	}
+
+}
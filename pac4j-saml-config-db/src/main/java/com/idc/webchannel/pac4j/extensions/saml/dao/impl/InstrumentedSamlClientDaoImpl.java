@@ -0,0 +1,159 @@
+package com.idc.webchannel.pac4j.extensions.saml.dao.impl;
+
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.BinaryContent;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.DbLoadedSamlClientConfigurationDto;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.IncrementalSamlClientDao;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.SamlClientConfigurationChangesDto;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.SamlClientDao;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.StreamingSamlClientDao;
+import com.idc.webchannel.pac4j.extensions.saml.metrics.SamlClientMetrics;
+
+
+/**
+ * <p>Implementation of {@link SamlClientDao} that reports metrics of another DAO it delegates to: duration of each query and sizes of
+ * the keystore and metadata LOBs read.</p>
+ *
+ * <p>Put it between the caching layer and the database DAO to measure the database only, or in front of the caching layer to measure
+ * everything the clients read.</p>
+ *
+ * <p>It is an {@link IncrementalSamlClientDao} and a {@link StreamingSamlClientDao}; if the real DAO lacks either capability, the
+ * {@link SamlClientDaoFallbacks} are used.</p>
+ *
+ * @author jkacer
+ * @since 2.0.1
+ */
+public class InstrumentedSamlClientDaoImpl implements IncrementalSamlClientDao, StreamingSamlClientDao {
+
+	/** A DAO that performs actual reading. */
+	private final SamlClientDao realDao;
+
+	/** Where the metrics are reported. */
+	private final SamlClientMetrics metrics;
+
+
+	// ------------------------------------------------------------------------------------------------------------------------------------
+
+
+	/**
+	 * Creates a new instrumented DAO.
+	 *
+	 * @param realDao
+	 *            A real DAO, which performs actual read operations.
+	 * @param metrics
+	 *            Where the metrics are reported.
+	 */
+	public InstrumentedSamlClientDaoImpl(final SamlClientDao realDao, final SamlClientMetrics metrics) {
+		super();
+		if (realDao == null) {
+			throw new IllegalArgumentException("Real DAO must not be null.");
+		}
+		if (metrics == null) {
+			throw new IllegalArgumentException("Metrics must not be null.");
+		}
+		this.realDao = realDao;
+		this.metrics = metrics;
+	}
+
+
+	@Override
+	public List<String> loadClientNames() {
+		return timed(SamlClientMetrics.QUERY_LOAD_CLIENT_NAMES, realDao::loadClientNames);
+	}
+
+
+	@Override
+	public List<DbLoadedSamlClientConfigurationDto> loadAllClients() {
+		final List<DbLoadedSamlClientConfigurationDto> loaded = timed(SamlClientMetrics.QUERY_LOAD_ALL_CLIENTS, realDao::loadAllClients);
+		recordLobSizes(loaded);
+		return loaded;
+	}
+
+
+	@Override
+	public int streamAllClients(final Consumer<? super DbLoadedSamlClientConfigurationDto> consumer) {
+		if (consumer == null) {
+			throw new IllegalArgumentException("Consumer must not be null.");
+		}
+		if (!(realDao instanceof StreamingSamlClientDao)) {
+			return SamlClientDaoFallbacks.streamAll(loadAllClients(), consumer);
+		}
+
+		final StreamingSamlClientDao streamingDao = (StreamingSamlClientDao) realDao;
+		return timed(SamlClientMetrics.QUERY_STREAM_ALL_CLIENTS, () -> Integer.valueOf(streamingDao.streamAllClients(single -> {
+			recordLobSizes(single);
+			consumer.accept(single);
+		}))).intValue();
+	}
+
+
+	@Override
+	public DbLoadedSamlClientConfigurationDto loadClient(final String clientName) {
+		final DbLoadedSamlClientConfigurationDto loaded = timed(SamlClientMetrics.QUERY_LOAD_CLIENT, () -> realDao.loadClient(clientName));
+		recordLobSizes(loaded);
+		return loaded;
+	}
+
+
+	@Override
+	public SamlClientConfigurationChangesDto loadClientsChangedSince(final long watermark) {
+		if (!(realDao instanceof IncrementalSamlClientDao)) {
+			return SamlClientDaoFallbacks.allAsChanges(loadAllClients(), watermark);
+		}
+
+		final IncrementalSamlClientDao incrementalDao = (IncrementalSamlClientDao) realDao;
+		final SamlClientConfigurationChangesDto changes = timed(SamlClientMetrics.QUERY_LOAD_CLIENTS_CHANGED_SINCE,
+				() -> incrementalDao.loadClientsChangedSince(watermark));
+		recordLobSizes(changes.getChangedClients());
+		return changes;
+	}
+
+
+	/**
+	 * Runs a query and records its duration.
+	 *
+	 * @param query
+	 *            Name of the query.
+	 * @param action
+	 *            The query.
+	 *
+	 * @return Result of the query.
+	 */
+	private <T> T timed(final String query, final Supplier<T> action) {
+		final long start = System.nanoTime();
+		boolean successful = false;
+		try {
+			final T result = action.get();
+			successful = true;
+			return result;
+		} finally {
+			metrics.recordQuery(query, System.nanoTime() - start, successful);
+		}
+	}
+
+
+	private void recordLobSizes(final List<DbLoadedSamlClientConfigurationDto> loaded) {
+		for (DbLoadedSamlClientConfigurationDto single: loaded) {
+			recordLobSizes(single);
+		}
+	}
+
+
+	private void recordLobSizes(final DbLoadedSamlClientConfigurationDto loaded) {
+		if (loaded == null) {
+			return;
+		}
+		final BinaryContent keystore = loaded.getKeystoreContent();
+		if (keystore != null) {
+			metrics.recordLobSize(SamlClientMetrics.LOB_KEYSTORE, keystore.size());
+		}
+		final BinaryContent metadata = loaded.getIdentityProviderMetadataContent();
+		if (metadata != null) {
+			metrics.recordLobSize(SamlClientMetrics.LOB_IDP_METADATA, metadata.size());
+		}
+	}
+
+}
@@ -0,0 +1,449 @@
+package com.idc.webchannel.pac4j.extensions.saml.dao.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.DbLoadedSamlClientConfigurationDto;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.IncrementalMultiEnvironmentSamlClientDao;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.IncrementalSamlClientDao;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.MultiEnvironmentSamlClientDao;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.SamlClientConfigurationChangesDto;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.SamlClientDao;
+import com.idc.webchannel.pac4j.extensions.saml.metrics.SamlClientMetrics;
+
+
+/**
+ * <p>Implementation of {@link MultiEnvironmentSamlClientDao} caching the configurations of several environments. Each environment is cached
+ * by its own {@link CachingSamlClientDaoImpl}, so it has all of its features: incremental refreshes, asynchronous refreshes, snapshots
+ * and {@link #reloadClient(String, String)}. The caches do not read the real DAO separately, though: a load or refresh of one environment
+ * reads all environments at once, by a single call of the real DAO, and the other caches take their part of the result.</p>
+ *
+ * <p>If the real DAO is an {@link IncrementalMultiEnvironmentSamlClientDao}, a refresh reads just the configurations changed since the
+ * previous reading, in all environments at once.</p>
+ *
+ * <p>{@link #forEnvironment(String)} returns the cache of one environment, to be given to the clients of that environment (e.g.
+ * {@code DatabaseLoadedSAML2Clients}) instead of a separate caching DAO per environment.</p>
+ *
+ * <p>Optionally, a background thread refreshes all environments in a fixed interval. If a refresh fails, the previous values are kept. Call
+ * {@link #shutdown()} to stop the background thread when the DAO is no longer used.</p>
+ *
+ * @author jkacer
+ * @since 2.0.1
+ */
+public class MultiEnvironmentCachingSamlClientDaoImpl implements MultiEnvironmentSamlClientDao {
+
+	private final Logger logger = LoggerFactory.getLogger(MultiEnvironmentCachingSamlClientDaoImpl.class);
+
+	/** A DAO that performs actual reading. */
+	private final MultiEnvironmentSamlClientDao realDao;
+
+	/** Caches of single environments, by environment name, in the order of {@link #getEnvironments()}. Unmodifiable. */
+	private final Map<String, CachingSamlClientDaoImpl> caches;
+
+	/** Threads reading refreshes asynchronously, shared by all environments. {@code null} if refreshes are read by {@link #realDao}. */
+	private final ExecutorService asyncPool;
+
+	/** Guards {@link #batch}. */
+	private final Object batchLock = new Object();
+
+	/** Changes of all environments read at once, not yet taken by all caches. {@code null} if there are none. Guarded by {@link #batchLock}. */
+	private Batch batch;
+
+	/** Scheduler of background refreshes. {@code null} if the caches are never refreshed. */
+	private final ScheduledExecutorService refreshScheduler;
+
+	/** Delay between the end of one refresh and the start of the next one. */
+	private final long refreshInterval;
+
+	/** Time unit of {@link #refreshInterval}. */
+	private final TimeUnit refreshIntervalUnit;
+
+
+	// ------------------------------------------------------------------------------------------------------------------------------------
+
+
+	/**
+	 * Creates a new caching DAO.
+	 *
+	 * @param realDao
+	 *            A real DAO, which performs actual read operations.
+	 */
+	public MultiEnvironmentCachingSamlClientDaoImpl(final MultiEnvironmentSamlClientDao realDao) {
+		super();
+		if (realDao == null) {
+			throw new IllegalArgumentException("Real DAO must not be null.");
+		}
+		this.realDao = realDao;
+		this.asyncPool = null;
+		this.caches = createCaches(realDao.getEnvironments(), null, null);
+		this.refreshScheduler = null;
+		this.refreshInterval = 0L;
+		this.refreshIntervalUnit = null;
+	}
+
+
+	/**
+	 * Creates a new caching DAO that refreshes its cached values periodically in the background. The first load is started immediately
+	 * in the background too.
+	 *
+	 * @param realDao
+	 *            A real DAO, which performs actual read operations.
+	 * @param refreshInterval
+	 *            Delay between the end of one refresh and the start of the next one. Must be positive.
+	 * @param refreshIntervalUnit
+	 *            Time unit of the refresh interval.
+	 */
+	public MultiEnvironmentCachingSamlClientDaoImpl(final MultiEnvironmentSamlClientDao realDao, final long refreshInterval,
+			final TimeUnit refreshIntervalUnit) {
+		this(realDao, 0, null, refreshInterval, refreshIntervalUnit);
+	}
+
+
+	/**
+	 * Creates a new caching DAO that starts with the configurations saved in snapshot stores and refreshes them periodically in the
+	 * background. The first refresh is started immediately. Environments without a usable snapshot are read by the blocking DAO if called
+	 * before the first refresh completes.
+	 *
+	 * @param realDao
+	 *            A real DAO, which performs actual read operations on behalf of the callers.
+	 * @param asyncThreads
+	 *            Number of threads reading refreshes asynchronously, shared by all environments. If zero, refreshes are read by the real DAO
+	 *            on the refresh thread. Must not be negative.
+	 * @param snapshotStores
+	 *            Where the configurations of each environment are saved for the next start, by environment name. Environments missing in
+	 *            the map are not saved. May be {@code null}.
+	 * @param refreshInterval
+	 *            Delay between the end of one refresh and the start of the next one. Must be positive.
+	 * @param refreshIntervalUnit
+	 *            Time unit of the refresh interval.
+	 */
+	public MultiEnvironmentCachingSamlClientDaoImpl(final MultiEnvironmentSamlClientDao realDao, final int asyncThreads,
+			final Map<String, SamlClientSnapshotStore> snapshotStores, final long refreshInterval, final TimeUnit refreshIntervalUnit) {
+		super();
+		if (realDao == null) {
+			throw new IllegalArgumentException("Real DAO must not be null.");
+		}
+		if (asyncThreads < 0) {
+			throw new IllegalArgumentException("Number of threads must not be negative.");
+		}
+		if (refreshInterval <= 0) {
+			throw new IllegalArgumentException("Refresh interval must be positive.");
+		}
+		if (refreshIntervalUnit == null) {
+			throw new IllegalArgumentException("Refresh interval unit must not be null.");
+		}
+		this.realDao = realDao;
+		final List<String> environments = realDao.getEnvironments();
+		this.asyncPool = ((asyncThreads == 0) || environments.isEmpty()) ? null
+				: ExecutorAsyncSamlClientDaoImpl.newPool(asyncThreads, environments.size());
+		this.caches = createCaches(environments, asyncPool, snapshotStores);
+		this.refreshInterval = refreshInterval;
+		this.refreshIntervalUnit = refreshIntervalUnit;
+		this.refreshScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			final Thread t = new Thread(r, "saml-client-multi-env-cache-refresh");
+			t.setDaemon(true);
+			return t;
+		});
+		if (asyncPool == null) {
+			this.refreshScheduler.scheduleWithFixedDelay(this::refresh, 0L, refreshInterval, refreshIntervalUnit);
+		} else {
+			scheduleAsyncRefresh(0L);
+		}
+	}
+
+
+	/**
+	 * Sets after how many refreshes all configurations of all environments are read again; see
+	 * {@link CachingSamlClientDaoImpl#setFullReloadInterval(int)}.
+	 *
+	 * @param fullReloadInterval
+	 *            Number of refreshes. Zero if all configurations are never read again. Must not be negative.
+	 */
+	public void setFullReloadInterval(final int fullReloadInterval) {
+		for (CachingSamlClientDaoImpl cache: caches.values()) {
+			cache.setFullReloadInterval(fullReloadInterval);
+		}
+	}
+
+
+	/**
+	 * Sets where cache hits and misses of all environments are reported.
+	 *
+	 * @param metrics
+	 *            The metrics.
+	 */
+	public void setMetrics(final SamlClientMetrics metrics) {
+		if (metrics == null) {
+			throw new IllegalArgumentException("Metrics must not be null.");
+		}
+		for (CachingSamlClientDaoImpl cache: caches.values()) {
+			cache.setMetrics(metrics);
+		}
+	}
+
+
+	@Override
+	public List<String> getEnvironments() {
+		return realDao.getEnvironments();
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * The returned map is unmodifiable; the lists are unmodifiable and shared by all callers.
+	 */
+	@Override
+	public Map<String, List<DbLoadedSamlClientConfigurationDto>> loadAllClientsByEnvironment() {
+		final Map<String, List<DbLoadedSamlClientConfigurationDto>> all = new LinkedHashMap<>();
+		for (Map.Entry<String, CachingSamlClientDaoImpl> cache: caches.entrySet()) {
+			all.put(cache.getKey(), cache.getValue().loadAllClients());
+		}
+		return Collections.unmodifiableMap(all);
+	}
+
+
+	@Override
+	public DbLoadedSamlClientConfigurationDto loadClient(final String environment, final String clientName) {
+		final CachingSamlClientDaoImpl cache = caches.get(environment);
+		return (cache == null) ? null : cache.loadClient(clientName);
+	}
+
+
+	/**
+	 * Returns the cache of a single environment. It shares readings of the real DAO with the other environments.
+	 *
+	 * @param environment
+	 *            Name of the environment. Must be one of {@link #getEnvironments()}.
+	 *
+	 * @return The cache. The same instance for every call with the same environment.
+	 */
+	public CachingSamlClientDaoImpl forEnvironment(final String environment) {
+		final CachingSamlClientDaoImpl cache = caches.get(environment);
+		if (cache == null) {
+			throw new IllegalArgumentException("Environment " + environment + " is not read by this DAO.");
+		}
+		return cache;
+	}
+
+
+	/**
+	 * Reloads a single configuration of a single environment; see {@link CachingSamlClientDaoImpl#reloadClient(String)}.
+	 *
+	 * @param environment
+	 *            Name of the environment. Must be one of {@link #getEnvironments()}.
+	 * @param clientName
+	 *            Name of the client.
+	 *
+	 * @return The reloaded configuration or {@code null} if the client no longer exists.
+	 */
+	public DbLoadedSamlClientConfigurationDto reloadClient(final String environment, final String clientName) {
+		return forEnvironment(environment).reloadClient(clientName);
+	}
+
+
+	/**
+	 * Refreshes all environments by a single reading of the real DAO. If reading fails, the previously cached configurations remain in use.
+	 *
+	 * @return {@code true} if all environments have been refreshed, {@code false} if a refresh failed.
+	 */
+	public boolean refresh() {
+		discardBatch();
+		boolean refreshed = true;
+		for (CachingSamlClientDaoImpl cache: caches.values()) {
+			refreshed &= cache.refresh();
+		}
+		return refreshed;
+	}
+
+
+	/**
+	 * Refreshes all environments asynchronously, by a single reading of the real DAO; see {@link CachingSamlClientDaoImpl#refreshAsync()}.
+	 *
+	 * @return A future completed with {@code true} if all environments have been refreshed, {@code false} if a refresh failed or was
+	 *         dropped. Never completed exceptionally.
+	 */
+	public CompletableFuture<Boolean> refreshAsync() {
+		discardBatch();
+		final List<CompletableFuture<Boolean>> refreshes = caches.values().stream().map(CachingSamlClientDaoImpl::refreshAsync)
+				.collect(Collectors.toList());
+		return CompletableFuture.allOf(refreshes.toArray(new CompletableFuture<?>[refreshes.size()]))
+				.thenApply(done -> Boolean.valueOf(refreshes.stream().allMatch(refreshed -> refreshed.join().booleanValue())));
+	}
+
+
+	/**
+	 * Stops background refreshes and asynchronous reading, if there are any. The already cached values remain available.
+	 */
+	public void shutdown() {
+		if (refreshScheduler != null) {
+			refreshScheduler.shutdownNow();
+		}
+		if (asyncPool != null) {
+			ExecutorAsyncSamlClientDaoImpl.shutdownPool(asyncPool);
+		}
+	}
+
+
+	/**
+	 * Schedules the next asynchronous refresh. Each refresh schedules the next one when it completes, so refreshes never overlap.
+	 *
+	 * @param delay
+	 *            Delay before the refresh, in {@link #refreshIntervalUnit}.
+	 */
+	private void scheduleAsyncRefresh(final long delay) {
+		try {
+			refreshScheduler.schedule(() -> refreshAsync().thenRun(() -> scheduleAsyncRefresh(refreshInterval)), delay, refreshIntervalUnit);
+		} catch (RejectedExecutionException e) {
+			logger.debug("Refreshes of cached SAML client configurations have been shut down.");
+		}
+	}
+
+
+	private Map<String, CachingSamlClientDaoImpl> createCaches(final List<String> environments, final ExecutorService pool,
+			final Map<String, SamlClientSnapshotStore> snapshotStores) {
+		final Map<String, CachingSamlClientDaoImpl> created = new LinkedHashMap<>();
+		for (String environment: environments) {
+			final EnvironmentSource source = new EnvironmentSource(environment);
+			final SamlClientSnapshotStore snapshotStore = (snapshotStores == null) ? null : snapshotStores.get(environment);
+			final ExecutorAsyncSamlClientDaoImpl asyncDao = (pool == null) ? null : new ExecutorAsyncSamlClientDaoImpl(source, pool);
+			final CachingSamlClientDaoImpl cache = new CachingSamlClientDaoImpl(source);
+			cache.setAsyncDao(asyncDao);
+			cache.setSnapshotStore(snapshotStore);
+			cache.start();
+			created.put(environment, cache);
+		}
+		return Collections.unmodifiableMap(created);
+	}
+
+
+	/**
+	 * Drops changes read for a previous refresh, so that the next refresh reads the real DAO again.
+	 */
+	private void discardBatch() {
+		synchronized (batchLock) {
+			batch = null;
+		}
+	}
+
+
+	/**
+	 * Takes changes of a single environment from the current batch. If there is no batch for the watermark or the environment has already
+	 * taken its changes, all environments are read again and the others can take their changes later.
+	 *
+	 * @param environment
+	 *            Name of the environment.
+	 * @param watermark
+	 *            Watermark of the cache of the environment.
+	 *
+	 * @return Changes of the environment since the watermark.
+	 */
+	private SamlClientConfigurationChangesDto takeChanges(final String environment, final long watermark) {
+		synchronized (batchLock) {
+			if ((batch == null) || (batch.watermark != watermark) || !batch.changesByEnvironment.containsKey(environment)) {
+				batch = new Batch(watermark, loadChangesFromRealDao(watermark));
+			}
+			final SamlClientConfigurationChangesDto changes = batch.changesByEnvironment.remove(environment);
+			if (changes == null) {
+				throw new IllegalStateException("Environment " + environment + " has not been read by the real DAO.");
+			}
+			return changes;
+		}
+	}
+
+
+	/**
+	 * Reads changes of all environments from the real DAO. Incremental DAOs are asked only for changes since the watermark; other DAOs read
+	 * all configurations and keep the watermark.
+	 *
+	 * @param watermark
+	 *            The watermark.
+	 *
+	 * @return Changes indexed by environment names.
+	 */
+	private Map<String, SamlClientConfigurationChangesDto> loadChangesFromRealDao(final long watermark) {
+		if (realDao instanceof IncrementalMultiEnvironmentSamlClientDao) {
+			return ((IncrementalMultiEnvironmentSamlClientDao) realDao).loadClientsChangedSince(watermark);
+		}
+		final Map<String, SamlClientConfigurationChangesDto> all = new LinkedHashMap<>();
+		for (Map.Entry<String, List<DbLoadedSamlClientConfigurationDto>> partition: realDao.loadAllClientsByEnvironment().entrySet()) {
+			all.put(partition.getKey(), SamlClientDaoFallbacks.allAsChanges(partition.getValue(), watermark));
+		}
+		return all;
+	}
+
+
+	/**
+	 * Changes of all environments read at once.
+	 *
+	 * @author jkacer
+	 */
+	private static final class Batch {
+
+		/** Watermark the changes have been read since. */
+		private final long watermark;
+		/** Changes not taken yet, by environment name. */
+		private final Map<String, SamlClientConfigurationChangesDto> changesByEnvironment;
+
+
+		Batch(final long watermark, final Map<String, SamlClientConfigurationChangesDto> changesByEnvironment) {
+			this.watermark = watermark;
+			this.changesByEnvironment = new LinkedHashMap<>(changesByEnvironment);
+		}
+	}
+
+
+	/**
+	 * The real DAO of a single environment, as seen by its cache. Changes are read for all environments at once.
+	 *
+	 * @author jkacer
+	 */
+	private final class EnvironmentSource implements IncrementalSamlClientDao {
+
+		private final String environment;
+
+
+		EnvironmentSource(final String environment) {
+			this.environment = environment;
+		}
+
+
+		@Override
+		public List<String> loadClientNames() {
+			return loadAllClients().stream().map(DbLoadedSamlClientConfigurationDto::getClientName).collect(Collectors.toList());
+		}
+
+
+		@Override
+		public List<DbLoadedSamlClientConfigurationDto> loadAllClients() {
+			final List<DbLoadedSamlClientConfigurationDto> configurations = realDao.loadAllClientsByEnvironment().get(environment);
+			return (configurations == null) ? Collections.<DbLoadedSamlClientConfigurationDto>emptyList() : new ArrayList<>(configurations);
+		}
+
+
+		@Override
+		public DbLoadedSamlClientConfigurationDto loadClient(final String clientName) {
+			return realDao.loadClient(environment, clientName);
+		}
+
+
+		@Override
+		public SamlClientConfigurationChangesDto loadClientsChangedSince(final long watermark) {
+			return takeChanges(environment, watermark);
+		}
+	}
+
+}
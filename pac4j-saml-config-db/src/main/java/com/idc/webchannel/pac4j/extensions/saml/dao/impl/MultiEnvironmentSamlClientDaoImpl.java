@@ -0,0 +1,294 @@
+package com.idc.webchannel.pac4j.extensions.saml.dao.impl;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.lang3.StringUtils;
+import org.pac4j.core.util.CommonHelper;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.lob.LobHandler;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.BinaryContentInterner;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.DbLoadedSamlClientConfigurationDto;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.IncrementalMultiEnvironmentSamlClientDao;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.MultiEnvironmentSamlClientDao;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.SamlClientConfigurationChangesDto;
+
+
+/**
+ * <p>Implementation of {@link MultiEnvironmentSamlClientDao} based on Spring JDBC Template. It reads the same table as
+ * {@link SpringJdbcTemplateSamlClientDaoImpl}, but all configured environments by a single query ({@code where Environment in (...)}); the
+ * rows are partitioned by environment in memory. A node serving N environments thus scans the table once instead of N times.</p>
+ *
+ * <p>Record versions are read if a version column is configured, overrides of signing algorithms if switched on; see
+ * {@link SpringJdbcTemplateSamlClientDaoImpl} for the columns. The column list and the row mapper are shared with it, so both DAOs always
+ * read the same columns. With a version column, {@link #loadClientsChangedSince(long)} reads just the records of all environments whose
+ * version is greater than the watermark. Keystores and metadata documents are interned, so clients sharing them across environments hold
+ * them in memory just once.</p>
+ *
+ * @author jkacer
+ * @since 2.0.1
+ */
+public class MultiEnvironmentSamlClientDaoImpl implements IncrementalMultiEnvironmentSamlClientDao {
+
+	/** SQL text of the query to select all client names of several environments. */
+	private static final String SELECT_ALL_NAMES_SQL_TEXT = "select Environment, Client_Name from %s where Environment in (%s)";
+	/** SQL text of the query to select all existing clients of several environments. */
+	private static final String SELECT_ALL_CLIENTS_SQL_TEXT = "select %s from %s where Environment in (%s)";
+	/** SQL text of the query to select clients of several environments changed since a watermark. */
+	private static final String SELECT_CHANGED_CLIENTS_SQL_TEXT = "select %s from %s where (Environment in (%s)) and (%s > ?)";
+
+	/** Row mapper to read configuration rows and convert them to objects. */
+	private final SpringJdbcTemplateSamlClientDaoImpl.SamlClientConfigurationRowMapper fullRowMapper;
+
+	/** A Spring JDBC template. */
+	private final JdbcTemplate template;
+
+	/** Names of the environments read. Unmodifiable. */
+	private final List<String> environments;
+
+	/** SQL text of the query to select all client names after filling in the table name and parameter placeholders. */
+	private final String selectAllNamesSqlText;
+	/** SQL text of the query to select all existing clients after filling in the table name and parameter placeholders. */
+	private final String selectAllClientsSqlText;
+	/** SQL text of the query to select changed clients after filling in the names; {@code null} if versions are not read. */
+	private final String selectChangedClientsSqlText;
+	/** SQL text of the query to select a single client after filling in the table name. */
+	private final String selectSingleClientSqlText;
+
+	/** Parameters to the query selecting all clients: environments. */
+	private final Object[] selectAllClientsParameters;
+	/** Parameter types to the query selecting all clients: environments. */
+	private final int[] selectAllClientsParameterTypes;
+	/** Parameter types to the query selecting a single client: environment and client name. */
+	private final int[] selectSingleClientParameterTypes;
+	/** Parameter types to the query selecting changed clients: environments and watermark. */
+	private final int[] selectChangedClientsParameterTypes;
+
+
+	// ------------------------------------------------------------------------------------------------------------------------------------
+
+
+	/**
+	 * Creates a new DAO.
+	 *
+	 * @param dataSource
+	 *            A data source.
+	 * @param lobHandler
+	 *            LOB handler able to read BLOBs and CLOBs.
+	 * @param tableName
+	 *            Name of the table containing configuration records.
+	 * @param environments
+	 *            Names of the environments to read. Duplicates are ignored.
+	 */
+	public MultiEnvironmentSamlClientDaoImpl(final DataSource dataSource, final LobHandler lobHandler, final String tableName,
+			final List<String> environments) {
+		this(dataSource, lobHandler, tableName, environments, null, false);
+	}
+
+
+	/**
+	 * Creates a new DAO reading record versions and, optionally, per-client overrides of signing algorithms.
+	 *
+	 * @param dataSource
+	 *            A data source.
+	 * @param lobHandler
+	 *            LOB handler able to read BLOBs and CLOBs.
+	 * @param tableName
+	 *            Name of the table containing configuration records.
+	 * @param environments
+	 *            Names of the environments to read. Duplicates are ignored.
+	 * @param versionColumnName
+	 *            Name of the numeric column holding record versions. If {@code null}, versions are not read.
+	 * @param signingOverrideColumns
+	 *            If {@code true}, the columns SIGNATURE_ALGORITHMS and SIGNATURE_DIGEST_METHODS are read.
+	 */
+	public MultiEnvironmentSamlClientDaoImpl(final DataSource dataSource, final LobHandler lobHandler, final String tableName,
+			final List<String> environments, final String versionColumnName, final boolean signingOverrideColumns) {
+		super();
+
+		CommonHelper.assertNotNull("dataSource", dataSource);
+		CommonHelper.assertNotNull("lobHandler", lobHandler);
+		CommonHelper.assertNotBlank("tableName", tableName);
+		CommonHelper.assertNotNull("environments", environments);
+		CommonHelper.assertTrue(!environments.isEmpty(), "environments cannot be empty");
+		for (String environment: environments) {
+			CommonHelper.assertNotBlank("environment", environment);
+		}
+		if (versionColumnName != null) {
+			CommonHelper.assertNotBlank("versionColumnName", versionColumnName);
+		}
+
+		this.fullRowMapper = new SpringJdbcTemplateSamlClientDaoImpl.SamlClientConfigurationRowMapper(lobHandler, versionColumnName,
+				signingOverrideColumns);
+		this.template = new JdbcTemplate(dataSource);
+		this.environments = Collections.unmodifiableList(new ArrayList<>(new LinkedHashSet<>(environments)));
+
+		final String configurationColumns = fullRowMapper.getSelectedColumns();
+		final String placeholders = StringUtils.repeat("?", ", ", this.environments.size());
+		this.selectAllNamesSqlText = String.format(SELECT_ALL_NAMES_SQL_TEXT, tableName, placeholders);
+		this.selectAllClientsSqlText = String.format(SELECT_ALL_CLIENTS_SQL_TEXT, configurationColumns, tableName, placeholders);
+		this.selectChangedClientsSqlText = (versionColumnName == null) ? null
+				: String.format(SELECT_CHANGED_CLIENTS_SQL_TEXT, configurationColumns, tableName, placeholders, versionColumnName);
+		this.selectSingleClientSqlText = String.format(SpringJdbcTemplateSamlClientDaoImpl.SELECT_SINGLE_CLIENT_SQL_TEXT, configurationColumns,
+				tableName);
+
+		this.selectAllClientsParameters = this.environments.toArray();
+		this.selectAllClientsParameterTypes = new int[this.environments.size()];
+		Arrays.fill(this.selectAllClientsParameterTypes, Types.VARCHAR);
+		this.selectSingleClientParameterTypes = new int[] {Types.VARCHAR, Types.VARCHAR};
+		this.selectChangedClientsParameterTypes = Arrays.copyOf(this.selectAllClientsParameterTypes, this.environments.size() + 1);
+		this.selectChangedClientsParameterTypes[this.environments.size()] = Types.BIGINT;
+	}
+
+
+	/**
+	 * Switches streaming of LOBs on or off. Should be set before the DAO is used.
+	 *
+	 * @param streamingLobs
+	 *            {@code true} to stream LOBs into right-sized arrays, {@code false} to read them using the LOB handler.
+	 */
+	public void setStreamingLobs(final boolean streamingLobs) {
+		fullRowMapper.setStreamingLobs(streamingLobs);
+	}
+
+
+	/**
+	 * Sets the interner deduplicating keystores and metadata documents read. Should be set before the DAO is used.
+	 *
+	 * @param contentInterner
+	 *            The interner.
+	 */
+	public void setContentInterner(final BinaryContentInterner contentInterner) {
+		CommonHelper.assertNotNull("contentInterner", contentInterner);
+		fullRowMapper.setContentInterner(contentInterner);
+	}
+
+
+	@Override
+	public List<String> getEnvironments() {
+		return environments;
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * All environments are read by a single query.
+	 */
+	@Override
+	@Transactional(readOnly=true)
+	public Map<String, List<DbLoadedSamlClientConfigurationDto>> loadAllClientsByEnvironment() {
+		final List<DbLoadedSamlClientConfigurationDto> configurations = template.query(selectAllClientsSqlText, selectAllClientsParameters,
+				selectAllClientsParameterTypes, fullRowMapper);
+		return partition(configurations);
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * All environments are read by two queries: names of all clients and the changed configurations. Without a version column, all
+	 * configurations are read each time.
+	 */
+	@Override
+	@Transactional(readOnly=true)
+	public Map<String, SamlClientConfigurationChangesDto> loadClientsChangedSince(final long watermark) {
+		final Map<String, Set<String>> namesByEnvironment = new LinkedHashMap<>();
+		for (String environment: environments) {
+			namesByEnvironment.put(environment, new LinkedHashSet<>());
+		}
+		template.query(selectAllNamesSqlText, selectAllClientsParameters, selectAllClientsParameterTypes, rs -> {
+			final Set<String> names = namesByEnvironment.get(rs.getString("Environment"));
+			if (names != null) {
+				names.add(rs.getString("Client_Name"));
+			}
+		});
+
+		final List<DbLoadedSamlClientConfigurationDto> changed;
+		if (selectChangedClientsSqlText == null) {
+			changed = template.query(selectAllClientsSqlText, selectAllClientsParameters, selectAllClientsParameterTypes, fullRowMapper);
+		} else {
+			final Object[] selectChangedClientsParameters = Arrays.copyOf(selectAllClientsParameters, environments.size() + 1);
+			selectChangedClientsParameters[environments.size()] = watermark;
+			changed = template.query(selectChangedClientsSqlText, selectChangedClientsParameters, selectChangedClientsParameterTypes,
+					fullRowMapper);
+		}
+
+		long newWatermark = watermark;
+		for (DbLoadedSamlClientConfigurationDto single: changed) {
+			if ((selectChangedClientsSqlText != null) && (single.getVersion() > newWatermark)) {
+				newWatermark = single.getVersion();
+			}
+		}
+
+		final Map<String, SamlClientConfigurationChangesDto> changesByEnvironment = new LinkedHashMap<>();
+		for (Map.Entry<String, List<DbLoadedSamlClientConfigurationDto>> partition: partition(changed).entrySet()) {
+			final Set<String> existing = namesByEnvironment.get(partition.getKey());
+			for (DbLoadedSamlClientConfigurationDto single: partition.getValue()) {
+				existing.add(single.getClientName());
+			}
+			final SamlClientConfigurationChangesDto changes = new SamlClientConfigurationChangesDto();
+			changes.setChangedClients(partition.getValue());
+			changes.setExistingClientNames(new ArrayList<>(existing));
+			changes.setWatermark(newWatermark);
+			changesByEnvironment.put(partition.getKey(), changes);
+		}
+		return changesByEnvironment;
+	}
+
+
+	@Override
+	@Transactional(readOnly=true)
+	public DbLoadedSamlClientConfigurationDto loadClient(final String environment, final String clientName) {
+		if (!environments.contains(environment)) {
+			throw new IllegalArgumentException("Environment " + environment + " is not read by this DAO.");
+		}
+		if (StringUtils.isBlank(clientName)) {
+			throw new IllegalArgumentException("Client name must not be null or empty.");
+		}
+
+		final Object[] selectSingleClientParameters = new Object[] {environment, clientName};
+		final List<DbLoadedSamlClientConfigurationDto> configurations = template.query(selectSingleClientSqlText, selectSingleClientParameters,
+				selectSingleClientParameterTypes, fullRowMapper);
+		if ((configurations != null) && (!configurations.isEmpty())) {
+			return configurations.get(0);
+		} else {
+			return null;
+		}
+	}
+
+
+	/**
+	 * Partitions configurations by environment.
+	 *
+	 * @param configurations
+	 *            Configurations of any of the environments.
+	 *
+	 * @return Lists of configurations indexed by environment names, in the order of {@link #getEnvironments()}. Every environment is present.
+	 */
+	private Map<String, List<DbLoadedSamlClientConfigurationDto>> partition(final List<DbLoadedSamlClientConfigurationDto> configurations) {
+		final Map<String, List<DbLoadedSamlClientConfigurationDto>> byEnvironment = new LinkedHashMap<>();
+		for (String environment: environments) {
+			byEnvironment.put(environment, new ArrayList<>());
+		}
+		for (DbLoadedSamlClientConfigurationDto single: configurations) {
+			final List<DbLoadedSamlClientConfigurationDto> partition = byEnvironment.get(single.getEnvironment());
+			if (partition != null) {
+				partition.add(single);
+			}
+		}
+		return byEnvironment;
+	}
+
+}
@@ -0,0 +1,297 @@
+package com.idc.webchannel.pac4j.extensions.saml.dao.impl;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.DbLoadedSamlClientConfigurationDto;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.SamlClientDao;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.StreamingSamlClientDao;
+import com.idc.webchannel.pac4j.extensions.saml.metrics.NoOpSamlClientMetrics;
+import com.idc.webchannel.pac4j.extensions.saml.metrics.SamlClientMetrics;
+
+
+/**
+ * <p>Implementation of {@link SamlClientDao} that protects another DAO from reads of unknown clients, e.g. random client names sent by
+ * bots and scanners. Put it in front of DAOs that read from the database on a miss, such as {@link BoundedCachingSamlClientDaoImpl}.</p>
+ *
+ * <p>Two mechanisms are combined:</p>
+ * <ul>
+ * <li>Existence check: names of all clients are read by {@link SamlClientDao#loadClientNames()} (a cheap query without LOBs) and kept for
+ * the time to live. A client not among them is not read at all. Once the names expire, they are read again by the next request asking for
+ * an unknown client, so a new client becomes available within the time to live.</li>
+ * <li>Negative cache: a name for which the real DAO has returned {@code null} is remembered for the time to live. The number of remembered
+ * names is bounded; the oldest ones are forgotten first.</li>
+ * </ul>
+ *
+ * <p>Hostile traffic therefore causes at most one read of client names per time to live, no matter how many distinct names it uses.</p>
+ *
+ * <p>It is a {@link StreamingSamlClientDao}, so that it does not hide streaming of the real DAO; if the real DAO cannot stream, the
+ * {@link SamlClientDaoFallbacks} are used.</p>
+ *
+ * @author jkacer
+ * @since 2.0.1
+ */
+public class NegativeCachingSamlClientDaoImpl implements StreamingSamlClientDao {
+
+	/** A DAO that performs actual reading. */
+	private final SamlClientDao realDao;
+
+	/** How long names of clients and unknown names are trusted, in nanoseconds. */
+	private final long timeToLiveNanos;
+
+	/** Maximum number of remembered unknown names. */
+	private final int maximumUnknownNames;
+
+	/** Source of time, in nanoseconds. */
+	private final LongSupplier clock;
+
+	/** Unknown names and the time they expire at, the oldest first. Guarded by itself. */
+	private final LinkedHashMap<String, Long> unknownNames = new LinkedHashMap<>();
+
+	/** Names of all clients, as last read. {@code null} if not read yet or invalidated. */
+	private volatile KnownNames knownNames;
+
+	/** Where rejected and passed reads are reported. */
+	private SamlClientMetrics metrics = NoOpSamlClientMetrics.INSTANCE;
+
+
+	// ------------------------------------------------------------------------------------------------------------------------------------
+
+
+	/**
+	 * Creates a new negative caching DAO.
+	 *
+	 * @param realDao
+	 *            A real DAO, which performs actual read operations.
+	 * @param timeToLive
+	 *            How long names of clients and unknown names are trusted. Must be positive.
+	 * @param timeToLiveUnit
+	 *            Time unit of the time to live.
+	 * @param maximumUnknownNames
+	 *            Maximum number of remembered unknown names. Must be positive.
+	 */
+	public NegativeCachingSamlClientDaoImpl(final SamlClientDao realDao, final long timeToLive, final TimeUnit timeToLiveUnit,
+			final int maximumUnknownNames) {
+		this(realDao, timeToLive, timeToLiveUnit, maximumUnknownNames, System::nanoTime);
+	}
+
+
+	/**
+	 * Creates a new negative caching DAO with a custom source of time. For tests.
+	 */
+	NegativeCachingSamlClientDaoImpl(final SamlClientDao realDao, final long timeToLive, final TimeUnit timeToLiveUnit,
+			final int maximumUnknownNames, final LongSupplier clock) {
+		super();
+		if (realDao == null) {
+			throw new IllegalArgumentException("Real DAO must not be null.");
+		}
+		if (timeToLive <= 0) {
+			throw new IllegalArgumentException("Time to live must be positive.");
+		}
+		if (timeToLiveUnit == null) {
+			throw new IllegalArgumentException("Time to live unit must not be null.");
+		}
+		if (maximumUnknownNames <= 0) {
+			throw new IllegalArgumentException("Maximum number of unknown names must be positive.");
+		}
+		this.realDao = realDao;
+		this.timeToLiveNanos = timeToLiveUnit.toNanos(timeToLive);
+		this.maximumUnknownNames = maximumUnknownNames;
+		this.clock = clock;
+	}
+
+
+	/**
+	 * Sets where reads rejected or passed to the real DAO are reported, as hits and misses of the unknown names cache.
+	 *
+	 * @param metrics
+	 *            The metrics.
+	 */
+	public void setMetrics(final SamlClientMetrics metrics) {
+		if (metrics == null) {
+			throw new IllegalArgumentException("Metrics must not be null.");
+		}
+		this.metrics = metrics;
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Always read by the real DAO. The names read are used for the existence check.
+	 */
+	@Override
+	public List<String> loadClientNames() {
+		final List<String> names = realDao.loadClientNames();
+		knownNames = new KnownNames(names, clock.getAsLong() + timeToLiveNanos);
+		return names;
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Always read by the real DAO.
+	 */
+	@Override
+	public List<DbLoadedSamlClientConfigurationDto> loadAllClients() {
+		return realDao.loadAllClients();
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Always streamed by the real DAO.
+	 */
+	@Override
+	public int streamAllClients(final Consumer<? super DbLoadedSamlClientConfigurationDto> consumer) {
+		if (consumer == null) {
+			throw new IllegalArgumentException("Consumer must not be null.");
+		}
+		if (!(realDao instanceof StreamingSamlClientDao)) {
+			return SamlClientDaoFallbacks.streamAll(loadAllClients(), consumer);
+		}
+		return ((StreamingSamlClientDao) realDao).streamAllClients(consumer);
+	}
+
+
+	@Override
+	public DbLoadedSamlClientConfigurationDto loadClient(final String clientName) {
+		if (isKnownToBeUnknown(clientName)) {
+			metrics.recordCacheHit(SamlClientMetrics.CACHE_UNKNOWN_CLIENT_NAMES);
+			return null;
+		}
+
+		metrics.recordCacheMiss(SamlClientMetrics.CACHE_UNKNOWN_CLIENT_NAMES);
+		final DbLoadedSamlClientConfigurationDto loaded = realDao.loadClient(clientName);
+		if (loaded == null) {
+			rememberUnknown(clientName);
+		}
+		return loaded;
+	}
+
+
+	/**
+	 * Forgets that a client is unknown, e.g. because it has just been added.
+	 *
+	 * @param clientName
+	 *            Name of the client.
+	 */
+	public void invalidate(final String clientName) {
+		knownNames = null;
+		synchronized (unknownNames) {
+			unknownNames.remove(clientName);
+		}
+	}
+
+
+	/**
+	 * Forgets all unknown names and names of all clients.
+	 */
+	public void invalidateAll() {
+		knownNames = null;
+		synchronized (unknownNames) {
+			unknownNames.clear();
+		}
+	}
+
+
+	/**
+	 * Returns the number of remembered unknown names, including expired ones not dropped yet.
+	 *
+	 * @return The number of names.
+	 */
+	public int getUnknownNamesCount() {
+		synchronized (unknownNames) {
+			return unknownNames.size();
+		}
+	}
+
+
+	/**
+	 * Decides whether a client surely does not exist, without reading its configuration.
+	 *
+	 * @param clientName
+	 *            Name of the client.
+	 *
+	 * @return {@code true} if the client does not exist, {@code false} if it may exist.
+	 */
+	private boolean isKnownToBeUnknown(final String clientName) {
+		final long now = clock.getAsLong();
+		synchronized (unknownNames) {
+			final Long expiresAt = unknownNames.get(clientName);
+			if (expiresAt != null) {
+				if (now - expiresAt.longValue() < 0) {
+					return true;
+				}
+				unknownNames.remove(clientName);
+			}
+		}
+
+		KnownNames names = knownNames;
+		if (names == null || names.isExpired(now)) {
+			synchronized (this) {
+				// Just one thread reads the names; the others use what it has read.
+				names = knownNames;
+				if (names == null || names.isExpired(now)) {
+					loadClientNames();
+					names = knownNames;
+				}
+			}
+		}
+		if (!names.contains(clientName)) {
+			rememberUnknown(clientName);
+			return true;
+		}
+		return false;
+	}
+
+
+	private void rememberUnknown(final String clientName) {
+		final long expiresAt = clock.getAsLong() + timeToLiveNanos;
+		synchronized (unknownNames) {
+			unknownNames.remove(clientName);
+			unknownNames.put(clientName, Long.valueOf(expiresAt));
+			final Iterator<Map.Entry<String, Long>> oldest = unknownNames.entrySet().iterator();
+			while (unknownNames.size() > maximumUnknownNames && oldest.hasNext()) {
+				oldest.next();
+				oldest.remove();
+			}
+		}
+	}
+
+
+	/**
+	 * Names of all clients read at one moment, with their expiration time.
+	 *
+	 * @author jkacer
+	 */
+	private static final class KnownNames {
+
+		private final Set<String> names;
+		private final long expiresAt;
+
+		KnownNames(final List<String> names, final long expiresAt) {
+			this.names = Collections.unmodifiableSet(new HashSet<>(names));
+			this.expiresAt = expiresAt;
+		}
+
+		boolean contains(final String name) {
+			return names.contains(name);
+		}
+
+		boolean isExpired(final long now) {
+			return now - expiresAt >= 0;
+		}
+	}
+
+}
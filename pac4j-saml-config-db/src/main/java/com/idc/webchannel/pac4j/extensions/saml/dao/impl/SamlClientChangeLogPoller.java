@@ -0,0 +1,317 @@
+package com.idc.webchannel.pac4j.extensions.saml.dao.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.SamlClientChangeListener;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.SamlClientChangeLogDao;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.SamlClientChangeLogEntriesDto;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.SamlClientChangeLogEntryDto;
+
+
+/**
+ * <p>Polls a {@link SamlClientChangeLogDao} and notifies listeners of the clients changed since the previous poll, so that each node
+ * reloads just those clients instead of re-reading the whole configuration table.</p>
+ *
+ * <p>A poll reads the latest sequence of the log first, which is a single indexed value; the changes are read if it has grown. The first
+ * poll just remembers the latest sequence, changes recorded before it are expected to be read by the initial load of the caches.</p>
+ *
+ * <p>Sequences need not be committed in their order: with several writing nodes, a change may be committed with a sequence lower than one
+ * already read. Whenever changes are read, the changes within a window below the last read sequence are therefore read too (see
+ * {@link #setLateChangeWindow(long)}), a range of the primary key, and those not processed yet are processed. A late change committed
+ * while the latest sequence does not grow is found by re-reading the window every few polls (see
+ * {@link #setLateChangeCheckInterval(int)}); in between, polls of an idle log read just the latest sequence.</p>
+ *
+ * <p>Listeners are notified in the order given, so a cache should precede the clients built from it, for example:</p>
+ *
+ * <pre>
+new SamlClientChangeLogPoller(changeLogDao, 10, TimeUnit.SECONDS, cachingDao::reloadClient, clients::reloadClient);
+ * </pre>
+ *
+ * <p>A listener signals that it cannot process a change by throwing an exception. The change is then not passed to the following listeners
+ * and the poll stops at it; the next poll retries it, together with the changes after it. A client changed several times is processed
+ * once per poll. A failing poll or listener is logged and does not stop polling. Call {@link #shutdown()} to stop the background
+ * thread.</p>
+ *
+ * @author jkacer
+ * @since 2.0.1
+ */
+public class SamlClientChangeLogPoller {
+
+	/** Default number of sequences below the last read one whose changes are read again by each poll. */
+	public static final long DEFAULT_LATE_CHANGE_WINDOW = 100L;
+
+	/** Default number of polls after which the late change window is read again even if the latest sequence has not grown. */
+	public static final int DEFAULT_LATE_CHANGE_CHECK_INTERVAL = 10;
+
+	private final Logger logger = LoggerFactory.getLogger(SamlClientChangeLogPoller.class);
+
+	/** The polled change log. */
+	private final SamlClientChangeLogDao changeLogDao;
+
+	/** Listeners notified of changes, in order. Unmodifiable. */
+	private final List<SamlClientChangeListener> listeners;
+
+	/** Scheduler of polls. {@code null} if polls are only started by {@link #poll()}. */
+	private final ScheduledExecutorService pollScheduler;
+
+	/** Number of sequences below {@link #sequence} whose changes are read again by each poll. Guarded by {@code this}. */
+	private long lateChangeWindow = DEFAULT_LATE_CHANGE_WINDOW;
+
+	/** Number of polls after which the late change window is read again. Guarded by {@code this}. */
+	private int lateChangeCheckInterval = DEFAULT_LATE_CHANGE_CHECK_INTERVAL;
+
+	/** Number of polls since the changes have been read last time. Guarded by {@code this}. */
+	private int pollsSinceChangesRead;
+
+	/** Whether a change failed to be processed and must be retried. Guarded by {@code this}. */
+	private boolean retryPending;
+
+	/** Sequence up to which all changes read have been processed. Guarded by {@code this}. */
+	private long sequence;
+
+	/** Sequences of the processed changes within the late change window. Guarded by {@code this}. */
+	private final Set<Long> processedSequences = new HashSet<>();
+
+	/** Whether the first poll has read the sequence. Guarded by {@code this}. */
+	private boolean started;
+
+
+	// ------------------------------------------------------------------------------------------------------------------------------------
+
+
+	/**
+	 * Creates a new poller that polls only when {@link #poll()} is called.
+	 *
+	 * @param changeLogDao
+	 *            The polled change log.
+	 * @param listeners
+	 *            Listeners notified of changes, in order.
+	 */
+	public SamlClientChangeLogPoller(final SamlClientChangeLogDao changeLogDao, final SamlClientChangeListener... listeners) {
+		super();
+		this.changeLogDao = checkChangeLogDao(changeLogDao);
+		this.listeners = checkListeners(listeners);
+		this.pollScheduler = null;
+	}
+
+
+	/**
+	 * Creates a new poller that polls periodically in the background. The first poll is started immediately.
+	 *
+	 * @param changeLogDao
+	 *            The polled change log.
+	 * @param pollInterval
+	 *            Delay between the end of one poll and the start of the next one. Must be positive.
+	 * @param pollIntervalUnit
+	 *            Time unit of the poll interval.
+	 * @param listeners
+	 *            Listeners notified of changes, in order.
+	 */
+	public SamlClientChangeLogPoller(final SamlClientChangeLogDao changeLogDao, final long pollInterval, final TimeUnit pollIntervalUnit,
+			final SamlClientChangeListener... listeners) {
+		super();
+		if (pollInterval <= 0) {
+			throw new IllegalArgumentException("Poll interval must be positive.");
+		}
+		if (pollIntervalUnit == null) {
+			throw new IllegalArgumentException("Poll interval unit must not be null.");
+		}
+		this.changeLogDao = checkChangeLogDao(changeLogDao);
+		this.listeners = checkListeners(listeners);
+		this.pollScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			final Thread t = new Thread(r, "saml-client-change-log-poll");
+			t.setDaemon(true);
+			return t;
+		});
+		this.pollScheduler.scheduleWithFixedDelay(this::pollQuietly, 0L, pollInterval, pollIntervalUnit);
+	}
+
+
+	/**
+	 * Sets the number of sequences below the last read one whose changes are read again by each poll, to catch changes committed after
+	 * changes with higher sequences. It should cover the sequences that can be assigned while a change is being committed, e.g. the
+	 * sequence caches of all writing database nodes. Zero disables the re-reading. The default is {@link #DEFAULT_LATE_CHANGE_WINDOW}.
+	 *
+	 * @param lateChangeWindow
+	 *            Number of sequences. Must not be negative.
+	 */
+	public synchronized void setLateChangeWindow(final long lateChangeWindow) {
+		if (lateChangeWindow < 0) {
+			throw new IllegalArgumentException("Late change window must not be negative.");
+		}
+		this.lateChangeWindow = lateChangeWindow;
+	}
+
+
+	/**
+	 * Sets after how many polls the late change window is read again even if the latest sequence has not grown. Each such poll runs a range
+	 * query over the window besides reading the latest sequence; a late change committed while the log is idle is found by it at the
+	 * latest. The default is {@link #DEFAULT_LATE_CHANGE_CHECK_INTERVAL}.
+	 *
+	 * @param lateChangeCheckInterval
+	 *            Number of polls. Must be positive.
+	 */
+	public synchronized void setLateChangeCheckInterval(final int lateChangeCheckInterval) {
+		if (lateChangeCheckInterval <= 0) {
+			throw new IllegalArgumentException("Late change check interval must be positive.");
+		}
+		this.lateChangeCheckInterval = lateChangeCheckInterval;
+	}
+
+
+	/**
+	 * Polls the change log once and notifies the listeners of the changed clients. If a listener fails, the poll stops at the failed
+	 * change, which is retried by the next poll.
+	 *
+	 * @return Number of processed changed clients.
+	 */
+	public synchronized int poll() {
+		final long latest = changeLogDao.loadLatestSequence();
+		if (!started) {
+			sequence = latest;
+			// Changes within the window are covered by the initial load, they must not be taken for late ones.
+			if (lateChangeWindow > 0) {
+				for (SamlClientChangeLogEntryDto entry: changeLogDao.loadChangesSince(windowStart()).getEntries()) {
+					processedSequences.add(Long.valueOf(entry.getSequence()));
+				}
+			}
+			started = true;
+			logger.debug("Polling of the SAML client change log starts after sequence {}.", latest);
+			return 0;
+		}
+		pollsSinceChangesRead++;
+		final boolean lateChangeCheckDue = (lateChangeWindow > 0) && (pollsSinceChangesRead >= lateChangeCheckInterval);
+		if ((latest <= sequence) && !retryPending && !lateChangeCheckDue) {
+			return 0;
+		}
+		pollsSinceChangesRead = 0;
+
+		final SamlClientChangeLogEntriesDto entries = changeLogDao.loadChangesSince(windowStart());
+		final Set<String> processedClientNames = new HashSet<>();
+		for (SamlClientChangeLogEntryDto entry: entries.getEntries()) {
+			final Long entrySequence = Long.valueOf(entry.getSequence());
+			if (processedSequences.contains(entrySequence)) {
+				continue;
+			}
+			// A client already reloaded by this poll has been read after this change too.
+			if (!processedClientNames.contains(entry.getClientName())) {
+				if (!notifyListeners(entry)) {
+					retryPending = true;
+					forgetProcessedSequences();
+					return processedClientNames.size();
+				}
+				processedClientNames.add(entry.getClientName());
+			}
+			processedSequences.add(entrySequence);
+			sequence = Math.max(sequence, entry.getSequence());
+		}
+		// The latest sequence may belong to another environment; it is skipped so that it is not polled again.
+		sequence = Math.max(sequence, Math.max(latest, entries.getSequence()));
+		retryPending = false;
+		forgetProcessedSequences();
+		return processedClientNames.size();
+	}
+
+
+	/**
+	 * Returns the sequence read by the previous poll.
+	 *
+	 * @return The sequence.
+	 */
+	public synchronized long getSequence() {
+		return sequence;
+	}
+
+
+	/**
+	 * Stops background polls, if there are any.
+	 */
+	public void shutdown() {
+		if (pollScheduler != null) {
+			pollScheduler.shutdownNow();
+		}
+	}
+
+
+	/**
+	 * Notifies all listeners of a change, in order, until one of them fails.
+	 *
+	 * @param entry
+	 *            The change.
+	 *
+	 * @return {@code true} if all listeners have processed the change.
+	 */
+	private boolean notifyListeners(final SamlClientChangeLogEntryDto entry) {
+		logger.info("SAML client '{}' has been changed, reloading it.", entry.getClientName());
+		for (SamlClientChangeListener listener: listeners) {
+			try {
+				listener.clientChanged(entry.getClientName());
+			} catch (RuntimeException e) {
+				logger.warn("Listener failed to process the change of SAML client '" + entry.getClientName() + "' with sequence "
+						+ entry.getSequence() + ", it will be retried by the next poll.", e);
+				return false;
+			}
+		}
+		return true;
+	}
+
+
+	/**
+	 * Returns the sequence after which changes are read: the window below the last read sequence.
+	 *
+	 * @return The sequence.
+	 */
+	private long windowStart() {
+		return Math.max(SamlClientChangeLogDao.INITIAL_SEQUENCE, sequence - lateChangeWindow);
+	}
+
+
+	/**
+	 * Forgets processed sequences below the window; they are not read again.
+	 */
+	private void forgetProcessedSequences() {
+		final long start = windowStart();
+		processedSequences.removeIf(processed -> processed.longValue() <= start);
+	}
+
+
+	private void pollQuietly() {
+		try {
+			poll();
+		} catch (RuntimeException e) {
+			logger.warn("Polling of the SAML client change log failed.", e);
+		}
+	}
+
+
+	private static SamlClientChangeLogDao checkChangeLogDao(final SamlClientChangeLogDao changeLogDao) {
+		if (changeLogDao == null) {
+			throw new IllegalArgumentException("Change log DAO must not be null.");
+		}
+		return changeLogDao;
+	}
+
+
+	private static List<SamlClientChangeListener> checkListeners(final SamlClientChangeListener[] listeners) {
+		if ((listeners == null) || (listeners.length == 0)) {
+			throw new IllegalArgumentException("Listeners must not be empty.");
+		}
+		final List<SamlClientChangeListener> checked = new ArrayList<>(Arrays.asList(listeners));
+		if (checked.contains(null)) {
+			throw new IllegalArgumentException("Listeners must not contain null.");
+		}
+		return Collections.unmodifiableList(checked);
+	}
+
+}
@@ -0,0 +1,67 @@
+package com.idc.webchannel.pac4j.extensions.saml.dao.impl;
+
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.DbLoadedSamlClientConfigurationDto;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.IncrementalSamlClientDao;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.SamlClientConfigurationChangesDto;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.StreamingSamlClientDao;
+
+
+/**
+ * <p>Fallbacks used by DAOs wrapping another DAO, so that they can implement optional capabilities and do not hide them from the layers
+ * above when the wrapped DAO has them.</p>
+ *
+ * <p>If the wrapped DAO is not an {@link IncrementalSamlClientDao}, all configurations are returned as changed, with the watermark
+ * unchanged. If it is not a {@link StreamingSamlClientDao}, all configurations are read first and then handed over one by one.</p>
+ *
+ * @author jkacer
+ * @since 2.0.1
+ */
+final class SamlClientDaoFallbacks {
+
+	private SamlClientDaoFallbacks() {
+		super();
+	}
+
+
+	// ------------------------------------------------------------------------------------------------------------------------------------
+
+
+	/**
+	 * Presents all configurations as changes, for DAOs that cannot track changes.
+	 *
+	 * @param allClients
+	 *            All configurations.
+	 * @param watermark
+	 *            The watermark the changes have been asked for; it is kept.
+	 *
+	 * @return Changes containing all configurations.
+	 */
+	static SamlClientConfigurationChangesDto allAsChanges(final List<DbLoadedSamlClientConfigurationDto> allClients, final long watermark) {
+		final SamlClientConfigurationChangesDto all = new SamlClientConfigurationChangesDto();
+		all.setChangedClients(allClients);
+		all.setExistingClientNames(allClients.stream().map(DbLoadedSamlClientConfigurationDto::getClientName).collect(Collectors.toList()));
+		all.setWatermark(watermark);
+		return all;
+	}
+
+
+	/**
+	 * Hands already read configurations over one by one, for DAOs that cannot stream.
+	 *
+	 * @param allClients
+	 *            All configurations.
+	 * @param consumer
+	 *            Receives the configurations.
+	 *
+	 * @return Number of configurations handed over.
+	 */
+	static int streamAll(final List<DbLoadedSamlClientConfigurationDto> allClients, final Consumer<? super DbLoadedSamlClientConfigurationDto> consumer) {
+		allClients.forEach(consumer);
+		return allClients.size();
+	}
+
+}
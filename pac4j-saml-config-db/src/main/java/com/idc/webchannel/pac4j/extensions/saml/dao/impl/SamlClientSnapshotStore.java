@@ -0,0 +1,437 @@
+package com.idc.webchannel.pac4j.extensions.saml.dao.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.BinaryContent;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.BinaryContentInterner;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.DbLoadedSamlClientConfigurationDto;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.IncrementalSamlClientDao;
+
+
+/**
+ * <p>A local file holding the last known good set of SAML Client Configurations, so that an application can start and serve logins before
+ * (or without) reading them from the database. Used by {@link CachingSamlClientDaoImpl}.</p>
+ *
+ * <p>The file has a compact binary format: a header with a magic number, format version, flags, body length and CRC32 checksum of the body,
+ * followed by the body with the watermark and all configurations. A file with an unknown format or a wrong checksum is rejected. It is
+ * replaced atomically, so a crash while writing never leaves a damaged file behind.</p>
+ *
+ * <p>The configurations contain keystore passwords. The file is therefore created readable by its owner only (where the file system
+ * supports POSIX permissions; elsewhere the permissions of the directory apply) and, if a key is given, its body is encrypted by AES/GCM,
+ * which also detects any tampering.</p>
+ *
+ * @author jkacer
+ * @since 2.0.1
+ */
+public class SamlClientSnapshotStore {
+
+	/** Magic number at the start of the file: "P4JS". */
+	private static final int MAGIC = 0x50344A53;
+	/** Version of the file format. */
+	private static final byte FORMAT_VERSION = 2;
+	/** Flag of an encrypted body. */
+	private static final byte FLAG_ENCRYPTED = 1;
+	/** Length of the header: magic, format version, flags, body length and checksum. */
+	private static final int HEADER_LENGTH = 4 + 1 + 1 + 4 + 8;
+
+	/** Cipher encrypting the body. */
+	private static final String CIPHER = "AES/GCM/NoPadding";
+	/** Length of the GCM initialization vector, in bytes. */
+	private static final int IV_LENGTH = 12;
+	/** Length of the GCM authentication tag, in bits. */
+	private static final int TAG_LENGTH = 128;
+
+	/** Length written instead of a {@code null} string or array. */
+	private static final int NULL_LENGTH = -1;
+
+	/** The file. */
+	private final Path file;
+
+	/** AES key encrypting the body. {@code null} if the body is not encrypted. */
+	private final SecretKey key;
+
+	/** Source of initialization vectors. */
+	private final SecureRandom random = new SecureRandom();
+
+	/** Interner of the LOB contents read. */
+	private volatile BinaryContentInterner contentInterner = new BinaryContentInterner();
+
+
+	// ------------------------------------------------------------------------------------------------------------------------------------
+
+
+	/**
+	 * Creates a new store of unencrypted snapshots.
+	 *
+	 * @param file
+	 *            The file. Need not exist yet; its directory must.
+	 */
+	public SamlClientSnapshotStore(final Path file) {
+		this(file, null);
+	}
+
+
+	/**
+	 * Creates a new store of encrypted snapshots.
+	 *
+	 * @param file
+	 *            The file. Need not exist yet; its directory must.
+	 * @param key
+	 *            AES key encrypting the snapshots. If {@code null}, they are not encrypted.
+	 */
+	public SamlClientSnapshotStore(final Path file, final SecretKey key) {
+		super();
+		if (file == null) {
+			throw new IllegalArgumentException("File must not be null.");
+		}
+		this.file = file;
+		this.key = key;
+	}
+
+
+	/**
+	 * Sets the interner deduplicating keystores and metadata documents read. Should be shared with the database DAO, so that the
+	 * configurations read from the database later share the LOBs with those read from the snapshot.
+	 *
+	 * @param contentInterner
+	 *            The interner.
+	 */
+	public void setContentInterner(final BinaryContentInterner contentInterner) {
+		if (contentInterner == null) {
+			throw new IllegalArgumentException("Content interner must not be null.");
+		}
+		this.contentInterner = contentInterner;
+	}
+
+
+	public Path getFile() {
+		return file;
+	}
+
+
+	/**
+	 * Reads the snapshot.
+	 *
+	 * @return The snapshot or {@code null} if the file does not exist.
+	 *
+	 * @throws IOException
+	 *             If the file cannot be read, has an unknown format, is damaged or cannot be decrypted.
+	 */
+	public Snapshot read() throws IOException {
+		if (!Files.exists(file)) {
+			return null;
+		}
+
+		try {
+			return parse(ByteBuffer.wrap(Files.readAllBytes(file)));
+		} catch (BufferUnderflowException | IllegalArgumentException e) {
+			throw new IOException("Snapshot file " + file + " is damaged.", e);
+		}
+	}
+
+
+	/**
+	 * Replaces the snapshot.
+	 *
+	 * @param configurations
+	 *            All configurations.
+	 * @param watermark
+	 *            Watermark of an incremental DAO at the time of reading the configurations, or
+	 *            {@link IncrementalSamlClientDao#INITIAL_WATERMARK}.
+	 *
+	 * @throws IOException
+	 *             If the file cannot be written.
+	 */
+	public synchronized void write(final List<DbLoadedSamlClientConfigurationDto> configurations, final long watermark) throws IOException {
+		if (configurations == null) {
+			throw new IllegalArgumentException("Configurations must not be null.");
+		}
+
+		byte[] body = serialize(configurations, watermark);
+		if (key != null) {
+			body = encrypt(body);
+		}
+		final CRC32 checksum = new CRC32();
+		checksum.update(body);
+
+		final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+		header.putInt(MAGIC);
+		header.put(FORMAT_VERSION);
+		header.put((key == null) ? 0 : FLAG_ENCRYPTED);
+		header.putInt(body.length);
+		header.putLong(checksum.getValue());
+		header.flip();
+
+		final Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+		Files.deleteIfExists(temporary);
+		try (FileChannel channel = FileChannel.open(temporary, EnumSet.of(StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE),
+				ownerOnly(temporary))) {
+			final ByteBuffer bodyBuffer = ByteBuffer.wrap(body);
+			while (header.hasRemaining() || bodyBuffer.hasRemaining()) {
+				channel.write(new ByteBuffer[] {header, bodyBuffer});
+			}
+			channel.force(true);
+		}
+		try {
+			Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+
+	/**
+	 * Parses the whole file.
+	 *
+	 * @param content
+	 *            Content of the file.
+	 *
+	 * @return The snapshot.
+	 *
+	 * @throws IOException
+	 *             If the file has an unknown format, is damaged or cannot be decrypted.
+	 */
+	private Snapshot parse(final ByteBuffer content) throws IOException {
+		if (content.remaining() < HEADER_LENGTH || content.getInt() != MAGIC) {
+			throw new IOException("File " + file + " is not a snapshot of SAML client configurations.");
+		}
+		final byte formatVersion = content.get();
+		if (formatVersion != FORMAT_VERSION) {
+			throw new IOException("Snapshot file " + file + " has an unsupported format version " + formatVersion + ".");
+		}
+		final boolean encrypted = (content.get() & FLAG_ENCRYPTED) != 0;
+		final int bodyLength = content.getInt();
+		final long expectedChecksum = content.getLong();
+		if (bodyLength != content.remaining()) {
+			throw new IOException("Snapshot file " + file + " is damaged.");
+		}
+
+		final CRC32 checksum = new CRC32();
+		checksum.update(content.duplicate());
+		if (checksum.getValue() != expectedChecksum) {
+			throw new IOException("Snapshot file " + file + " is damaged, its checksum does not match.");
+		}
+
+		ByteBuffer body = content;
+		if (encrypted) {
+			if (key == null) {
+				throw new IOException("Snapshot file " + file + " is encrypted, but no key is given.");
+			}
+			body = ByteBuffer.wrap(decrypt(content));
+		} else if (key != null) {
+			throw new IOException("Snapshot file " + file + " is not encrypted.");
+		}
+		return deserialize(body);
+	}
+
+
+	private static byte[] serialize(final List<DbLoadedSamlClientConfigurationDto> configurations, final long watermark) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeLong(watermark);
+			out.writeInt(configurations.size());
+			for (DbLoadedSamlClientConfigurationDto single: configurations) {
+				writeString(out, single.getClientName());
+				writeString(out, single.getEnvironment());
+				writeContent(out, single.getKeystoreContent());
+				writeString(out, single.getKeystorePassword());
+				writeString(out, single.getKeystoreAlias());
+				writeString(out, single.getPrivateKeyPassword());
+				writeContent(out, single.getIdentityProviderMetadataContent());
+				writeString(out, single.getIdentityProviderEntityId());
+				writeString(out, single.getServiceProviderEntityId());
+				out.writeInt(single.getMaximumAuthenticationLifetime());
+				writeString(out, single.getDestinationBindingType());
+				out.writeLong(single.getVersion());
+				writeString(out, single.getSignatureAlgorithms());
+				writeString(out, single.getSignatureReferenceDigestMethods());
+			}
+		}
+		return bytes.toByteArray();
+	}
+
+
+	private Snapshot deserialize(final ByteBuffer body) throws IOException {
+		final BinaryContentInterner interner = contentInterner;
+		final long watermark = body.getLong();
+		final int count = body.getInt();
+		if (count < 0) {
+			throw new IOException("Snapshot file " + file + " is damaged.");
+		}
+
+		final List<DbLoadedSamlClientConfigurationDto> configurations = new ArrayList<>(Math.min(count, body.remaining()));
+		for (int i = 0; i < count; i++) {
+			final DbLoadedSamlClientConfigurationDto single = new DbLoadedSamlClientConfigurationDto();
+			single.setClientName(readString(body));
+			single.setEnvironment(readString(body));
+			single.setKeystoreContent(interner.intern(readBytes(body)));
+			single.setKeystorePassword(readString(body));
+			single.setKeystoreAlias(readString(body));
+			single.setPrivateKeyPassword(readString(body));
+			single.setIdentityProviderMetadataContent(interner.intern(readBytes(body)));
+			single.setIdentityProviderEntityId(readString(body));
+			single.setServiceProviderEntityId(readString(body));
+			single.setMaximumAuthenticationLifetime(body.getInt());
+			single.setDestinationBindingType(readString(body));
+			single.setVersion(body.getLong());
+			single.setSignatureAlgorithms(readString(body));
+			single.setSignatureReferenceDigestMethods(readString(body));
+			configurations.add(single);
+		}
+		if (body.hasRemaining()) {
+			throw new IOException("Snapshot file " + file + " is damaged.");
+		}
+		return new Snapshot(configurations, watermark);
+	}
+
+
+	private byte[] encrypt(final byte[] plain) throws IOException {
+		final byte[] iv = new byte[IV_LENGTH];
+		random.nextBytes(iv);
+		try {
+			final Cipher cipher = Cipher.getInstance(CIPHER);
+			cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH, iv));
+			final byte[] encrypted = new byte[IV_LENGTH + cipher.getOutputSize(plain.length)];
+			System.arraycopy(iv, 0, encrypted, 0, IV_LENGTH);
+			cipher.doFinal(plain, 0, plain.length, encrypted, IV_LENGTH);
+			return encrypted;
+		} catch (GeneralSecurityException e) {
+			throw new IOException("Snapshot of SAML client configurations cannot be encrypted.", e);
+		}
+	}
+
+
+	private byte[] decrypt(final ByteBuffer encrypted) throws IOException {
+		if (encrypted.remaining() < IV_LENGTH) {
+			throw new IOException("Snapshot file " + file + " is damaged.");
+		}
+		final byte[] iv = new byte[IV_LENGTH];
+		encrypted.get(iv);
+		try {
+			final Cipher cipher = Cipher.getInstance(CIPHER);
+			cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH, iv));
+			final byte[] input = new byte[encrypted.remaining()];
+			encrypted.get(input);
+			return cipher.doFinal(input);
+		} catch (GeneralSecurityException e) {
+			throw new IOException("Snapshot file " + file + " cannot be decrypted, it is damaged or the key is wrong.", e);
+		}
+	}
+
+
+	/**
+	 * Returns attributes creating a file readable and writable by its owner only.
+	 *
+	 * @param path
+	 *            The file.
+	 *
+	 * @return The attributes; none if the file system does not support POSIX permissions.
+	 */
+	private static FileAttribute<?>[] ownerOnly(final Path path) {
+		if (!path.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+			return new FileAttribute<?>[0];
+		}
+		return new FileAttribute<?>[] {PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------"))};
+	}
+
+
+	private static void writeString(final DataOutputStream out, final String value) throws IOException {
+		writeBytes(out, (value == null) ? null : value.getBytes(StandardCharsets.UTF_8));
+	}
+
+
+	private static void writeBytes(final DataOutputStream out, final byte[] value) throws IOException {
+		if (value == null) {
+			out.writeInt(NULL_LENGTH);
+		} else {
+			out.writeInt(value.length);
+			out.write(value);
+		}
+	}
+
+
+	private static void writeContent(final DataOutputStream out, final BinaryContent value) throws IOException {
+		if (value == null) {
+			out.writeInt(NULL_LENGTH);
+		} else {
+			out.writeInt(value.size());
+			Channels.newChannel(out).write(value.asReadOnlyBuffer());
+		}
+	}
+
+
+	private static String readString(final ByteBuffer in) {
+		final byte[] bytes = readBytes(in);
+		return (bytes == null) ? null : new String(bytes, StandardCharsets.UTF_8);
+	}
+
+
+	private static byte[] readBytes(final ByteBuffer in) {
+		final int length = in.getInt();
+		if (length == NULL_LENGTH) {
+			return null;
+		}
+		if (length < 0 || length > in.remaining()) {
+			throw new IllegalArgumentException("Invalid length " + length + ".");
+		}
+		final byte[] bytes = new byte[length];
+		in.get(bytes);
+		return bytes;
+	}
+
+
+	/**
+	 * Configurations read from a snapshot file.
+	 *
+	 * @author jkacer
+	 */
+	public static final class Snapshot {
+
+		/** All configurations. Unmodifiable. */
+		private final List<DbLoadedSamlClientConfigurationDto> configurations;
+		/** Watermark of an incremental DAO at the time of reading the configurations. */
+		private final long watermark;
+
+
+		Snapshot(final List<DbLoadedSamlClientConfigurationDto> configurations, final long watermark) {
+			this.configurations = Collections.unmodifiableList(configurations);
+			this.watermark = watermark;
+		}
+
+
+		public List<DbLoadedSamlClientConfigurationDto> getConfigurations() {
+			return configurations;
+		}
+
+
+		public long getWatermark() {
+			return watermark;
+		}
+	}
+
+}
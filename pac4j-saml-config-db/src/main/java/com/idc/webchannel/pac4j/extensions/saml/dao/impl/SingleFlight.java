@@ -0,0 +1,86 @@
+package com.idc.webchannel.pac4j.extensions.saml.dao.impl;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+
+/**
+ * Runs at most one load per key at a time. Threads asking for a key that is being loaded wait for the running load and get its result
+ * (or its exception) instead of starting their own. Results are not kept once the load has finished.
+ *
+ * @param <K>
+ *            Type of keys.
+ * @param <V>
+ *            Type of loaded values.
+ *
+ * @author jkacer
+ * @since 2.0.1
+ */
+final class SingleFlight<K, V> {
+
+	/** Loads in progress. */
+	private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+
+	// ------------------------------------------------------------------------------------------------------------------------------------
+
+
+	/**
+	 * Loads a value, or waits for the load of the same key started by another thread.
+	 *
+	 * @param key
+	 *            The key.
+	 * @param loader
+	 *            Loads the value. Called by the first thread only.
+	 *
+	 * @return The loaded value, may be {@code null}.
+	 */
+	V load(final K key, final Supplier<V> loader) {
+		final CompletableFuture<V> mine = new CompletableFuture<>();
+		final CompletableFuture<V> running = inFlight.putIfAbsent(key, mine);
+		if (running != null) {
+			return join(running);
+		}
+
+		try {
+			final V value = loader.get();
+			mine.complete(value);
+			return value;
+		} catch (RuntimeException | Error e) {
+			mine.completeExceptionally(e);
+			throw e;
+		} finally {
+			inFlight.remove(key, mine);
+		}
+	}
+
+
+	/**
+	 * Returns the number of loads in progress.
+	 *
+	 * @return The number of loads.
+	 */
+	int inFlightCount() {
+		return inFlight.size();
+	}
+
+
+	private static <V> V join(final CompletableFuture<V> running) {
+		try {
+			return running.join();
+		} catch (CompletionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw e;
+		}
+	}
+
+}
@@ -0,0 +1,162 @@
+package com.idc.webchannel.pac4j.extensions.saml.dao.impl;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.lang3.StringUtils;
+import org.pac4j.core.util.CommonHelper;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.SamlClientChangeLogDao;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.SamlClientChangeLogEntriesDto;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.SamlClientChangeLogEntryDto;
+
+
+/**
+ * <p>Implementation of {@link SamlClientChangeLogDao} based on Spring JDBC Template.</p>
+ *
+ * <p>It requires a table in a relational database with the following structure:</p>
+ * <ul>
+ * <li>CHANGE_SEQ NUMBER - Sequence of the change; primary key, assigned by the database when a row is inserted</li>
+ * <li>ENVIRONMENT VARCHAR2 - Application environment of the changed client</li>
+ * <li>CLIENT_NAME VARCHAR2 - PAC4J name of the changed client</li>
+ * </ul>
+ *
+ * <p>Example of table definition in Oracle 10:</p>
+ *
+ * <pre>
+CREATE TABLE PAC4J_CFG_CHANGES
+(
+  CHANGE_SEQ NUMBER NOT NULL,
+  ENVIRONMENT VARCHAR2(20 CHAR) NOT NULL,
+  CLIENT_NAME VARCHAR2(200 CHAR) NOT NULL,
+  CHANGED_AT TIMESTAMP DEFAULT SYSTIMESTAMP NOT NULL,
+  CONSTRAINT PAC4J_CFG_CHANGES_PK PRIMARY KEY (CHANGE_SEQ) ENABLE
+);
+CREATE SEQUENCE PAC4J_CFG_CHANGES_SEQ START WITH 1 INCREMENT BY 1 CACHE 20 ORDER NOCYCLE;
+CREATE OR REPLACE TRIGGER PAC4J_CFG_CHANGES_TRG
+BEFORE INSERT ON PAC4J_CFG_CHANGES
+FOR EACH ROW
+BEGIN
+	:NEW.CHANGE_SEQ := PAC4J_CFG_CHANGES_SEQ.nextval;
+END;
+/
+ * </pre>
+ *
+ * <p>{@link #loadLatestSequence()} reads the maximum of the primary key, which databases answer from the end of the index without
+ * touching the table. Sequences need not be assigned in the order of commits (e.g. sequence caches of several database nodes); a change
+ * committed with a sequence lower than an already read one is read again by {@link SamlClientChangeLogPoller}, as long as it falls into
+ * its late change window.</p>
+ *
+ * <p>Old rows are not needed once all nodes have read them and may be deleted by a periodic job.</p>
+ *
+ * @author jkacer
+ * @since 2.0.1
+ */
+public class SpringJdbcTemplateSamlClientChangeLogDaoImpl implements SamlClientChangeLogDao {
+
+	/** SQL text of the statement to record a change. */
+	private static final String INSERT_CHANGE_SQL_TEXT = "insert into %s (Environment, Client_Name) values (?, ?)";
+	/** SQL text of the query to select the latest sequence. */
+	private static final String SELECT_LATEST_SEQUENCE_SQL_TEXT = "select max(Change_Seq) from %s";
+	/** SQL text of the query to select changes after a sequence. */
+	private static final String SELECT_CHANGES_SQL_TEXT = "select Change_Seq, Client_Name from %s where (Change_Seq > ?) and (Environment = ?) order by Change_Seq";
+
+	/** A Spring JDBC template. */
+	private final JdbcTemplate template;
+
+	/** Environment name; to distinguish changes of different environments in a single table. */
+	private final String environment;
+
+	/** SQL text of the statement to record a change after filling in the table name. */
+	private final String insertChangeSqlText;
+	/** SQL text of the query to select the latest sequence after filling in the table name. */
+	private final String selectLatestSequenceSqlText;
+	/** SQL text of the query to select changes after filling in the table name. */
+	private final String selectChangesSqlText;
+
+	/** Parameter types to the statement recording a change: environment and client name. */
+	private final int[] insertChangeParameterTypes;
+	/** Parameter types to the query selecting changes: sequence and environment. */
+	private final int[] selectChangesParameterTypes;
+
+
+	// ------------------------------------------------------------------------------------------------------------------------------------
+
+
+	/**
+	 * Creates a new DAO.
+	 *
+	 * @param dataSource
+	 *            A data source.
+	 * @param tableName
+	 *            Name of the change log table.
+	 * @param environment
+	 *            Environment name; to distinguish changes of different environments in a single table.
+	 */
+	public SpringJdbcTemplateSamlClientChangeLogDaoImpl(final DataSource dataSource, final String tableName, final String environment) {
+		super();
+
+		CommonHelper.assertNotNull("dataSource", dataSource);
+		CommonHelper.assertNotBlank("tableName", tableName);
+		CommonHelper.assertNotBlank("environment", environment);
+
+		this.template = new JdbcTemplate(dataSource);
+		this.environment = environment;
+
+		this.insertChangeSqlText = String.format(INSERT_CHANGE_SQL_TEXT, tableName);
+		this.selectLatestSequenceSqlText = String.format(SELECT_LATEST_SEQUENCE_SQL_TEXT, tableName);
+		this.selectChangesSqlText = String.format(SELECT_CHANGES_SQL_TEXT, tableName);
+
+		this.insertChangeParameterTypes = new int[] {Types.VARCHAR, Types.VARCHAR};
+		this.selectChangesParameterTypes = new int[] {Types.BIGINT, Types.VARCHAR};
+	}
+
+
+	@Override
+	@Transactional
+	public void recordChange(final String clientName) {
+		if (StringUtils.isBlank(clientName)) {
+			throw new IllegalArgumentException("Client name must not be null or empty.");
+		}
+		template.update(insertChangeSqlText, new Object[] {environment, clientName}, insertChangeParameterTypes);
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * The latest sequence of all environments is read; it only tells whether {@link #loadChangesSince(long)} is worth calling.
+	 */
+	@Override
+	@Transactional(readOnly=true)
+	public long loadLatestSequence() {
+		final Long latest = template.queryForObject(selectLatestSequenceSqlText, Long.class);
+		return (latest == null) ? INITIAL_SEQUENCE : latest.longValue();
+	}
+
+
+	@Override
+	@Transactional(readOnly=true)
+	public SamlClientChangeLogEntriesDto loadChangesSince(final long sequence) {
+		final List<SamlClientChangeLogEntryDto> changes = new ArrayList<>();
+		final long[] latest = {sequence};
+		template.query(selectChangesSqlText, new Object[] {sequence, environment}, selectChangesParameterTypes, rs -> {
+			final SamlClientChangeLogEntryDto entry = new SamlClientChangeLogEntryDto();
+			entry.setSequence(rs.getLong("Change_Seq"));
+			entry.setClientName(rs.getString("Client_Name"));
+			latest[0] = Math.max(latest[0], entry.getSequence());
+			changes.add(entry);
+		});
+
+		final SamlClientChangeLogEntriesDto entries = new SamlClientChangeLogEntriesDto();
+		entries.setEntries(changes);
+		entries.setSequence(latest[0]);
+		return entries;
+	}
+
+}
@@ -1,286 +1,561 @@
-package com.idc.webchannel.pac4j.extensions.saml.dao.impl;
-
-import java.sql.ResultSet;
-import java.sql.SQLException;
-import java.sql.Types;
-import java.util.List;
-
-import javax.sql.DataSource;
-
-import org.apache.commons.lang3.StringUtils;
-import org.pac4j.core.util.CommonHelper;
-import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.core.RowMapper;
-import org.springframework.jdbc.support.lob.LobHandler;
-import org.springframework.transaction.annotation.Transactional;
-
-import com.idc.webchannel.pac4j.extensions.saml.dao.api.DbLoadedSamlClientConfigurationDto;
-import com.idc.webchannel.pac4j.extensions.saml.dao.api.SamlClientDao;
-
-
-/**
- * <p>Implementation of {@link SamlClientDao} based on Spring JDBC Template.</p>
- * 
- * <p>It requires a table in a relational database with the following structure:</p>
- * <ul>
- * <li>CLIENT_NAME VARCHAR - PAC4J client name; unique</li>
- * <li>ENVIRONMENT VARCHAR2 - Application environment to which this client configuration applies</li>
- * <li>KEYSTORE_DATA BLOB - JKS binary data; replacement of a JKS file on disk</li>
- * <li>KEYSTORE_PASSWORD - Password for the JKS keystore</li>
- * <li>KEYSTORE_ALIAS - Alias for the private key entry in the keystore</li>
- * <li>PRIVATE_KEY_PASSWORD VARCHAR2 - Password for a single alias (private key) in the JKS keystore</li>
- * <li>IDP_METADATA CLOB - IdP metadata in XML format</li>
- * <li>IDP_ENTITY_ID VARCHAR2 - IdP entity ID</li>
- * <li>SP_ENTITY_ID VARCHAR2 - SP entity ID</li>
- * <li>MAX_AUTH_LIFETIME NUMBER - Maximum authentication lifetime in seconds</li>
- * <li>DEST_BINDING_TYPE VARCHAR2 - Destination binding type as defined by SAML (POST or Redirect URIs)</li>
- * </ul>
- * 
- * <p>Example of table definition in Oracle 10:</p>
- * 
- * <pre>
-CREATE TABLE SAG_SAML_PAC4J_CLIENT_CFG 
-(
-  SSPCC_ID NUMBER NOT NULL,
-  CLIENT_NAME VARCHAR2(200 CHAR) NOT NULL,
-  ENVIRONMENT VARCHAR2(20 CHAR) NOT NULL,
-  KEYSTORE_DATA BLOB NOT NULL,
-  KEYSTORE_PASSWORD VARCHAR2(50 CHAR),
-  KEYSTORE_ALIAS VARCHAR2(20 CHAR) NOT NULL,
-  PRIVATE_KEY_PASSWORD VARCHAR2(50 CHAR),
-  IDP_METADATA CLOB NOT NULL,
-  IDP_ENTITY_ID VARCHAR2(200 CHAR) NOT NULL,
-  SP_ENTITY_ID VARCHAR2(200 CHAR) NOT NULL,
-  MAX_AUTH_LIFETIME NUMBER DEFAULT 3600 NOT NULL,
-  DEST_BINDING_TYPE VARCHAR2(200 CHAR),
-  CONSTRAINT SAG_SAML_PAC4J_CLIENT_CFG_PK PRIMARY KEY (SSPCC_ID) ENABLE,
-  CONSTRAINT SAG_SAML_PAC4J_CLIENT_CFG_UK1 UNIQUE (CLIENT_NAME,ENVIRONMENT) ENABLE,
-  CONSTRAINT SAG_SAML_PAC4J_CLIENT_CF_CHK1 CHECK (MAX_AUTH_LIFETIME &gt; 0) ENABLE
-);
-COMMENT ON COLUMN SAG_SAML_PAC4J_CLIENT_CFG.SSPCC_ID IS 'Primary key';
-COMMENT ON COLUMN SAG_SAML_PAC4J_CLIENT_CFG.CLIENT_NAME IS 'PAC4J client name; unique';
-COMMENT ON COLUMN SAG_SAML_PAC4J_CLIENT_CFG.ENVIRONMENT IS 'Application environment to which this client config applies';
-COMMENT ON COLUMN SAG_SAML_PAC4J_CLIENT_CFG.KEYSTORE_DATA IS 'JKS binary data; replacement of a JKS file on disk';
-COMMENT ON COLUMN SAG_SAML_PAC4J_CLIENT_CFG.KEYSTORE_PASSWORD IS 'Password for the JKS keystore';
-COMMENT ON COLUMN SAG_SAML_PAC4J_CLIENT_CFG.KEYSTORE_ALIAS IS 'Alias for the private key entry in the keystore';
-COMMENT ON COLUMN SAG_SAML_PAC4J_CLIENT_CFG.PRIVATE_KEY_PASSWORD IS 'Password for a single alias (private key) in the JKS keystore';
-COMMENT ON COLUMN SAG_SAML_PAC4J_CLIENT_CFG.IDP_METADATA IS 'IdP metadata in XML format';
-COMMENT ON COLUMN SAG_SAML_PAC4J_CLIENT_CFG.IDP_ENTITY_ID IS 'IdP entity ID';
-COMMENT ON COLUMN SAG_SAML_PAC4J_CLIENT_CFG.SP_ENTITY_ID IS 'SP entity ID';
-COMMENT ON COLUMN SAG_SAML_PAC4J_CLIENT_CFG.MAX_AUTH_LIFETIME IS 'Maximum authentication lifetime in seconds';
-COMMENT ON COLUMN SAG_SAML_PAC4J_CLIENT_CFG.DEST_BINDING_TYPE IS 'Destination binding type as defined by SAML (POST or Redirect URIs)';
- * </pre>
- *
- * <p>The table name must be configured; there is no default value.</p>
- * 
- * <p>Another property to be configured is the so-called "environment". Using the environment property, you can distinguish configuration
- * records for multiple environments where your application runs and still have the complete configuration in a single table and database.
- * Example: You can have environments "Development", "Test" and "Production".</p>
- * 
- * @author jkacer
- * @since 1.9.0
- */
-public class SpringJdbcTemplateSamlClientDaoImpl implements SamlClientDao {
-
-	/** SQL text of the query to select all client names. */
-	private static final String SELECT_ALL_NAMES_SQL_TEXT = "select Client_Name from %s where Environment = ?";
-	/** SQL text of the query to select all existing clients. */
-	private static final String SELECT_ALL_CLIENTS_SQL_TEXT = "select Client_Name, Environment, Keystore_Data, Keystore_Password, Keystore_Alias, Private_Key_Password, IdP_Metadata, IdP_Entity_ID, SP_Entity_ID, Max_Auth_Lifetime, Dest_Binding_Type from %s where Environment = ?";
-	/** SQL text of the query to select a single client by name. */
-	private static final String SELECT_SINGLE_CLIENT_SQL_TEXT = "select Client_Name, Environment, Keystore_Data, Keystore_Password, Keystore_Alias, Private_Key_Password, IdP_Metadata, IdP_Entity_ID, SP_Entity_ID, Max_Auth_Lifetime, Dest_Binding_Type from %s where (Environment = ?) and (Client_Name = ?)";
-	
-	/** Row mapper to read configuration rows and convert them to client names. */
-	private final OnlyNamesRowMapper onlyNamesRowMapper;
-	/** Row mapper to read configuration rows and convert them to objects. */
-	private final SamlClientConfigurationRowMapper fullRowMapper;
-
-	/** A Spring JDBC template. */
-	private final JdbcTemplate template;
-
-	/** Environment name; to distinguish records for different environments in a single table. */
-	private final String environment;
-
-	/** SQL text of the query to select all client names after filling in the table name. */
-	private final String selectAllNamesSqlText;
-	/** SQL text of the query to select all existing clients after filling in the table name. */
-	private final String selectAllClientsSqlText;
-	/** SQL text of the query to select a single client after filling in the table name. */
-	private final String selectSingleClientSqlText;
-
-	/** Parameters to the query selecting all names: environment. */
-	private final Object[] selectAllNamesParameters;
-	/** Parameters to the query selecting all clients: environment. */
-	private final Object[] selectAllClientsParameters;
-
-	/** Parameter types to the query selecting all names: environment. */
-	private final int[] selectAllNamesParameterTypes;
-	/** Parameter types to the query selecting all clients: environment. */
-	private final int[] selectAllClientsParameterTypes;
-	/** Parameter types to the query selecting a single client: environment and client name. */
-	private final int[] selectSingleClientParameterTypes;
-
-	
-	// ------------------------------------------------------------------------------------------------------------------------------------
-	
-	
-	/**
-	 * Creates a new DAO.
-	 * 
-	 * @param dataSource
-	 *            A data source.
-	 * @param lobHandler
-	 *            LOB handler able to read BLOBs and CLOBs. As of Oracle 10.2, DefaultLobHandler should work with standard setup out of the
-	 *            box. No need for OracleLobHandler.
-	 * @param tableName
-	 *            Name of the table containing configuration records.
-	 * @param environment
-	 *            Environment name; to distinguish records for different environments in a single table.
-	 */
-	public SpringJdbcTemplateSamlClientDaoImpl(final DataSource dataSource, final LobHandler lobHandler, final String tableName, final String environment) {
-		super();
-
-		CommonHelper.assertNotNull("dataSource", dataSource);
-		CommonHelper.assertNotNull("lobHandler", lobHandler);
-		CommonHelper.assertNotBlank("tableName", tableName);
-		CommonHelper.assertNotBlank("environment", environment);
-
-		this.onlyNamesRowMapper = new OnlyNamesRowMapper();
-		this.fullRowMapper = new SamlClientConfigurationRowMapper(lobHandler);
-		this.template = new JdbcTemplate(dataSource);
-		this.environment = environment;
-	
-		this.selectAllNamesSqlText = String.format(SELECT_ALL_NAMES_SQL_TEXT, tableName);
-		this.selectAllClientsSqlText = String.format(SELECT_ALL_CLIENTS_SQL_TEXT, tableName);
-		this.selectSingleClientSqlText = String.format(SELECT_SINGLE_CLIENT_SQL_TEXT, tableName);
-		
-		this.selectAllNamesParameters = new Object[] {environment};
-		this.selectAllClientsParameters = new Object[] {environment};
-		
-		this.selectAllNamesParameterTypes = new int[] {Types.VARCHAR};
-		this.selectAllClientsParameterTypes = new int[] {Types.VARCHAR};
-		this.selectSingleClientParameterTypes = new int[] {Types.VARCHAR, Types.VARCHAR};
-	}
-
-
-	/* (non-Javadoc)
-	 * @see org.pac4j.saml.dbclient.dao.api.SamlClientDao#loadClientNames()
-	 */
-	@Override
-	@Transactional(readOnly=true)
-	public List<String> loadClientNames() {
-		final List<String> names = template.query(selectAllNamesSqlText, selectAllNamesParameters, selectAllNamesParameterTypes, onlyNamesRowMapper);
-		return names;
-	}
-
-	
-	/* (non-Javadoc)
-	 * @see org.pac4j.saml.dbclient.dao.api.SamlClientDao#loadAllClients()
-	 */
-	@Override
-	@Transactional(readOnly=true)
-	public List<DbLoadedSamlClientConfigurationDto> loadAllClients() {
-		final List<DbLoadedSamlClientConfigurationDto> configurations = template.query(selectAllClientsSqlText, selectAllClientsParameters, selectAllClientsParameterTypes, fullRowMapper);
-		return configurations;
-	}
-	
-	
-	/* (non-Javadoc)
-	 * @see org.pac4j.saml.dbclient.dao.api.SamlClientDao#loadClient(java.lang.String)
-	 */
-	@Override
-	@Transactional(readOnly=true)
-	public DbLoadedSamlClientConfigurationDto loadClient(final String clientName) {
-		if (StringUtils.isBlank(clientName)) {
-			throw new IllegalArgumentException("Client name must not be null or empty.");
-		}
-		
-		final Object[] selectSingleClientParameters = new Object[] {environment, clientName};
-		final List<DbLoadedSamlClientConfigurationDto> configurations = template.query(selectSingleClientSqlText, selectSingleClientParameters, selectSingleClientParameterTypes, fullRowMapper);
-		if ((configurations != null) && (!configurations.isEmpty())) {
-			return configurations.get(0);
-		} else {
-			return null;
-		}
-	}
-	
-
-	/**
-	 * Spring JDBC row mapper to read configuration rows and convert them to objects of type {@link DbLoadedSamlClientConfigurationDto}.
-	 * 
-	 * @author jkacer
-	 */
-	private static class SamlClientConfigurationRowMapper implements RowMapper<DbLoadedSamlClientConfigurationDto> {
-
-		/**
-		 * LOB handler able to read BLOBs and CLOBs. As of Oracle 10.2, DefaultLobHandler should work with standard setup out of the box. No
-		 * need for OracleLobHandler.
-		 */
-		private final LobHandler lobHandler;
-
-		
-		/**
-		 * Creates a new row mapper.
-		 * 
-		 * @param lobHandler
-		 *            LOB handler able to read BLOBs and CLOBs.
-		 */
-		public SamlClientConfigurationRowMapper(final LobHandler lobHandler) {
-			super();
-			this.lobHandler = lobHandler;
-		}
-
-		
-		/* (non-Javadoc)
-		 * @see org.springframework.jdbc.core.RowMapper#mapRow(java.sql.ResultSet, int)
-		 */
-		@Override
-		public DbLoadedSamlClientConfigurationDto mapRow(ResultSet rs, int rowNumber) throws SQLException {
-			String clientName = rs.getString("Client_Name");
-			String environment = rs.getString("Environment");
-			byte[] keystoreBinaryData = lobHandler.getBlobAsBytes(rs, "Keystore_Data");
-			String keystorePassword = rs.getString("Keystore_Password");
-			String keystoreAlias = rs.getString("Keystore_Alias");
-			String privateKeyPassword = rs.getString("Private_Key_Password");
-			String identityProviderMetadata = lobHandler.getClobAsString(rs, "IdP_Metadata");
-			String identityProviderEntityId = rs.getString("IdP_Entity_ID");
-			String serviceProviderEntityId = rs.getString("SP_Entity_ID");
-			int maximumAuthenticationLifetime = rs.getInt("Max_Auth_Lifetime");
-			String destinationBindingType = rs.getString("Dest_Binding_Type");
-			
-			DbLoadedSamlClientConfigurationDto config = new DbLoadedSamlClientConfigurationDto();
-			config.setClientName(clientName);
-			config.setEnvironment(environment);
-			config.setKeystoreBinaryData(keystoreBinaryData);
-			config.setKeystorePassword(keystorePassword);
-			config.setKeystoreAlias(keystoreAlias);
-			config.setPrivateKeyPassword(privateKeyPassword);
-			config.setIdentityProviderMetadata(identityProviderMetadata);
-			config.setIdentityProviderEntityId(identityProviderEntityId);
-			config.setServiceProviderEntityId(serviceProviderEntityId);
-			config.setMaximumAuthenticationLifetime(maximumAuthenticationLifetime);
-			config.setDestinationBindingType(destinationBindingType);
-			
-			return config;
-		}
-
-	}
-
-	
-	/**
-	 * Spring JDBC row mapper to read configuration rows and extract client names from them.
-	 * 
-	 * @author jkacer
-	 */
-	private static class OnlyNamesRowMapper implements RowMapper<String> {
-
-		/* (non-Javadoc)
-		 * @see org.springframework.jdbc.core.RowMapper#mapRow(java.sql.ResultSet, int)
-		 */
-		@Override
-		public String mapRow(ResultSet rs, int rowNum) throws SQLException {
-			return rs.getString("Client_Name");
-		}
-		
-	}
-	
-}
+package com.idc.webchannel.pac4j.extensions.saml.dao.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.lang3.StringUtils;
+import org.pac4j.core.util.CommonHelper;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.support.lob.LobHandler;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.BinaryContentInterner;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.DbLoadedSamlClientConfigurationDto;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.IncrementalSamlClientDao;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.SamlClientConfigurationChangesDto;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.SamlClientDao;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.StreamingSamlClientDao;
+
+
+/**
+ * <p>Implementation of {@link SamlClientDao} based on Spring JDBC Template.</p>
+ * 
+ * <p>It requires a table in a relational database with the following structure:</p>
+ * <ul>
+ * <li>CLIENT_NAME VARCHAR - PAC4J client name; unique</li>
+ * <li>ENVIRONMENT VARCHAR2 - Application environment to which this client configuration applies</li>
+ * <li>KEYSTORE_DATA BLOB - JKS binary data; replacement of a JKS file on disk</li>
+ * <li>KEYSTORE_PASSWORD - Password for the JKS keystore</li>
+ * <li>KEYSTORE_ALIAS - Alias for the private key entry in the keystore</li>
+ * <li>PRIVATE_KEY_PASSWORD VARCHAR2 - Password for a single alias (private key) in the JKS keystore</li>
+ * <li>IDP_METADATA CLOB - IdP metadata in XML format</li>
+ * <li>IDP_ENTITY_ID VARCHAR2 - IdP entity ID</li>
+ * <li>SP_ENTITY_ID VARCHAR2 - SP entity ID</li>
+ * <li>MAX_AUTH_LIFETIME NUMBER - Maximum authentication lifetime in seconds</li>
+ * <li>DEST_BINDING_TYPE VARCHAR2 - Destination binding type as defined by SAML (POST or Redirect URIs)</li>
+ * </ul>
+ * 
+ * <p>Example of table definition in Oracle 10:</p>
+ * 
+ * <pre>
+CREATE TABLE SAG_SAML_PAC4J_CLIENT_CFG 
+(
+  SSPCC_ID NUMBER NOT NULL,
+  CLIENT_NAME VARCHAR2(200 CHAR) NOT NULL,
+  ENVIRONMENT VARCHAR2(20 CHAR) NOT NULL,
+  KEYSTORE_DATA BLOB NOT NULL,
+  KEYSTORE_PASSWORD VARCHAR2(50 CHAR),
+  KEYSTORE_ALIAS VARCHAR2(20 CHAR) NOT NULL,
+  PRIVATE_KEY_PASSWORD VARCHAR2(50 CHAR),
+  IDP_METADATA CLOB NOT NULL,
+  IDP_ENTITY_ID VARCHAR2(200 CHAR) NOT NULL,
+  SP_ENTITY_ID VARCHAR2(200 CHAR) NOT NULL,
+  MAX_AUTH_LIFETIME NUMBER DEFAULT 3600 NOT NULL,
+  DEST_BINDING_TYPE VARCHAR2(200 CHAR),
+  CONSTRAINT SAG_SAML_PAC4J_CLIENT_CFG_PK PRIMARY KEY (SSPCC_ID) ENABLE,
+  CONSTRAINT SAG_SAML_PAC4J_CLIENT_CFG_UK1 UNIQUE (CLIENT_NAME,ENVIRONMENT) ENABLE,
+  CONSTRAINT SAG_SAML_PAC4J_CLIENT_CF_CHK1 CHECK (MAX_AUTH_LIFETIME &gt; 0) ENABLE
+);
+COMMENT ON COLUMN SAG_SAML_PAC4J_CLIENT_CFG.SSPCC_ID IS 'Primary key';
+COMMENT ON COLUMN SAG_SAML_PAC4J_CLIENT_CFG.CLIENT_NAME IS 'PAC4J client name; unique';
+COMMENT ON COLUMN SAG_SAML_PAC4J_CLIENT_CFG.ENVIRONMENT IS 'Application environment to which this client config applies';
+COMMENT ON COLUMN SAG_SAML_PAC4J_CLIENT_CFG.KEYSTORE_DATA IS 'JKS binary data; replacement of a JKS file on disk';
+COMMENT ON COLUMN SAG_SAML_PAC4J_CLIENT_CFG.KEYSTORE_PASSWORD IS 'Password for the JKS keystore';
+COMMENT ON COLUMN SAG_SAML_PAC4J_CLIENT_CFG.KEYSTORE_ALIAS IS 'Alias for the private key entry in the keystore';
+COMMENT ON COLUMN SAG_SAML_PAC4J_CLIENT_CFG.PRIVATE_KEY_PASSWORD IS 'Password for a single alias (private key) in the JKS keystore';
+COMMENT ON COLUMN SAG_SAML_PAC4J_CLIENT_CFG.IDP_METADATA IS 'IdP metadata in XML format';
+COMMENT ON COLUMN SAG_SAML_PAC4J_CLIENT_CFG.IDP_ENTITY_ID IS 'IdP entity ID';
+COMMENT ON COLUMN SAG_SAML_PAC4J_CLIENT_CFG.SP_ENTITY_ID IS 'SP entity ID';
+COMMENT ON COLUMN SAG_SAML_PAC4J_CLIENT_CFG.MAX_AUTH_LIFETIME IS 'Maximum authentication lifetime in seconds';
+COMMENT ON COLUMN SAG_SAML_PAC4J_CLIENT_CFG.DEST_BINDING_TYPE IS 'Destination binding type as defined by SAML (POST or Redirect URIs)';
+ * </pre>
+ *
+ * <p>The table name must be configured; there is no default value.</p>
+ * 
+ * <p>Another property to be configured is the so-called "environment". Using the environment property, you can distinguish configuration
+ * records for multiple environments where your application runs and still have the complete configuration in a single table and database.
+ * Example: You can have environments "Development", "Test" and "Production".</p>
+ * 
+ * <p>Optionally, the name of a version column can be configured. The column must be numeric and its value must grow with every change of
+ * the record, for example by assigning the next value of a sequence in a trigger. If it is configured, {@link #loadClientsChangedSince(long)}
+ * reads just the records whose version is greater than the given watermark. Otherwise, it reads all records each time. A version taken
+ * by a statement may be committed after a greater one has already been read (e.g. with a sequence assigned in a trigger); such a change
+ * is not returned by incremental reads and is only seen by the next full reload, which {@link CachingSamlClientDaoImpl} does every few
+ * refreshes (see {@link CachingSamlClientDaoImpl#setFullReloadInterval(int)}).</p>
+ * 
+ * <pre>
+ALTER TABLE SAG_SAML_PAC4J_CLIENT_CFG ADD CONFIG_VERSION NUMBER DEFAULT 0 NOT NULL;
+COMMENT ON COLUMN SAG_SAML_PAC4J_CLIENT_CFG.CONFIG_VERSION IS 'Version of the record; grows with every change';
+ * </pre>
+ * 
+ * <p>Optionally, the signing algorithms may be overridden per client by two more columns, holding URIs separated by white space or commas.
+ * If a column is {@code null}, the shared defaults apply (see {@code SignatureSigningProfile}). The columns are only read if the DAO is
+ * created with {@code signingOverrideColumns} switched on.</p>
+ * 
+ * <pre>
+ALTER TABLE SAG_SAML_PAC4J_CLIENT_CFG ADD SIGNATURE_ALGORITHMS VARCHAR2(1000 CHAR);
+ALTER TABLE SAG_SAML_PAC4J_CLIENT_CFG ADD SIGNATURE_DIGEST_METHODS VARCHAR2(1000 CHAR);
+ * </pre>
+ * 
+ * <p>By default, LOBs are read by the {@link LobHandler}. With {@link #setStreamingLobs(boolean)} switched on, they are streamed into
+ * arrays sized by the LOB length, and the IdP metadata CLOB is encoded to UTF-8 while being read. This saves memory and garbage when
+ * loading many large metadata documents. The JDBC driver must support {@link java.sql.Blob} and {@link java.sql.Clob} then.</p>
+ * 
+ * <p>Keystores and metadata documents read are interned by a {@link BinaryContentInterner}, so that identical LOBs of many clients are
+ * held in memory just once. Share the interner by {@link #setContentInterner(BinaryContentInterner)} to deduplicate across DAOs.</p>
+ * 
+ * <p>{@link #streamAllClients(Consumer)} maps and hands over one row at a time, so a consumer that does not keep the configurations
+ * needs memory for a single row only. How many rows the JDBC driver fetches per round trip is set by {@link #setFetchSize(int)}; a few
+ * rows keep the memory low when the LOBs are large, more rows save round trips when they are small.</p>
+ * 
+ * @author jkacer
+ * @since 1.9.0
+ */
+public class SpringJdbcTemplateSamlClientDaoImpl implements IncrementalSamlClientDao, StreamingSamlClientDao {
+
+	/** SQL text of the query to select all client names. */
+	private static final String SELECT_ALL_NAMES_SQL_TEXT = "select Client_Name from %s where Environment = ?";
+	/** SQL text of the columns of a configuration always read by {@link SamlClientConfigurationRowMapper}. */
+	private static final String CONFIGURATION_COLUMNS_SQL_TEXT = "Client_Name, Environment, Keystore_Data, Keystore_Password, Keystore_Alias, Private_Key_Password, IdP_Metadata, IdP_Entity_ID, SP_Entity_ID, Max_Auth_Lifetime, Dest_Binding_Type";
+	/** SQL text of the optional columns overriding signing algorithms. */
+	private static final String SIGNING_OVERRIDE_COLUMNS_SQL_TEXT = ", Signature_Algorithms, Signature_Digest_Methods";
+	/** SQL text of the query to select all existing clients. */
+	private static final String SELECT_ALL_CLIENTS_SQL_TEXT = "select %s from %s where Environment = ?";
+	/** SQL text of the query to select a single client by name. Also used by {@link MultiEnvironmentSamlClientDaoImpl}. */
+	static final String SELECT_SINGLE_CLIENT_SQL_TEXT = "select %s from %s where (Environment = ?) and (Client_Name = ?)";
+	/** SQL text of the query to select clients changed since a watermark. */
+	private static final String SELECT_CHANGED_CLIENTS_SQL_TEXT = "select %s from %s where (Environment = ?) and (%s > ?)";
+	
+	/** Row mapper to read configuration rows and convert them to client names. */
+	private final OnlyNamesRowMapper onlyNamesRowMapper;
+	/** Row mapper to read configuration rows and convert them to objects. */
+	private final SamlClientConfigurationRowMapper fullRowMapper;
+
+	/** A Spring JDBC template. */
+	private final JdbcTemplate template;
+
+	/** Environment name; to distinguish records for different environments in a single table. */
+	private final String environment;
+
+	/** SQL text of the query to select all client names after filling in the table name. */
+	private final String selectAllNamesSqlText;
+	/** SQL text of the query to select all existing clients after filling in the table name. */
+	private final String selectAllClientsSqlText;
+	/** SQL text of the query to select a single client after filling in the table name. */
+	private final String selectSingleClientSqlText;
+	/** SQL text of the query to select changed clients after filling in the table name. {@code null} if no version column is configured. */
+	private final String selectChangedClientsSqlText;
+
+	/** Parameters to the query selecting all names: environment. */
+	private final Object[] selectAllNamesParameters;
+	/** Parameters to the query selecting all clients: environment. */
+	private final Object[] selectAllClientsParameters;
+
+	/** Parameter types to the query selecting all names: environment. */
+	private final int[] selectAllNamesParameterTypes;
+	/** Parameter types to the query selecting all clients: environment. */
+	private final int[] selectAllClientsParameterTypes;
+	/** Parameter types to the query selecting a single client: environment and client name. */
+	private final int[] selectSingleClientParameterTypes;
+	/** Parameter types to the query selecting changed clients: environment and watermark. */
+	private final int[] selectChangedClientsParameterTypes;
+
+	
+	// ------------------------------------------------------------------------------------------------------------------------------------
+	
+	
+	/**
+	 * Creates a new DAO.
+	 * 
+	 * @param dataSource
+	 *            A data source.
+	 * @param lobHandler
+	 *            LOB handler able to read BLOBs and CLOBs. As of Oracle 10.2, DefaultLobHandler should work with standard setup out of the
+	 *            box. No need for OracleLobHandler.
+	 * @param tableName
+	 *            Name of the table containing configuration records.
+	 * @param environment
+	 *            Environment name; to distinguish records for different environments in a single table.
+	 */
+	public SpringJdbcTemplateSamlClientDaoImpl(final DataSource dataSource, final LobHandler lobHandler, final String tableName, final String environment) {
+		this(dataSource, lobHandler, tableName, environment, null);
+	}
+
+
+	/**
+	 * Creates a new DAO reading record versions.
+	 * 
+	 * @param dataSource
+	 *            A data source.
+	 * @param lobHandler
+	 *            LOB handler able to read BLOBs and CLOBs. As of Oracle 10.2, DefaultLobHandler should work with standard setup out of the
+	 *            box. No need for OracleLobHandler.
+	 * @param tableName
+	 *            Name of the table containing configuration records.
+	 * @param environment
+	 *            Environment name; to distinguish records for different environments in a single table.
+	 * @param versionColumnName
+	 *            Name of the numeric column holding record versions. If {@code null}, changes are not tracked.
+	 * @since 2.0.1
+	 */
+	public SpringJdbcTemplateSamlClientDaoImpl(final DataSource dataSource, final LobHandler lobHandler, final String tableName, final String environment,
+			final String versionColumnName) {
+		this(dataSource, lobHandler, tableName, environment, versionColumnName, false);
+	}
+
+
+	/**
+	 * Creates a new DAO reading record versions and, optionally, per-client overrides of signing algorithms.
+	 * 
+	 * @param dataSource
+	 *            A data source.
+	 * @param lobHandler
+	 *            LOB handler able to read BLOBs and CLOBs. As of Oracle 10.2, DefaultLobHandler should work with standard setup out of the
+	 *            box. No need for OracleLobHandler.
+	 * @param tableName
+	 *            Name of the table containing configuration records.
+	 * @param environment
+	 *            Environment name; to distinguish records for different environments in a single table.
+	 * @param versionColumnName
+	 *            Name of the numeric column holding record versions. If {@code null}, changes are not tracked.
+	 * @param signingOverrideColumns
+	 *            If {@code true}, the columns SIGNATURE_ALGORITHMS and SIGNATURE_DIGEST_METHODS are read.
+	 * @since 2.0.1
+	 */
+	public SpringJdbcTemplateSamlClientDaoImpl(final DataSource dataSource, final LobHandler lobHandler, final String tableName, final String environment,
+			final String versionColumnName, final boolean signingOverrideColumns) {
+		super();
+
+		CommonHelper.assertNotNull("dataSource", dataSource);
+		CommonHelper.assertNotNull("lobHandler", lobHandler);
+		CommonHelper.assertNotBlank("tableName", tableName);
+		CommonHelper.assertNotBlank("environment", environment);
+		if (versionColumnName != null) {
+			CommonHelper.assertNotBlank("versionColumnName", versionColumnName);
+		}
+
+		this.onlyNamesRowMapper = new OnlyNamesRowMapper();
+		this.fullRowMapper = new SamlClientConfigurationRowMapper(lobHandler, versionColumnName, signingOverrideColumns);
+		this.template = new JdbcTemplate(dataSource);
+		this.environment = environment;
+	
+		this.selectAllNamesSqlText = String.format(SELECT_ALL_NAMES_SQL_TEXT, tableName);
+		final String configurationColumns = fullRowMapper.getSelectedColumns();
+		this.selectAllClientsSqlText = String.format(SELECT_ALL_CLIENTS_SQL_TEXT, configurationColumns, tableName);
+		this.selectSingleClientSqlText = String.format(SELECT_SINGLE_CLIENT_SQL_TEXT, configurationColumns, tableName);
+		this.selectChangedClientsSqlText = (versionColumnName == null) ? null
+				: String.format(SELECT_CHANGED_CLIENTS_SQL_TEXT, configurationColumns, tableName, versionColumnName);
+		
+		this.selectAllNamesParameters = new Object[] {environment};
+		this.selectAllClientsParameters = new Object[] {environment};
+		
+		this.selectAllNamesParameterTypes = new int[] {Types.VARCHAR};
+		this.selectAllClientsParameterTypes = new int[] {Types.VARCHAR};
+		this.selectSingleClientParameterTypes = new int[] {Types.VARCHAR, Types.VARCHAR};
+		this.selectChangedClientsParameterTypes = new int[] {Types.VARCHAR, Types.BIGINT};
+	}
+
+
+	public boolean isStreamingLobs() {
+		return fullRowMapper.isStreamingLobs();
+	}
+
+
+	/**
+	 * Switches streaming of LOBs on or off. Should be set before the DAO is used.
+	 * 
+	 * @param streamingLobs
+	 *            {@code true} to stream LOBs into right-sized arrays, {@code false} to read them using the LOB handler.
+	 * @since 2.0.1
+	 */
+	public void setStreamingLobs(final boolean streamingLobs) {
+		fullRowMapper.setStreamingLobs(streamingLobs);
+	}
+
+
+	/**
+	 * Sets the interner deduplicating keystores and metadata documents read. Should be set before the DAO is used.
+	 * 
+	 * @param contentInterner
+	 *            The interner.
+	 * @since 2.0.1
+	 */
+	public void setContentInterner(final BinaryContentInterner contentInterner) {
+		CommonHelper.assertNotNull("contentInterner", contentInterner);
+		fullRowMapper.setContentInterner(contentInterner);
+	}
+
+
+	/**
+	 * Sets the number of rows the JDBC driver fetches per round trip, for all queries. Should be set before the DAO is used.
+	 * 
+	 * @param fetchSize
+	 *            Number of rows. Zero or negative to use the default of the driver.
+	 * @since 2.0.1
+	 */
+	public void setFetchSize(final int fetchSize) {
+		template.setFetchSize(fetchSize);
+	}
+
+
+	/* (non-Javadoc)
+	 * @see org.pac4j.saml.dbclient.dao.api.SamlClientDao#loadClientNames()
+	 */
+	@Override
+	@Transactional(readOnly=true)
+	public List<String> loadClientNames() {
+		final List<String> names = template.query(selectAllNamesSqlText, selectAllNamesParameters, selectAllNamesParameterTypes, onlyNamesRowMapper);
+		return names;
+	}
+
+	
+	/* (non-Javadoc)
+	 * @see org.pac4j.saml.dbclient.dao.api.SamlClientDao#loadAllClients()
+	 */
+	@Override
+	@Transactional(readOnly=true)
+	public List<DbLoadedSamlClientConfigurationDto> loadAllClients() {
+		final List<DbLoadedSamlClientConfigurationDto> configurations = template.query(selectAllClientsSqlText, selectAllClientsParameters, selectAllClientsParameterTypes, fullRowMapper);
+		return configurations;
+	}
+	
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * Each row is mapped and handed over while the result set is open; the result set and its connection stay open until the consumer
+	 * has processed all rows.
+	 * 
+	 * @since 2.0.1
+	 */
+	@Override
+	@Transactional(readOnly=true)
+	public int streamAllClients(final Consumer<? super DbLoadedSamlClientConfigurationDto> consumer) {
+		if (consumer == null) {
+			throw new IllegalArgumentException("Consumer must not be null.");
+		}
+		final int[] rowCount = {0};
+		template.query(selectAllClientsSqlText, selectAllClientsParameters, selectAllClientsParameterTypes, rs -> {
+			consumer.accept(fullRowMapper.mapRow(rs, rowCount[0]));
+			rowCount[0]++;
+		});
+		return rowCount[0];
+	}
+
+
+	/* (non-Javadoc)
+	 * @see org.pac4j.saml.dbclient.dao.api.SamlClientDao#loadClient(java.lang.String)
+	 */
+	@Override
+	@Transactional(readOnly=true)
+	public DbLoadedSamlClientConfigurationDto loadClient(final String clientName) {
+		if (StringUtils.isBlank(clientName)) {
+			throw new IllegalArgumentException("Client name must not be null or empty.");
+		}
+		
+		final Object[] selectSingleClientParameters = new Object[] {environment, clientName};
+		final List<DbLoadedSamlClientConfigurationDto> configurations = template.query(selectSingleClientSqlText, selectSingleClientParameters, selectSingleClientParameterTypes, fullRowMapper);
+		if ((configurations != null) && (!configurations.isEmpty())) {
+			return configurations.get(0);
+		} else {
+			return null;
+		}
+	}
+	
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * Client names are read first, changed records second. A record inserted in between is therefore returned as changed but not as
+	 * existing; such names are added to the existing ones.
+	 */
+	@Override
+	@Transactional(readOnly=true)
+	public SamlClientConfigurationChangesDto loadClientsChangedSince(final long watermark) {
+		final List<String> names = loadClientNames();
+		final List<DbLoadedSamlClientConfigurationDto> changed;
+		if (selectChangedClientsSqlText == null) {
+			changed = loadAllClients();
+		} else {
+			final Object[] selectChangedClientsParameters = new Object[] {environment, watermark};
+			changed = template.query(selectChangedClientsSqlText, selectChangedClientsParameters, selectChangedClientsParameterTypes, fullRowMapper);
+		}
+
+		final Set<String> existing = new LinkedHashSet<>(names);
+		long newWatermark = watermark;
+		for (DbLoadedSamlClientConfigurationDto single: changed) {
+			existing.add(single.getClientName());
+			if ((selectChangedClientsSqlText != null) && (single.getVersion() > newWatermark)) {
+				newWatermark = single.getVersion();
+			}
+		}
+		
+		final SamlClientConfigurationChangesDto changes = new SamlClientConfigurationChangesDto();
+		changes.setChangedClients(changed);
+		changes.setExistingClientNames(new ArrayList<>(existing));
+		changes.setWatermark(newWatermark);
+		return changes;
+	}
+
+
+	/**
+	 * Spring JDBC row mapper to read configuration rows and convert them to objects of type {@link DbLoadedSamlClientConfigurationDto}. Also
+	 * used by {@link MultiEnvironmentSamlClientDaoImpl}. Queries read by it select the columns given by {@link #getSelectedColumns()}.
+	 * 
+	 * @author jkacer
+	 */
+	static class SamlClientConfigurationRowMapper implements RowMapper<DbLoadedSamlClientConfigurationDto> {
+
+		/**
+		 * LOB handler able to read BLOBs and CLOBs. As of Oracle 10.2, DefaultLobHandler should work with standard setup out of the box. No
+		 * need for OracleLobHandler.
+		 */
+		private final LobHandler lobHandler;
+
+		/** Name of the column holding record versions. {@code null} if versions are not read. */
+		private final String versionColumnName;
+
+		/** If {@code true}, the columns overriding signing algorithms are read. */
+		private final boolean signingOverrideColumns;
+
+		/** SQL text of the columns read by this mapper. */
+		private final String selectedColumns;
+
+		/** If {@code true}, LOBs are streamed directly from JDBC instead of being read by the LOB handler. */
+		private volatile boolean streamingLobs;
+
+		/** Interner of the LOB contents. */
+		private volatile BinaryContentInterner contentInterner = new BinaryContentInterner();
+
+		
+		/**
+		 * Creates a new row mapper.
+		 * 
+		 * @param lobHandler
+		 *            LOB handler able to read BLOBs and CLOBs.
+		 * @param versionColumnName
+		 *            Name of the column holding record versions. {@code null} if versions are not read.
+		 * @param signingOverrideColumns
+		 *            If {@code true}, the columns overriding signing algorithms are read.
+		 */
+		public SamlClientConfigurationRowMapper(final LobHandler lobHandler, final String versionColumnName, final boolean signingOverrideColumns) {
+			super();
+			this.lobHandler = lobHandler;
+			this.versionColumnName = versionColumnName;
+			this.signingOverrideColumns = signingOverrideColumns;
+
+			final StringBuilder columns = new StringBuilder(CONFIGURATION_COLUMNS_SQL_TEXT);
+			if (versionColumnName != null) {
+				columns.append(", ").append(versionColumnName);
+			}
+			if (signingOverrideColumns) {
+				columns.append(SIGNING_OVERRIDE_COLUMNS_SQL_TEXT);
+			}
+			this.selectedColumns = columns.toString();
+		}
+
+
+		/**
+		 * Returns the columns a query must select for this mapper, as a comma-separated SQL list.
+		 * 
+		 * @return The columns.
+		 */
+		public String getSelectedColumns() {
+			return selectedColumns;
+		}
+
+		
+		public boolean isStreamingLobs() {
+			return streamingLobs;
+		}
+
+		
+		public void setStreamingLobs(final boolean streamingLobs) {
+			this.streamingLobs = streamingLobs;
+		}
+
+		
+		public void setContentInterner(final BinaryContentInterner contentInterner) {
+			this.contentInterner = contentInterner;
+		}
+
+		
+		/**
+		 * {@inheritDoc}
+		 * 
+		 * The LOB arrays are interned and handed over to the DTO without copying; nobody else holds them.
+		 */
+		@Override
+		public DbLoadedSamlClientConfigurationDto mapRow(ResultSet rs, int rowNumber) throws SQLException {
+			final boolean streaming = streamingLobs;
+			String clientName = rs.getString("Client_Name");
+			String environment = rs.getString("Environment");
+			byte[] keystoreBinaryData = streaming ? StreamingLobReader.readBlob(rs, "Keystore_Data") : lobHandler.getBlobAsBytes(rs, "Keystore_Data");
+			String keystorePassword = rs.getString("Keystore_Password");
+			String keystoreAlias = rs.getString("Keystore_Alias");
+			String privateKeyPassword = rs.getString("Private_Key_Password");
+			byte[] identityProviderMetadata = streaming ? StreamingLobReader.readClobAsUtf8(rs, "IdP_Metadata") : toUtf8(lobHandler.getClobAsString(rs, "IdP_Metadata"));
+			String identityProviderEntityId = rs.getString("IdP_Entity_ID");
+			String serviceProviderEntityId = rs.getString("SP_Entity_ID");
+			int maximumAuthenticationLifetime = rs.getInt("Max_Auth_Lifetime");
+			String destinationBindingType = rs.getString("Dest_Binding_Type");
+			
+			DbLoadedSamlClientConfigurationDto config = new DbLoadedSamlClientConfigurationDto();
+			config.setClientName(clientName);
+			config.setEnvironment(environment);
+			config.setKeystoreContent(contentInterner.intern(keystoreBinaryData));
+			config.setKeystorePassword(keystorePassword);
+			config.setKeystoreAlias(keystoreAlias);
+			config.setPrivateKeyPassword(privateKeyPassword);
+			config.setIdentityProviderMetadataContent(contentInterner.intern(identityProviderMetadata));
+			config.setIdentityProviderEntityId(identityProviderEntityId);
+			config.setServiceProviderEntityId(serviceProviderEntityId);
+			config.setMaximumAuthenticationLifetime(maximumAuthenticationLifetime);
+			config.setDestinationBindingType(destinationBindingType);
+			if (versionColumnName != null) {
+				config.setVersion(rs.getLong(versionColumnName));
+			}
+			if (signingOverrideColumns) {
+				config.setSignatureAlgorithms(rs.getString("Signature_Algorithms"));
+				config.setSignatureReferenceDigestMethods(rs.getString("Signature_Digest_Methods"));
+			}
+			
+			return config;
+		}
+
+
+		private static byte[] toUtf8(final String text) {
+			return (text == null) ? null : text.getBytes(StandardCharsets.UTF_8);
+		}
+
+	}
+
+	
+	/**
+	 * Spring JDBC row mapper to read configuration rows and extract client names from them.
+	 * 
+	 * @author jkacer
+	 */
+	private static class OnlyNamesRowMapper implements RowMapper<String> {
+
+		/* (non-Javadoc)
+		 * @see org.springframework.jdbc.core.RowMapper#mapRow(java.sql.ResultSet, int)
+		 */
+		@Override
+		public String mapRow(ResultSet rs, int rowNum) throws SQLException {
+			return rs.getString("Client_Name");
+		}
+		
+	}
+	
+}
@@ -0,0 +1,173 @@
+package com.idc.webchannel.pac4j.extensions.saml.dao.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+import org.springframework.dao.DataRetrievalFailureException;
+
+
+/**
+ * <p>Reads LOB columns by streaming them into arrays sized by the LOB length reported by the database, so that the content is not
+ * accumulated in growing buffers and copied again at the end. CLOBs are encoded to UTF-8 while being read, without building a string.</p>
+ *
+ * <p>It uses {@link Blob} and {@link Clob} directly, so the JDBC driver must support them (Oracle and H2 do).</p>
+ *
+ * @author jkacer
+ * @since 2.0.1
+ */
+final class StreamingLobReader {
+
+	/** Number of characters read from a CLOB at once. */
+	private static final int CHAR_CHUNK_SIZE = 8192;
+
+
+	private StreamingLobReader() {
+		super();
+	}
+
+
+	/**
+	 * Reads a BLOB column.
+	 *
+	 * @param rs
+	 *            Result set positioned on the row to read.
+	 * @param columnName
+	 *            Name of the BLOB column.
+	 *
+	 * @return The BLOB content or {@code null} if the column is null.
+	 *
+	 * @throws SQLException
+	 *             If the BLOB cannot be read.
+	 */
+	static byte[] readBlob(final ResultSet rs, final String columnName) throws SQLException {
+		final Blob blob = rs.getBlob(columnName);
+		if (blob == null) {
+			return null;
+		}
+		try (InputStream is = blob.getBinaryStream()) {
+			final byte[] content = new byte[checkedLength(blob.length(), columnName)];
+			int read = 0;
+			while (read < content.length) {
+				final int n = is.read(content, read, content.length - read);
+				if (n < 0) {
+					throw new DataRetrievalFailureException("BLOB " + columnName + " is shorter than its reported length.");
+				}
+				read += n;
+			}
+			return content;
+		} catch (IOException e) {
+			throw new DataRetrievalFailureException("Could not read BLOB " + columnName + ".", e);
+		} finally {
+			freeQuietly(blob);
+		}
+	}
+
+
+	/**
+	 * Reads a CLOB column and encodes it to UTF-8. The buffer is sized for one byte per character, which is exact for ASCII content
+	 * such as typical SAML metadata; it only grows, and is trimmed at the end, if the content contains other characters.
+	 *
+	 * @param rs
+	 *            Result set positioned on the row to read.
+	 * @param columnName
+	 *            Name of the CLOB column.
+	 *
+	 * @return The UTF-8 encoded CLOB content or {@code null} if the column is null.
+	 *
+	 * @throws SQLException
+	 *             If the CLOB cannot be read.
+	 */
+	static byte[] readClobAsUtf8(final ResultSet rs, final String columnName) throws SQLException {
+		final Clob clob = rs.getClob(columnName);
+		if (clob == null) {
+			return null;
+		}
+		final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		try (Reader reader = clob.getCharacterStream()) {
+			ByteBuffer out = ByteBuffer.allocate(checkedLength(clob.length(), columnName));
+			final CharBuffer in = CharBuffer.allocate(CHAR_CHUNK_SIZE);
+			boolean endOfInput = false;
+			while (!endOfInput) {
+				endOfInput = (reader.read(in) < 0);
+				in.flip();
+				out = encode(encoder, in, out, endOfInput);
+				in.compact();
+			}
+			CoderResult result;
+			while ((result = encoder.flush(out)).isOverflow()) {
+				out = grow(out);
+			}
+			if (result.isError()) {
+				result.throwException();
+			}
+			return (out.position() == out.capacity()) ? out.array() : Arrays.copyOf(out.array(), out.position());
+		} catch (IOException e) {
+			throw new DataRetrievalFailureException("Could not read CLOB " + columnName + ".", e);
+		} finally {
+			freeQuietly(clob);
+		}
+	}
+
+
+	private static ByteBuffer encode(final CharsetEncoder encoder, final CharBuffer in, final ByteBuffer out, final boolean endOfInput)
+			throws IOException {
+		ByteBuffer target = out;
+		CoderResult result;
+		while ((result = encoder.encode(in, target, endOfInput)).isOverflow()) {
+			target = grow(target);
+		}
+		if (result.isError()) {
+			result.throwException();
+		}
+		return target;
+	}
+
+
+	private static ByteBuffer grow(final ByteBuffer buffer) {
+		final int newCapacity = Math.max(16, buffer.capacity() + (buffer.capacity() >> 1));
+		final ByteBuffer grown = ByteBuffer.allocate(newCapacity);
+		buffer.flip();
+		grown.put(buffer);
+		return grown;
+	}
+
+
+	private static int checkedLength(final long length, final String columnName) {
+		if (length > Integer.MAX_VALUE - 8) {
+			throw new DataRetrievalFailureException("LOB " + columnName + " is too large: " + length);
+		}
+		return (int) length;
+	}
+
+
+	private static void freeQuietly(final Blob blob) {
+		try {
+			blob.free();
+		} catch (SQLException | UnsupportedOperationException e) {
+			// Freeing is just a hint to the driver.
+		}
+	}
+
+
+	private static void freeQuietly(final Clob clob) {
+		try {
+			clob.free();
+		} catch (SQLException | UnsupportedOperationException e) {
+			// Freeing is just a hint to the driver.
+		}
+	}
+
+}
@@ -0,0 +1,50 @@
+package com.idc.webchannel.pac4j.extensions.saml.metrics;
+
+
+/**
+ * {@link SamlClientMetrics} that records nothing. Used unless another implementation is set.
+ *
+ * @author jkacer
+ * @since 2.0.1
+ */
+public final class NoOpSamlClientMetrics implements SamlClientMetrics {
+
+	/** The only instance. */
+	public static final NoOpSamlClientMetrics INSTANCE = new NoOpSamlClientMetrics();
+
+
+	private NoOpSamlClientMetrics() {
+		super();
+	}
+
+
+	@Override
+	public void recordQuery(final String query, final long durationNanos, final boolean successful) {
+		// Nothing to record
+	}
+
+
+	@Override
+	public void recordLobSize(final String lob, final long size) {
+		// Nothing to record
+	}
+
+
+	@Override
+	public void recordCacheHit(final String cache) {
+		// Nothing to record
+	}
+
+
+	@Override
+	public void recordCacheMiss(final String cache) {
+		// Nothing to record
+	}
+
+
+	@Override
+	public void recordInitPhase(final String phase, final long durationNanos) {
+		// Nothing to record
+	}
+
+}
@@ -0,0 +1,99 @@
+package com.idc.webchannel.pac4j.extensions.saml.metrics;
+
+
+/**
+ * <p>SPI through which SAML client loading reports its metrics. Implement it to bridge to a metrics library (Micrometer, Dropwizard
+ * Metrics, JMX, ...) of your choice. The default is {@link NoOpSamlClientMetrics}, which records nothing.</p>
+ *
+ * <p>Metrics are identified by names, the constants of this interface list those reported by this library. Implementations are called
+ * from request threads and must be thread-safe and cheap.</p>
+ *
+ * @author jkacer
+ * @since 2.0.1
+ */
+public interface SamlClientMetrics {
+
+	/** Query reading names of all clients. */
+	String QUERY_LOAD_CLIENT_NAMES = "loadClientNames";
+	/** Query reading all client configurations. */
+	String QUERY_LOAD_ALL_CLIENTS = "loadAllClients";
+	/** Query streaming all client configurations to a consumer. Its duration includes the time spent by the consumer. */
+	String QUERY_STREAM_ALL_CLIENTS = "streamAllClients";
+	/** Query reading a single client configuration. */
+	String QUERY_LOAD_CLIENT = "loadClient";
+	/** Query reading client configurations changed since a watermark. */
+	String QUERY_LOAD_CLIENTS_CHANGED_SINCE = "loadClientsChangedSince";
+
+	/** The keystore LOB. Measured in bytes. */
+	String LOB_KEYSTORE = "keystore";
+	/** The IdP metadata LOB. Measured in bytes of its UTF-8 encoding. */
+	String LOB_IDP_METADATA = "idpMetadata";
+
+	/** The cache of client configurations. */
+	String CACHE_CLIENT_CONFIGURATIONS = "clientConfigurations";
+	/** The cache of names of unknown clients. A hit is a read rejected without asking the real DAO. */
+	String CACHE_UNKNOWN_CLIENT_NAMES = "unknownClientNames";
+
+	/** Initialization phase: obtaining the client configuration, either preloaded or from the DAO. */
+	String INIT_PHASE_LOAD = "load";
+	/** Initialization phase: decoding of the keystore. */
+	String INIT_PHASE_KEYSTORE = "keystore";
+	/** Initialization phase: parsing of the IdP metadata. */
+	String INIT_PHASE_IDP_METADATA = "idpMetadata";
+	/** Initialization phase: setting up signature algorithms. */
+	String INIT_PHASE_SIGNING = "signing";
+
+
+	/**
+	 * Records a completed query.
+	 *
+	 * @param query
+	 *            Name of the query, one of the {@code QUERY_*} constants.
+	 * @param durationNanos
+	 *            Duration of the query, in nanoseconds.
+	 * @param successful
+	 *            {@code true} if the query returned normally, {@code false} if it threw an exception.
+	 */
+	void recordQuery(String query, long durationNanos, boolean successful);
+
+
+	/**
+	 * Records a LOB transferred from the database.
+	 *
+	 * @param lob
+	 *            Name of the LOB, one of the {@code LOB_*} constants.
+	 * @param size
+	 *            Size of the LOB.
+	 */
+	void recordLobSize(String lob, long size);
+
+
+	/**
+	 * Records a lookup answered by a cache.
+	 *
+	 * @param cache
+	 *            Name of the cache, one of the {@code CACHE_*} constants.
+	 */
+	void recordCacheHit(String cache);
+
+
+	/**
+	 * Records a lookup a cache could not answer.
+	 *
+	 * @param cache
+	 *            Name of the cache, one of the {@code CACHE_*} constants.
+	 */
+	void recordCacheMiss(String cache);
+
+
+	/**
+	 * Records a completed phase of a client configuration's initialization.
+	 *
+	 * @param phase
+	 *            Name of the phase, one of the {@code INIT_PHASE_*} constants.
+	 * @param durationNanos
+	 *            Duration of the phase, in nanoseconds.
+	 */
+	void recordInitPhase(String phase, long durationNanos);
+
+}
@@ -1,10 +1,20 @@
 package com.idc.webchannel.pac4j.extensions.saml.client;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
@@ -29,10 +39,12 @@ import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.junit.Before;
 import org.junit.Test;
 import org.pac4j.core.context.WebContext;
+import org.pac4j.core.exception.TechnicalException;
 import org.springframework.core.io.Resource;
 
 import com.idc.webchannel.pac4j.extensions.saml.dao.api.DbLoadedSamlClientConfigurationDto;
 import com.idc.webchannel.pac4j.extensions.saml.dao.api.SamlClientDao;
+import com.idc.webchannel.pac4j.extensions.saml.metrics.SamlClientMetrics;
 
 
 /**
@@ -190,6 +202,91 @@ public class DatabaseLoadedSAML2ClientConfigurationTest {
 	}
 
 
+	@Test
+	public void initPhasesAreReported() {
+		SamlClientMetrics metricsMock = mock(SamlClientMetrics.class);
+		DatabaseLoadedSAML2ClientConfiguration configuration = new DatabaseLoadedSAML2ClientConfiguration(samlClientDaoMock);
+		configuration.setMetrics(metricsMock);
+		configuration.init(CLIENT_NAMES[0], webContextMock);
+
+		verify(metricsMock).recordInitPhase(eq(SamlClientMetrics.INIT_PHASE_LOAD), anyLong());
+		verify(metricsMock).recordInitPhase(eq(SamlClientMetrics.INIT_PHASE_KEYSTORE), anyLong());
+		verify(metricsMock).recordInitPhase(eq(SamlClientMetrics.INIT_PHASE_IDP_METADATA), anyLong());
+		verify(metricsMock).recordInitPhase(eq(SamlClientMetrics.INIT_PHASE_SIGNING), anyLong());
+	}
+
+
+	@Test
+	public void idpMetadataResourceCanBeReadRepeatedly() throws IOException {
+		Resource r = configurationUnderTest.getIdentityProviderMetadataResource();
+		byte[] first;
+		try (InputStream is = r.getInputStream()) {
+			first = IOUtils.toByteArray(is);
+		}
+		byte[] second;
+		try (InputStream is = r.getInputStream()) {
+			second = IOUtils.toByteArray(is);
+		}
+		assertTrue(first.length > 0);
+		assertArrayEquals(first, second);
+	}
+
+
+	@Test
+	public void preloadedConfigurationIsUsedOnce() throws IOException {
+		SamlClientDao dao = createSamlClientDaoMock();
+		DatabaseLoadedSAML2ClientConfiguration configuration = new DatabaseLoadedSAML2ClientConfiguration(dao, clientDto(0));
+
+		configuration.init(CLIENT_NAMES[0], webContextMock);
+		assertEquals(SP_ENTITY_IDS[0], configuration.getServiceProviderEntityId());
+		verify(dao, never()).loadClient(anyString());
+
+		// Re-initialization must read fresh data
+		configuration.init(CLIENT_NAMES[0], webContextMock);
+		verify(dao, times(1)).loadClient(CLIENT_NAMES[0]);
+	}
+
+
+	@Test
+	public void defaultSigningAlgorithmsAreShared() {
+		SignatureSigningProfile defaults = SignatureSigningProfile.defaults();
+		assertSame(defaults.getSignatureAlgorithms(), configurationUnderTest.getSignatureAlgorithms());
+		assertSame(defaults.getSignatureReferenceDigestMethods(), configurationUnderTest.getSignatureReferenceDigestMethods());
+		assertSame(defaults.getBlackListedSignatureSigningAlgorithms(), configurationUnderTest.getBlackListedSignatureSigningAlgorithms());
+		assertEquals(defaults.getSignatureCanonicalizationAlgorithm(), configurationUnderTest.getSignatureCanonicalizationAlgorithm());
+		assertFalse(configurationUnderTest.getSignatureReferenceDigestMethods().contains("http://www.w3.org/2001/04/xmlenc#sha512"));
+		assertFalse(configurationUnderTest.getSignatureAlgorithms().isEmpty());
+	}
+
+
+	@Test
+	public void signingAlgorithmsCanBeOverridden() throws IOException {
+		DbLoadedSamlClientConfigurationDto dto = clientDto(0);
+		dto.setSignatureAlgorithms("http://www.w3.org/2001/04/xmldsig-more#rsa-sha256, http://www.w3.org/2001/04/xmldsig-more#rsa-sha512");
+		DatabaseLoadedSAML2ClientConfiguration configuration = new DatabaseLoadedSAML2ClientConfiguration(samlClientDaoMock, dto);
+		configuration.init(CLIENT_NAMES[0], webContextMock);
+
+		assertEquals(Arrays.asList("http://www.w3.org/2001/04/xmldsig-more#rsa-sha256", "http://www.w3.org/2001/04/xmldsig-more#rsa-sha512"),
+				configuration.getSignatureAlgorithms());
+		assertSame(SignatureSigningProfile.defaults().getSignatureReferenceDigestMethods(), configuration.getSignatureReferenceDigestMethods());
+	}
+
+
+	@Test
+	public void whitespaceOnlyIdpMetadataIsRejected() throws IOException {
+		DbLoadedSamlClientConfigurationDto dto = clientDto(0);
+		dto.setIdentityProviderMetadata(" \r\n\t ");
+		DatabaseLoadedSAML2ClientConfiguration configuration = new DatabaseLoadedSAML2ClientConfiguration(samlClientDaoMock, dto);
+
+		try {
+			configuration.init(CLIENT_NAMES[0], webContextMock);
+			fail("TechnicalException expected.");
+		} catch (final TechnicalException e) {
+			assertEquals("identityProviderMetadata cannot be blank", e.getMessage());
+		}
+	}
+
+
 	private KeyStore keystoreFromResource(Resource res)
 			throws KeyStoreException, NoSuchAlgorithmException, CertificateException, IOException {
 		Security.addProvider(new BouncyCastleProvider());
@@ -1,18 +1,34 @@
 package com.idc.webchannel.pac4j.extensions.saml.client;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
+import org.apache.commons.io.IOUtils;
 import org.junit.Before;
 import org.junit.Test;
 import org.pac4j.core.authorization.generator.AuthorizationGenerator;
@@ -23,7 +39,9 @@ import org.pac4j.core.http.AjaxRequestResolver;
 import org.pac4j.core.http.UrlResolver;
 import org.pac4j.saml.client.SAML2Client;
 
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.DbLoadedSamlClientConfigurationDto;
 import com.idc.webchannel.pac4j.extensions.saml.dao.api.SamlClientDao;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.StreamingSamlClientDao;
 
 
 /**
@@ -119,6 +137,61 @@ public class DatabaseLoadedSAML2ClientsTest {
     
 
 
+    /**
+     * Lookup by name must ignore case and surrounding spaces, like the original PAC4J lookup.
+     */
+    @Test
+    public void testFindClientIgnoresCaseAndSpaces() {
+        Client c = clientsUnderTest.findClient("SamlTwo");
+        assertSame(c, clientsUnderTest.findClient("samltwo"));
+        assertSame(c, clientsUnderTest.findClient(" SAMLTWO "));
+    }
+
+
+    @Test(expected = TechnicalException.class)
+    public void testFindClientRejectsUnknownName() {
+        clientsUnderTest.findClient("SamlFour");
+    }
+
+
+    /**
+     * The index must match names the same way as {@link String#equalsIgnoreCase(String)}, even for characters whose lower case differs
+     * from the lower case of their upper case. The long s is equal to S ignoring case.
+     */
+    @Test
+    public void testFindClientMatchesLikeEqualsIgnoreCase() {
+        Client c = clientsUnderTest.findClient("SamlTwo");
+        assertSame(c, clientsUnderTest.findClient("\u017FamlTwo"));
+        assertSame(c, clientsUnderTest.findClient("SAMLTWO"));
+    }
+
+
+    /**
+     * An unknown name must be rejected by the index, without scanning all clients.
+     */
+    @Test
+    public void testFindClientDoesNotScanOnMiss() {
+        final AtomicInteger scans = new AtomicInteger();
+        DatabaseLoadedSAML2Clients clients = new DatabaseLoadedSAML2Clients(createSamlClientDaoMock()) {
+            @Override
+            public List<Client> getClients() {
+                scans.incrementAndGet();
+                return super.getClients();
+            }
+        };
+        clients.init();
+        scans.set(0);
+
+        try {
+            clients.findClient("SamlFour");
+            fail("TechnicalException expected.");
+        } catch (final TechnicalException e) {
+            assertEquals("No client found for name: SamlFour", e.getMessage());
+        }
+        assertEquals(0, scans.get());
+    }
+
+
     /**
      * Does {@link DatabaseLoadedSAML2Clients#findAllClients()} return all clients it should return?
      */
@@ -198,9 +271,179 @@ public class DatabaseLoadedSAML2ClientsTest {
 		assertEquals(authorizationGenerator, c.getAuthorizationGenerators().get(0));
 	}    
 
+
+	/**
+	 * All configurations must be read by a single DAO call, not one call per client.
+	 */
+	@Test
+	public void testConfigurationsAreLoadedInBulk() {
+		SamlClientDao dao = createSamlClientDaoMock();
+		DatabaseLoadedSAML2Clients clients = new DatabaseLoadedSAML2Clients(dao);
+		assertEquals(3, clients.findAllClients().size());
+		
+		verify(dao).loadAllClients();
+		verify(dao, never()).loadClientNames();
+		verify(dao, never()).loadClient(anyString());
+	}
+
+
+	/**
+	 * In the lazy mode, only names must be read at startup.
+	 */
+	@Test
+	public void testOnlyNamesAreLoadedInLazyMode() {
+		SamlClientDao dao = createSamlClientDaoMock();
+		DatabaseLoadedSAML2Clients clients = new DatabaseLoadedSAML2Clients(dao);
+		clients.setLazyLoading(true);
+		assertEquals(3, clients.findAllClients().size());
+		assertEquals("SamlTwo", clients.findClient("SamlTwo").getName());
+		
+		verify(dao).loadClientNames();
+		verify(dao, never()).loadAllClients();
+		verify(dao, never()).loadClient(anyString());
+	}
+
+
+	/**
+	 * A single client can be added, replaced and removed without affecting the others.
+	 */
+	@Test
+	public void testClientsCanBeReloadedAndRemoved() {
+		SamlClientDao dao = createSamlClientDaoMock();
+		DatabaseLoadedSAML2Clients clients = new DatabaseLoadedSAML2Clients(dao);
+		clients.setCallbackUrl(CALLBACK_URL);
+		Client one = clients.findClient("SamlOne");
+		Client two = clients.findClient("SamlTwo");
+		List<Client> before = clients.getClients();
+
+		// Add
+		when(dao.loadClient("SamlFour")).thenReturn(fakeConfigurations(Arrays.asList("SamlFour")).get(0));
+		SAML2Client four = clients.reloadClient("SamlFour");
+		assertNotNull(four);
+		assertSame(four, clients.findClient("samlfour"));
+		assertEquals(CALLBACK_URL + "?client_name=SamlFour", four.getCallbackUrl());
+		assertEquals(4, clients.getClients().size());
+		assertEquals(3, before.size()); // Snapshots are not modified
+
+		// Replace
+		when(dao.loadClient("SamlTwo")).thenReturn(fakeConfigurations(Arrays.asList("SamlTwo")).get(0));
+		SAML2Client newTwo = clients.reloadClient("SamlTwo");
+		assertNotSame(two, newTwo);
+		assertSame(newTwo, clients.findClient("SamlTwo"));
+		assertSame(newTwo, clients.getClients().get(1));
+		assertSame(one, clients.findClient("SamlOne"));
+
+		// Remove
+		assertTrue(clients.removeClient("SAMLONE"));
+		assertFalse(clients.removeClient("SamlOne"));
+		assertEquals(Arrays.asList("SamlTwo", "SamlThree", "SamlFour"), names(clients.getClients()));
+
+		// Reload of a deleted client removes it
+		assertNull(clients.reloadClient("SamlThree"));
+		assertEquals(Arrays.asList("SamlTwo", "SamlFour"), names(clients.getClients()));
+		verify(dao, times(1)).loadAllClients();
+	}
+
+
+	/**
+	 * Warm-up must initialize all valid clients and report the invalid ones.
+	 */
+	@Test
+	public void testWarmUpReportsFailures() throws IOException {
+		List<DbLoadedSamlClientConfigurationDto> configurations = new ArrayList<>();
+		configurations.add(realConfiguration("SamlOne", "Priv_Key_Pwd_0"));
+		configurations.add(realConfiguration("SamlTwo", "Wrong_Password"));
+		configurations.add(realConfiguration("SamlThree", "Priv_Key_Pwd_0"));
+		SamlClientDao dao = mock(SamlClientDao.class);
+		when(dao.loadAllClients()).thenReturn(configurations);
+
+		DatabaseLoadedSAML2Clients clients = new DatabaseLoadedSAML2Clients(dao);
+		clients.setCallbackUrl(CALLBACK_URL);
+		clients.setWarmUpThreads(2);
+		assertNull(clients.getLastWarmUpResult());
+		assertEquals(3, clients.findAllClients().size());
+
+		ClientsWarmUpResult result = clients.getLastWarmUpResult();
+		assertNotNull(result);
+		assertFalse(result.isSuccessful());
+		assertEquals(Arrays.asList("SamlOne", "SamlThree"), result.getInitializedClientNames());
+		assertEquals(Collections.singleton("SamlTwo"), result.getFailures().keySet());
+		assertTrue(result.getDurationMillis() >= 0L);
+
+		SAML2Client warmClient = clients.findClient(SAML2Client.class);
+		assertNotNull(warmClient.getIdentityProviderMetadataResolver());
+	}
+
+	/**
+	 * With a streaming DAO, clients are created and warmed up while the configurations are being read, without a list of all of them.
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testStreamedClientsAreWarmedUpWhileLoading() throws IOException {
+		List<DbLoadedSamlClientConfigurationDto> configurations = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			configurations.add(realConfiguration("Saml" + i, (i == 3) ? "Wrong_Password" : "Priv_Key_Pwd_0"));
+		}
+		StreamingSamlClientDao dao = mock(StreamingSamlClientDao.class);
+		doAnswer(invocation -> {
+			Consumer<DbLoadedSamlClientConfigurationDto> consumer = invocation.getArgument(0);
+			configurations.forEach(consumer);
+			return Integer.valueOf(configurations.size());
+		}).when(dao).streamAllClients(any(Consumer.class));
+
+		DatabaseLoadedSAML2Clients clients = new DatabaseLoadedSAML2Clients(dao);
+		clients.setCallbackUrl(CALLBACK_URL);
+		clients.setWarmUpThreads(2);
+		assertEquals(Arrays.asList("Saml0", "Saml1", "Saml2", "Saml3", "Saml4"), names(clients.getClients()));
+
+		ClientsWarmUpResult result = clients.getLastWarmUpResult();
+		assertEquals(Arrays.asList("Saml0", "Saml1", "Saml2", "Saml4"), result.getInitializedClientNames());
+		assertEquals(Collections.singleton("Saml3"), result.getFailures().keySet());
+		assertEquals(CALLBACK_URL + "?client_name=Saml0", ((SAML2Client) clients.findClient("Saml0")).getCallbackUrl());
+		verify(dao, never()).loadAllClients();
+	}
+
+
+	/**
+	 * Without a warm-up, a streaming DAO is still used instead of loading a list of all configurations. The streamed configurations are not
+	 * kept; each client reads its configuration when initialized.
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testStreamingDaoIsUsedWithoutWarmUp() throws IOException {
+		StreamingSamlClientDao dao = mock(StreamingSamlClientDao.class);
+		doAnswer(invocation -> {
+			Consumer<DbLoadedSamlClientConfigurationDto> consumer = invocation.getArgument(0);
+			fakeConfigurations(Arrays.asList("SamlOne", "SamlTwo")).forEach(consumer);
+			return Integer.valueOf(2);
+		}).when(dao).streamAllClients(any(Consumer.class));
+		when(dao.loadClient("SamlOne")).thenReturn(realConfiguration("SamlOne", "Priv_Key_Pwd_0"));
+
+		DatabaseLoadedSAML2Clients clients = new DatabaseLoadedSAML2Clients(dao);
+		clients.setCallbackUrl(CALLBACK_URL);
+		assertEquals(Arrays.asList("SamlOne", "SamlTwo"), names(clients.getClients()));
+		assertNull(clients.getLastWarmUpResult());
+		verify(dao, never()).loadAllClients();
+		verify(dao, never()).loadClient(anyString());
+
+		SAML2Client one = (SAML2Client) clients.findClient("SamlOne");
+		one.init(null);
+		assertNotNull(one.getIdentityProviderMetadataResolver());
+		verify(dao, times(1)).loadClient("SamlOne");
+	}
+
     // ------------------------------------------------------------------------------------------------------------------------------------
    
     
+    private List<String> names(List<Client> clients) {
+    	List<String> names = new ArrayList<>();
+		for (Client c : clients) {
+			names.add(c.getName());
+		}
+		return names;
+	}
+
+    
     private boolean clientsContain(List<Client> clients, String expName) {
 		for (Client c : clients) {
 			if (c.getName().equals(expName))
@@ -214,14 +457,35 @@ public class DatabaseLoadedSAML2ClientsTest {
 		List<String> fakeNames = Arrays.asList("SamlOne", "SamlTwo", "SamlThree");
 		SamlClientDao dao = mock(SamlClientDao.class);
 		when(dao.loadClientNames()).thenReturn(fakeNames);
+		when(dao.loadAllClients()).thenReturn(fakeConfigurations(fakeNames));
 		return dao;
 	}
 
 	
+	private DbLoadedSamlClientConfigurationDto realConfiguration(String name, String privateKeyPassword) throws IOException {
+		DbLoadedSamlClientConfigurationDto dto = new DbLoadedSamlClientConfigurationDto();
+		dto.setClientName(name);
+		try (InputStream is = DatabaseLoadedSAML2ClientsTest.class.getResourceAsStream("SP_Keystore_0.jks")) {
+			dto.setKeystoreBinaryData(IOUtils.toByteArray(is));
+		}
+		try (InputStream is = DatabaseLoadedSAML2ClientsTest.class.getResourceAsStream("IdP_Metadata_0.xml")) {
+			dto.setIdentityProviderMetadata(IOUtils.toString(is, "UTF-8"));
+		}
+		dto.setKeystorePassword("Keystore_Pwd_0");
+		dto.setKeystoreAlias("SP0");
+		dto.setPrivateKeyPassword(privateKeyPassword);
+		dto.setIdentityProviderEntityId("https://idp.testshib.org/idp/shibboleth");
+		dto.setServiceProviderEntityId("urn:idc:authentication:saml2:entity:unittest:" + name);
+		dto.setMaximumAuthenticationLifetime(3600);
+		return dto;
+	}
+
+	
 	private SamlClientDao createSamlClientDaoMockWithDuplicateNames() {
 		List<String> fakeNames = Arrays.asList("SamlOne", "SamlOne");
 		SamlClientDao dao = mock(SamlClientDao.class);
 		when(dao.loadClientNames()).thenReturn(fakeNames);
+		when(dao.loadAllClients()).thenReturn(fakeConfigurations(fakeNames));
 		return dao;
 	} 
 
@@ -229,10 +493,22 @@ public class DatabaseLoadedSAML2ClientsTest {
 	private SamlClientDao createSamlClientDaoMockWithNoClientsDefined() {
 		SamlClientDao dao = mock(SamlClientDao.class);
 		when(dao.loadClientNames()).thenReturn(Collections.emptyList());
+		when(dao.loadAllClients()).thenReturn(Collections.emptyList());
 		return dao;
 	}
 	
 	
+	private List<DbLoadedSamlClientConfigurationDto> fakeConfigurations(List<String> names) {
+		List<DbLoadedSamlClientConfigurationDto> configurations = new ArrayList<>();
+		for (String name: names) {
+			DbLoadedSamlClientConfigurationDto dto = new DbLoadedSamlClientConfigurationDto();
+			dto.setClientName(name);
+			configurations.add(dto);
+		}
+		return configurations;
+	}
+	
+	
     private WebContext mockWebContextWithSingleTypeParameter(final String paramName, final String paramValue) {
     	WebContext wc = mock(WebContext.class);
     	
@@ -0,0 +1,106 @@
+package com.idc.webchannel.pac4j.extensions.saml.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.opensaml.saml.metadata.resolver.MetadataResolver;
+import org.pac4j.core.exception.TechnicalException;
+
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.BinaryContent;
+
+
+/**
+ * Unit test of {@link IdentityProviderMetadataCache}.
+ *
+ * @author jkacer
+ */
+public class IdentityProviderMetadataCacheTest {
+
+	private static final String PATH_TO_TEST_METADATA = "/com/idc/webchannel/pac4j/extensions/saml/client/IdP_Metadata_0.xml";
+	private static final String IDP_ENTITY_ID = "https://idp.testshib.org/idp/shibboleth";
+
+	private IdentityProviderMetadataCache cacheUnderTest;
+	private byte[] metadata;
+
+
+	// ------------------------------------------------------------------------------------------------------------------------------------
+
+
+	@Before
+	public void setUp() throws IOException {
+		cacheUnderTest = new IdentityProviderMetadataCache();
+		try (InputStream is = IdentityProviderMetadataCacheTest.class.getResourceAsStream(PATH_TO_TEST_METADATA)) {
+			metadata = IOUtils.toByteArray(is);
+		}
+	}
+
+
+	@Test
+	public void identicalMetadataMustBeParsedOnce() {
+		final MetadataResolver r1 = cacheUnderTest.acquire(new Object(), BinaryContent.wrap(metadata));
+		final MetadataResolver r2 = cacheUnderTest.acquire(new Object(), BinaryContent.wrap(metadata.clone()));
+
+		assertSame(r1, r2);
+		assertEquals(1, cacheUnderTest.size());
+
+		final SharedIdentityProviderMetadataResolver resolver = new SharedIdentityProviderMetadataResolver(r1, IDP_ENTITY_ID);
+		assertSame(r1, resolver.resolve());
+		assertEquals(IDP_ENTITY_ID, resolver.getEntityId());
+		assertNotNull(resolver.getEntityDescriptorElement());
+	}
+
+
+	@Test
+	public void firstEntityMustBeUsedWithoutEntityId() {
+		final MetadataResolver r = cacheUnderTest.acquire(new Object(), BinaryContent.wrap(metadata));
+		final SharedIdentityProviderMetadataResolver resolver = new SharedIdentityProviderMetadataResolver(r, null);
+		assertEquals(IDP_ENTITY_ID, resolver.getEntityId());
+	}
+
+
+	@Test
+	public void metadataMustBeRemovedWhenReleasedByAllOwners() {
+		final Object owner1 = new Object();
+		final Object owner2 = new Object();
+		cacheUnderTest.acquire(owner1, BinaryContent.wrap(metadata));
+		cacheUnderTest.acquire(owner2, BinaryContent.wrap(metadata));
+
+		cacheUnderTest.release(owner1);
+		assertEquals(1, cacheUnderTest.size());
+		cacheUnderTest.release(owner2);
+		assertEquals(0, cacheUnderTest.size());
+	}
+
+
+	@Test
+	public void changedMetadataMustBeParsedAgain() {
+		final Object owner = new Object();
+		final MetadataResolver original = cacheUnderTest.acquire(owner, BinaryContent.wrap(metadata));
+
+		final byte[] changedMetadata = (new String(metadata, StandardCharsets.UTF_8) + "\n<!-- Changed -->\n").getBytes(StandardCharsets.UTF_8);
+		final MetadataResolver changed = cacheUnderTest.acquire(owner, BinaryContent.wrap(changedMetadata));
+
+		assertNotSame(original, changed);
+		assertEquals(1, cacheUnderTest.size()); // The original one has been released
+	}
+
+
+	@Test(expected = TechnicalException.class)
+	public void invalidMetadataMustBeRejected() {
+		try {
+			cacheUnderTest.acquire(new Object(), BinaryContent.wrap("<Invalid".getBytes(StandardCharsets.UTF_8)));
+		} finally {
+			assertEquals(0, cacheUnderTest.size());
+		}
+	}
+
+}
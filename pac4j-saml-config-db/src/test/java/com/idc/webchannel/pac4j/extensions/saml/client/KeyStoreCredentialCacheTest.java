@@ -0,0 +1,130 @@
+package com.idc.webchannel.pac4j.extensions.saml.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.pac4j.core.exception.TechnicalException;
+
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.BinaryContent;
+
+
+/**
+ * Unit test of {@link KeyStoreCredentialCache}.
+ *
+ * @author jkacer
+ */
+public class KeyStoreCredentialCacheTest {
+
+	private static final String PATH_TO_TEST_KEYSTORE = "/com/idc/webchannel/pac4j/extensions/saml/client/SP_Keystore_0.jks";
+	private static final String KEYSTORE_TYPE = "JKS";
+	private static final String KEYSTORE_PASSWORD = "Keystore_Pwd_0";
+	private static final String KEYSTORE_ALIAS = "SP0";
+	private static final String PRIV_KEY_PASSWORD = "Priv_Key_Pwd_0";
+
+	private KeyStoreCredentialCache cacheUnderTest;
+	private byte[] keystoreData;
+
+
+	// ------------------------------------------------------------------------------------------------------------------------------------
+
+
+	@Before
+	public void setUp() throws IOException {
+		cacheUnderTest = new KeyStoreCredentialCache();
+		try (InputStream is = KeyStoreCredentialCacheTest.class.getResourceAsStream(PATH_TO_TEST_KEYSTORE)) {
+			keystoreData = IOUtils.toByteArray(is);
+		}
+	}
+
+
+	@Test
+	public void identicalKeystoresMustBeDecodedOnce() {
+		final KeyStoreCredential c1 = acquire(new Object(), keystoreData);
+		final KeyStoreCredential c2 = acquire(new Object(), keystoreData.clone());
+
+		assertSame(c1, c2);
+		assertEquals(1, cacheUnderTest.size());
+		assertEquals(KEYSTORE_ALIAS.toLowerCase(), c1.getPrivateKeyAlias().toLowerCase());
+		assertNotNull(c1.getPrivateKey());
+		assertNotNull(c1.getCertificate());
+		assertSame(c1.getPrivateKey(), c1.getCredential().getPrivateKey());
+	}
+
+
+	@Test
+	public void aliasMustBeMatchedCaseInsensitively() {
+		final KeyStoreCredential credential = cacheUnderTest.acquire(new Object(), BinaryContent.wrap(keystoreData), KEYSTORE_TYPE,
+				KEYSTORE_PASSWORD, KEYSTORE_ALIAS.toUpperCase(), PRIV_KEY_PASSWORD);
+		assertNotNull(credential.getPrivateKey());
+	}
+
+
+	@Test
+	public void credentialMustBeRemovedWhenReleasedByAllOwners() {
+		final Object owner1 = new Object();
+		final Object owner2 = new Object();
+		acquire(owner1, keystoreData);
+		acquire(owner2, keystoreData);
+
+		cacheUnderTest.release(owner1);
+		assertEquals(1, cacheUnderTest.size());
+		cacheUnderTest.release(owner2);
+		assertEquals(0, cacheUnderTest.size());
+	}
+
+
+	@Test
+	public void changedKeystoreMustBeDecodedAgain() throws Exception {
+		final Object owner = new Object();
+		final KeyStoreCredential original = acquire(owner, keystoreData);
+
+		final byte[] changedKeystoreData = storeAgain(keystoreData);
+		final KeyStoreCredential changed = acquire(owner, changedKeystoreData);
+
+		assertNotSame(original, changed);
+		assertEquals(original.getCertificate(), changed.getCertificate());
+		assertEquals(1, cacheUnderTest.size()); // The original one has been released
+	}
+
+
+	@Test(expected = TechnicalException.class)
+	public void wrongPasswordMustBeRejected() {
+		final Object owner = new Object();
+		try {
+			cacheUnderTest.acquire(owner, BinaryContent.wrap(keystoreData), KEYSTORE_TYPE, KEYSTORE_PASSWORD, KEYSTORE_ALIAS, "Wrong_Password");
+		} finally {
+			assertEquals(0, cacheUnderTest.size());
+		}
+	}
+
+
+	private KeyStoreCredential acquire(final Object owner, final byte[] data) {
+		return cacheUnderTest.acquire(owner, BinaryContent.wrap(data), KEYSTORE_TYPE, KEYSTORE_PASSWORD, KEYSTORE_ALIAS, PRIV_KEY_PASSWORD);
+	}
+
+
+	/**
+	 * Stores the keystore again, changing its binary representation but keeping its entries.
+	 */
+	private static byte[] storeAgain(final byte[] data) throws GeneralSecurityException, IOException {
+		final KeyStore ks = KeyStore.getInstance(KEYSTORE_TYPE);
+		ks.load(new ByteArrayInputStream(data), KEYSTORE_PASSWORD.toCharArray());
+		ks.setCertificateEntry("Additional", ks.getCertificate(KEYSTORE_ALIAS));
+		final ByteArrayOutputStream os = new ByteArrayOutputStream();
+		ks.store(os, KEYSTORE_PASSWORD.toCharArray());
+		return os.toByteArray();
+	}
+
+}
@@ -0,0 +1,102 @@
+package com.idc.webchannel.pac4j.extensions.saml.dao.api;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+
+/**
+ * Unit test of {@link ImmutableSamlClientConfiguration}, {@link BinaryContent} and {@link BinaryContentInterner}.
+ *
+ * @author jkacer
+ */
+public class ImmutableSamlClientConfigurationTest {
+
+	private DbLoadedSamlClientConfigurationDto createTestConfig(String clientName) {
+		DbLoadedSamlClientConfigurationDto cfg = new DbLoadedSamlClientConfigurationDto();
+		cfg.setClientName(clientName);
+		cfg.setEnvironment("Env");
+		cfg.setIdentityProviderEntityId("urn:idp");
+		cfg.setServiceProviderEntityId("urn:sp" + clientName);
+		cfg.setIdentityProviderMetadata("Federation metadata");
+		cfg.setKeystoreBinaryData(new byte[] {1, 2, 3});
+		cfg.setKeystorePassword("Bla");
+		cfg.setKeystoreAlias("Alias");
+		cfg.setPrivateKeyPassword("Ble");
+		cfg.setMaximumAuthenticationLifetime(111);
+		cfg.setVersion(7L);
+		return cfg;
+	}
+
+
+	@Test
+	public void equalContentsAreInternedOnce() {
+		BinaryContentInterner interner = new BinaryContentInterner();
+		ImmutableSamlClientConfiguration first = ImmutableSamlClientConfiguration.of(createTestConfig("Client1"), interner);
+		ImmutableSamlClientConfiguration second = ImmutableSamlClientConfiguration.of(createTestConfig("Client2"), interner);
+
+		assertSame(first.getKeystoreContent(), second.getKeystoreContent());
+		assertSame(first.getIdentityProviderMetadataContent(), second.getIdentityProviderMetadataContent());
+		assertEquals(2, interner.size());
+	}
+
+
+	@Test
+	public void dtoSharesContents() {
+		DbLoadedSamlClientConfigurationDto original = createTestConfig("Client1");
+		ImmutableSamlClientConfiguration immutable = ImmutableSamlClientConfiguration.of(original, null);
+		DbLoadedSamlClientConfigurationDto dto = immutable.toDto();
+
+		assertNotSame(original, dto);
+		assertSame(immutable.getKeystoreContent(), dto.getKeystoreContent());
+		assertSame(immutable.getIdentityProviderMetadataContent(), dto.getIdentityProviderMetadataContent());
+		assertEquals("Client1", dto.getClientName());
+		assertEquals("Federation metadata", dto.getIdentityProviderMetadata());
+		assertEquals(7L, dto.getVersion());
+		assertEquals(immutable, ImmutableSamlClientConfiguration.of(dto, null));
+		assertFalse(immutable.equals(ImmutableSamlClientConfiguration.of(createTestConfig("Client2"), null)));
+	}
+
+
+	@Test
+	public void contentIsNotModifiableThroughDto() {
+		DbLoadedSamlClientConfigurationDto dto = createTestConfig("Client1");
+		BinaryContent keystore = dto.getKeystoreContent();
+		dto.getKeystoreBinaryData()[0] = 42;
+
+		assertArrayEquals(new byte[] {1, 2, 3}, keystore.toByteArray());
+	}
+
+
+	@Test
+	public void viewsAreReadOnly() throws IOException {
+		BinaryContent content = BinaryContent.copyOf(new byte[] {1, 2, 3});
+		ByteBuffer view = content.asReadOnlyBuffer();
+		assertTrue(view.isReadOnly());
+		assertEquals(3, view.remaining());
+		try {
+			view.put(0, (byte) 42);
+			fail("The view must be read-only.");
+		} catch (ReadOnlyBufferException e) {
+			// Expected
+		}
+
+		try (InputStream is = content.openStream()) {
+			assertArrayEquals(new byte[] {1, 2, 3}, IOUtils.toByteArray(is));
+		}
+		assertEquals(3, content.size());
+	}
+
+}
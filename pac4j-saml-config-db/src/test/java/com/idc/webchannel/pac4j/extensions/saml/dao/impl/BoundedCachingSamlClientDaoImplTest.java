@@ -0,0 +1,207 @@
+package com.idc.webchannel.pac4j.extensions.saml.dao.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.DbLoadedSamlClientConfigurationDto;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.SamlClientDao;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.StreamingSamlClientDao;
+
+
+/**
+ * Unit test of {@link BoundedCachingSamlClientDaoImpl}.
+ *
+ * @author jkacer
+ */
+public class BoundedCachingSamlClientDaoImplTest {
+
+	/** Weight of each test configuration: 10 bytes of keystore and 10 bytes of metadata. */
+	private static final long CONFIG_WEIGHT = 20L;
+
+	/** The tested DAO, able to hold 3 configurations. */
+	private BoundedCachingSamlClientDaoImpl daoUnderTest;
+
+	/** An underlying DAO mock. */
+	private SamlClientDao realDaoMock;
+
+	// ------------------------------------------------------------------------------------------------------------------------------------
+
+
+	@Before
+	public void initializeTestedDao() {
+		realDaoMock = mock(SamlClientDao.class);
+		for (int i = 1; i <= 5; i++) {
+			when(realDaoMock.loadClient("Client" + i)).thenReturn(createTestConfig("Client" + i));
+		}
+		daoUnderTest = new BoundedCachingSamlClientDaoImpl(realDaoMock, 3 * CONFIG_WEIGHT);
+	}
+
+
+	private DbLoadedSamlClientConfigurationDto createTestConfig(String clientName) {
+		DbLoadedSamlClientConfigurationDto cfg = new DbLoadedSamlClientConfigurationDto();
+		cfg.setClientName(clientName);
+		cfg.setIdentityProviderMetadata("Metadata-" + clientName.charAt(clientName.length() - 1));
+		cfg.setKeystoreBinaryData(new byte[10]);
+		return cfg;
+	}
+
+
+	@Test
+	public void testCachedClientIsNotReadAgain() {
+		DbLoadedSamlClientConfigurationDto first = daoUnderTest.loadClient("Client1");
+		DbLoadedSamlClientConfigurationDto second = daoUnderTest.loadClient("Client1");
+
+		assertEquals("Client1", first.getClientName());
+		assertNotSame(first, second);
+		assertSame(first.getKeystoreContent(), second.getKeystoreContent());
+		verify(realDaoMock, times(1)).loadClient("Client1");
+		assertEquals(1, daoUnderTest.size());
+		assertEquals(CONFIG_WEIGHT, daoUnderTest.getWeight());
+	}
+
+
+	@Test
+	public void testLeastRecentlyUsedClientIsEvicted() {
+		daoUnderTest.loadClient("Client1");
+		daoUnderTest.loadClient("Client2");
+		daoUnderTest.loadClient("Client3");
+		daoUnderTest.loadClient("Client1"); // Client2 becomes the least recently used one
+		daoUnderTest.loadClient("Client4");
+
+		assertEquals(3, daoUnderTest.size());
+		assertEquals(3 * CONFIG_WEIGHT, daoUnderTest.getWeight());
+		daoUnderTest.loadClient("Client1");
+		daoUnderTest.loadClient("Client2");
+		verify(realDaoMock, times(1)).loadClient("Client1");
+		verify(realDaoMock, times(2)).loadClient("Client2");
+	}
+
+
+	@Test
+	public void testHeavyClientIsNotCached() {
+		DbLoadedSamlClientConfigurationDto heavy = createTestConfig("Heavy");
+		heavy.setKeystoreBinaryData(new byte[100]);
+		when(realDaoMock.loadClient("Heavy")).thenReturn(heavy);
+
+		assertNotNull(daoUnderTest.loadClient("Heavy"));
+		assertNotNull(daoUnderTest.loadClient("Heavy"));
+		verify(realDaoMock, times(2)).loadClient("Heavy");
+		assertEquals(0, daoUnderTest.size());
+	}
+
+
+	@Test
+	public void testInvalidatedClientIsReadAgain() {
+		daoUnderTest.loadClient("Client1");
+		daoUnderTest.invalidate("Client1");
+		daoUnderTest.loadClient("Client1");
+
+		verify(realDaoMock, times(2)).loadClient("Client1");
+		assertEquals(CONFIG_WEIGHT, daoUnderTest.getWeight());
+	}
+
+
+	@Test
+	public void testUnknownClientIsNotCached() {
+		assertNull(daoUnderTest.loadClient("Unknown"));
+		assertNull(daoUnderTest.loadClient("Unknown"));
+		verify(realDaoMock, times(2)).loadClient("Unknown");
+	}
+
+
+	@Test
+	public void testAllClientsAreCachedAsLongAsTheyFit() {
+		List<DbLoadedSamlClientConfigurationDto> all = new ArrayList<>();
+		for (int i = 1; i <= 5; i++) {
+			all.add(createTestConfig("Client" + i));
+		}
+		when(realDaoMock.loadAllClients()).thenReturn(all);
+
+		assertEquals(5, daoUnderTest.loadAllClients().size());
+		assertEquals(3, daoUnderTest.size());
+		daoUnderTest.loadClient("Client5");
+		verify(realDaoMock, times(0)).loadClient("Client5");
+	}
+
+
+	/**
+	 * Checks that concurrent misses of one client are served by a single read of the real DAO.
+	 */
+	@Test
+	public void testConcurrentMissesReadOnce() throws Exception {
+		final CountDownLatch readStarted = new CountDownLatch(1);
+		final CountDownLatch releaseRead = new CountDownLatch(1);
+		when(realDaoMock.loadClient("Slow")).thenAnswer(invocation -> {
+			readStarted.countDown();
+			releaseRead.await(10, TimeUnit.SECONDS);
+			return createTestConfig("Slow");
+		});
+
+		final int threads = 8;
+		final ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			final Callable<DbLoadedSamlClientConfigurationDto> task = () -> daoUnderTest.loadClient("Slow");
+			final List<Future<DbLoadedSamlClientConfigurationDto>> results = new ArrayList<>();
+			results.add(executor.submit(task));
+			readStarted.await(10, TimeUnit.SECONDS);
+			for (int i = 1; i < threads; i++) {
+				results.add(executor.submit(task));
+			}
+			Thread.sleep(100L);
+			releaseRead.countDown();
+			for (Future<DbLoadedSamlClientConfigurationDto> result: results) {
+				assertEquals("Slow", result.get(10, TimeUnit.SECONDS).getClientName());
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		verify(realDaoMock, times(1)).loadClient("Slow");
+	}
+
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testStreamedClientsAreCachedAsTheyFit() {
+		StreamingSamlClientDao streamingDaoMock = mock(StreamingSamlClientDao.class);
+		doAnswer(invocation -> {
+			Consumer<DbLoadedSamlClientConfigurationDto> consumer = invocation.getArgument(0);
+			for (int i = 1; i <= 5; i++) {
+				consumer.accept(createTestConfig("Client" + i));
+			}
+			return Integer.valueOf(5);
+		}).when(streamingDaoMock).streamAllClients(any(Consumer.class));
+		BoundedCachingSamlClientDaoImpl bounded = new BoundedCachingSamlClientDaoImpl(streamingDaoMock, 3 * CONFIG_WEIGHT);
+		List<String> streamed = new ArrayList<>();
+
+		assertEquals(5, bounded.streamAllClients(cfg -> streamed.add(cfg.getClientName())));
+
+		assertEquals(5, streamed.size());
+		assertEquals(3, bounded.size());
+		assertNotNull(bounded.loadClient("Client5"));
+		verify(streamingDaoMock, never()).loadAllClients();
+		verify(streamingDaoMock, never()).loadClient("Client5");
+	}
+}
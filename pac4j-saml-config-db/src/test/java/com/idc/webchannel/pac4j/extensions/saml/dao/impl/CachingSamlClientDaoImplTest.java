@@ -1,159 +1,556 @@
-package com.idc.webchannel.pac4j.extensions.saml.dao.impl;
-
-import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertNotNull;
-import static org.junit.Assert.assertNull;
-import static org.junit.Assert.assertTrue;
-import static org.mockito.ArgumentMatchers.anyString;
-import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.times;
-import static org.mockito.Mockito.verify;
-import static org.mockito.Mockito.when;
-
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-
-import org.junit.Before;
-import org.junit.Test;
-
-import com.idc.webchannel.pac4j.extensions.saml.dao.api.DbLoadedSamlClientConfigurationDto;
-import com.idc.webchannel.pac4j.extensions.saml.dao.api.SamlClientDao;
-
-
-/**
- * Unit test of {@link CachingSamlClientDaoImpl}.
- * 
- * @author jkacer
- */
-public class CachingSamlClientDaoImplTest {
-
-	/** The tested DAO. */
-	private CachingSamlClientDaoImpl daoUnderTest;
-	
-	/** An underlying DAO mock. */
-	private SamlClientDao realDaoMock;
-	
-	// ------------------------------------------------------------------------------------------------------------------------------------
-
-	
-	@Before
-	public void initializeTestedDao() {
-		realDaoMock = createRealDaoMock();
-		daoUnderTest = new CachingSamlClientDaoImpl(realDaoMock);
-	}
-	
-	
-	private SamlClientDao createRealDaoMock() {
-		SamlClientDao realDaoMock = mock(SamlClientDao.class);
-
-		List<String> names = new ArrayList<String>();
-		names.add("Client1");
-		names.add("Client2");
-		names.add("Client3");
-		List<DbLoadedSamlClientConfigurationDto> all = new ArrayList<DbLoadedSamlClientConfigurationDto>();
-		DbLoadedSamlClientConfigurationDto client1 = createTestConfig("Client1");
-		DbLoadedSamlClientConfigurationDto client2 = createTestConfig("Client2");
-		DbLoadedSamlClientConfigurationDto client3 = createTestConfig("Client3");
-		all.add(client1);
-		all.add(client2);
-		all.add(client3);
-
-		when(realDaoMock.loadClientNames()).thenReturn(names);
-		when(realDaoMock.loadAllClients()).thenReturn(all);
-		when(realDaoMock.loadClient("Client1")).thenReturn(client1);
-		when(realDaoMock.loadClient("Client2")).thenReturn(client2);
-		when(realDaoMock.loadClient("Client3")).thenReturn(client3);
-		
-		return realDaoMock;
-	}
-	
-	
-	private DbLoadedSamlClientConfigurationDto createTestConfig(String clientName) {
-		DbLoadedSamlClientConfigurationDto cfg = new DbLoadedSamlClientConfigurationDto();
-		
-		cfg.setClientName(clientName);
-		cfg.setEnvironment("Env");
-		cfg.setIdentityProviderEntityId("urn:idp" + clientName);
-		cfg.setServiceProviderEntityId("urn:sp" + clientName);
-		cfg.setIdentityProviderMetadata("Some XML here...");
-		cfg.setKeystoreBinaryData(createExpectedKeystoreData((byte) 10));
-		cfg.setKeystorePassword("Bla");
-		cfg.setPrivateKeyPassword("Ble");
-		cfg.setMaximumAuthenticationLifetime(111);
-		
-		return cfg;
-	}
-
-	
-	private byte[] createExpectedKeystoreData(byte b) {
-		byte[] result = new byte[5];
-		Arrays.fill(result, b);
-		return result;
-	}
-
-
-	
-	@Test
-	public void testLoadAllNames() {
-		// Read 10 times.
-		for (int i = 0; i < 10; i++) {
-			List<String> names = daoUnderTest.loadClientNames();
-			assertNotNull(names);
-			assertEquals(3, names.size());
-			assertTrue(names.contains("Client1"));
-			assertTrue(names.contains("Client2"));
-			assertTrue(names.contains("Client3"));
-		}		
-
-		// The real DAO must have been called just once.
-		verify(realDaoMock, times(0)).loadClientNames();
-		verify(realDaoMock, times(1)).loadAllClients();
-		verify(realDaoMock, times(0)).loadClient(anyString());
-	}
-	
-	
-	/**
-	 * Checks that loadAllClients() returns data repeatedly and the underlying DAO is called just once.
-	 */
-	@Test
-	public void testLoadAllClients() {
-		// Read 10 times.
-		for (int i = 0; i < 10; i++) {
-			List<DbLoadedSamlClientConfigurationDto> all = daoUnderTest.loadAllClients();
-			assertNotNull(all);
-			assertEquals(3, all.size());
-		}
-		
-		// The real DAO must have been called just once.
-		verify(realDaoMock, times(0)).loadClientNames();
-		verify(realDaoMock, times(1)).loadAllClients();
-		verify(realDaoMock, times(0)).loadClient(anyString());
-	}
-
-	
-	/**
-	 * Checks that loadClient() returns data for fifferent clients repeatedly and the underlying DAO is called just once.
-	 */
-	@Test
-	public void testLoadClient() {
-		String[] clientNames = {"Client1", "Client2", "Client3"};
-		
-		// Read 10 times.
-		for (int i = 0; i < 10; i++) {
-			for (String clientName: clientNames) {
-				DbLoadedSamlClientConfigurationDto cfg = daoUnderTest.loadClient(clientName);
-				assertNotNull(cfg);
-				assertEquals(clientName, cfg.getClientName());
-			}
-			
-			assertNull(daoUnderTest.loadClient("DoesNotExist"));
-		}
-		
-		// The real DAO must have been called just once.
-		verify(realDaoMock, times(0)).loadClientNames();
-		verify(realDaoMock, times(1)).loadAllClients();
-		verify(realDaoMock, times(0)).loadClient(anyString());
-	}
-
-}
+package com.idc.webchannel.pac4j.extensions.saml.dao.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.AsyncSamlClientDao;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.DbLoadedSamlClientConfigurationDto;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.IncrementalSamlClientDao;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.SamlClientConfigurationChangesDto;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.SamlClientDao;
+import com.idc.webchannel.pac4j.extensions.saml.metrics.SamlClientMetrics;
+
+
+/**
+ * Unit test of {@link CachingSamlClientDaoImpl}.
+ * 
+ * @author jkacer
+ */
+public class CachingSamlClientDaoImplTest {
+
+	/** The tested DAO. */
+	private CachingSamlClientDaoImpl daoUnderTest;
+	
+	/** An underlying DAO mock. */
+	private SamlClientDao realDaoMock;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	// ------------------------------------------------------------------------------------------------------------------------------------
+
+	
+	@Before
+	public void initializeTestedDao() {
+		realDaoMock = createRealDaoMock();
+		daoUnderTest = new CachingSamlClientDaoImpl(realDaoMock);
+	}
+	
+	
+	private SamlClientDao createRealDaoMock() {
+		SamlClientDao realDaoMock = mock(SamlClientDao.class);
+
+		List<String> names = new ArrayList<String>();
+		names.add("Client1");
+		names.add("Client2");
+		names.add("Client3");
+		List<DbLoadedSamlClientConfigurationDto> all = new ArrayList<DbLoadedSamlClientConfigurationDto>();
+		DbLoadedSamlClientConfigurationDto client1 = createTestConfig("Client1");
+		DbLoadedSamlClientConfigurationDto client2 = createTestConfig("Client2");
+		DbLoadedSamlClientConfigurationDto client3 = createTestConfig("Client3");
+		all.add(client1);
+		all.add(client2);
+		all.add(client3);
+
+		when(realDaoMock.loadClientNames()).thenReturn(names);
+		when(realDaoMock.loadAllClients()).thenReturn(all);
+		when(realDaoMock.loadClient("Client1")).thenReturn(client1);
+		when(realDaoMock.loadClient("Client2")).thenReturn(client2);
+		when(realDaoMock.loadClient("Client3")).thenReturn(client3);
+		
+		return realDaoMock;
+	}
+	
+	
+	private DbLoadedSamlClientConfigurationDto createTestConfig(String clientName) {
+		DbLoadedSamlClientConfigurationDto cfg = new DbLoadedSamlClientConfigurationDto();
+		
+		cfg.setClientName(clientName);
+		cfg.setEnvironment("Env");
+		cfg.setIdentityProviderEntityId("urn:idp" + clientName);
+		cfg.setServiceProviderEntityId("urn:sp" + clientName);
+		cfg.setIdentityProviderMetadata("Some XML here...");
+		cfg.setKeystoreBinaryData(createExpectedKeystoreData((byte) 10));
+		cfg.setKeystorePassword("Bla");
+		cfg.setPrivateKeyPassword("Ble");
+		cfg.setMaximumAuthenticationLifetime(111);
+		
+		return cfg;
+	}
+
+	
+	private byte[] createExpectedKeystoreData(byte b) {
+		byte[] result = new byte[5];
+		Arrays.fill(result, b);
+		return result;
+	}
+
+
+	
+	@Test
+	public void testLoadAllNames() {
+		// Read 10 times.
+		for (int i = 0; i < 10; i++) {
+			List<String> names = daoUnderTest.loadClientNames();
+			assertNotNull(names);
+			assertEquals(3, names.size());
+			assertTrue(names.contains("Client1"));
+			assertTrue(names.contains("Client2"));
+			assertTrue(names.contains("Client3"));
+		}		
+
+		// The real DAO must have been called just once.
+		verify(realDaoMock, times(0)).loadClientNames();
+		verify(realDaoMock, times(1)).loadAllClients();
+		verify(realDaoMock, times(0)).loadClient(anyString());
+	}
+	
+	
+	/**
+	 * Checks that loadAllClients() returns data repeatedly and the underlying DAO is called just once.
+	 */
+	@Test
+	public void testLoadAllClients() {
+		// Read 10 times.
+		for (int i = 0; i < 10; i++) {
+			List<DbLoadedSamlClientConfigurationDto> all = daoUnderTest.loadAllClients();
+			assertNotNull(all);
+			assertEquals(3, all.size());
+		}
+		
+		// The real DAO must have been called just once.
+		verify(realDaoMock, times(0)).loadClientNames();
+		verify(realDaoMock, times(1)).loadAllClients();
+		verify(realDaoMock, times(0)).loadClient(anyString());
+	}
+
+	
+	/**
+	 * Checks that loadClient() returns data for fifferent clients repeatedly and the underlying DAO is called just once.
+	 */
+	@Test
+	public void testLoadClient() {
+		String[] clientNames = {"Client1", "Client2", "Client3"};
+		
+		// Read 10 times.
+		for (int i = 0; i < 10; i++) {
+			for (String clientName: clientNames) {
+				DbLoadedSamlClientConfigurationDto cfg = daoUnderTest.loadClient(clientName);
+				assertNotNull(cfg);
+				assertEquals(clientName, cfg.getClientName());
+			}
+			
+			assertNull(daoUnderTest.loadClient("DoesNotExist"));
+		}
+		
+		// The real DAO must have been called just once.
+		verify(realDaoMock, times(0)).loadClientNames();
+		verify(realDaoMock, times(1)).loadAllClients();
+		verify(realDaoMock, times(0)).loadClient(anyString());
+	}
+
+	
+	/**
+	 * Checks that the cached lists are shared and not copied on each call.
+	 */
+	@Test
+	public void testCachedListsAreSharedAndUnmodifiable() {
+		List<String> names1 = daoUnderTest.loadClientNames();
+		List<String> names2 = daoUnderTest.loadClientNames();
+		assertSame(names1, names2);
+		
+		List<DbLoadedSamlClientConfigurationDto> all1 = daoUnderTest.loadAllClients();
+		List<DbLoadedSamlClientConfigurationDto> all2 = daoUnderTest.loadAllClients();
+		assertSame(all1, all2);
+		
+		try {
+			names1.add("Intruder");
+			fail("The list of cached names must not be modifiable.");
+		} catch (UnsupportedOperationException e) {
+			// Expected
+		}
+	}
+	
+	
+	/**
+	 * Checks that many threads reading concurrently from an empty cache trigger just one load from the underlying DAO.
+	 */
+	@Test
+	public void testConcurrentFirstReadLoadsJustOnce() throws Exception {
+		final int threadCount = 16;
+		final CountDownLatch start = new CountDownLatch(1);
+		final ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+		try {
+			List<Future<DbLoadedSamlClientConfigurationDto>> futures = new ArrayList<>();
+			for (int i = 0; i < threadCount; i++) {
+				Callable<DbLoadedSamlClientConfigurationDto> reader = () -> {
+					start.await();
+					return daoUnderTest.loadClient("Client2");
+				};
+				futures.add(executor.submit(reader));
+			}
+			start.countDown();
+			
+			for (Future<DbLoadedSamlClientConfigurationDto> f: futures) {
+				assertEquals("Client2", f.get().getClientName());
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		
+		verify(realDaoMock, times(1)).loadAllClients();
+	}
+
+	
+	/**
+	 * Checks that an explicit refresh replaces the cached values.
+	 */
+	@Test
+	public void testRefreshReplacesCachedValues() {
+		assertEquals(3, daoUnderTest.loadClientNames().size());
+		
+		when(realDaoMock.loadAllClients()).thenReturn(Arrays.asList(createTestConfig("Client1"), createTestConfig("Client4")));
+		assertTrue(daoUnderTest.refresh());
+		
+		List<String> names = daoUnderTest.loadClientNames();
+		assertEquals(2, names.size());
+		assertTrue(names.contains("Client4"));
+		assertNotNull(daoUnderTest.loadClient("Client4"));
+		assertNull(daoUnderTest.loadClient("Client2"));
+		verify(realDaoMock, times(2)).loadAllClients();
+	}
+	
+	
+	/**
+	 * Checks that the previously cached values are kept if a refresh fails.
+	 */
+	@Test
+	public void testFailedRefreshKeepsPreviousValues() {
+		assertEquals(3, daoUnderTest.loadAllClients().size());
+		
+		when(realDaoMock.loadAllClients()).thenThrow(new IllegalStateException("Database is down"));
+		assertFalse(daoUnderTest.refresh());
+		
+		assertEquals(3, daoUnderTest.loadAllClients().size());
+		assertNotNull(daoUnderTest.loadClient("Client1"));
+	}
+	
+	
+	/**
+	 * Checks that a DAO with a refresh interval reloads the values repeatedly in the background.
+	 */
+	@Test
+	public void testBackgroundRefresh() {
+		CachingSamlClientDaoImpl refreshingDao = new CachingSamlClientDaoImpl(realDaoMock);
+		refreshingDao.setRefreshInterval(20, TimeUnit.MILLISECONDS);
+		refreshingDao.start();
+		try {
+			verify(realDaoMock, timeout(5000).atLeast(3)).loadAllClients();
+			assertEquals(3, refreshingDao.loadClientNames().size());
+		} finally {
+			refreshingDao.shutdown();
+		}
+	}
+
+	
+	/**
+	 * Checks that a started DAO cannot be configured any more.
+	 */
+	@Test(expected = IllegalStateException.class)
+	public void testConfigurationAfterStartIsRejected() {
+		daoUnderTest.start();
+		daoUnderTest.setRefreshInterval(20, TimeUnit.MILLISECONDS);
+	}
+
+	
+	/**
+	 * Checks that a refresh over an incremental DAO applies changes and deletions to the cached values.
+	 */
+	@Test
+	public void testIncrementalRefresh() {
+		IncrementalSamlClientDao incrementalDaoMock = mock(IncrementalSamlClientDao.class);
+		DbLoadedSamlClientConfigurationDto client1 = createTestConfig("Client1");
+		DbLoadedSamlClientConfigurationDto client2 = createTestConfig("Client2");
+		DbLoadedSamlClientConfigurationDto client2Changed = createTestConfig("Client2");
+		client2Changed.setServiceProviderEntityId("urn:changed");
+		DbLoadedSamlClientConfigurationDto client3 = createTestConfig("Client3");
+		when(incrementalDaoMock.loadClientsChangedSince(IncrementalSamlClientDao.INITIAL_WATERMARK))
+				.thenReturn(createChanges(Arrays.asList(client1, client2, client3), Arrays.asList("Client1", "Client2", "Client3"), 7L));
+		when(incrementalDaoMock.loadClientsChangedSince(7L))
+				.thenReturn(createChanges(Arrays.asList(client2Changed), Arrays.asList("Client1", "Client2"), 8L));
+		
+		CachingSamlClientDaoImpl incrementalCachingDao = new CachingSamlClientDaoImpl(incrementalDaoMock);
+		assertEquals(3, incrementalCachingDao.loadAllClients().size());
+		assertTrue(incrementalCachingDao.refresh());
+		
+		assertEquals(Arrays.asList("Client1", "Client2"), incrementalCachingDao.loadClientNames());
+		assertSame(client1, incrementalCachingDao.loadClient("Client1"));
+		assertSame(client2Changed, incrementalCachingDao.loadClient("Client2"));
+		assertNull(incrementalCachingDao.loadClient("Client3"));
+		verify(incrementalDaoMock, times(0)).loadAllClients();
+	}
+
+	
+	/**
+	 * Checks that every n-th refresh over an incremental DAO reads all configurations again, picking up a change committed with a version
+	 * below the watermark.
+	 */
+	@Test
+	public void testFullReloadCatchesChangeBelowWatermark() {
+		IncrementalSamlClientDao incrementalDaoMock = mock(IncrementalSamlClientDao.class);
+		DbLoadedSamlClientConfigurationDto client1 = createTestConfig("Client1");
+		DbLoadedSamlClientConfigurationDto client1Late = createTestConfig("Client1");
+		client1Late.setServiceProviderEntityId("urn:late");
+		when(incrementalDaoMock.loadClientsChangedSince(IncrementalSamlClientDao.INITIAL_WATERMARK))
+				.thenReturn(createChanges(Arrays.asList(client1), Arrays.asList("Client1"), 7L))
+				.thenReturn(createChanges(Arrays.asList(client1Late), Arrays.asList("Client1"), 7L));
+		when(incrementalDaoMock.loadClientsChangedSince(7L)).thenReturn(createChanges(Collections.emptyList(), Arrays.asList("Client1"), 7L));
+
+		CachingSamlClientDaoImpl incrementalCachingDao = new CachingSamlClientDaoImpl(incrementalDaoMock);
+		incrementalCachingDao.setFullReloadInterval(2);
+		assertSame(client1, incrementalCachingDao.loadClient("Client1"));
+		assertTrue(incrementalCachingDao.refresh());
+		assertSame(client1, incrementalCachingDao.loadClient("Client1"));
+		assertTrue(incrementalCachingDao.refresh());
+
+		assertSame(client1Late, incrementalCachingDao.loadClient("Client1"));
+		verify(incrementalDaoMock, times(1)).loadClientsChangedSince(7L);
+		verify(incrementalDaoMock, times(2)).loadClientsChangedSince(IncrementalSamlClientDao.INITIAL_WATERMARK);
+	}
+
+	
+	/**
+	 * Checks that an asynchronous refresh returns before the configurations are read and replaces them once they are.
+	 */
+	@Test
+	public void testAsyncRefreshDoesNotWaitForReading() throws Exception {
+		AsyncSamlClientDao asyncDaoMock = mock(AsyncSamlClientDao.class);
+		CompletableFuture<SamlClientConfigurationChangesDto> reading = new CompletableFuture<>();
+		when(asyncDaoMock.loadClientsChangedSinceAsync(IncrementalSamlClientDao.INITIAL_WATERMARK)).thenReturn(reading);
+		CachingSamlClientDaoImpl asyncCachingDao = new CachingSamlClientDaoImpl(realDaoMock);
+		asyncCachingDao.setAsyncDao(asyncDaoMock);
+		assertEquals(3, asyncCachingDao.loadClientNames().size());
+
+		CompletableFuture<Boolean> refreshed = asyncCachingDao.refreshAsync();
+		assertFalse(refreshed.isDone());
+		assertEquals(3, asyncCachingDao.loadClientNames().size());
+
+		reading.complete(createChanges(Arrays.asList(createTestConfig("Client4")), Arrays.asList("Client4"), 5L));
+		assertTrue(refreshed.get(5, TimeUnit.SECONDS));
+		assertEquals(Arrays.asList("Client4"), asyncCachingDao.loadClientNames());
+	}
+
+
+	/**
+	 * Checks that a failed asynchronous refresh keeps the previous values.
+	 */
+	@Test
+	public void testFailedAsyncRefreshKeepsPreviousValues() throws Exception {
+		ExecutorAsyncSamlClientDaoImpl asyncDao = new ExecutorAsyncSamlClientDaoImpl(realDaoMock, 1, 1);
+		CachingSamlClientDaoImpl asyncCachingDao = new CachingSamlClientDaoImpl(realDaoMock);
+		asyncCachingDao.setAsyncDao(asyncDao);
+		try {
+			assertEquals(3, asyncCachingDao.loadAllClients().size());
+
+			when(realDaoMock.loadAllClients()).thenThrow(new IllegalStateException("Database is down"));
+			assertFalse(asyncCachingDao.refreshAsync().get(5, TimeUnit.SECONDS));
+			assertEquals(3, asyncCachingDao.loadAllClients().size());
+		} finally {
+			asyncDao.shutdown();
+		}
+	}
+
+
+	/**
+	 * Checks that a DAO with an asynchronous DAO and a refresh interval reloads the values repeatedly in the background.
+	 */
+	@Test
+	public void testBackgroundAsyncRefresh() {
+		ExecutorAsyncSamlClientDaoImpl asyncDao = new ExecutorAsyncSamlClientDaoImpl(realDaoMock, 1, 1);
+		CachingSamlClientDaoImpl refreshingDao = new CachingSamlClientDaoImpl(realDaoMock);
+		refreshingDao.setAsyncDao(asyncDao);
+		refreshingDao.setRefreshInterval(20, TimeUnit.MILLISECONDS);
+		refreshingDao.start();
+		try {
+			verify(realDaoMock, timeout(5000).atLeast(3)).loadAllClients();
+			assertEquals(3, refreshingDao.loadClientNames().size());
+		} finally {
+			refreshingDao.shutdown();
+			asyncDao.shutdown();
+		}
+	}
+
+
+	/**
+	 * Checks that configurations read from the database are saved to the snapshot store and served from it after a restart, even if the
+	 * database is unavailable.
+	 */
+	@Test
+	public void testSnapshotIsServedAfterRestart() throws Exception {
+		SamlClientSnapshotStore store = new SamlClientSnapshotStore(folder.getRoot().toPath().resolve("clients.snapshot"));
+		CachingSamlClientDaoImpl firstRun = createSnapshottingDao(realDaoMock, store);
+		try {
+			assertEquals(3, firstRun.loadClientNames().size());
+			// The snapshot is written by the first reading, which may run in the background.
+			long deadline = System.currentTimeMillis() + 5000L;
+			while ((store.read() == null) && (System.currentTimeMillis() < deadline)) {
+				Thread.sleep(10L);
+			}
+		} finally {
+			firstRun.shutdown();
+		}
+		assertEquals(3, store.read().getConfigurations().size());
+
+		SamlClientDao brokenDaoMock = mock(SamlClientDao.class);
+		CountDownLatch refreshStarted = new CountDownLatch(1);
+		when(brokenDaoMock.loadAllClients()).thenAnswer(invocation -> {
+			refreshStarted.countDown();
+			throw new IllegalStateException("Database is down");
+		});
+		CachingSamlClientDaoImpl secondRun = createSnapshottingDao(brokenDaoMock, store);
+		try {
+			assertEquals(Arrays.asList("Client1", "Client2", "Client3"), secondRun.loadClientNames());
+			assertEquals("urn:spClient2", secondRun.loadClient("Client2").getServiceProviderEntityId());
+			assertTrue(refreshStarted.await(5, TimeUnit.SECONDS));
+			assertEquals(3, secondRun.loadAllClients().size());
+		} finally {
+			secondRun.shutdown();
+		}
+	}
+
+
+	/**
+	 * Two reloads publish their configurations and then wait for the snapshot store held by another thread. Whichever of them gets the
+	 * store first, the snapshot must end up with the newer configurations.
+	 */
+	@Test
+	public void testOlderSnapshotDoesNotOverwriteNewerOne() throws Exception {
+		SamlClientSnapshotStore store = new SamlClientSnapshotStore(folder.getRoot().toPath().resolve("clients.snapshot"));
+		DbLoadedSamlClientConfigurationDto older = createTestConfig("Client2");
+		older.setIdentityProviderEntityId("urn:idpOlder");
+		DbLoadedSamlClientConfigurationDto newer = createTestConfig("Client2");
+		newer.setIdentityProviderEntityId("urn:idpNewer");
+		when(realDaoMock.loadClient("Client2")).thenReturn(older, newer);
+
+		CachingSamlClientDaoImpl cachingDao = createSnapshottingDao(realDaoMock, store);
+		try {
+			// The first reading runs in the background and writes the snapshot; the next one is an hour later.
+			long deadline = System.currentTimeMillis() + 5000L;
+			while ((store.read() == null) && (System.currentTimeMillis() < deadline)) {
+				Thread.sleep(10L);
+			}
+
+			Thread olderReload = new Thread(() -> cachingDao.reloadClient("Client2"));
+			Thread newerReload = new Thread(() -> cachingDao.reloadClient("Client2"));
+			synchronized (store) {
+				olderReload.start();
+				awaitBlocked(olderReload);
+				newerReload.start();
+				awaitBlocked(newerReload);
+				assertEquals("urn:idpNewer", cachingDao.loadClient("Client2").getIdentityProviderEntityId());
+			}
+			olderReload.join(5000L);
+			newerReload.join(5000L);
+		} finally {
+			cachingDao.shutdown();
+		}
+
+		for (DbLoadedSamlClientConfigurationDto saved: store.read().getConfigurations()) {
+			if ("Client2".equals(saved.getClientName())) {
+				assertEquals("urn:idpNewer", saved.getIdentityProviderEntityId());
+			}
+		}
+	}
+
+
+	private static void awaitBlocked(Thread thread) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000L;
+		while ((thread.getState() != Thread.State.BLOCKED) && (System.currentTimeMillis() < deadline)) {
+			Thread.sleep(10L);
+		}
+		assertEquals(Thread.State.BLOCKED, thread.getState());
+	}
+
+
+	/**
+	 * Checks that lookups of single clients are reported as cache hits or misses.
+	 */
+	/**
+	 * Checks that a failed reload of a single client is thrown to the caller and the previously cached configuration is kept.
+	 */
+	@Test
+	public void testFailedReloadIsThrownAndKeepsPreviousValue() {
+		DbLoadedSamlClientConfigurationDto cached = daoUnderTest.loadClient("Client2");
+		when(realDaoMock.loadClient("Client2")).thenThrow(new IllegalStateException("Database is down"));
+
+		try {
+			daoUnderTest.reloadClient("Client2");
+			fail("The failed reload must be thrown.");
+		} catch (IllegalStateException e) {
+			assertEquals("Database is down", e.getMessage());
+		}
+		assertSame(cached, daoUnderTest.loadClient("Client2"));
+	}
+
+
+	@Test
+	public void testCacheHitsAndMissesAreReported() {
+		SamlClientMetrics metricsMock = mock(SamlClientMetrics.class);
+		daoUnderTest.setMetrics(metricsMock);
+		
+		assertNotNull(daoUnderTest.loadClient("Client1"));
+		assertNotNull(daoUnderTest.loadClient("Client2"));
+		assertNull(daoUnderTest.loadClient("Unknown"));
+		
+		verify(metricsMock, times(2)).recordCacheHit(SamlClientMetrics.CACHE_CLIENT_CONFIGURATIONS);
+		verify(metricsMock, times(1)).recordCacheMiss(SamlClientMetrics.CACHE_CLIENT_CONFIGURATIONS);
+	}
+	
+	
+	private SamlClientConfigurationChangesDto createChanges(List<DbLoadedSamlClientConfigurationDto> changed, List<String> existing, long watermark) {
+		SamlClientConfigurationChangesDto changes = new SamlClientConfigurationChangesDto();
+		changes.setChangedClients(changed);
+		changes.setExistingClientNames(existing);
+		changes.setWatermark(watermark);
+		return changes;
+	}
+
+
+	private CachingSamlClientDaoImpl createSnapshottingDao(SamlClientDao realDao, SamlClientSnapshotStore store) {
+		CachingSamlClientDaoImpl cachingDao = new CachingSamlClientDaoImpl(realDao);
+		cachingDao.setSnapshotStore(store);
+		cachingDao.setRefreshInterval(1, TimeUnit.HOURS);
+		cachingDao.start();
+		return cachingDao;
+	}
+
+}
@@ -0,0 +1,187 @@
+package com.idc.webchannel.pac4j.extensions.saml.dao.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.DataRetrievalFailureException;
+
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.DbLoadedSamlClientConfigurationDto;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.IncrementalSamlClientDao;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.SamlClientConfigurationChangesDto;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.SamlClientDao;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.StreamingSamlClientDao;
+
+
+/**
+ * Unit test of {@link CoalescingSamlClientDaoImpl}.
+ *
+ * @author jkacer
+ */
+public class CoalescingSamlClientDaoImplTest {
+
+	/** Number of threads reading concurrently. */
+	private static final int THREADS = 8;
+
+	/** The tested DAO. */
+	private CoalescingSamlClientDaoImpl daoUnderTest;
+
+	/** An underlying DAO mock. */
+	private SamlClientDao realDaoMock;
+
+	/** Signalled when the real DAO starts reading. */
+	private CountDownLatch readStarted;
+
+	/** Lets the real DAO finish reading. */
+	private CountDownLatch releaseRead;
+
+	// ------------------------------------------------------------------------------------------------------------------------------------
+
+
+	@Before
+	public void initializeTestedDao() {
+		realDaoMock = mock(SamlClientDao.class);
+		daoUnderTest = new CoalescingSamlClientDaoImpl(realDaoMock);
+		readStarted = new CountDownLatch(1);
+		releaseRead = new CountDownLatch(1);
+	}
+
+
+	private DbLoadedSamlClientConfigurationDto createTestConfig(String clientName) {
+		DbLoadedSamlClientConfigurationDto cfg = new DbLoadedSamlClientConfigurationDto();
+		cfg.setClientName(clientName);
+		return cfg;
+	}
+
+
+	/**
+	 * Reads a client from several threads while the first read is blocked in the real DAO.
+	 */
+	private List<Future<DbLoadedSamlClientConfigurationDto>> loadConcurrently(ExecutorService executor, String clientName) throws Exception {
+		final Callable<DbLoadedSamlClientConfigurationDto> task = () -> daoUnderTest.loadClient(clientName);
+		final List<Future<DbLoadedSamlClientConfigurationDto>> results = new ArrayList<>();
+		results.add(executor.submit(task));
+		readStarted.await(10, TimeUnit.SECONDS);
+		for (int i = 1; i < THREADS; i++) {
+			results.add(executor.submit(task));
+		}
+		Thread.sleep(100L);
+		releaseRead.countDown();
+		return results;
+	}
+
+
+	@Test
+	public void testConcurrentReadsShareOneRead() throws Exception {
+		final DbLoadedSamlClientConfigurationDto slow = createTestConfig("Slow");
+		when(realDaoMock.loadClient("Slow")).thenAnswer(invocation -> {
+			readStarted.countDown();
+			releaseRead.await(10, TimeUnit.SECONDS);
+			return slow;
+		});
+
+		final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			for (Future<DbLoadedSamlClientConfigurationDto> result: loadConcurrently(executor, "Slow")) {
+				assertSame(slow, result.get(10, TimeUnit.SECONDS));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		verify(realDaoMock, times(1)).loadClient("Slow");
+	}
+
+
+	@Test
+	public void testConcurrentReadsShareOneFailure() throws Exception {
+		when(realDaoMock.loadClient("Broken")).thenAnswer(invocation -> {
+			readStarted.countDown();
+			releaseRead.await(10, TimeUnit.SECONDS);
+			throw new DataRetrievalFailureException("Database is down.");
+		});
+
+		final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			for (Future<DbLoadedSamlClientConfigurationDto> result: loadConcurrently(executor, "Broken")) {
+				try {
+					result.get(10, TimeUnit.SECONDS);
+					fail("The failure of the shared read should have been propagated.");
+				} catch (ExecutionException e) {
+					assertEquals(DataRetrievalFailureException.class, e.getCause().getClass());
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		verify(realDaoMock, times(1)).loadClient("Broken");
+	}
+
+
+	@Test
+	public void testSubsequentReadsAreNotCached() {
+		when(realDaoMock.loadClient("Client1")).thenReturn(createTestConfig("Client1"));
+
+		daoUnderTest.loadClient("Client1");
+		daoUnderTest.loadClient("Client1");
+
+		verify(realDaoMock, times(2)).loadClient("Client1");
+	}
+
+
+	@Test
+	public void testCapabilitiesOfRealDaoAreForwarded() {
+		final IncrementalSamlClientDao capableDaoMock = mock(IncrementalSamlClientDao.class,
+				withSettings().extraInterfaces(StreamingSamlClientDao.class));
+		final SamlClientConfigurationChangesDto changes = new SamlClientConfigurationChangesDto();
+		final Consumer<DbLoadedSamlClientConfigurationDto> consumer = single -> {};
+		when(capableDaoMock.loadClientsChangedSince(5L)).thenReturn(changes);
+		when(((StreamingSamlClientDao) capableDaoMock).streamAllClients(consumer)).thenReturn(Integer.valueOf(3));
+		final CoalescingSamlClientDaoImpl dao = new CoalescingSamlClientDaoImpl(capableDaoMock);
+
+		assertSame(changes, dao.loadClientsChangedSince(5L));
+		assertEquals(3, dao.streamAllClients(consumer));
+		verify(capableDaoMock, never()).loadAllClients();
+	}
+
+
+	@Test
+	public void testMissingCapabilitiesFallBackToAllClients() {
+		when(realDaoMock.loadAllClients()).thenReturn(Arrays.asList(createTestConfig("Client1"), createTestConfig("Client2")));
+
+		final SamlClientConfigurationChangesDto changes = daoUnderTest.loadClientsChangedSince(5L);
+		assertEquals(2, changes.getChangedClients().size());
+		assertEquals(Arrays.asList("Client1", "Client2"), changes.getExistingClientNames());
+		assertEquals(5L, changes.getWatermark());
+
+		final List<String> streamed = new ArrayList<>();
+		assertEquals(2, daoUnderTest.streamAllClients(single -> streamed.add(single.getClientName())));
+		assertEquals(Arrays.asList("Client1", "Client2"), streamed);
+	}
+
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testStreamingRejectsNullConsumer() {
+		daoUnderTest.streamAllClients(null);
+	}
+
+}
@@ -0,0 +1,149 @@
+package com.idc.webchannel.pac4j.extensions.saml.dao.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.DbLoadedSamlClientConfigurationDto;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.SamlClientConfigurationChangesDto;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.SamlClientDao;
+
+
+/**
+ * Unit test of {@link ExecutorAsyncSamlClientDaoImpl}.
+ *
+ * @author jkacer
+ */
+public class ExecutorAsyncSamlClientDaoImplTest {
+
+	/** The tested DAO, with one thread and one waiting read. */
+	private ExecutorAsyncSamlClientDaoImpl daoUnderTest;
+
+	/** An underlying DAO mock. */
+	private SamlClientDao realDaoMock;
+
+	// ------------------------------------------------------------------------------------------------------------------------------------
+
+
+	@Before
+	public void initializeTestedDao() {
+		realDaoMock = mock(SamlClientDao.class);
+		daoUnderTest = new ExecutorAsyncSamlClientDaoImpl(realDaoMock, 1, 1);
+	}
+
+
+	@After
+	public void shutdownTestedDao() {
+		daoUnderTest.shutdown();
+	}
+
+
+	private DbLoadedSamlClientConfigurationDto createTestConfig(String clientName) {
+		DbLoadedSamlClientConfigurationDto cfg = new DbLoadedSamlClientConfigurationDto();
+		cfg.setClientName(clientName);
+		return cfg;
+	}
+
+
+	@Test
+	public void testReadIsNotRunByCaller() throws Exception {
+		final String callerThread = Thread.currentThread().getName();
+		when(realDaoMock.loadClient("Client1")).thenAnswer(invocation -> {
+			assertNotEquals(callerThread, Thread.currentThread().getName());
+			return createTestConfig("Client1");
+		});
+
+		assertEquals("Client1", daoUnderTest.loadClientAsync("Client1").get(5, TimeUnit.SECONDS).getClientName());
+	}
+
+
+	@Test
+	public void testReadIsRejectedWhenQueueIsFull() throws Exception {
+		final CountDownLatch readStarted = new CountDownLatch(1);
+		final CountDownLatch releaseRead = new CountDownLatch(1);
+		when(realDaoMock.loadClientNames()).thenAnswer(invocation -> {
+			readStarted.countDown();
+			releaseRead.await(10, TimeUnit.SECONDS);
+			return Arrays.asList("Client1");
+		});
+
+		final CompletableFuture<?> running = daoUnderTest.loadClientNamesAsync();
+		readStarted.await(10, TimeUnit.SECONDS);
+		final CompletableFuture<?> waiting = daoUnderTest.loadClientNamesAsync();
+		final CompletableFuture<?> rejected = daoUnderTest.loadClientNamesAsync();
+		try {
+			rejected.get(5, TimeUnit.SECONDS);
+			fail("The read should have been rejected.");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof RejectedExecutionException);
+		}
+
+		releaseRead.countDown();
+		running.get(5, TimeUnit.SECONDS);
+		waiting.get(5, TimeUnit.SECONDS);
+	}
+
+
+	@Test
+	public void testShutdownCompletesAllFutures() throws Exception {
+		final CountDownLatch readStarted = new CountDownLatch(1);
+		when(realDaoMock.loadClientNames()).thenAnswer(invocation -> {
+			readStarted.countDown();
+			new CountDownLatch(1).await(10, TimeUnit.SECONDS);
+			return Arrays.asList("Client1");
+		});
+
+		final CompletableFuture<?> running = daoUnderTest.loadClientNamesAsync();
+		readStarted.await(10, TimeUnit.SECONDS);
+		final CompletableFuture<?> waiting = daoUnderTest.loadClientNamesAsync();
+		daoUnderTest.shutdown();
+		final CompletableFuture<?> late = daoUnderTest.loadClientNamesAsync();
+
+		try {
+			running.get(5, TimeUnit.SECONDS);
+			fail("The running read should have been interrupted.");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof InterruptedException);
+		}
+		try {
+			waiting.get(5, TimeUnit.SECONDS);
+			fail("The waiting read should have been cancelled.");
+		} catch (CancellationException e) {
+			assertTrue(waiting.isCompletedExceptionally());
+		}
+		try {
+			late.get(5, TimeUnit.SECONDS);
+			fail("The read after shutdown should have been rejected.");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof RejectedExecutionException);
+		}
+	}
+
+
+	@Test
+	public void testChangesOfNonIncrementalDaoContainAllClients() throws Exception {
+		when(realDaoMock.loadAllClients()).thenReturn(Arrays.asList(createTestConfig("Client1"), createTestConfig("Client2")));
+
+		final SamlClientConfigurationChangesDto changes = daoUnderTest.loadClientsChangedSinceAsync(42L).get(5, TimeUnit.SECONDS);
+
+		assertEquals(2, changes.getChangedClients().size());
+		assertEquals(Arrays.asList("Client1", "Client2"), changes.getExistingClientNames());
+		assertEquals(42L, changes.getWatermark());
+	}
+
+}
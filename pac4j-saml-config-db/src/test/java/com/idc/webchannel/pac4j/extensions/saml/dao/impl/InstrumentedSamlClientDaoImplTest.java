@@ -0,0 +1,163 @@
+package com.idc.webchannel.pac4j.extensions.saml.dao.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.DbLoadedSamlClientConfigurationDto;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.SamlClientConfigurationChangesDto;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.SamlClientDao;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.StreamingSamlClientDao;
+import com.idc.webchannel.pac4j.extensions.saml.metrics.SamlClientMetrics;
+
+
+/**
+ * Unit test of {@link InstrumentedSamlClientDaoImpl}.
+ *
+ * @author jkacer
+ */
+public class InstrumentedSamlClientDaoImplTest {
+
+	/** The tested DAO. */
+	private InstrumentedSamlClientDaoImpl daoUnderTest;
+
+	/** An underlying DAO mock. */
+	private SamlClientDao realDaoMock;
+
+	/** Metrics mock. */
+	private SamlClientMetrics metricsMock;
+
+	private DbLoadedSamlClientConfigurationDto client1;
+	private DbLoadedSamlClientConfigurationDto client2;
+
+	// ------------------------------------------------------------------------------------------------------------------------------------
+
+
+	@Before
+	public void initializeTestedDao() {
+		client1 = createTestConfig("Client1");
+		client2 = createTestConfig("Client2");
+		realDaoMock = mock(SamlClientDao.class);
+		when(realDaoMock.loadClientNames()).thenReturn(Arrays.asList("Client1", "Client2"));
+		when(realDaoMock.loadAllClients()).thenReturn(Arrays.asList(client1, client2));
+		when(realDaoMock.loadClient("Client1")).thenReturn(client1);
+		when(realDaoMock.loadClient("Broken")).thenThrow(new IllegalStateException("DB is down"));
+		metricsMock = mock(SamlClientMetrics.class);
+		daoUnderTest = new InstrumentedSamlClientDaoImpl(realDaoMock, metricsMock);
+	}
+
+
+	private DbLoadedSamlClientConfigurationDto createTestConfig(String clientName) {
+		DbLoadedSamlClientConfigurationDto cfg = new DbLoadedSamlClientConfigurationDto();
+		cfg.setClientName(clientName);
+		cfg.setIdentityProviderMetadata("0123456789");
+		cfg.setKeystoreBinaryData(new byte[5]);
+		return cfg;
+	}
+
+
+	@Test
+	public void testQueriesAreTimed() {
+		assertEquals(Arrays.asList("Client1", "Client2"), daoUnderTest.loadClientNames());
+		assertEquals(2, daoUnderTest.loadAllClients().size());
+		assertSame(client1, daoUnderTest.loadClient("Client1"));
+
+		verify(metricsMock).recordQuery(eq(SamlClientMetrics.QUERY_LOAD_CLIENT_NAMES), anyLong(), eq(true));
+		verify(metricsMock).recordQuery(eq(SamlClientMetrics.QUERY_LOAD_ALL_CLIENTS), anyLong(), eq(true));
+		verify(metricsMock).recordQuery(eq(SamlClientMetrics.QUERY_LOAD_CLIENT), anyLong(), eq(true));
+	}
+
+
+	@Test
+	public void testFailedQueryIsReported() {
+		try {
+			daoUnderTest.loadClient("Broken");
+			fail("The exception of the real DAO should have been propagated.");
+		} catch (IllegalStateException e) {
+			// Expected
+		}
+		verify(metricsMock).recordQuery(eq(SamlClientMetrics.QUERY_LOAD_CLIENT), anyLong(), eq(false));
+	}
+
+
+	@Test
+	public void testLobSizesAreReported() {
+		daoUnderTest.loadAllClients();
+
+		verify(metricsMock, times(2)).recordLobSize(SamlClientMetrics.LOB_KEYSTORE, 5L);
+		verify(metricsMock, times(2)).recordLobSize(SamlClientMetrics.LOB_IDP_METADATA, 10L);
+	}
+
+
+	@Test
+	public void testNonIncrementalDaoReturnsAllClientsAsChanges() {
+		SamlClientConfigurationChangesDto changes = daoUnderTest.loadClientsChangedSince(42L);
+
+		List<DbLoadedSamlClientConfigurationDto> changed = changes.getChangedClients();
+		assertEquals(2, changed.size());
+		assertEquals(Arrays.asList("Client1", "Client2"), changes.getExistingClientNames());
+		assertEquals(42L, changes.getWatermark());
+	}
+
+
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testStreamingIsTimedAndDelegated() {
+		StreamingSamlClientDao streamingDaoMock = mock(StreamingSamlClientDao.class);
+		doAnswer(invocation -> {
+			Consumer<DbLoadedSamlClientConfigurationDto> consumer = invocation.getArgument(0);
+			consumer.accept(client1);
+			consumer.accept(client2);
+			return Integer.valueOf(2);
+		}).when(streamingDaoMock).streamAllClients(any(Consumer.class));
+		InstrumentedSamlClientDaoImpl instrumented = new InstrumentedSamlClientDaoImpl(streamingDaoMock, metricsMock);
+		List<DbLoadedSamlClientConfigurationDto> streamed = new ArrayList<>();
+
+		assertEquals(2, instrumented.streamAllClients(streamed::add));
+
+		assertEquals(Arrays.asList(client1, client2), streamed);
+		verify(metricsMock).recordQuery(eq(SamlClientMetrics.QUERY_STREAM_ALL_CLIENTS), anyLong(), eq(true));
+		verify(metricsMock, times(2)).recordLobSize(SamlClientMetrics.LOB_KEYSTORE, 5L);
+		verify(streamingDaoMock, times(0)).loadAllClients();
+	}
+
+
+	@Test
+	public void testStreamingFallsBackToAllClients() {
+		List<DbLoadedSamlClientConfigurationDto> streamed = new ArrayList<>();
+
+		assertEquals(2, daoUnderTest.streamAllClients(streamed::add));
+
+		assertEquals(Arrays.asList(client1, client2), streamed);
+		verify(metricsMock).recordQuery(eq(SamlClientMetrics.QUERY_LOAD_ALL_CLIENTS), anyLong(), eq(true));
+	}
+
+
+	@Test
+	public void testStreamingFallbackRejectsNullConsumer() {
+		try {
+			daoUnderTest.streamAllClients(null);
+			fail("A null consumer must be rejected.");
+		} catch (IllegalArgumentException e) {
+			assertEquals("Consumer must not be null.", e.getMessage());
+		}
+		verify(realDaoMock, times(0)).loadAllClients();
+	}
+}
@@ -0,0 +1,233 @@
+package com.idc.webchannel.pac4j.extensions.saml.dao.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.DbLoadedSamlClientConfigurationDto;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.IncrementalMultiEnvironmentSamlClientDao;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.IncrementalSamlClientDao;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.MultiEnvironmentSamlClientDao;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.SamlClientConfigurationChangesDto;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.SamlClientDao;
+
+
+/**
+ * Unit test of {@link MultiEnvironmentCachingSamlClientDaoImpl}.
+ *
+ * @author jkacer
+ */
+public class MultiEnvironmentCachingSamlClientDaoImplTest {
+
+	/** The tested DAO. */
+	private MultiEnvironmentCachingSamlClientDaoImpl daoUnderTest;
+
+	/** An underlying DAO mock. */
+	private MultiEnvironmentSamlClientDao realDaoMock;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+
+	// ------------------------------------------------------------------------------------------------------------------------------------
+
+
+	@Before
+	public void initializeTestedDao() {
+		realDaoMock = mock(MultiEnvironmentSamlClientDao.class);
+		when(realDaoMock.getEnvironments()).thenReturn(Arrays.asList("Test", "Production"));
+		Map<String, List<DbLoadedSamlClientConfigurationDto>> all = new LinkedHashMap<>();
+		all.put("Test", Arrays.asList(client("Test", "Shared"), client("Test", "TestOnly")));
+		all.put("Production", Arrays.asList(client("Production", "Shared")));
+		when(realDaoMock.loadAllClientsByEnvironment()).thenReturn(all);
+		daoUnderTest = new MultiEnvironmentCachingSamlClientDaoImpl(realDaoMock);
+	}
+
+
+	@Test
+	public void testAllEnvironmentsAreReadOnce() {
+		assertEquals("Test", daoUnderTest.loadClient("Test", "Shared").getEnvironment());
+		assertEquals("Production", daoUnderTest.loadClient("Production", "Shared").getEnvironment());
+		assertEquals("Test", daoUnderTest.loadClient("Test", "TestOnly").getEnvironment());
+		assertNull(daoUnderTest.loadClient("Production", "TestOnly"));
+		assertEquals(2, daoUnderTest.loadAllClientsByEnvironment().size());
+
+		verify(realDaoMock, times(1)).loadAllClientsByEnvironment();
+	}
+
+
+	@Test
+	public void testEnvironmentViewsReadTheSharedCache() {
+		SamlClientDao test = daoUnderTest.forEnvironment("Test");
+		SamlClientDao production = daoUnderTest.forEnvironment("Production");
+
+		assertEquals(Arrays.asList("Shared", "TestOnly"), test.loadClientNames());
+		assertEquals(Collections.singletonList("Shared"), production.loadClientNames());
+		assertEquals(1, production.loadAllClients().size());
+		assertSame(daoUnderTest.loadClient("Production", "Shared"), production.loadClient("Shared"));
+		assertNull(production.loadClient("TestOnly"));
+		assertSame(test, daoUnderTest.forEnvironment("Test"));
+
+		verify(realDaoMock, times(1)).loadAllClientsByEnvironment();
+	}
+
+
+	@Test
+	public void testFailedRefreshKeepsPreviousValues() {
+		daoUnderTest.loadClient("Test", "Shared");
+		when(realDaoMock.loadAllClientsByEnvironment()).thenThrow(new IllegalStateException("Database down"));
+
+		assertFalse(daoUnderTest.refresh());
+		assertEquals("Test", daoUnderTest.loadClient("Test", "Shared").getEnvironment());
+	}
+
+
+	@Test
+	public void testRefreshReplacesAllEnvironments() {
+		daoUnderTest.loadClient("Test", "Shared");
+		Map<String, List<DbLoadedSamlClientConfigurationDto>> changed = new LinkedHashMap<>();
+		changed.put("Test", Collections.singletonList(client("Test", "Shared")));
+		changed.put("Production", Arrays.asList(client("Production", "Shared"), client("Production", "New")));
+		when(realDaoMock.loadAllClientsByEnvironment()).thenReturn(changed);
+
+		assertTrue(daoUnderTest.refresh());
+		assertNull(daoUnderTest.loadClient("Test", "TestOnly"));
+		assertEquals(Arrays.asList("Shared", "New"), daoUnderTest.forEnvironment("Production").loadClientNames());
+	}
+
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownEnvironmentHasNoView() {
+		daoUnderTest.forEnvironment("Development");
+	}
+
+
+	@Test
+	public void testReloadClientReplacesSingleClient() {
+		DbLoadedSamlClientConfigurationDto testShared = daoUnderTest.loadClient("Test", "Shared");
+		DbLoadedSamlClientConfigurationDto reloaded = client("Production", "Shared");
+		when(realDaoMock.loadClient("Production", "Shared")).thenReturn(reloaded);
+
+		assertSame(reloaded, daoUnderTest.reloadClient("Production", "Shared"));
+		assertSame(reloaded, daoUnderTest.loadClient("Production", "Shared"));
+		assertSame(testShared, daoUnderTest.loadClient("Test", "Shared"));
+		verify(realDaoMock, times(1)).loadAllClientsByEnvironment();
+	}
+
+
+	/**
+	 * Checks that an incremental real DAO is asked once per refresh for changes of all environments and that unchanged configurations
+	 * are kept.
+	 */
+	@Test
+	public void testIncrementalRefreshReadsAllEnvironmentsOnce() {
+		IncrementalMultiEnvironmentSamlClientDao incrementalDaoMock = mock(IncrementalMultiEnvironmentSamlClientDao.class);
+		when(incrementalDaoMock.getEnvironments()).thenReturn(Arrays.asList("Test", "Production"));
+		Map<String, SamlClientConfigurationChangesDto> all = new LinkedHashMap<>();
+		all.put("Test", changes(1L, Arrays.asList(client("Test", "Shared"), client("Test", "TestOnly")), "Shared", "TestOnly"));
+		all.put("Production", changes(1L, Collections.singletonList(client("Production", "Shared")), "Shared"));
+		when(incrementalDaoMock.loadClientsChangedSince(IncrementalSamlClientDao.INITIAL_WATERMARK)).thenReturn(all);
+		Map<String, SamlClientConfigurationChangesDto> changed = new LinkedHashMap<>();
+		changed.put("Test", changes(2L, Collections.<DbLoadedSamlClientConfigurationDto>emptyList(), "Shared"));
+		changed.put("Production", changes(2L, Collections.singletonList(client("Production", "New")), "Shared", "New"));
+		when(incrementalDaoMock.loadClientsChangedSince(1L)).thenReturn(changed);
+
+		MultiEnvironmentCachingSamlClientDaoImpl incrementalCache = new MultiEnvironmentCachingSamlClientDaoImpl(incrementalDaoMock);
+		DbLoadedSamlClientConfigurationDto productionShared = incrementalCache.loadClient("Production", "Shared");
+		assertNotNull(incrementalCache.loadClient("Test", "TestOnly"));
+
+		assertTrue(incrementalCache.refresh());
+		assertNull(incrementalCache.loadClient("Test", "TestOnly"));
+		assertSame(productionShared, incrementalCache.loadClient("Production", "Shared"));
+		assertEquals(Arrays.asList("Shared", "New"), incrementalCache.forEnvironment("Production").loadClientNames());
+
+		verify(incrementalDaoMock, times(1)).loadClientsChangedSince(IncrementalSamlClientDao.INITIAL_WATERMARK);
+		verify(incrementalDaoMock, times(1)).loadClientsChangedSince(1L);
+		verify(incrementalDaoMock, never()).loadAllClientsByEnvironment();
+	}
+
+
+	/**
+	 * Checks that the background refresh reads all environments asynchronously, saves each of them to its snapshot store, and that the
+	 * snapshots are served after a restart even if the database is unavailable.
+	 */
+	@Test
+	public void testAsyncRefreshSavesSnapshotsOfEnvironments() throws Exception {
+		Map<String, SamlClientSnapshotStore> stores = new LinkedHashMap<>();
+		stores.put("Test", new SamlClientSnapshotStore(folder.getRoot().toPath().resolve("test.snapshot")));
+		stores.put("Production", new SamlClientSnapshotStore(folder.getRoot().toPath().resolve("production.snapshot")));
+		MultiEnvironmentCachingSamlClientDaoImpl firstRun = new MultiEnvironmentCachingSamlClientDaoImpl(realDaoMock, 1, stores, 1,
+				TimeUnit.HOURS);
+		try {
+			long deadline = System.currentTimeMillis() + 5000L;
+			while (((stores.get("Test").read() == null) || (stores.get("Production").read() == null))
+					&& (System.currentTimeMillis() < deadline)) {
+				Thread.sleep(10L);
+			}
+		} finally {
+			firstRun.shutdown();
+		}
+		verify(realDaoMock, times(1)).loadAllClientsByEnvironment();
+		assertEquals(2, stores.get("Test").read().getConfigurations().size());
+		assertEquals(1, stores.get("Production").read().getConfigurations().size());
+
+		MultiEnvironmentSamlClientDao brokenDaoMock = mock(MultiEnvironmentSamlClientDao.class);
+		when(brokenDaoMock.getEnvironments()).thenReturn(Arrays.asList("Test", "Production"));
+		CountDownLatch refreshStarted = new CountDownLatch(1);
+		when(brokenDaoMock.loadAllClientsByEnvironment()).thenAnswer(invocation -> {
+			refreshStarted.countDown();
+			throw new IllegalStateException("Database is down");
+		});
+		MultiEnvironmentCachingSamlClientDaoImpl secondRun = new MultiEnvironmentCachingSamlClientDaoImpl(brokenDaoMock, 1, stores, 1,
+				TimeUnit.HOURS);
+		try {
+			assertTrue(refreshStarted.await(5, TimeUnit.SECONDS));
+			assertEquals(Arrays.asList("Shared", "TestOnly"), secondRun.forEnvironment("Test").loadClientNames());
+			assertEquals("Production", secondRun.loadClient("Production", "Shared").getEnvironment());
+			assertNotSame(secondRun.forEnvironment("Test"), secondRun.forEnvironment("Production"));
+		} finally {
+			secondRun.shutdown();
+		}
+	}
+
+
+	private static SamlClientConfigurationChangesDto changes(final long watermark, final List<DbLoadedSamlClientConfigurationDto> changedClients,
+			final String... existingClientNames) {
+		SamlClientConfigurationChangesDto changes = new SamlClientConfigurationChangesDto();
+		changes.setChangedClients(changedClients);
+		changes.setExistingClientNames(Arrays.asList(existingClientNames));
+		changes.setWatermark(watermark);
+		return changes;
+	}
+
+
+	private static DbLoadedSamlClientConfigurationDto client(final String environment, final String clientName) {
+		DbLoadedSamlClientConfigurationDto cfg = new DbLoadedSamlClientConfigurationDto();
+		cfg.setEnvironment(environment);
+		cfg.setClientName(clientName);
+		return cfg;
+	}
+
+}
@@ -0,0 +1,137 @@
+package com.idc.webchannel.pac4j.extensions.saml.dao.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.jdbc.support.lob.DefaultLobHandler;
+
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.DbLoadedSamlClientConfigurationDto;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.IncrementalSamlClientDao;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.SamlClientConfigurationChangesDto;
+
+
+/**
+ * Unit test of {@link MultiEnvironmentSamlClientDaoImpl}.
+ *
+ * @author jkacer
+ */
+public class MultiEnvironmentSamlClientDaoImplTest {
+
+	private static final String TABLE_NAME = "PAC4J_CFG";
+
+	private static final String PATH_TO_SCRIPT_CREATE_TABLE = "/com/idc/webchannel/pac4j/extensions/saml/dao/impl/1_Create_Table.sql";
+	private static final String PATH_TO_SCRIPT_FILL_DATA = "/com/idc/webchannel/pac4j/extensions/saml/dao/impl/2_Fill_Data.sql";
+
+	/** An instance of embedded database, also acting as a Data Source. */
+	private EmbeddedDatabase db;
+	/** The tested DAO. */
+	private MultiEnvironmentSamlClientDaoImpl daoUnderTest;
+
+
+	// ------------------------------------------------------------------------------------------------------------------------------------
+
+
+	@Before
+	public void initInMemoryDatabaseAndDao() {
+		EmbeddedDatabaseBuilder builder = new EmbeddedDatabaseBuilder();
+		db = builder.setType(EmbeddedDatabaseType.H2).addScript(PATH_TO_SCRIPT_CREATE_TABLE).addScript(PATH_TO_SCRIPT_FILL_DATA).build();
+		daoUnderTest = new MultiEnvironmentSamlClientDaoImpl(db, new DefaultLobHandler(), TABLE_NAME,
+				Arrays.asList("UnitTest", "DifferentEnv", "EmptyEnv", "UnitTest"));
+	}
+
+
+	@After
+	public void shutDownInMemoryDatabase() {
+		if (db != null) {
+			db.shutdown();
+		}
+	}
+
+
+	@Test
+	public void allEnvironmentsMustBeLoadedAndPartitioned() {
+		Map<String, List<DbLoadedSamlClientConfigurationDto>> byEnvironment = daoUnderTest.loadAllClientsByEnvironment();
+
+		assertEquals(Arrays.asList("UnitTest", "DifferentEnv", "EmptyEnv"), daoUnderTest.getEnvironments());
+		assertEquals(Arrays.asList("UnitTest", "DifferentEnv", "EmptyEnv"), Arrays.asList(byEnvironment.keySet().toArray()));
+		assertEquals(5, byEnvironment.get("UnitTest").size());
+		for (DbLoadedSamlClientConfigurationDto single: byEnvironment.get("UnitTest")) {
+			assertEquals("UnitTest", single.getEnvironment());
+		}
+		assertEquals(1, byEnvironment.get("DifferentEnv").size());
+		assertEquals("Xxxx", byEnvironment.get("DifferentEnv").get(0).getClientName());
+		assertTrue(byEnvironment.get("EmptyEnv").isEmpty());
+	}
+
+
+	@Test
+	public void singleClientMustBeLoadedFromItsEnvironment() {
+		assertEquals("urn:idpX", daoUnderTest.loadClient("DifferentEnv", "Xxxx").getIdentityProviderEntityId());
+		assertEquals("urn:idp2", daoUnderTest.loadClient("UnitTest", "Two").getIdentityProviderEntityId());
+		assertNull(daoUnderTest.loadClient("UnitTest", "Xxxx"));
+	}
+
+
+	/**
+	 * Checks that only records of all environments with a version greater than the watermark are loaded, and that deletions can be
+	 * detected in each environment.
+	 */
+	@Test
+	public void onlyChangedClientsOfAllEnvironmentsMustBeLoaded() {
+		MultiEnvironmentSamlClientDaoImpl versionedDao = new MultiEnvironmentSamlClientDaoImpl(db, new DefaultLobHandler(), TABLE_NAME,
+				Arrays.asList("UnitTest", "DifferentEnv"), "CONFIG_VERSION", false);
+		JdbcTemplate jdbc = new JdbcTemplate(db);
+		jdbc.update("update PAC4J_CFG set CONFIG_VERSION = 1");
+
+		Map<String, SamlClientConfigurationChangesDto> all = versionedDao.loadClientsChangedSince(IncrementalSamlClientDao.INITIAL_WATERMARK);
+		assertEquals(5, all.get("UnitTest").getChangedClients().size());
+		assertEquals(Collections.singletonList("Xxxx"), all.get("DifferentEnv").getExistingClientNames());
+		assertEquals(1L, all.get("DifferentEnv").getWatermark());
+
+		jdbc.update("update PAC4J_CFG set IDP_ENTITY_ID = 'urn:idpX-new', CONFIG_VERSION = 2 where CLIENT_NAME = 'Xxxx'");
+		jdbc.update("delete from PAC4J_CFG where CLIENT_NAME = 'Four'");
+
+		Map<String, SamlClientConfigurationChangesDto> some = versionedDao.loadClientsChangedSince(1L);
+		assertTrue(some.get("UnitTest").getChangedClients().isEmpty());
+		assertEquals(4, some.get("UnitTest").getExistingClientNames().size());
+		assertFalse(some.get("UnitTest").getExistingClientNames().contains("Four"));
+		assertEquals(2L, some.get("UnitTest").getWatermark());
+		assertEquals(1, some.get("DifferentEnv").getChangedClients().size());
+		assertEquals("urn:idpX-new", some.get("DifferentEnv").getChangedClients().get(0).getIdentityProviderEntityId());
+		assertEquals(2L, some.get("DifferentEnv").getWatermark());
+	}
+
+
+	/**
+	 * Checks that all records are loaded as changed if no version column is configured.
+	 */
+	@Test
+	public void allClientsAreChangedWithoutVersionColumn() {
+		Map<String, SamlClientConfigurationChangesDto> changes = daoUnderTest.loadClientsChangedSince(12345L);
+		assertEquals(5, changes.get("UnitTest").getChangedClients().size());
+		assertEquals(1, changes.get("DifferentEnv").getChangedClients().size());
+		assertTrue(changes.get("EmptyEnv").getExistingClientNames().isEmpty());
+		assertEquals(12345L, changes.get("EmptyEnv").getWatermark());
+	}
+
+
+	@Test(expected = IllegalArgumentException.class)
+	public void unknownEnvironmentMustBeRejected() {
+		daoUnderTest.loadClient("Production", "One");
+	}
+
+}
@@ -0,0 +1,142 @@
+package com.idc.webchannel.pac4j.extensions.saml.dao.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.DbLoadedSamlClientConfigurationDto;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.SamlClientDao;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.StreamingSamlClientDao;
+
+
+/**
+ * Unit test of {@link NegativeCachingSamlClientDaoImpl}.
+ *
+ * @author jkacer
+ */
+public class NegativeCachingSamlClientDaoImplTest {
+
+	/** The tested DAO. */
+	private NegativeCachingSamlClientDaoImpl daoUnderTest;
+
+	/** An underlying DAO mock. */
+	private SamlClientDao realDaoMock;
+
+	/** Current time in nanoseconds, moved forward by tests. */
+	private AtomicLong now;
+
+	// ------------------------------------------------------------------------------------------------------------------------------------
+
+
+	@Before
+	public void initializeTestedDao() {
+		realDaoMock = mock(SamlClientDao.class);
+		when(realDaoMock.loadClientNames()).thenReturn(Arrays.asList("Client1", "Client2"));
+		DbLoadedSamlClientConfigurationDto client1 = new DbLoadedSamlClientConfigurationDto();
+		client1.setClientName("Client1");
+		when(realDaoMock.loadClient("Client1")).thenReturn(client1);
+		now = new AtomicLong(1000L);
+		daoUnderTest = new NegativeCachingSamlClientDaoImpl(realDaoMock, 60, TimeUnit.SECONDS, 2, now::get);
+	}
+
+
+	@Test
+	public void testUnknownNamesDoNotReachRealDao() {
+		for (int i = 0; i < 100; i++) {
+			assertNull(daoUnderTest.loadClient("Bogus" + i));
+		}
+		assertNotNull(daoUnderTest.loadClient("Client1"));
+
+		verify(realDaoMock, times(1)).loadClientNames();
+		verify(realDaoMock, never()).loadClient(startsWith("Bogus"));
+		verify(realDaoMock, times(1)).loadClient("Client1");
+		assertEquals(2, daoUnderTest.getUnknownNamesCount());
+	}
+
+
+	@Test
+	public void testMissingKnownNameIsRemembered() {
+		assertNull(daoUnderTest.loadClient("Client2"));
+		assertNull(daoUnderTest.loadClient("Client2"));
+
+		verify(realDaoMock, times(1)).loadClient("Client2");
+	}
+
+
+	@Test
+	public void testNamesAreReadAgainAfterTimeToLive() {
+		assertNull(daoUnderTest.loadClient("Client3"));
+		when(realDaoMock.loadClientNames()).thenReturn(Arrays.asList("Client1", "Client2", "Client3"));
+		DbLoadedSamlClientConfigurationDto client3 = new DbLoadedSamlClientConfigurationDto();
+		client3.setClientName("Client3");
+		when(realDaoMock.loadClient("Client3")).thenReturn(client3);
+
+		now.addAndGet(TimeUnit.SECONDS.toNanos(30));
+		assertNull(daoUnderTest.loadClient("Client3"));
+		now.addAndGet(TimeUnit.SECONDS.toNanos(31));
+		assertNotNull(daoUnderTest.loadClient("Client3"));
+
+		verify(realDaoMock, times(2)).loadClientNames();
+	}
+
+
+	@Test
+	public void testInvalidatedNameIsReadAgain() {
+		assertNull(daoUnderTest.loadClient("Client3"));
+		when(realDaoMock.loadClientNames()).thenReturn(Arrays.asList("Client1", "Client2", "Client3"));
+
+		daoUnderTest.invalidate("Client3");
+		daoUnderTest.loadClient("Client3");
+
+		verify(realDaoMock, times(1)).loadClient("Client3");
+	}
+
+
+	/**
+	 * Streaming of the real DAO is not hidden, e.g. by a {@link BoundedCachingSamlClientDaoImpl} behind.
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testStreamingIsForwarded() {
+		StreamingSamlClientDao streamingDaoMock = mock(StreamingSamlClientDao.class);
+		when(streamingDaoMock.streamAllClients(any(Consumer.class))).thenReturn(Integer.valueOf(2));
+		NegativeCachingSamlClientDaoImpl streamingDao = new NegativeCachingSamlClientDaoImpl(streamingDaoMock, 60, TimeUnit.SECONDS, 2);
+
+		List<DbLoadedSamlClientConfigurationDto> streamed = new ArrayList<>();
+		assertEquals(2, streamingDao.streamAllClients(streamed::add));
+
+		verify(streamingDaoMock, times(1)).streamAllClients(any(Consumer.class));
+		verify(streamingDaoMock, never()).loadAllClients();
+	}
+
+
+	@Test
+	public void testNonStreamingDaoIsStreamedFromList() {
+		DbLoadedSamlClientConfigurationDto client1 = new DbLoadedSamlClientConfigurationDto();
+		client1.setClientName("Client1");
+		when(realDaoMock.loadAllClients()).thenReturn(Collections.singletonList(client1));
+
+		List<DbLoadedSamlClientConfigurationDto> streamed = new ArrayList<>();
+		assertEquals(1, daoUnderTest.streamAllClients(streamed::add));
+		assertEquals(Collections.singletonList(client1), streamed);
+	}
+
+}
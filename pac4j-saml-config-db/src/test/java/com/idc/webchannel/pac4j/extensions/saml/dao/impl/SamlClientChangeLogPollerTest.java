@@ -0,0 +1,225 @@
+package com.idc.webchannel.pac4j.extensions.saml.dao.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.jdbc.support.lob.DefaultLobHandler;
+
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.DbLoadedSamlClientConfigurationDto;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.SamlClientChangeLogDao;
+
+
+/**
+ * Unit test of {@link SamlClientChangeLogPoller}, with the change log and configurations in an embedded H2 database.
+ *
+ * @author jkacer
+ */
+public class SamlClientChangeLogPollerTest {
+
+	private static final String ENVIRONMENT = "UnitTest";
+
+	private static final String PATH_TO_SCRIPT_CREATE_TABLE = "/com/idc/webchannel/pac4j/extensions/saml/dao/impl/1_Create_Table.sql";
+	private static final String PATH_TO_SCRIPT_FILL_DATA = "/com/idc/webchannel/pac4j/extensions/saml/dao/impl/2_Fill_Data.sql";
+	private static final String PATH_TO_SCRIPT_CREATE_CHANGE_LOG = "/com/idc/webchannel/pac4j/extensions/saml/dao/impl/3_Create_Change_Log.sql";
+
+	/** An instance of embedded database, also acting as a Data Source. */
+	private EmbeddedDatabase db;
+	/** The change log, as written by another node. */
+	private SpringJdbcTemplateSamlClientChangeLogDaoImpl changeLogDao;
+	/** A cache of this node. */
+	private CachingSamlClientDaoImpl cachingDao;
+	/** Names of clients the listener has been notified of. */
+	private List<String> notified;
+	/** The tested poller. */
+	private SamlClientChangeLogPoller pollerUnderTest;
+
+
+	// ------------------------------------------------------------------------------------------------------------------------------------
+
+
+	@Before
+	public void initInMemoryDatabaseAndPoller() {
+		db = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).addScript(PATH_TO_SCRIPT_CREATE_TABLE)
+				.addScript(PATH_TO_SCRIPT_FILL_DATA).addScript(PATH_TO_SCRIPT_CREATE_CHANGE_LOG).build();
+		changeLogDao = new SpringJdbcTemplateSamlClientChangeLogDaoImpl(db, "PAC4J_CFG_CHANGES", ENVIRONMENT);
+		cachingDao = new CachingSamlClientDaoImpl(new SpringJdbcTemplateSamlClientDaoImpl(db, new DefaultLobHandler(), "PAC4J_CFG", ENVIRONMENT));
+		notified = new ArrayList<>();
+		pollerUnderTest = new SamlClientChangeLogPoller(changeLogDao, cachingDao::reloadClient, notified::add);
+	}
+
+
+	@After
+	public void shutDownInMemoryDatabase() {
+		if (db != null) {
+			db.shutdown();
+		}
+	}
+
+
+	@Test
+	public void changesBeforeFirstPollAreSkipped() {
+		changeLogDao.recordChange("One");
+
+		assertEquals(0, pollerUnderTest.poll());
+		assertEquals(0, pollerUnderTest.poll());
+		assertTrue(notified.isEmpty());
+	}
+
+
+	@Test
+	public void changedClientsAreReloaded() {
+		DbLoadedSamlClientConfigurationDto unchanged = cachingDao.loadClient("Three");
+		pollerUnderTest.poll();
+
+		JdbcTemplate otherNode = new JdbcTemplate(db);
+		otherNode.update("update PAC4J_CFG set IDP_ENTITY_ID = 'urn:idpChanged' where CLIENT_NAME = 'Two'");
+		changeLogDao.recordChange("Two");
+		otherNode.update("delete from PAC4J_CFG where CLIENT_NAME = 'Four'");
+		changeLogDao.recordChange("Four");
+
+		assertEquals(2, pollerUnderTest.poll());
+		assertEquals(Arrays.asList("Two", "Four"), notified);
+		assertEquals("urn:idpChanged", cachingDao.loadClient("Two").getIdentityProviderEntityId());
+		assertNull(cachingDao.loadClient("Four"));
+		assertSame(unchanged, cachingDao.loadClient("Three"));
+		assertEquals(Arrays.asList("One", "Two", "Three", "Five"), cachingDao.loadClientNames());
+	}
+
+
+	@Test
+	public void changesOfOtherEnvironmentsAreIgnored() {
+		pollerUnderTest.poll();
+		new SpringJdbcTemplateSamlClientChangeLogDaoImpl(db, "PAC4J_CFG_CHANGES", "DifferentEnv").recordChange("Xxxx");
+		changeLogDao.recordChange("One");
+
+		assertEquals(1, pollerUnderTest.poll());
+		assertEquals(Collections.singletonList("One"), notified);
+		assertEquals(changeLogDao.loadLatestSequence(), pollerUnderTest.getSequence());
+	}
+
+
+	/**
+	 * A cache that cannot reload a client must not let the following listeners rebuild it from the stale cache; the change is retried by
+	 * the next poll.
+	 */
+	@Test
+	public void failedReloadOfCacheIsRetried() {
+		cachingDao.loadClient("Two");
+		pollerUnderTest.poll();
+		long started = pollerUnderTest.getSequence();
+
+		JdbcTemplate otherNode = new JdbcTemplate(db);
+		otherNode.update("update PAC4J_CFG set IDP_ENTITY_ID = 'urn:idpChanged' where CLIENT_NAME = 'Two'");
+		changeLogDao.recordChange("Two");
+		otherNode.update("alter table PAC4J_CFG rename to PAC4J_CFG_BROKEN");
+
+		assertEquals(0, pollerUnderTest.poll());
+		assertTrue(notified.isEmpty());
+		assertEquals(started, pollerUnderTest.getSequence());
+
+		otherNode.update("alter table PAC4J_CFG_BROKEN rename to PAC4J_CFG");
+		assertEquals(1, pollerUnderTest.poll());
+		assertEquals(Collections.singletonList("Two"), notified);
+		assertEquals("urn:idpChanged", cachingDao.loadClient("Two").getIdentityProviderEntityId());
+	}
+
+
+	/**
+	 * A poll stops at the first failed change; the changes before it are not processed again and the changes after it wait for the retry.
+	 */
+	@Test
+	public void pollStopsAtFailedChange() {
+		List<String> failures = new ArrayList<>(Collections.singletonList("Two"));
+		SamlClientChangeLogPoller poller = new SamlClientChangeLogPoller(changeLogDao, name -> {
+			if (failures.remove(name)) {
+				throw new IllegalStateException("Failed");
+			}
+		}, notified::add);
+		poller.poll();
+		changeLogDao.recordChange("One");
+		long afterOne = changeLogDao.loadLatestSequence();
+		changeLogDao.recordChange("Two");
+		changeLogDao.recordChange("Three");
+
+		assertEquals(1, poller.poll());
+		assertEquals(Collections.singletonList("One"), notified);
+		assertEquals(afterOne, poller.getSequence());
+
+		assertEquals(2, poller.poll());
+		assertEquals(Arrays.asList("One", "Two", "Three"), notified);
+		assertEquals(changeLogDao.loadLatestSequence(), poller.getSequence());
+		assertEquals(0, poller.poll());
+	}
+
+
+	/**
+	 * A change committed with a lower sequence than an already read one (e.g. by another database node) is read by the poll re-reading the
+	 * late change window, while the polls in between read just the latest sequence.
+	 */
+	@Test
+	public void lateCommittedChangeIsRead() {
+		pollerUnderTest.setLateChangeCheckInterval(3);
+		JdbcTemplate otherNode = new JdbcTemplate(db);
+		otherNode.update("insert into PAC4J_CFG_CHANGES (Change_Seq, Environment, Client_Name) values (3, 'UnitTest', 'One')");
+		pollerUnderTest.poll();
+		otherNode.update("insert into PAC4J_CFG_CHANGES (Change_Seq, Environment, Client_Name) values (10, 'UnitTest', 'Two')");
+
+		assertEquals(1, pollerUnderTest.poll());
+		assertEquals(10L, pollerUnderTest.getSequence());
+		otherNode.update("insert into PAC4J_CFG_CHANGES (Change_Seq, Environment, Client_Name) values (5, 'UnitTest', 'Three')");
+
+		assertEquals(0, pollerUnderTest.poll());
+		assertEquals(0, pollerUnderTest.poll());
+		assertEquals(1, pollerUnderTest.poll());
+		assertEquals(0, pollerUnderTest.poll());
+		assertEquals(Arrays.asList("Two", "Three"), notified);
+	}
+
+
+	/**
+	 * A late change is read right away together with a change making the latest sequence grow.
+	 */
+	@Test
+	public void lateCommittedChangeIsReadWithNextChange() {
+		pollerUnderTest.poll();
+		JdbcTemplate otherNode = new JdbcTemplate(db);
+		otherNode.update("insert into PAC4J_CFG_CHANGES (Change_Seq, Environment, Client_Name) values (10, 'UnitTest', 'Two')");
+		assertEquals(1, pollerUnderTest.poll());
+		otherNode.update("insert into PAC4J_CFG_CHANGES (Change_Seq, Environment, Client_Name) values (5, 'UnitTest', 'Three')");
+		otherNode.update("insert into PAC4J_CFG_CHANGES (Change_Seq, Environment, Client_Name) values (11, 'UnitTest', 'Four')");
+
+		assertEquals(2, pollerUnderTest.poll());
+		assertEquals(Arrays.asList("Two", "Three", "Four"), notified);
+	}
+
+
+	@Test
+	public void lateCommittedChangeIsMissedWithoutWindow() {
+		pollerUnderTest.setLateChangeWindow(0L);
+		pollerUnderTest.poll();
+		JdbcTemplate otherNode = new JdbcTemplate(db);
+		otherNode.update("insert into PAC4J_CFG_CHANGES (Change_Seq, Environment, Client_Name) values (10, 'UnitTest', 'Two')");
+		assertEquals(1, pollerUnderTest.poll());
+		otherNode.update("insert into PAC4J_CFG_CHANGES (Change_Seq, Environment, Client_Name) values (5, 'UnitTest', 'Three')");
+
+		assertEquals(0, pollerUnderTest.poll());
+		assertFalse(notified.contains("Three"));
+		assertTrue(changeLogDao.loadChangesSince(SamlClientChangeLogDao.INITIAL_SEQUENCE).getChangedClientNames().contains("Three"));
+	}
+
+}
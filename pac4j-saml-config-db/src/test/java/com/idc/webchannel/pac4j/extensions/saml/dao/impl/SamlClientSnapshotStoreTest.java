@@ -0,0 +1,166 @@
+package com.idc.webchannel.pac4j.extensions.saml.dao.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.DbLoadedSamlClientConfigurationDto;
+
+
+/**
+ * Unit test of {@link SamlClientSnapshotStore}.
+ *
+ * @author jkacer
+ */
+public class SamlClientSnapshotStoreTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/** The snapshot file. */
+	private Path file;
+
+	// ------------------------------------------------------------------------------------------------------------------------------------
+
+
+	@Before
+	public void initializeFile() throws IOException {
+		file = folder.getRoot().toPath().resolve("clients.snapshot");
+	}
+
+
+	private DbLoadedSamlClientConfigurationDto createTestConfig(String clientName) {
+		DbLoadedSamlClientConfigurationDto cfg = new DbLoadedSamlClientConfigurationDto();
+		cfg.setClientName(clientName);
+		cfg.setEnvironment("Env");
+		cfg.setKeystoreBinaryData(new byte[] {1, 2, 3, 4, 5});
+		cfg.setKeystorePassword("SecretKsPwd");
+		cfg.setKeystoreAlias("Alias");
+		cfg.setPrivateKeyPassword(null);
+		cfg.setIdentityProviderMetadata("<md:EntityDescriptor/>");
+		cfg.setIdentityProviderEntityId("urn:idp" + clientName);
+		cfg.setServiceProviderEntityId("urn:sp" + clientName);
+		cfg.setMaximumAuthenticationLifetime(3600);
+		cfg.setDestinationBindingType("urn:binding");
+		cfg.setVersion(7L);
+		cfg.setSignatureAlgorithms("urn:sig");
+		return cfg;
+	}
+
+
+	private void assertSnapshotRead(SamlClientSnapshotStore store) throws IOException {
+		SamlClientSnapshotStore.Snapshot snapshot = store.read();
+		assertEquals(42L, snapshot.getWatermark());
+		List<DbLoadedSamlClientConfigurationDto> configurations = snapshot.getConfigurations();
+		assertEquals(2, configurations.size());
+
+		DbLoadedSamlClientConfigurationDto cfg = configurations.get(1);
+		assertEquals("Client2", cfg.getClientName());
+		assertEquals("Env", cfg.getEnvironment());
+		assertArrayEquals(new byte[] {1, 2, 3, 4, 5}, cfg.getKeystoreBinaryData());
+		assertEquals("SecretKsPwd", cfg.getKeystorePassword());
+		assertEquals("Alias", cfg.getKeystoreAlias());
+		assertNull(cfg.getPrivateKeyPassword());
+		assertEquals("<md:EntityDescriptor/>", cfg.getIdentityProviderMetadata());
+		assertEquals("urn:idpClient2", cfg.getIdentityProviderEntityId());
+		assertEquals("urn:spClient2", cfg.getServiceProviderEntityId());
+		assertEquals(3600, cfg.getMaximumAuthenticationLifetime());
+		assertEquals("urn:binding", cfg.getDestinationBindingType());
+		assertEquals(7L, cfg.getVersion());
+		assertEquals("urn:sig", cfg.getSignatureAlgorithms());
+		assertNull(cfg.getSignatureReferenceDigestMethods());
+		assertSame(configurations.get(0).getKeystoreContent(), cfg.getKeystoreContent());
+	}
+
+
+	@Test
+	public void testMissingFileIsNoSnapshot() throws IOException {
+		assertNull(new SamlClientSnapshotStore(file).read());
+	}
+
+
+	@Test
+	public void testSnapshotIsReadAsWritten() throws IOException {
+		SamlClientSnapshotStore store = new SamlClientSnapshotStore(file);
+		store.write(Arrays.asList(createTestConfig("Client1"), createTestConfig("Client2")), 42L);
+
+		assertSnapshotRead(store);
+	}
+
+
+	@Test
+	public void testSnapshotIsReadableByOwnerOnly() throws IOException {
+		assumeTrue(file.getFileSystem().supportedFileAttributeViews().contains("posix"));
+		SamlClientSnapshotStore store = new SamlClientSnapshotStore(file);
+		store.write(Arrays.asList(createTestConfig("Client1")), 42L);
+
+		assertEquals(PosixFilePermissions.fromString("rw-------"), Files.getPosixFilePermissions(file));
+	}
+
+
+	@Test
+	public void testEncryptedSnapshotHidesPasswords() throws Exception {
+		SecretKey key = KeyGenerator.getInstance("AES").generateKey();
+		SamlClientSnapshotStore store = new SamlClientSnapshotStore(file, key);
+		store.write(Arrays.asList(createTestConfig("Client1"), createTestConfig("Client2")), 42L);
+
+		assertFalse(new String(Files.readAllBytes(file), StandardCharsets.ISO_8859_1).contains("SecretKsPwd"));
+		assertSnapshotRead(store);
+		assertUnreadable(new SamlClientSnapshotStore(file, KeyGenerator.getInstance("AES").generateKey()));
+		assertUnreadable(new SamlClientSnapshotStore(file));
+	}
+
+
+	@Test
+	public void testDamagedSnapshotIsRejected() throws IOException {
+		SamlClientSnapshotStore store = new SamlClientSnapshotStore(file);
+		store.write(Arrays.asList(createTestConfig("Client1")), 42L);
+		byte[] content = Files.readAllBytes(file);
+		content[content.length - 10] ^= 0x55;
+		Files.write(file, content);
+
+		assertUnreadable(store);
+	}
+
+
+	@Test
+	public void testTruncatedSnapshotIsRejected() throws IOException {
+		SamlClientSnapshotStore store = new SamlClientSnapshotStore(file);
+		store.write(Arrays.asList(createTestConfig("Client1")), 42L);
+		byte[] content = Files.readAllBytes(file);
+		Files.write(file, Arrays.copyOf(content, content.length / 2));
+
+		assertUnreadable(store);
+	}
+
+
+	private void assertUnreadable(SamlClientSnapshotStore store) {
+		try {
+			store.read();
+			fail("The snapshot should have been rejected.");
+		} catch (IOException e) {
+			// Expected
+		}
+	}
+
+}
@@ -0,0 +1,94 @@
+package com.idc.webchannel.pac4j.extensions.saml.dao.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.SamlClientChangeLogDao;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.SamlClientChangeLogEntriesDto;
+
+
+/**
+ * Unit test of {@link SpringJdbcTemplateSamlClientChangeLogDaoImpl}.
+ *
+ * @author jkacer
+ */
+public class SpringJdbcTemplateSamlClientChangeLogDaoImplTest {
+
+	private static final String TABLE_NAME = "PAC4J_CFG_CHANGES";
+
+	private static final String PATH_TO_SCRIPT_CREATE_CHANGE_LOG = "/com/idc/webchannel/pac4j/extensions/saml/dao/impl/3_Create_Change_Log.sql";
+
+	/** An instance of embedded database, also acting as a Data Source. */
+	private EmbeddedDatabase db;
+	/** The tested DAO. */
+	private SpringJdbcTemplateSamlClientChangeLogDaoImpl daoUnderTest;
+	/** A DAO of another environment sharing the table. */
+	private SpringJdbcTemplateSamlClientChangeLogDaoImpl otherEnvironmentDao;
+
+
+	// ------------------------------------------------------------------------------------------------------------------------------------
+
+
+	@Before
+	public void initInMemoryDatabaseAndDao() {
+		db = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).addScript(PATH_TO_SCRIPT_CREATE_CHANGE_LOG).build();
+		daoUnderTest = new SpringJdbcTemplateSamlClientChangeLogDaoImpl(db, TABLE_NAME, "UnitTest");
+		otherEnvironmentDao = new SpringJdbcTemplateSamlClientChangeLogDaoImpl(db, TABLE_NAME, "DifferentEnv");
+	}
+
+
+	@After
+	public void shutDownInMemoryDatabase() {
+		if (db != null) {
+			db.shutdown();
+		}
+	}
+
+
+	@Test
+	public void emptyLogHasInitialSequence() {
+		assertEquals(SamlClientChangeLogDao.INITIAL_SEQUENCE, daoUnderTest.loadLatestSequence());
+		SamlClientChangeLogEntriesDto entries = daoUnderTest.loadChangesSince(SamlClientChangeLogDao.INITIAL_SEQUENCE);
+		assertTrue(entries.getChangedClientNames().isEmpty());
+		assertEquals(SamlClientChangeLogDao.INITIAL_SEQUENCE, entries.getSequence());
+	}
+
+
+	@Test
+	public void changesOfOwnEnvironmentMustBeLoadedOnce() {
+		daoUnderTest.recordChange("One");
+		otherEnvironmentDao.recordChange("Xxxx");
+		daoUnderTest.recordChange("Two");
+		daoUnderTest.recordChange("One");
+
+		SamlClientChangeLogEntriesDto entries = daoUnderTest.loadChangesSince(SamlClientChangeLogDao.INITIAL_SEQUENCE);
+		assertEquals(Arrays.asList("One", "Two"), entries.getChangedClientNames());
+		assertEquals(3, entries.getEntries().size());
+		assertEquals("One", entries.getEntries().get(2).getClientName());
+		assertEquals(daoUnderTest.loadLatestSequence(), entries.getSequence());
+	}
+
+
+	@Test
+	public void onlyChangesAfterSequenceMustBeLoaded() {
+		daoUnderTest.recordChange("One");
+		long afterFirst = daoUnderTest.loadLatestSequence();
+		daoUnderTest.recordChange("Two");
+
+		SamlClientChangeLogEntriesDto entries = daoUnderTest.loadChangesSince(afterFirst);
+		assertEquals(Collections.singletonList("Two"), entries.getChangedClientNames());
+		assertTrue(entries.getSequence() > afterFirst);
+		assertTrue(daoUnderTest.loadChangesSince(entries.getSequence()).getChangedClientNames().isEmpty());
+	}
+
+}
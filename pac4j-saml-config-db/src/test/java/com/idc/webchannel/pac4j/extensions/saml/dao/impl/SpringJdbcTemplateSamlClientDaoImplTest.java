@@ -1,208 +1,375 @@
-package com.idc.webchannel.pac4j.extensions.saml.dao.impl;
-
-import static org.junit.Assert.assertArrayEquals;
-import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertNotNull;
-import static org.junit.Assert.assertNull;
-import static org.junit.Assert.assertTrue;
-
-import java.util.Arrays;
-import java.util.List;
-
-import org.junit.After;
-import org.junit.Before;
-import org.junit.Test;
-import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
-import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
-import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
-import org.springframework.jdbc.support.lob.DefaultLobHandler;
-import org.springframework.jdbc.support.lob.LobHandler;
-
-import com.idc.webchannel.pac4j.extensions.saml.dao.api.DbLoadedSamlClientConfigurationDto;
-
-
-/**
- * Unit test of {@link SpringJdbcTemplateSamlClientDaoImpl}.
- * 
- * @author jkacer
- */
-public class SpringJdbcTemplateSamlClientDaoImplTest {
-
-	private static final String TABLE_NAME = "PAC4J_CFG";
-	private static final String ENVIRONMENT = "UnitTest";
-	
-	private static final String PATH_TO_SCRIPT_CREATE_TABLE = "/com/idc/webchannel/pac4j/extensions/saml/dao/impl/1_Create_Table.sql";
-	private static final String PATH_TO_SCRIPT_FILL_DATA = "/com/idc/webchannel/pac4j/extensions/saml/dao/impl/2_Fill_Data.sql";
-
-	/** An instance of embedded database, also acting as a Data Source. */
-	private EmbeddedDatabase db;
-	/** The tested template. */
-	private SpringJdbcTemplateSamlClientDaoImpl templateUnderTest;
-
-	
-	// ------------------------------------------------------------------------------------------------------------------------------------
-	
-	
-	@Before
-	public void initInMemoryDatabaseAndTemplate() {
-		EmbeddedDatabaseBuilder builder = new EmbeddedDatabaseBuilder();
-		db = builder.setType(EmbeddedDatabaseType.H2).addScript(PATH_TO_SCRIPT_CREATE_TABLE).addScript(PATH_TO_SCRIPT_FILL_DATA).build();
-		LobHandler lobHandler = new DefaultLobHandler();
-		templateUnderTest = new SpringJdbcTemplateSamlClientDaoImpl(db, lobHandler, TABLE_NAME, ENVIRONMENT);
-	}
-
-	
-	@After
-	public void shutDownInMemoryDatabase() {
-		if (db != null) {
-			db.shutdown();
-		}
-	}
-
-	
-	/**
-	 * Checks that loaded SAML Client names for a particular environment correspond to the SQL script used to populate the database.
-	 */
-	@Test
-	public void allNamesMustBeLoaded() {
-		String[] expectedNames = {"One", "Two", "Three", "Four", "Five"};
-		List<String> names = templateUnderTest.loadClientNames();
-
-		assertNotNull(names);
-		assertEquals(5, names.size());
-		
-		for (String expected: expectedNames) {
-			assertTrue(names.contains(expected));
-		}
-	}
-	
-	
-	/**
-	 * Checks that loaded SAML Client Configurations for a particular environment correspond to the SQL script used to populate the
-	 * database.
-	 */
-	@Test
-	public void allClientConfigurationsMustBeLoaded() {
-		String[] expectedNames = {"One", "Two", "Three", "Four", "Five"};
-		String[] expectedBindings = {null, "http://redirect", "http://post", null, "urn:binding"};
-		
-		List<DbLoadedSamlClientConfigurationDto> configurations = templateUnderTest.loadAllClients();
-		assertNotNull(configurations);
-		assertEquals(5, configurations.size());
-
-		for (int i = 1; i <= 5; i++) {
-			DbLoadedSamlClientConfigurationDto cfg = configurations.get(i-1);
-			
-			// Client name
-			assertEquals(expectedNames[i-1], cfg.getClientName());
-			
-			// Keystore data
-			byte[] keystoreData = cfg.getKeystoreBinaryData();
-			byte[] expectedKeystoreData = createExpectedKeystoreData((byte) i);
-			assertArrayEquals(expectedKeystoreData, keystoreData);
-
-			// Keystore password
-			assertEquals("KsPwd"+i, cfg.getKeystorePassword());
-			
-			// Alias
-			assertEquals("Alias"+i, cfg.getKeystoreAlias());
-
-			// Private key password
-			assertEquals("PrKeyPwd"+i, cfg.getPrivateKeyPassword());
-
-			// IdP metadata
-			assertEquals("CLOB-"+i, cfg.getIdentityProviderMetadata());
-			
-			// IdP entity ID
-			assertEquals("urn:idp"+i, cfg.getIdentityProviderEntityId());
-			
-			// SP entity ID
-			assertEquals("urn:sp"+i, cfg.getServiceProviderEntityId());
-
-			// Maximum authentication lifetime
-			assertEquals(i * 1000, cfg.getMaximumAuthenticationLifetime());
-
-			// Destination binding type
-			assertEquals(expectedBindings[i-1], cfg.getDestinationBindingType());
-		}
-	}
-	
-	
-	/**
-	 * Checks that a single loaded SAML Client Configuration for a particular environment and a particular client name corresponds to the
-	 * SQL script used to populate the database.
-	 */
-	@Test
-	public void singleClientConfigurationMustBeLoaded() {
-		DbLoadedSamlClientConfigurationDto cfg = templateUnderTest.loadClient("Five");
-		assertNotNull(cfg);
-
-		// Client name
-		assertEquals("Five", cfg.getClientName());
-		
-		// Keystore data
-		byte[] keystoreData = cfg.getKeystoreBinaryData();
-		byte[] expectedKeystoreData = createExpectedKeystoreData((byte) 5);
-		assertArrayEquals(expectedKeystoreData, keystoreData);
-
-		// Keystore password
-		assertEquals("KsPwd5", cfg.getKeystorePassword());
-
-		// Alias
-		assertEquals("Alias5", cfg.getKeystoreAlias());
-
-		// Private key password
-		assertEquals("PrKeyPwd5", cfg.getPrivateKeyPassword());
-
-		// IdP metadata
-		assertEquals("CLOB-5", cfg.getIdentityProviderMetadata());
-		
-		// IdP entity ID
-		assertEquals("urn:idp5", cfg.getIdentityProviderEntityId());
-		
-		// SP entity ID
-		assertEquals("urn:sp5", cfg.getServiceProviderEntityId());
-
-		// Maximum authentication lifetime
-		assertEquals(5000, cfg.getMaximumAuthenticationLifetime());
-
-		// Destination binding type
-		assertEquals("urn:binding", cfg.getDestinationBindingType());
-	}
-
-	
-	/**
-	 * Checks that nothing is found for a non-existing client. 
-	 */
-	@Test
-	public void singleClientConfigurationThatDoesNotExist() {
-		DbLoadedSamlClientConfigurationDto cfg = templateUnderTest.loadClient("DoesNotExist");
-		assertNull(cfg);
-	}
-	
-	
-	/**
-	 * Checks that an exception is thrown on reading configuration for an unspecified client.
-	 */
-	@Test(expected=IllegalArgumentException.class)
-	public void singleClientConfigurationForNoName1() {
-		templateUnderTest.loadClient(null);
-	}
-
-	
-	/**
-	 * Checks that an exception is thrown on reading configuration for an unspecified client.
-	 */
-	@Test(expected=IllegalArgumentException.class)
-	public void singleClientConfigurationForNoName2() {
-		templateUnderTest.loadClient("   ");
-	}
-	
-	
-	private byte[] createExpectedKeystoreData(byte b) {
-		byte[] result = new byte[5];
-		Arrays.fill(result, b);
-		return result;
-	}
-
-}
+package com.idc.webchannel.pac4j.extensions.saml.dao.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.jdbc.support.lob.DefaultLobHandler;
+import org.springframework.jdbc.support.lob.LobHandler;
+
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.DbLoadedSamlClientConfigurationDto;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.IncrementalSamlClientDao;
+import com.idc.webchannel.pac4j.extensions.saml.dao.api.SamlClientConfigurationChangesDto;
+
+
+/**
+ * Unit test of {@link SpringJdbcTemplateSamlClientDaoImpl}.
+ * 
+ * @author jkacer
+ */
+public class SpringJdbcTemplateSamlClientDaoImplTest {
+
+	private static final String TABLE_NAME = "PAC4J_CFG";
+	private static final String ENVIRONMENT = "UnitTest";
+	private static final String VERSION_COLUMN = "CONFIG_VERSION";
+	
+	private static final String PATH_TO_SCRIPT_CREATE_TABLE = "/com/idc/webchannel/pac4j/extensions/saml/dao/impl/1_Create_Table.sql";
+	private static final String PATH_TO_SCRIPT_FILL_DATA = "/com/idc/webchannel/pac4j/extensions/saml/dao/impl/2_Fill_Data.sql";
+
+	/** An instance of embedded database, also acting as a Data Source. */
+	private EmbeddedDatabase db;
+	/** The tested template. */
+	private SpringJdbcTemplateSamlClientDaoImpl templateUnderTest;
+	/** The tested template, reading record versions. */
+	private SpringJdbcTemplateSamlClientDaoImpl versionedTemplateUnderTest;
+
+	
+	// ------------------------------------------------------------------------------------------------------------------------------------
+	
+	
+	@Before
+	public void initInMemoryDatabaseAndTemplate() {
+		EmbeddedDatabaseBuilder builder = new EmbeddedDatabaseBuilder();
+		db = builder.setType(EmbeddedDatabaseType.H2).addScript(PATH_TO_SCRIPT_CREATE_TABLE).addScript(PATH_TO_SCRIPT_FILL_DATA).build();
+		LobHandler lobHandler = new DefaultLobHandler();
+		templateUnderTest = new SpringJdbcTemplateSamlClientDaoImpl(db, lobHandler, TABLE_NAME, ENVIRONMENT);
+		versionedTemplateUnderTest = new SpringJdbcTemplateSamlClientDaoImpl(db, lobHandler, TABLE_NAME, ENVIRONMENT, VERSION_COLUMN);
+	}
+
+	
+	@After
+	public void shutDownInMemoryDatabase() {
+		if (db != null) {
+			db.shutdown();
+		}
+	}
+
+	
+	/**
+	 * Checks that loaded SAML Client names for a particular environment correspond to the SQL script used to populate the database.
+	 */
+	@Test
+	public void allNamesMustBeLoaded() {
+		String[] expectedNames = {"One", "Two", "Three", "Four", "Five"};
+		List<String> names = templateUnderTest.loadClientNames();
+
+		assertNotNull(names);
+		assertEquals(5, names.size());
+		
+		for (String expected: expectedNames) {
+			assertTrue(names.contains(expected));
+		}
+	}
+	
+	
+	/**
+	 * Checks that loaded SAML Client Configurations for a particular environment correspond to the SQL script used to populate the
+	 * database.
+	 */
+	@Test
+	public void allClientConfigurationsMustBeLoaded() {
+		String[] expectedNames = {"One", "Two", "Three", "Four", "Five"};
+		String[] expectedBindings = {null, "http://redirect", "http://post", null, "urn:binding"};
+		
+		List<DbLoadedSamlClientConfigurationDto> configurations = templateUnderTest.loadAllClients();
+		assertNotNull(configurations);
+		assertEquals(5, configurations.size());
+
+		for (int i = 1; i <= 5; i++) {
+			DbLoadedSamlClientConfigurationDto cfg = configurations.get(i-1);
+			
+			// Client name
+			assertEquals(expectedNames[i-1], cfg.getClientName());
+			
+			// Keystore data
+			byte[] keystoreData = cfg.getKeystoreBinaryData();
+			byte[] expectedKeystoreData = createExpectedKeystoreData((byte) i);
+			assertArrayEquals(expectedKeystoreData, keystoreData);
+
+			// Keystore password
+			assertEquals("KsPwd"+i, cfg.getKeystorePassword());
+			
+			// Alias
+			assertEquals("Alias"+i, cfg.getKeystoreAlias());
+
+			// Private key password
+			assertEquals("PrKeyPwd"+i, cfg.getPrivateKeyPassword());
+
+			// IdP metadata
+			assertEquals("CLOB-"+i, cfg.getIdentityProviderMetadata());
+			
+			// IdP entity ID
+			assertEquals("urn:idp"+i, cfg.getIdentityProviderEntityId());
+			
+			// SP entity ID
+			assertEquals("urn:sp"+i, cfg.getServiceProviderEntityId());
+
+			// Maximum authentication lifetime
+			assertEquals(i * 1000, cfg.getMaximumAuthenticationLifetime());
+
+			// Destination binding type
+			assertEquals(expectedBindings[i-1], cfg.getDestinationBindingType());
+		}
+	}
+	
+	
+	/**
+	 * Checks that a single loaded SAML Client Configuration for a particular environment and a particular client name corresponds to the
+	 * SQL script used to populate the database.
+	 */
+	@Test
+	public void singleClientConfigurationMustBeLoaded() {
+		DbLoadedSamlClientConfigurationDto cfg = templateUnderTest.loadClient("Five");
+		assertNotNull(cfg);
+
+		// Client name
+		assertEquals("Five", cfg.getClientName());
+		
+		// Keystore data
+		byte[] keystoreData = cfg.getKeystoreBinaryData();
+		byte[] expectedKeystoreData = createExpectedKeystoreData((byte) 5);
+		assertArrayEquals(expectedKeystoreData, keystoreData);
+
+		// Keystore password
+		assertEquals("KsPwd5", cfg.getKeystorePassword());
+
+		// Alias
+		assertEquals("Alias5", cfg.getKeystoreAlias());
+
+		// Private key password
+		assertEquals("PrKeyPwd5", cfg.getPrivateKeyPassword());
+
+		// IdP metadata
+		assertEquals("CLOB-5", cfg.getIdentityProviderMetadata());
+		
+		// IdP entity ID
+		assertEquals("urn:idp5", cfg.getIdentityProviderEntityId());
+		
+		// SP entity ID
+		assertEquals("urn:sp5", cfg.getServiceProviderEntityId());
+
+		// Maximum authentication lifetime
+		assertEquals(5000, cfg.getMaximumAuthenticationLifetime());
+
+		// Destination binding type
+		assertEquals("urn:binding", cfg.getDestinationBindingType());
+	}
+
+	
+	/**
+	 * Checks that nothing is found for a non-existing client. 
+	 */
+	@Test
+	public void singleClientConfigurationThatDoesNotExist() {
+		DbLoadedSamlClientConfigurationDto cfg = templateUnderTest.loadClient("DoesNotExist");
+		assertNull(cfg);
+	}
+	
+	
+	/**
+	 * Checks that an exception is thrown on reading configuration for an unspecified client.
+	 */
+	@Test(expected=IllegalArgumentException.class)
+	public void singleClientConfigurationForNoName1() {
+		templateUnderTest.loadClient(null);
+	}
+
+	
+	/**
+	 * Checks that an exception is thrown on reading configuration for an unspecified client.
+	 */
+	@Test(expected=IllegalArgumentException.class)
+	public void singleClientConfigurationForNoName2() {
+		templateUnderTest.loadClient("   ");
+	}
+	
+	
+	/**
+	 * Checks that overrides of signing algorithms are read only if the DAO is told to read them.
+	 */
+	@Test
+	public void signingOverridesMustBeLoaded() {
+		new JdbcTemplate(db).update("update PAC4J_CFG set SIGNATURE_ALGORITHMS = 'urn:sig' where CLIENT_NAME = 'Two'");
+		SpringJdbcTemplateSamlClientDaoImpl signingDao = new SpringJdbcTemplateSamlClientDaoImpl(db, new DefaultLobHandler(), TABLE_NAME,
+				ENVIRONMENT, null, true);
+
+		DbLoadedSamlClientConfigurationDto two = signingDao.loadClient("Two");
+		assertEquals("urn:sig", two.getSignatureAlgorithms());
+		assertNull(two.getSignatureReferenceDigestMethods());
+		assertNull(signingDao.loadClient("One").getSignatureAlgorithms());
+		assertNull(templateUnderTest.loadClient("Two").getSignatureAlgorithms());
+	}
+
+
+	/**
+	 * Checks that only records with a version greater than the watermark are loaded, and that deletions can be detected.
+	 */
+	@Test
+	public void onlyChangedClientConfigurationsMustBeLoaded() {
+		JdbcTemplate jdbc = new JdbcTemplate(db);
+		jdbc.update("update PAC4J_CFG set CONFIG_VERSION = 1");
+		
+		SamlClientConfigurationChangesDto all = versionedTemplateUnderTest.loadClientsChangedSince(IncrementalSamlClientDao.INITIAL_WATERMARK);
+		assertEquals(5, all.getChangedClients().size());
+		assertEquals(5, all.getExistingClientNames().size());
+		assertEquals(1L, all.getWatermark());
+		
+		SamlClientConfigurationChangesDto none = versionedTemplateUnderTest.loadClientsChangedSince(all.getWatermark());
+		assertTrue(none.getChangedClients().isEmpty());
+		assertEquals(5, none.getExistingClientNames().size());
+		assertEquals(1L, none.getWatermark());
+		
+		jdbc.update("update PAC4J_CFG set SP_ENTITY_ID = 'urn:sp2-new', CONFIG_VERSION = 2 where CLIENT_NAME = 'Two'");
+		jdbc.update("delete from PAC4J_CFG where CLIENT_NAME = 'Four'");
+		
+		SamlClientConfigurationChangesDto some = versionedTemplateUnderTest.loadClientsChangedSince(none.getWatermark());
+		assertEquals(1, some.getChangedClients().size());
+		DbLoadedSamlClientConfigurationDto changed = some.getChangedClients().get(0);
+		assertEquals("Two", changed.getClientName());
+		assertEquals("urn:sp2-new", changed.getServiceProviderEntityId());
+		assertEquals(2L, changed.getVersion());
+		assertEquals(2L, some.getWatermark());
+		assertEquals(4, some.getExistingClientNames().size());
+		assertFalse(some.getExistingClientNames().contains("Four"));
+	}
+	
+	
+	/**
+	 * Checks that all records are loaded as changed if no version column is configured.
+	 */
+	@Test
+	public void allClientConfigurationsAreChangedWithoutVersionColumn() {
+		SamlClientConfigurationChangesDto changes = templateUnderTest.loadClientsChangedSince(12345L);
+		assertEquals(5, changes.getChangedClients().size());
+		assertEquals(5, changes.getExistingClientNames().size());
+		assertEquals(12345L, changes.getWatermark());
+	}
+	
+	
+	/**
+	 * Checks that streamed LOBs are read the same way as LOBs read by the LOB handler.
+	 */
+	@Test
+	public void streamedLobsMustMatchLobHandler() {
+		templateUnderTest.setStreamingLobs(false);
+		List<DbLoadedSamlClientConfigurationDto> expected = templateUnderTest.loadAllClients();
+		templateUnderTest.setStreamingLobs(true);
+		assertTrue(templateUnderTest.isStreamingLobs());
+		List<DbLoadedSamlClientConfigurationDto> streamed = templateUnderTest.loadAllClients();
+		
+		assertEquals(expected.size(), streamed.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).getClientName(), streamed.get(i).getClientName());
+			assertArrayEquals(expected.get(i).getKeystoreBinaryData(), streamed.get(i).getKeystoreBinaryData());
+			assertEquals(expected.get(i).getIdentityProviderMetadata(), streamed.get(i).getIdentityProviderMetadata());
+		}
+	}
+	
+	
+	/**
+	 * Checks that a long CLOB with non-ASCII characters is correctly encoded to UTF-8 when streamed.
+	 */
+	@Test
+	public void streamedClobMustBeEncodedToUtf8() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 5000; i++) {
+			sb.append("<md:Organization xml:lang=\"cs\">Žluťoučký kůň \u20ac ").append(i).append("</md:Organization>");
+		}
+		String metadata = sb.toString();
+		new JdbcTemplate(db).update("update PAC4J_CFG set IDP_METADATA = ? where CLIENT_NAME = 'Three'", metadata);
+		
+		templateUnderTest.setStreamingLobs(true);
+		DbLoadedSamlClientConfigurationDto cfg = templateUnderTest.loadClient("Three");
+		assertEquals(metadata, cfg.getIdentityProviderMetadata());
+		assertArrayEquals(metadata.getBytes(StandardCharsets.UTF_8), cfg.getIdentityProviderMetadataBinaryData());
+	}
+	
+	
+	/**
+	 * Checks that identical LOBs of different clients are loaded into a single shared instance.
+	 */
+	@Test
+	public void identicalLobsMustBeShared() {
+		new JdbcTemplate(db).update("update PAC4J_CFG set IDP_METADATA = 'Federation metadata' where CLIENT_NAME in ('One', 'Two')");
+		
+		DbLoadedSamlClientConfigurationDto one = templateUnderTest.loadClient("One");
+		DbLoadedSamlClientConfigurationDto two = templateUnderTest.loadClient("Two");
+		assertSame(one.getIdentityProviderMetadataContent(), two.getIdentityProviderMetadataContent());
+		assertNotSame(one.getKeystoreContent(), two.getKeystoreContent());
+	}
+	
+	
+	private byte[] createExpectedKeystoreData(byte b) {
+		byte[] result = new byte[5];
+		Arrays.fill(result, b);
+		return result;
+	}
+
+
+	/**
+	 * Checks that streamed SAML Client Configurations are the same as the loaded ones, in the same order.
+	 */
+	@Test
+	public void allClientConfigurationsMustBeStreamed() {
+		templateUnderTest.setFetchSize(2);
+		List<DbLoadedSamlClientConfigurationDto> streamed = new ArrayList<>();
+
+		assertEquals(5, templateUnderTest.streamAllClients(streamed::add));
+
+		List<DbLoadedSamlClientConfigurationDto> loaded = templateUnderTest.loadAllClients();
+		assertEquals(loaded.size(), streamed.size());
+		for (int i = 0; i < loaded.size(); i++) {
+			assertEquals(loaded.get(i).getClientName(), streamed.get(i).getClientName());
+			assertSame(loaded.get(i).getKeystoreContent(), streamed.get(i).getKeystoreContent());
+		}
+	}
+
+
+	/**
+	 * Checks that an exception thrown by the consumer stops streaming.
+	 */
+	@Test
+	public void failingConsumerMustStopStreaming() {
+		List<String> names = new ArrayList<>();
+		try {
+			templateUnderTest.streamAllClients(cfg -> {
+				names.add(cfg.getClientName());
+				if (names.size() == 2) {
+					throw new IllegalStateException("Enough");
+				}
+			});
+			fail("The exception of the consumer must be propagated.");
+		} catch (IllegalStateException e) {
+			assertEquals("Enough", e.getMessage());
+		}
+		assertEquals(2, names.size());
+	}
+}
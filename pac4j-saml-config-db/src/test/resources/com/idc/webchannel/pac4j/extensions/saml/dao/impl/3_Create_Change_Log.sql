@@ -0,0 +1,8 @@
+create table PAC4J_CFG_CHANGES
+(
+  CHANGE_SEQ IDENTITY NOT NULL,
+  ENVIRONMENT VARCHAR(20) NOT NULL,
+  CLIENT_NAME VARCHAR(200) NOT NULL,
+  CHANGED_AT TIMESTAMP DEFAULT CURRENT_TIMESTAMP NOT NULL,
+  CONSTRAINT PAC4J_CFG_CHANGES_PK PRIMARY KEY (CHANGE_SEQ)
+);